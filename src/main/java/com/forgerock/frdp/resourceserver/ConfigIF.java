@@ -28,12 +28,14 @@ public interface ConfigIF {
    public static final String AS_SESSIONS_ACCEPT = "as.sessions.accept-api-version";
    public static final String AS_SESSIONS_PATH = "as.sessions.path";
    public static final String AS_UMA_PATH = "as.uma.path";
+   public static final String AS_UMA_PENDINGREQUESTS_PAGESIZE = "as.uma.pendingrequests.pagesize";
    public static final String AS_UMA_PENDINGREQUESTS_PATH = "as.uma.pendingrequests.path";
    public static final String AS_UMA_PENDINGREQUESTS_ACCEPT = "as.uma.pendingrequests.accept-api-version";
    public static final String AS_UMA_PENDINGREQUESTS_QUERYFILTER = "as.uma.pendingrequests.queryfilter";
    public static final String AS_UMA_PENDINGREQUESTS_SORTKEYS = "as.uma.pendingrequests.sortkeys";
    public static final String AS_UMA_PERMISSION_REQUEST_PATH = "as.uma.permission_request.path";
    public static final String AS_UMA_POLICIES_ACCEPT = "as.uma.policies.accept-api-version";
+   public static final String AS_UMA_POLICIES_PAGESIZE = "as.uma.policies.pagesize";
    public static final String AS_UMA_POLICIES_PATH = "as.uma.policies.path";
    public static final String AS_UMA_RESOURCE_SET_PATH = "as.uma.resource_set.path";
    public static final String AS_UMA_SHAREDWITHME_PATH = "as.uma.sharedwithme.path";
@@ -44,17 +46,46 @@ public interface ConfigIF {
 
    public static final String CS_CONNECT = "cs.connect";
 
+   public static final String RS_BULK_MAXITEMS = "rs.bulk.maxitems";
+   public static final String RS_BULK_THREADS = "rs.bulk.threads";
+   public static final String RS_BULK_RATE = "rs.bulk.rate";
+   public static final String RS_COMPRESSION_ENABLED = "rs.compression.enabled";
+   public static final String RS_COMPRESSION_LEVEL = "rs.compression.level";
+   public static final String RS_COMPRESSION_POOL = "rs.compression.pool";
+   public static final String RS_COMPRESSION_THRESHOLD = "rs.compression.threshold";
+   public static final String RS_CONTENT_CACHE_MAXBYTES = "rs.content.cache.maxbytes";
+   public static final String RS_CONTENT_CACHE_MAXENTRY = "rs.content.cache.maxentry";
+   public static final String RS_CONTENT_CACHE_TTL = "rs.content.cache.ttl";
+   public static final String RS_CONTENT_ETAG_MAX = "rs.content.etag.max";
+   public static final String RS_CONTENT_ETAG_TTL = "rs.content.etag.ttl";
+   public static final String RS_DISCOVER_INFLIGHT = "rs.discover.inflight";
+   public static final String RS_DISCOVER_TIMEOUT = "rs.discover.timeout";
+   public static final String RS_JOBS_CHUNK = "rs.jobs.chunk";
+   public static final String RS_JOBS_LEASE = "rs.jobs.lease";
+   public static final String RS_JOBS_THREADS = "rs.jobs.threads";
+   public static final String RS_META_CACHE_MAX = "rs.meta.cache.max";
+   public static final String RS_META_CACHE_TTL = "rs.meta.cache.ttl";
+   public static final String RS_REQUESTS_MAX = "rs.requests.max";
+   public static final String RS_REQUESTS_TTL = "rs.requests.ttl";
+   public static final String RS_RELOAD_GRACE = "rs.reload.grace";
+   public static final String RS_RELOAD_INTERVAL = "rs.reload.interval";
    public static final String RS_HEADERS_SSOTOKEN = "rs.headers.ssotoken";
    public static final String RS_HEADERS_RPT = "rs.headers.rpt";
    public static final String RS_ID = "rs.id";
    public static final String RS_CREDENTIAL_CATEGORIES_PAT_ID = "rs.credential.categories.pat.id";
    public static final String RS_CREDENTIAL_CATEGORIES_SSO_ID = "rs.credential.categories.sso.id";
+   public static final String RS_CREDENTIAL_REFRESH_ENABLED = "rs.credential.refresh.enabled";
+   public static final String RS_CREDENTIAL_REFRESH_INTERVAL = "rs.credential.refresh.interval";
+   public static final String RS_CREDENTIAL_REFRESH_WINDOW = "rs.credential.refresh.window";
+   public static final String RS_CREDENTIAL_REFRESH_JITTER = "rs.credential.refresh.jitter";
    public static final String RS_OAUTH2_CLIENT_ID = "rs.oauth2.client.id";
    public static final String RS_OAUTH2_CLIENT_SECRET = "rs.oauth2.client.secret";
    public static final String RS_OAUTH2_CLIENT_REDIRECT = "rs.oauth2.client.redirect";
    public static final String RS_NOSQL = "rs.nosql";
    public static final String RS_NOSQL_COLLECTIONS_CREDENTIALS_NAME = "rs.nosql.collections.credentials.name";
+   public static final String RS_NOSQL_COLLECTIONS_JOBS_NAME = "rs.nosql.collections.jobs.name";
    public static final String RS_NOSQL_COLLECTIONS_RESOURCES_NAME = "rs.nosql.collections.resources.name";
    public static final String RS_NOSQL_DATABASE = "rs.nosql.database";
+   public static final String RS_UPLOAD_MAXSIZE = "rs.upload.maxsize";
 
 }
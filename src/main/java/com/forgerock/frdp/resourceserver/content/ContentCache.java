@@ -0,0 +1,549 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.content;
+
+import com.forgerock.frdp.resourceserver.utils.JSONUtil;
+import com.forgerock.frdp.utils.STR;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.simple.JSONObject;
+
+/**
+ * Read-through cache of content bodies, keyed by Content Service identifier
+ * and content "uri". The size is limited by the total number of bytes, not the
+ * number of entries: the least recently used entries are removed until a new
+ * body fits. Bodies are kept in direct (off-heap) buffers, so large bodies do
+ * not add to garbage collection. An entry is used without checking the Content
+ * Service for a time-to-live, then it is revalidated with its ETag. A body
+ * from a Content Service that does not return an ETag gets a strong ETag
+ * computed from its bytes. Entries are removed when the content is replaced
+ * or deleted.
+ *
+ * A read takes the key's generation before it reads the Content Service.
+ * Removing a key increments its generation, a body read before the removal
+ * is returned to its reader but not saved. JSON bodies are also kept parsed,
+ * each reader gets its own copy.
+ *
+ * <pre>
+ * JSON metrics:
+ * {
+ *   "ttl": 60,
+ *   "maxBytes": 67108864,
+ *   "maxEntryBytes": 1048576,
+ *   "entries": 123,
+ *   "bytes": 23456789,
+ *   "hits": 56789,
+ *   "misses": 2345,
+ *   "revalidated": 345,
+ *   "evictions": 12
+ * }
+ * </pre>
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class ContentCache {
+
+   public static final long DEFAULT_TTL = 60L; // seconds
+   public static final long DEFAULT_MAX_BYTES = 0L; // disabled
+   public static final long DEFAULT_MAX_ENTRY_BYTES = 1048576L;
+   private static final int STRIPES = 64;
+   private static final String HDR_ETAG = "ETag";
+
+   private final Logger _logger = Logger.getLogger(this.getClass().getName());
+   private final AtomicLong _hits = new AtomicLong(0L);
+   private final AtomicLong _misses = new AtomicLong(0L);
+   private final AtomicLong _revalidated = new AtomicLong(0L);
+   private final AtomicLong _evictions = new AtomicLong(0L);
+   private final Map<String, Entry> _entries = new LinkedHashMap<>(16, 0.75f, true); // access order
+   private final AtomicLongArray _generations = new AtomicLongArray(STRIPES); // changed with _entries
+   private long _bytes = 0L; // guarded by _entries
+   private volatile long _ttlMillis = DEFAULT_TTL * 1000L;
+   private volatile long _maxBytes = DEFAULT_MAX_BYTES;
+   private volatile long _maxEntryBytes = DEFAULT_MAX_ENTRY_BYTES;
+
+   /**
+    * Set the limits. All entries are removed if a size limit changed, a
+    * reload with the same limits keeps them. A new time-to-live is used for
+    * entries saved or revalidated after it is set.
+    *
+    * @param ttl long seconds an entry is used before it is revalidated
+    * @param maxBytes long maximum total size of the bodies, less than 1
+    * disables the cache
+    * @param maxEntryBytes long maximum size of one body
+    */
+   public void configure(final long ttl, final long maxBytes, final long maxEntryBytes) {
+      long max = maxBytes > 0L ? maxBytes : 0L;
+      long maxEntry = maxEntryBytes > 0L ? Math.min(maxEntryBytes, Integer.MAX_VALUE) : DEFAULT_MAX_ENTRY_BYTES;
+
+      synchronized (_entries) {
+         _ttlMillis = ttl > 0L ? ttl * 1000L : 0L;
+
+         if (max != _maxBytes || maxEntry != _maxEntryBytes) {
+            _maxBytes = max;
+            _maxEntryBytes = maxEntry;
+            _entries.clear();
+            _bytes = 0L;
+         }
+      }
+
+      return;
+   }
+
+   /**
+    * Get the key for the Content Service identifier and the content uri.
+    *
+    * @param csId String Content Service identifier
+    * @param uri String content uri
+    * @return String key
+    */
+   public static String getKey(final String csId, final String uri) {
+      return (csId == null ? "" : csId) + " " + (uri == null ? "" : uri);
+   }
+
+   /**
+    * Get the generation of the key, taken before the Content Service is
+    * read and given to "put" or "load".
+    *
+    * @param key String cache key
+    * @return long generation
+    */
+   public long getGeneration(final String key) {
+      return _generations.get(this.getStripe(key));
+   }
+
+   /**
+    * Check if the cache is enabled
+    *
+    * @return boolean True if bodies are cached
+    */
+   public boolean isEnabled() {
+      return _maxBytes > 0L;
+   }
+
+   /**
+    * Check if a body of the given size can be cached
+    *
+    * @param length long body size, in bytes, less than 0 if not known
+    * @return boolean True if the body can be cached
+    */
+   public boolean isCacheable(final long length) {
+      return this.isEnabled() && length >= 0L && length <= _maxEntryBytes && length <= _maxBytes;
+   }
+
+   /**
+    * Get the cached entry, null if it does not exist. The entry may have
+    * expired, the caller revalidates it.
+    *
+    * @param key String cache key
+    * @return Entry cached entry
+    */
+   public Entry get(final String key) {
+      Entry entry = null;
+
+      if (this.isEnabled() && !STR.isEmpty(key)) {
+         synchronized (_entries) {
+            entry = _entries.get(key);
+         }
+
+         if (entry != null && !entry.isExpired()) {
+            _hits.incrementAndGet();
+         } else {
+            _misses.incrementAndGet();
+         }
+      }
+
+      return entry;
+   }
+
+   /**
+    * The Content Service reported the entry is not modified, use it for
+    * another time-to-live.
+    *
+    * @param entry Entry revalidated entry
+    */
+   public void revalidated(final Entry entry) {
+      if (entry != null) {
+         entry.expires = System.currentTimeMillis() + _ttlMillis;
+         _revalidated.incrementAndGet();
+      }
+
+      return;
+   }
+
+   /**
+    * Save JSON data. The UTF-8 body is copied to a direct buffer, for the
+    * size limits, and a copy of the data is kept parsed.
+    *
+    * @param key String cache key
+    * @param generation long key generation, from before the data was read
+    * @param jsonData JSONObject content data
+    * @param etag String ETag, may be null
+    * @return Entry entry, null if the data was not cached
+    */
+   public Entry put(final String key, final long generation, final JSONObject jsonData, final String etag) {
+      byte[] body = null;
+      ByteBuffer buffer = null;
+
+      if (!STR.isEmpty(key) && jsonData != null && this.isEnabled()) {
+         body = jsonData.toJSONString().getBytes(StandardCharsets.UTF_8);
+
+         if (this.isCacheable(body.length)) {
+            buffer = this.allocate(body.length);
+         }
+
+         if (buffer != null) {
+            buffer.put(body);
+            buffer.flip();
+         }
+      }
+
+      return buffer != null ? this.save(key, generation, buffer, JSONUtil.copy(jsonData), null, etag) : null;
+   }
+
+   /**
+    * Read a body from the stream, directly to a direct buffer, and save it.
+    * If "etag" is empty, an ETag is computed from the body and added to the
+    * headers. The caller closes the stream.
+    *
+    * @param key String cache key
+    * @param generation long key generation, from before the stream was opened
+    * @param input InputStream content body
+    * @param length long body size ("Content-Length")
+    * @param jsonHeaders JSONObject response headers, may be null
+    * @param etag String ETag, may be null
+    * @return Entry entry with the body, not saved if the key was removed
+    * since "generation", null if the stream was not read
+    * @throws IOException could not read the stream, or it did not have
+    * "length" bytes
+    */
+   public Entry load(final String key, final long generation, final InputStream input, final long length,
+      final JSONObject jsonHeaders, final String etag) throws IOException {
+      String bodyETag = etag;
+      ByteBuffer buffer = null;
+      ReadableByteChannel channel = null;
+      JSONObject jsonBodyHeaders = jsonHeaders;
+
+      if (!STR.isEmpty(key) && input != null && this.isCacheable(length)) {
+         buffer = this.allocate((int) length);
+      }
+
+      if (buffer != null) {
+         channel = Channels.newChannel(input); // closed by the caller, with the stream
+
+         while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+               throw new IOException("Content ended after " + buffer.position()
+                  + " of " + length + " bytes");
+            }
+         }
+
+         buffer.flip();
+
+         if (STR.isEmpty(bodyETag)) {
+            bodyETag = ETagCache.getStrongETag(buffer);
+            jsonBodyHeaders = jsonHeaders != null ? new JSONObject(jsonHeaders) : new JSONObject();
+            jsonBodyHeaders.put(HDR_ETAG, bodyETag);
+         }
+      }
+
+      return buffer != null ? this.save(key, generation, buffer, null, jsonBodyHeaders, bodyETag) : null;
+   }
+
+   /**
+    * Remove the entry, the content was replaced or deleted. Reads that
+    * started before will not save their body.
+    *
+    * @param key String cache key
+    */
+   public void remove(final String key) {
+      Entry entry = null;
+
+      if (!STR.isEmpty(key)) {
+         synchronized (_entries) {
+            _generations.incrementAndGet(this.getStripe(key));
+
+            entry = _entries.remove(key);
+
+            if (entry != null) {
+               _bytes -= entry.size;
+            }
+         }
+      }
+
+      return;
+   }
+
+   /**
+    * Remove the entry if it is still cached, it was revalidated and
+    * changed. The generation is not changed, the new body may be saved.
+    *
+    * @param key String cache key
+    * @param entry Entry changed entry
+    */
+   public void evict(final String key, final Entry entry) {
+      if (!STR.isEmpty(key) && entry != null) {
+         synchronized (_entries) {
+            if (_entries.get(key) == entry) {
+               _entries.remove(key);
+               _bytes -= entry.size;
+            }
+         }
+      }
+
+      return;
+   }
+
+   /**
+    * Get the cache metrics
+    *
+    * @return JSONObject metrics
+    */
+   public JSONObject getMetrics() {
+      JSONObject jsonOutput = null;
+
+      jsonOutput = new JSONObject();
+      jsonOutput.put("ttl", _ttlMillis / 1000L);
+      jsonOutput.put("maxBytes", _maxBytes);
+      jsonOutput.put("maxEntryBytes", _maxEntryBytes);
+
+      synchronized (_entries) {
+         jsonOutput.put("entries", _entries.size());
+         jsonOutput.put("bytes", _bytes);
+      }
+
+      jsonOutput.put("hits", _hits.get());
+      jsonOutput.put("misses", _misses.get());
+      jsonOutput.put("revalidated", _revalidated.get());
+      jsonOutput.put("evictions", _evictions.get());
+
+      return jsonOutput;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Get the generation stripe of the key
+    *
+    * @param key String cache key
+    * @return int stripe
+    */
+   private int getStripe(final String key) {
+      return (key == null ? 0 : key.hashCode() & 0x7fffffff) % STRIPES;
+   }
+
+   /**
+    * Allocate a direct buffer, null if there is not enough direct memory
+    *
+    * @param size int buffer size
+    * @return ByteBuffer direct buffer
+    */
+   private ByteBuffer allocate(final int size) {
+      String METHOD = "allocate()";
+      ByteBuffer buffer = null;
+
+      try {
+         buffer = ByteBuffer.allocateDirect(size);
+      } catch (OutOfMemoryError err) {
+         _logger.log(Level.WARNING, "{0}: Could not allocate {1} bytes: {2}",
+            new Object[]{METHOD, size, err.getMessage()});
+      }
+
+      return buffer;
+   }
+
+   /**
+    * Save the entry, remove the least recently used entries until it fits.
+    * The entry is not saved if the key was removed since "generation".
+    *
+    * @param key String cache key
+    * @param generation long key generation, from before the body was read
+    * @param buffer ByteBuffer body, ready to read
+    * @param json Object parsed JSON data, null for other bodies
+    * @param jsonHeaders JSONObject response headers, may be null
+    * @param etag String ETag, may be null
+    * @return Entry entry
+    */
+   private Entry save(final String key, final long generation, final ByteBuffer buffer, final Object json,
+      final JSONObject jsonHeaders, final String etag) {
+      Entry entry = null;
+      Entry previous = null;
+      Iterator<Entry> iter = null;
+
+      entry = new Entry(buffer.asReadOnlyBuffer(), json, jsonHeaders, etag,
+         System.currentTimeMillis() + _ttlMillis);
+
+      synchronized (_entries) {
+         if (_generations.get(this.getStripe(key)) == generation) { // not replaced or deleted while read
+            previous = _entries.remove(key);
+
+            if (previous != null) {
+               _bytes -= previous.size;
+            }
+
+            iter = _entries.values().iterator(); // least recently used first
+            while (_bytes + entry.size > _maxBytes && iter.hasNext()) {
+               _bytes -= iter.next().size;
+               iter.remove();
+               _evictions.incrementAndGet();
+            }
+
+            _entries.put(key, entry);
+            _bytes += entry.size;
+         }
+      }
+
+      return entry;
+   }
+
+   /**
+    * Cached content body, with its response headers and ETag. The body is
+    * read-only, shared by all readers.
+    */
+   public static class Entry {
+
+      private final ByteBuffer body;
+      private final Object json;
+      private final JSONObject headers;
+      private final String etag;
+      private final int size;
+      private volatile long expires;
+
+      Entry(final ByteBuffer body, final Object json, final JSONObject headers, final String etag,
+         final long expires) {
+         this.body = body;
+         this.json = json;
+         this.headers = headers != null ? new JSONObject(headers) : new JSONObject();
+         this.etag = etag;
+         this.size = body.remaining();
+         this.expires = expires;
+      }
+
+      /**
+       * Check if the time-to-live has passed, the entry must be revalidated
+       *
+       * @return boolean True if expired
+       */
+      public boolean isExpired() {
+         return expires <= System.currentTimeMillis();
+      }
+
+      /**
+       * Get the ETag
+       *
+       * @return String ETag, may be null
+       */
+      public String getETag() {
+         return etag;
+      }
+
+      /**
+       * Get a copy of the response headers
+       *
+       * @return JSONObject headers
+       */
+      public JSONObject getHeaders() {
+         return new JSONObject(headers);
+      }
+
+      /**
+       * Get a copy of the parsed JSON data
+       *
+       * @return JSONObject data, null if the body is not JSON data
+       */
+      public JSONObject getJSON() {
+         return json instanceof JSONObject ? (JSONObject) JSONUtil.copy(json) : null;
+      }
+
+      /**
+       * Get the body size
+       *
+       * @return int size, in bytes
+       */
+      public int getSize() {
+         return size;
+      }
+
+      /**
+       * Get a copy of the body
+       *
+       * @return byte[] body
+       */
+      public byte[] getBytes() {
+         byte[] bytes = new byte[size];
+
+         body.duplicate().get(bytes);
+
+         return bytes;
+      }
+
+      /**
+       * Get a stream that reads the body, each stream has its own position
+       *
+       * @return InputStream body
+       */
+      public InputStream getInputStream() {
+         return new BufferInputStream(body.duplicate());
+      }
+   }
+
+   /**
+    * Stream over a buffer, closing the stream does nothing.
+    */
+   private static class BufferInputStream extends InputStream {
+
+      private final ByteBuffer _buffer;
+
+      BufferInputStream(final ByteBuffer buffer) {
+         _buffer = buffer;
+
+         return;
+      }
+
+      @Override
+      public int read() {
+         return _buffer.hasRemaining() ? _buffer.get() & 0xff : -1;
+      }
+
+      @Override
+      public int read(final byte[] bytes, final int offset, final int length) {
+         int num = -1;
+
+         if (_buffer.hasRemaining()) {
+            num = Math.min(length, _buffer.remaining());
+            _buffer.get(bytes, offset, num);
+         } else if (length == 0) {
+            num = 0;
+         }
+
+         return num;
+      }
+
+      @Override
+      public int available() {
+         return _buffer.remaining();
+      }
+
+      @Override
+      public long skip(final long count) {
+         int num = (int) Math.max(0L, Math.min(count, _buffer.remaining()));
+
+         _buffer.position(_buffer.position() + num);
+
+         return num;
+      }
+   }
+}
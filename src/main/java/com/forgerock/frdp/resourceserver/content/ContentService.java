@@ -11,14 +11,17 @@ import com.forgerock.frdp.dao.Operation;
 import com.forgerock.frdp.dao.OperationIF;
 import com.forgerock.frdp.utils.JSON;
 import com.forgerock.frdp.utils.STR;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.json.simple.JSONObject;
 
 /**
- * Abstract class for the Content Service
+ * Abstract class for the Content Service. Immutable after construction: the
+ * operations are kept in an unmodifiable EnumMap, so a service can be read by
+ * any number of request threads without synchronization.
  *
  * @author Scott Fehrman, ForgeRock, Inc.
  */
@@ -26,7 +29,8 @@ public abstract class ContentService extends Data implements ContentServiceIF {
 
    private final String CLASS = this.getClass().getName();
    private String _id = null;  // unique identifier for the Service
-   private final Map<OperationIF.TYPE, OperationIF> _operations = new HashMap<>();
+   private boolean _binary = false; // "mode": "binary", content is not JSON
+   private final Map<OperationIF.TYPE, OperationIF> _operations;
    protected final Logger _logger = Logger.getLogger(this.getClass().getName());
    protected final OperationIF.TYPE[] _opertypes = {OperationIF.TYPE.CREATE, OperationIF.TYPE.READ, OperationIF.TYPE.REPLACE, OperationIF.TYPE.DELETE};
 
@@ -41,7 +45,7 @@ public abstract class ContentService extends Data implements ContentServiceIF {
 
       _logger.entering(CLASS, METHOD);
 
-      this.init(configuration);
+      _operations = Collections.unmodifiableMap(this.init(configuration));
 
       _logger.exiting(CLASS, METHOD);
 
@@ -53,19 +57,6 @@ public abstract class ContentService extends Data implements ContentServiceIF {
       throw new UnsupportedOperationException("Not supported yet.");
    }
 
-   @Override
-   public void setOperation(OperationIF oper) {
-      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
-
-      _logger.entering(CLASS, METHOD);
-
-      _operations.put(oper.getType(), oper);
-
-      _logger.exiting(CLASS, METHOD);
-
-      return;
-   }
-
    @Override
    public boolean hasOperation(OperationIF.TYPE type) {
       boolean found = false;
@@ -87,9 +78,7 @@ public abstract class ContentService extends Data implements ContentServiceIF {
 
       _logger.entering(CLASS, METHOD);
 
-      if (_operations.containsKey(type)) {
-         oper = _operations.get(type);
-      }
+      oper = _operations.get(type);
 
       _logger.exiting(CLASS, METHOD);
 
@@ -106,12 +95,28 @@ public abstract class ContentService extends Data implements ContentServiceIF {
       return _id;
    }
 
+   @Override
+   public boolean isBinary() {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+
+      _logger.entering(CLASS, METHOD);
+      _logger.exiting(CLASS, METHOD);
+
+      return _binary;
+   }
+
    /*
     * ===============
     * PRIVATE METHODS
     * ===============
     */
-   private void init(JSONObject configuration) {
+   /**
+    * Process the JSON configuration
+    *
+    * @param configuration JSONObject service configuration
+    * @return Map operations, by type
+    */
+   private Map<OperationIF.TYPE, OperationIF> init(JSONObject configuration) {
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
       String msg = null;
       String attrName = null;
@@ -124,6 +129,7 @@ public abstract class ContentService extends Data implements ContentServiceIF {
       JSONObject jsonHeaders = null;
       OperationIF operation = null;
       Map<String, String> mapHeaders = null;
+      Map<OperationIF.TYPE, OperationIF> operations = new EnumMap<>(OperationIF.TYPE.class);
 
       /*
        * process the JSON configuration
@@ -132,6 +138,7 @@ public abstract class ContentService extends Data implements ContentServiceIF {
        *     "label": "...",
        *     "description": "...",
        *     "object": "data",
+       *     "mode": "json|binary",
        *     "operations": {
        *         "create": { // "create|read|replace|delete"
        *             "action": "post|get|put|delete|reference",
@@ -169,8 +176,29 @@ public abstract class ContentService extends Data implements ContentServiceIF {
                this.setParam(attrName, attrValue);
             }
 
+            /*
+             * Get "mode" attribute (optional), default is "json"
+             * "binary" content is streamed, not parsed or wrapped as JSON
+             */
+            attrName = MODE;
+            attrValue = JSON.getString(configuration, attrName);
+            if (!STR.isEmpty(attrValue)) {
+               switch (attrValue) {
+                  case MODE_JSON:
+                     break;
+                  case MODE_BINARY:
+                     _binary = true;
+                     break;
+                  default:
+                     msg = "Attribute '" + MODE + "' has an invalid value '"
+                        + attrValue + "' in Service '" + _id + "'";
+                     break;
+               }
+               this.setParam(attrName, attrValue);
+            }
+
             jsonOperations = JSON.getObject(configuration, ConstantsIF.OPERATIONS);
-            if (jsonOperations != null) {
+            if (msg == null && jsonOperations != null) {
                /*
                 * Possible operations: CREATE, READ, REPLACE, DELETE
                 */
@@ -239,12 +267,12 @@ public abstract class ContentService extends Data implements ContentServiceIF {
                         break; // break out of the for loop
                      }
                   }
-                  if (msg == null) { // add operation to the map
-                     _operations.put(operation.getType(), operation);
+                  if (msg == null && jsonOperation != null) { // add operation to the map
+                     operations.put(operation.getType(), operation);
                   }
                }
 
-            } else {
+            } else if (msg == null) {
                msg = "Service 'operations' array is null";
             }
          } else {
@@ -262,7 +290,7 @@ public abstract class ContentService extends Data implements ContentServiceIF {
 
       _logger.exiting(CLASS, METHOD);
 
-      return;
+      return operations;
    }
 
 }
@@ -14,11 +14,16 @@ import com.forgerock.frdp.dao.OperationIF;
  */
 public interface ContentServiceIF extends DataIF {
 
-   public void setOperation(OperationIF oper);
-   
+   public static final String MODE = "mode";
+   public static final String MODE_JSON = "json";
+   public static final String MODE_BINARY = "binary";
+   public static final String TYPE_FILE = "file";
+
    public boolean hasOperation(OperationIF.TYPE type);
 
    public OperationIF getOperation(OperationIF.TYPE type);
    
    public String getId();
+
+   public boolean isBinary();
 }
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.content;
+
+import com.forgerock.frdp.utils.STR;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Cache of strong entity tags (ETag) computed for content that is read from a
+ * Content Service that does not provide an ETag. The key is the resource
+ * identifier and the content "uri". Entries expire after a time-to-live, to
+ * limit how long content changed outside of the Resource Server is reported
+ * as not modified. Entries are removed when content is replaced or deleted.
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class ETagCache {
+
+   public static final long DEFAULT_TTL = 300L; // seconds
+   public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+   private static final String ALGORITHM = "SHA-256";
+   private final String CLASS = this.getClass().getName();
+   private final Logger _logger = Logger.getLogger(this.getClass().getName());
+   private final Map<String, Entry> _entries = new ConcurrentHashMap<>();
+   private final long _ttlMillis;
+   private final int _maxEntries;
+
+   /**
+    * Constructor
+    *
+    * @param ttl long time-to-live, in seconds, less than 1 disables the cache
+    * @param maxEntries int maximum number of entries
+    */
+   public ETagCache(final long ttl, final int maxEntries) {
+      String METHOD = "ETagCache()";
+
+      _logger.entering(CLASS, METHOD);
+
+      _ttlMillis = ttl * 1000L;
+      _maxEntries = maxEntries > 0 ? maxEntries : DEFAULT_MAX_ENTRIES;
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+
+   /**
+    * Get the key for the resource identifier and the content uri.
+    *
+    * @param resourceUid String resource identifier, may be null
+    * @param uri String content uri
+    * @return String key
+    */
+   public static String getKey(final String resourceUid, final String uri) {
+      return (resourceUid == null ? "" : resourceUid) + " " + (uri == null ? "" : uri);
+   }
+
+   /**
+    * Get the cached ETag, null if it does not exist or has expired.
+    *
+    * @param key String cache key
+    * @return String ETag
+    */
+   public String get(final String key) {
+      String etag = null;
+      Entry entry = null;
+
+      if (_ttlMillis > 0 && !STR.isEmpty(key)) {
+         entry = _entries.get(key);
+
+         if (entry != null) {
+            if (entry.expires > System.currentTimeMillis()) {
+               etag = entry.etag;
+            } else {
+               _entries.remove(key, entry);
+            }
+         }
+      }
+
+      return etag;
+   }
+
+   /**
+    * Save the ETag.
+    *
+    * @param key String cache key
+    * @param etag String ETag
+    */
+   public void put(final String key, final String etag) {
+      if (_ttlMillis > 0 && !STR.isEmpty(key) && !STR.isEmpty(etag)) {
+         if (_entries.size() >= _maxEntries) {
+            this.purge();
+         }
+
+         _entries.put(key, new Entry(etag, System.currentTimeMillis() + _ttlMillis));
+      }
+
+      return;
+   }
+
+   /**
+    * Remove the ETag, the content was replaced or deleted.
+    *
+    * @param key String cache key
+    */
+   public void remove(final String key) {
+      if (!STR.isEmpty(key)) {
+         _entries.remove(key);
+      }
+
+      return;
+   }
+
+   /**
+    * Compute a strong ETag, SHA-256 digest, for the value.
+    *
+    * @param value String content, UTF-8
+    * @return String quoted ETag
+    */
+   public static String getStrongETag(final String value) {
+      byte[] digest = null;
+
+      try {
+         digest = MessageDigest.getInstance(ALGORITHM)
+            .digest((value == null ? "" : value).getBytes(StandardCharsets.UTF_8));
+      } catch (NoSuchAlgorithmException ex) {
+         throw new IllegalStateException(ALGORITHM + " is not available", ex);
+      }
+
+      return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + "\"";
+   }
+
+   /**
+    * Compute a strong ETag, SHA-256 digest, for a binary body.
+    *
+    * @param body ByteBuffer content, its position is not changed
+    * @return String quoted ETag
+    */
+   public static String getStrongETag(final ByteBuffer body) {
+      MessageDigest digest = null;
+
+      try {
+         digest = MessageDigest.getInstance(ALGORITHM);
+      } catch (NoSuchAlgorithmException ex) {
+         throw new IllegalStateException(ALGORITHM + " is not available", ex);
+      }
+
+      digest.update(body.duplicate());
+
+      return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest()) + "\"";
+   }
+
+   /**
+    * Derive a weak ETag from the "Last-Modified" and "Content-Length"
+    * response headers, for content that is streamed without an ETag.
+    *
+    * @param lastModified String "Last-Modified" header, may be null
+    * @param length String "Content-Length" header, may be null
+    * @return String weak ETag, null if there is no "Last-Modified"
+    */
+   public static String getWeakETag(final String lastModified, final String length) {
+      String etag = null;
+
+      if (!STR.isEmpty(lastModified)) {
+         etag = "W/" + getStrongETag(lastModified.trim() + " " + (length == null ? "" : length.trim()));
+      }
+
+      return etag;
+   }
+
+   /**
+    * Check if the "If-None-Match" request header matches the ETag. Uses the
+    * weak comparison, required for GET.
+    *
+    * @param ifNoneMatch String header value: "*" or list of ETags
+    * @param etag String ETag
+    * @return boolean True if the content is not modified
+    */
+   public static boolean matches(final String ifNoneMatch, final String etag) {
+      boolean match = false;
+      String tag = null;
+
+      if (!STR.isEmpty(ifNoneMatch) && !STR.isEmpty(etag)) {
+         if (ifNoneMatch.trim().equals("*")) {
+            match = true;
+         } else {
+            for (String value : ifNoneMatch.split(",")) {
+               tag = value.trim();
+               if (tag.startsWith("W/")) {
+                  tag = tag.substring(2);
+               }
+               if (tag.equals(etag.startsWith("W/") ? etag.substring(2) : etag)) {
+                  match = true;
+                  break;
+               }
+            }
+         }
+      }
+
+      return match;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Remove expired entries, if still full remove the entries that expire
+    * first.
+    */
+   private void purge() {
+      long now = System.currentTimeMillis();
+      Iterator<Map.Entry<String, Entry>> iter = null;
+
+      iter = _entries.entrySet().iterator();
+      while (iter.hasNext()) {
+         if (iter.next().getValue().expires <= now) {
+            iter.remove();
+         }
+      }
+
+      if (_entries.size() >= _maxEntries) {
+         _entries.entrySet().stream()
+            .sorted((a, b) -> Long.compare(a.getValue().expires, b.getValue().expires))
+            .limit(Math.max(1, _maxEntries / 10))
+            .map(Map.Entry::getKey)
+            .forEach(_entries::remove);
+      }
+
+      return;
+   }
+
+   private static class Entry {
+
+      private final String etag;
+      private final long expires;
+
+      Entry(final String etag, final long expires) {
+         this.etag = etag;
+         this.expires = expires;
+      }
+   }
+}
@@ -0,0 +1,636 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.content;
+
+import com.forgerock.frdp.common.ConstantsIF;
+import com.forgerock.frdp.dao.Operation;
+import com.forgerock.frdp.dao.OperationIF;
+import com.forgerock.frdp.utils.JSON;
+import com.forgerock.frdp.utils.STR;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.json.simple.JSONObject;
+
+/**
+ * Content Service that stores content in a local directory, the content is
+ * not sent over the network. Content is addressed by its SHA-256 digest:
+ * identical content is stored once, in "objects". Each "uri" is a hard link
+ * in "refs" to the object, an object is removed when its last link is
+ * removed. Writes go to a file in "tmp", are optionally flushed to the disk
+ * ("fsync"), then atomically renamed, readers never see a partial file. The
+ * digest is the strong ETag, it is the same as the ETag computed for JSON
+ * content. Content is read through a FileChannel.
+ *
+ * <pre>
+ * JSON configuration:
+ * {
+ *   "id": "local",
+ *   "type": "file",
+ *   "mode": "binary",                       // "json" | "binary"
+ *   "directory": "/var/lib/resource-server/content",
+ *   "fsync": "true",                        // optional, default "true"
+ *   "operations": {
+ *     "create": { "action": "post" },
+ *     "read": { "action": "get" },
+ *     "replace": { "action": "put" },
+ *     "delete": { "action": "delete" }
+ *   }
+ * }
+ * uri:
+ *   "cas:{sha-256 hex}-{uuid}"
+ * </pre>
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class FileContentService extends ContentService {
+
+   public static final String DIRECTORY = "directory";
+   public static final String FSYNC = "fsync";
+   public static final String SCHEME = "cas:";
+
+   private static final int HTTP_OK = 200;
+   private static final int HTTP_CREATED = 201;
+   private static final int HTTP_NOT_MODIFIED = 304;
+   private static final int BUFFER_SIZE = 65536;
+   private static final int LOCK_STRIPES = 64;
+   private static final Object[] LOCKS = new Object[LOCK_STRIPES];
+   private static final String ALGORITHM = "SHA-256";
+   private static final String HDR_CONTENT_TYPE = "Content-Type";
+   private static final String HDR_CONTENT_LENGTH = "Content-Length";
+   private static final String HDR_ETAG = "ETag";
+   private static final String HDR_LOCATION = "Location";
+   private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+   private static final String DIR_OBJECTS = "objects";
+   private static final String DIR_REFS = "refs";
+   private static final String DIR_TMP = "tmp";
+   private static final String SUFFIX_TYPE = ".type";
+   private static final Pattern URI_PATTERN = Pattern.compile(
+      "^" + SCHEME + "([0-9a-f]{64})-([0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})$");
+   private final String CLASS = this.getClass().getName();
+   private Path _objects = null;
+   private Path _refs = null;
+   private Path _tmp = null;
+   private boolean _fsync = true;
+
+   static {
+      for (int i = 0; i < LOCK_STRIPES; i++) {
+         LOCKS[i] = new Object();
+      }
+   }
+
+   /**
+    * Default constructor
+    * @param configuration JSON data
+    */
+   public FileContentService(final JSONObject configuration) {
+      super(configuration);
+
+      String METHOD = "FileContentService()";
+
+      _logger.entering(CLASS, METHOD);
+
+      if (!this.isError()) {
+         this.init(configuration);
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+
+   /**
+    * Write the content, return its new "uri". The stream is read to the end,
+    * the caller closes it.
+    *
+    * <pre>
+    * JSON output:
+    * {
+    *   "uri": "cas:...",
+    *   "code": 201,
+    *   "headers": { "Location": "cas:...", "ETag": "\"...\"" }
+    * }
+    * </pre>
+    *
+    * @param input InputStream content
+    * @param contentType String media type, may be null
+    * @return OperationIF output
+    */
+   public OperationIF write(final InputStream input, final String contentType) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String hash = null;
+      String uri = null;
+      Path tmpFile = null;
+      Path object = null;
+      Path ref = null;
+      MessageDigest digest = null;
+      OperationIF operOutput = null;
+      JSONObject jsonOutput = null;
+      JSONObject jsonHeaders = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      operOutput = new Operation(OperationIF.TYPE.CREATE);
+
+      try {
+         tmpFile = Files.createTempFile(_tmp, "content-", ".tmp");
+
+         try {
+            digest = this.getDigest();
+
+            this.copy(input, tmpFile, digest);
+
+            hash = this.toHex(digest.digest());
+            object = this.getObject(hash);
+            uri = SCHEME + hash + "-" + UUID.randomUUID().toString();
+            ref = _refs.resolve(uri.substring(SCHEME.length()));
+
+            synchronized (this.getLock(hash)) {
+               if (Files.exists(object)) {
+                  Files.delete(tmpFile); // same content, already stored
+               } else {
+                  Files.createDirectories(object.getParent());
+                  this.move(tmpFile, object);
+               }
+
+               Files.createLink(ref, object);
+            }
+
+            if (!STR.isEmpty(contentType)) {
+               this.writeType(ref, contentType);
+            }
+         } finally {
+            Files.deleteIfExists(tmpFile);
+         }
+
+         jsonHeaders = new JSONObject();
+         jsonHeaders.put(HDR_LOCATION, uri);
+         jsonHeaders.put(HDR_ETAG, this.getETag(hash));
+
+         jsonOutput = new JSONObject();
+         jsonOutput.put(ConstantsIF.URI, uri);
+         jsonOutput.put(ConstantsIF.CODE, HTTP_CREATED);
+         jsonOutput.put(ConstantsIF.HEADERS, jsonHeaders);
+
+         operOutput.setState(STATE.SUCCESS);
+         operOutput.setStatus("Content was written");
+         operOutput.setJSON(jsonOutput);
+      } catch (IOException ex) {
+         this.setException(operOutput, "Could not write content", ex);
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+
+   /**
+    * Read the content. If "If-None-Match" matches the ETag the content is not
+    * opened ("code" is 304). Else the content stream is the operation object,
+    * the caller MUST close it.
+    *
+    * <pre>
+    * JSON output:
+    * {
+    *   "uri": "cas:...",
+    *   "code": 200,
+    *   "headers": {
+    *     "Content-Type": "application/pdf",
+    *     "Content-Length": "1234",
+    *     "ETag": "\"...\""
+    *   }
+    * }
+    * </pre>
+    *
+    * @param uri String content uri
+    * @param ifNoneMatch String request header, may be null
+    * @return OperationIF output
+    */
+   public OperationIF read(final String uri, final String ifNoneMatch) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String etag = null;
+      String contentType = null;
+      Path ref = null;
+      FileChannel channel = null;
+      OperationIF operOutput = null;
+      JSONObject jsonOutput = null;
+      JSONObject jsonHeaders = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      operOutput = new Operation(OperationIF.TYPE.READ);
+
+      try {
+         ref = this.getRef(uri);
+         etag = this.getETag(this.getHash(uri));
+
+         jsonHeaders = new JSONObject();
+         jsonHeaders.put(HDR_ETAG, etag);
+
+         jsonOutput = new JSONObject();
+         jsonOutput.put(ConstantsIF.URI, uri);
+         jsonOutput.put(ConstantsIF.HEADERS, jsonHeaders);
+
+         if (!Files.exists(ref)) {
+            throw new NoSuchFileException(uri);
+         }
+
+         if (ETagCache.matches(ifNoneMatch, etag)) {
+            jsonOutput.put(ConstantsIF.CODE, HTTP_NOT_MODIFIED);
+         } else {
+            channel = FileChannel.open(ref, StandardOpenOption.READ);
+            contentType = this.readType(ref);
+
+            jsonHeaders.put(HDR_CONTENT_TYPE, STR.isEmpty(contentType) ? DEFAULT_CONTENT_TYPE : contentType);
+            jsonHeaders.put(HDR_CONTENT_LENGTH, String.valueOf(channel.size()));
+            jsonOutput.put(ConstantsIF.CODE, HTTP_OK);
+
+            operOutput.setObject(Channels.newInputStream(channel)); // closing the stream closes the channel
+         }
+
+         operOutput.setState(STATE.SUCCESS);
+         operOutput.setStatus("Content was found");
+         operOutput.setJSON(jsonOutput);
+      } catch (NoSuchFileException ex) {
+         operOutput.setError(true);
+         operOutput.setState(STATE.NOTEXIST);
+         operOutput.setStatus("Content does not exist: '" + uri + "'");
+      } catch (IOException ex) {
+         this.setException(operOutput, "Could not read content", ex);
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+
+   /**
+    * Delete the content "uri". The stored content is removed when no other
+    * "uri" links to it.
+    *
+    * @param uri String content uri
+    * @return OperationIF output
+    */
+   public OperationIF delete(final String uri) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String hash = null;
+      Path ref = null;
+      Path object = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      operOutput = new Operation(OperationIF.TYPE.DELETE);
+
+      try {
+         ref = this.getRef(uri);
+         hash = this.getHash(uri);
+         object = this.getObject(hash);
+
+         synchronized (this.getLock(hash)) {
+            if (!Files.deleteIfExists(ref)) {
+               throw new NoSuchFileException(uri);
+            }
+
+            Files.deleteIfExists(ref.resolveSibling(ref.getFileName() + SUFFIX_TYPE));
+
+            if (this.getLinks(object) == 1) {
+               Files.deleteIfExists(object);
+            }
+         }
+
+         operOutput.setState(STATE.SUCCESS);
+         operOutput.setStatus("Content was deleted");
+         operOutput.setJSON(new JSONObject());
+      } catch (NoSuchFileException ex) {
+         operOutput.setError(true);
+         operOutput.setState(STATE.NOTEXIST);
+         operOutput.setStatus("Content does not exist: '" + uri + "'");
+      } catch (IOException ex) {
+         this.setException(operOutput, "Could not delete content", ex);
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+
+   /*
+    * ===============
+    * PRIVATE METHODS
+    * ===============
+    */
+   /**
+    * Get the directories from the configuration, create them if needed
+    *
+    * @param configuration JSONObject service configuration
+    */
+   private void init(final JSONObject configuration) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String msg = null;
+      String directory = null;
+      Path root = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      directory = JSON.getString(configuration, DIRECTORY);
+
+      if (STR.isEmpty(directory)) {
+         msg = "Attribute '" + DIRECTORY + "' is empty in Service '" + this.getId() + "'";
+      } else {
+         _fsync = !Boolean.FALSE.toString().equalsIgnoreCase(JSON.getString(configuration, FSYNC));
+
+         root = Paths.get(directory);
+         _objects = root.resolve(DIR_OBJECTS);
+         _refs = root.resolve(DIR_REFS);
+         _tmp = root.resolve(DIR_TMP);
+
+         try {
+            Files.createDirectories(_objects);
+            Files.createDirectories(_refs);
+            Files.createDirectories(_tmp);
+         } catch (IOException ex) {
+            msg = "Could not create directory '" + directory + "' for Service '"
+               + this.getId() + "': " + ex.getMessage();
+         }
+      }
+
+      if (msg != null) {
+         this.setError(true);
+         this.setStatus(msg);
+         _logger.log(Level.SEVERE, this.getStatus());
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+
+   /**
+    * Copy the stream to the file, update the digest. The file is flushed to
+    * the disk if "fsync" is enabled.
+    *
+    * @param input InputStream content
+    * @param file Path destination
+    * @param digest MessageDigest content digest
+    * @throws IOException could not read or write
+    */
+   private void copy(final InputStream input, final Path file, final MessageDigest digest) throws IOException {
+      ByteBuffer buffer = null;
+      ReadableByteChannel source = null;
+
+      if (input == null) {
+         throw new IOException("Content stream is null");
+      }
+
+      source = Channels.newChannel(input); // closed by the caller, with the stream
+      buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+      try (FileChannel target = FileChannel.open(file, StandardOpenOption.WRITE,
+         StandardOpenOption.TRUNCATE_EXISTING)) {
+         while (source.read(buffer) >= 0) {
+            buffer.flip();
+            digest.update(buffer.array(), 0, buffer.limit());
+            while (buffer.hasRemaining()) {
+               target.write(buffer);
+            }
+            buffer.clear();
+         }
+
+         if (_fsync) {
+            target.force(true);
+         }
+      }
+
+      return;
+   }
+
+   /**
+    * Rename the file, atomically if the file system supports it. The
+    * directory is flushed to the disk if "fsync" is enabled.
+    *
+    * @param source Path temporary file
+    * @param target Path object file
+    * @throws IOException could not rename
+    */
+   private void move(final Path source, final Path target) throws IOException {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+
+      try {
+         Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException ex) {
+         Files.move(source, target);
+      }
+
+      if (_fsync) {
+         try (FileChannel dir = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+         } catch (IOException ex) { // not supported on all platforms
+            _logger.log(Level.FINE, "{0}: Could not flush directory: {1}",
+               new Object[]{METHOD, ex.getMessage()});
+         }
+      }
+
+      return;
+   }
+
+   /**
+    * Save the media type, next to the link
+    *
+    * @param ref Path link
+    * @param contentType String media type
+    * @throws IOException could not write
+    */
+   private void writeType(final Path ref, final String contentType) throws IOException {
+      try {
+         Files.write(ref.resolveSibling(ref.getFileName() + SUFFIX_TYPE),
+            contentType.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE_NEW);
+      } catch (FileAlreadyExistsException ex) {
+         throw new IOException("Content uri already exists: " + ref.getFileName(), ex);
+      }
+
+      return;
+   }
+
+   /**
+    * Read the media type, null if it was not saved
+    *
+    * @param ref Path link
+    * @return String media type
+    * @throws IOException could not read
+    */
+   private String readType(final Path ref) throws IOException {
+      String contentType = null;
+      Path file = null;
+
+      file = ref.resolveSibling(ref.getFileName() + SUFFIX_TYPE);
+
+      if (Files.exists(file)) {
+         contentType = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+      }
+
+      return contentType;
+   }
+
+   /**
+    * Get the number of links to the object. If the file system does not
+    * provide it, 0 is returned and the object is kept.
+    *
+    * @param object Path object file
+    * @return int number of links
+    */
+   private int getLinks(final Path object) {
+      int links = 0;
+      Object value = null;
+
+      try {
+         value = Files.getAttribute(object, "unix:nlink");
+      } catch (IOException | UnsupportedOperationException | IllegalArgumentException ex) {
+         value = null;
+      }
+
+      if (value instanceof Number) {
+         links = ((Number) value).intValue();
+      }
+
+      return links;
+   }
+
+   /**
+    * Get the link for the "uri"
+    *
+    * @param uri String content uri
+    * @return Path link
+    * @throws IOException the "uri" is not valid for this service
+    */
+   private Path getRef(final String uri) throws IOException {
+      this.getHash(uri); // validates the uri
+
+      return _refs.resolve(uri.substring(SCHEME.length()));
+   }
+
+   /**
+    * Get the content digest from the "uri"
+    *
+    * @param uri String content uri
+    * @return String SHA-256 digest, hex
+    * @throws IOException the "uri" is not valid for this service
+    */
+   private String getHash(final String uri) throws IOException {
+      Matcher matcher = null;
+
+      matcher = URI_PATTERN.matcher(uri == null ? "" : uri);
+
+      if (!matcher.matches()) {
+         throw new IOException("Content uri is not valid: '" + uri + "'");
+      }
+
+      return matcher.group(1);
+   }
+
+   /**
+    * Get the object file for the digest. Objects are spread over 256
+    * directories.
+    *
+    * @param hash String SHA-256 digest, hex
+    * @return Path object file
+    */
+   private Path getObject(final String hash) {
+      return _objects.resolve(hash.substring(0, 2)).resolve(hash);
+   }
+
+   /**
+    * Get the strong ETag for the digest, the same as
+    * ETagCache.getStrongETag() for the same bytes
+    *
+    * @param hash String SHA-256 digest, hex
+    * @return String quoted ETag
+    */
+   private String getETag(final String hash) {
+      byte[] bytes = new byte[hash.length() / 2];
+
+      for (int i = 0; i < bytes.length; i++) {
+         bytes[i] = (byte) Integer.parseInt(hash.substring(i * 2, i * 2 + 2), 16);
+      }
+
+      return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(bytes) + "\"";
+   }
+
+   /**
+    * Get a new SHA-256 digest
+    *
+    * @return MessageDigest digest
+    */
+   private MessageDigest getDigest() {
+      try {
+         return MessageDigest.getInstance(ALGORITHM);
+      } catch (NoSuchAlgorithmException ex) {
+         throw new IllegalStateException(ALGORITHM + " is not available", ex);
+      }
+   }
+
+   /**
+    * Convert the bytes to lower case hex
+    *
+    * @param bytes byte[] digest
+    * @return String hex
+    */
+   private String toHex(final byte[] bytes) {
+      StringBuilder buf = new StringBuilder(bytes.length * 2);
+
+      for (byte b : bytes) {
+         buf.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+
+      return buf.toString();
+   }
+
+   /**
+    * Get the lock stripe for the digest. A write that links to an object and
+    * a delete that removes it do not overlap.
+    *
+    * @param hash String SHA-256 digest, hex
+    * @return Object lock
+    */
+   private Object getLock(final String hash) {
+      return LOCKS[(hash.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+   }
+
+   /**
+    * Set the operation error from an exception
+    *
+    * @param operOutput OperationIF output
+    * @param msg String message
+    * @param ex IOException exception
+    */
+   private void setException(final OperationIF operOutput, final String msg, final IOException ex) {
+      operOutput.setError(true);
+      operOutput.setState(STATE.ERROR);
+      operOutput.setStatus(msg + ", service '" + this.getId() + "': " + ex.getMessage());
+
+      _logger.log(Level.WARNING, operOutput.getStatus());
+
+      return;
+   }
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.dao;
+
+import com.forgerock.frdp.common.ConstantsIF;
+import com.forgerock.frdp.common.CoreIF.STATE;
+import com.forgerock.frdp.dao.Operation;
+import com.forgerock.frdp.dao.OperationIF;
+import com.forgerock.frdp.utils.STR;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.simple.JSONObject;
+
+/**
+ * REST access for binary (non-JSON) content. Request and response bodies are
+ * streamed, with a fixed size buffer, between the caller and the remote
+ * service. Payloads are never fully held in memory. Uploads use chunked
+ * transfer encoding when the length is not known.
+ *
+ * The response "headers" (Content-Type, Content-Length, ETag, Location,
+ * Last-Modified, Content-Range) and the HTTP status "code" are returned in the
+ * operation JSON. For a read, the response body is returned as an
+ * <pre>InputStream</pre> via the operation object, the caller MUST close the
+ * stream. Conditional (If-None-Match, If-Modified-Since) and partial (Range)
+ * request headers are passed through, a 304 (Not Modified) response has no
+ * stream and 206 (Partial Content) is successful.
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class StreamRestDataAccess {
+
+   public static final String HDR_CONTENT_TYPE = "Content-Type";
+   public static final String HDR_CONTENT_LENGTH = "Content-Length";
+   public static final String HDR_ETAG = "ETag";
+   public static final String HDR_LOCATION = "Location";
+   public static final String HDR_LAST_MODIFIED = "Last-Modified";
+   public static final String HDR_ACCEPT_RANGES = "Accept-Ranges";
+   public static final String HDR_CONTENT_RANGE = "Content-Range";
+   public static final String HDR_IF_NONE_MATCH = "If-None-Match";
+   public static final String HDR_IF_MODIFIED_SINCE = "If-Modified-Since";
+   public static final String HDR_IF_RANGE = "If-Range";
+   public static final String HDR_RANGE = "Range";
+   public static final String[] CONDITIONAL_HEADERS = {
+      HDR_IF_NONE_MATCH, HDR_IF_MODIFIED_SINCE, HDR_IF_RANGE, HDR_RANGE};
+
+   private static final int BUFFER_SIZE = 8192;
+   private static final int TIMEOUT_CONNECT = 10000; // milliseconds
+   private static final int TIMEOUT_READ = 60000; // milliseconds
+   private static final String[] RESPONSE_HEADERS = {
+      HDR_CONTENT_TYPE, HDR_CONTENT_LENGTH, HDR_ETAG, HDR_LOCATION,
+      HDR_LAST_MODIFIED, HDR_ACCEPT_RANGES, HDR_CONTENT_RANGE};
+   private final String CLASS = this.getClass().getName();
+   private final Logger _logger = Logger.getLogger(this.getClass().getName());
+
+   /**
+    * Constructor
+    */
+   public StreamRestDataAccess() {
+      String METHOD = "StreamRestDataAccess()";
+
+      _logger.entering(CLASS, METHOD);
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+
+   /**
+    * Read (GET) binary content. The operation object is the response body
+    * <pre>InputStream</pre>, closing the stream releases the connection.
+    *
+    * <b>JSON output</b> ...
+    * <pre>
+    * {
+    *    "uri": "http://...",
+    *    "code": 200,  // 304: not modified, 206: partial content
+    *    "headers": {
+    *       "Content-Type": "application/pdf",
+    *       "Content-Length": "1234",
+    *       "ETag": "\"abc\""
+    *    }
+    * }
+    * </pre>
+    *
+    * @param uri String location of the content
+    * @param jsonHeaders JSONObject request headers, may be null
+    * @return OperationIF output
+    */
+   public OperationIF read(final String uri, final JSONObject jsonHeaders) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      HttpURLConnection conn = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      operOutput = new Operation(OperationIF.TYPE.READ);
+
+      try {
+         conn = this.getConnection(ConstantsIF.GET, uri, jsonHeaders);
+
+         this.setResponse(conn, uri, operOutput);
+
+         if (!operOutput.isError() && conn.getResponseCode() != HttpURLConnection.HTTP_NOT_MODIFIED) {
+            operOutput.setObject(new ConnectionInputStream(conn));
+         } else {
+            this.release(conn);
+         }
+      } catch (IOException ex) {
+         this.setException(operOutput, uri, ex, conn);
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+
+   /**
+    * Check (HEAD) that binary content exists, the body is not read.
+    *
+    * @param uri String location of the content
+    * @param jsonHeaders JSONObject request headers, may be null
+    * @return OperationIF output
+    */
+   public OperationIF check(final String uri, final JSONObject jsonHeaders) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      HttpURLConnection conn = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      operOutput = new Operation(OperationIF.TYPE.READ);
+
+      try {
+         conn = this.getConnection("HEAD", uri, jsonHeaders);
+
+         this.setResponse(conn, uri, operOutput);
+
+         this.release(conn);
+      } catch (IOException ex) {
+         this.setException(operOutput, uri, ex, conn);
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+
+   /**
+    * Write (POST or PUT) binary content from the input stream. If the length
+    * is not known (less than 0) chunked transfer encoding is used. The
+    * "Location" header, for a POST, is returned as the "uri" attribute.
+    *
+    * @param type OperationIF.TYPE CREATE (POST) or REPLACE (PUT)
+    * @param uri String location of the content
+    * @param jsonHeaders JSONObject request headers, may be null
+    * @param input InputStream content to send
+    * @param length long content length, -1 if unknown
+    * @return OperationIF output
+    */
+   public OperationIF write(final OperationIF.TYPE type, final String uri,
+      final JSONObject jsonHeaders, final InputStream input, final long length) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      HttpURLConnection conn = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      operOutput = new Operation(type);
+
+      try {
+         conn = this.getConnection(type == OperationIF.TYPE.CREATE
+            ? ConstantsIF.POST : ConstantsIF.PUT, uri, jsonHeaders);
+
+         conn.setDoOutput(true);
+
+         if (length >= 0) {
+            conn.setFixedLengthStreamingMode(length);
+         } else {
+            conn.setChunkedStreamingMode(BUFFER_SIZE);
+         }
+
+         try (OutputStream output = conn.getOutputStream()) {
+            copy(input, output);
+         }
+
+         this.setResponse(conn, uri, operOutput);
+
+         this.release(conn);
+      } catch (IOException ex) {
+         this.setException(operOutput, uri, ex, conn);
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+
+   /**
+    * Delete binary content.
+    *
+    * @param uri String location of the content
+    * @param jsonHeaders JSONObject request headers, may be null
+    * @return OperationIF output
+    */
+   public OperationIF delete(final String uri, final JSONObject jsonHeaders) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      HttpURLConnection conn = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      operOutput = new Operation(OperationIF.TYPE.DELETE);
+
+      try {
+         conn = this.getConnection(ConstantsIF.DELETE, uri, jsonHeaders);
+
+         this.setResponse(conn, uri, operOutput);
+
+         this.release(conn);
+      } catch (IOException ex) {
+         this.setException(operOutput, uri, ex, conn);
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+
+   /**
+    * Copy the input stream to the output stream, using a fixed size buffer.
+    *
+    * @param input InputStream source
+    * @param output OutputStream destination
+    * @return long number of bytes copied
+    * @throws IOException could not read or write
+    */
+   public static long copy(final InputStream input, final OutputStream output) throws IOException {
+      int num = 0;
+      long total = 0L;
+      byte[] buffer = new byte[BUFFER_SIZE];
+
+      while ((num = input.read(buffer)) != -1) {
+         output.write(buffer, 0, num);
+         total += num;
+      }
+
+      output.flush();
+
+      return total;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Open a connection, set the method and the request headers.
+    *
+    * @param action String "post" | "get" | "put" | "delete" | "HEAD"
+    * @param uri String location
+    * @param jsonHeaders JSONObject request headers
+    * @return HttpURLConnection connection
+    * @throws IOException could not open the connection
+    */
+   private HttpURLConnection getConnection(final String action, final String uri,
+      final JSONObject jsonHeaders) throws IOException {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      HttpURLConnection conn = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      if (STR.isEmpty(uri)) {
+         throw new IOException("Attribute 'uri' is empty");
+      }
+
+      conn = (HttpURLConnection) new URL(uri).openConnection();
+      conn.setRequestMethod(action.toUpperCase());
+      conn.setConnectTimeout(TIMEOUT_CONNECT);
+      conn.setReadTimeout(TIMEOUT_READ);
+      conn.setUseCaches(false);
+
+      if (jsonHeaders != null) {
+         for (Object key : jsonHeaders.keySet()) {
+            Object value = jsonHeaders.get(key);
+            if (key != null && value != null) {
+               conn.setRequestProperty(key.toString(), value.toString());
+            }
+         }
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return conn;
+   }
+
+   /**
+    * Set the operation state and JSON from the connection response.
+    *
+    * @param conn HttpURLConnection connection
+    * @param uri String location
+    * @param operOutput OperationIF output
+    * @throws IOException could not get the response
+    */
+   private void setResponse(final HttpURLConnection conn, final String uri,
+      final OperationIF operOutput) throws IOException {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      int code = 0;
+      String value = null;
+      JSONObject jsonOutput = null;
+      JSONObject jsonHeaders = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      code = conn.getResponseCode();
+
+      jsonHeaders = new JSONObject();
+
+      for (String name : RESPONSE_HEADERS) {
+         value = conn.getHeaderField(name);
+         if (!STR.isEmpty(value)) {
+            jsonHeaders.put(name, value);
+         }
+      }
+
+      jsonOutput = new JSONObject();
+      jsonOutput.put(ConstantsIF.URI,
+         jsonHeaders.containsKey(HDR_LOCATION) ? jsonHeaders.get(HDR_LOCATION) : uri);
+      jsonOutput.put(ConstantsIF.HEADERS, jsonHeaders);
+      jsonOutput.put(ConstantsIF.CODE, code);
+
+      operOutput.setJSON(jsonOutput);
+
+      if ((code >= 200 && code < 300) || code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+         operOutput.setState(STATE.SUCCESS);
+         operOutput.setStatus(code + ": " + conn.getResponseMessage());
+      } else {
+         operOutput.setError(true);
+         operOutput.setState(code == HttpURLConnection.HTTP_NOT_FOUND ? STATE.NOTEXIST : STATE.ERROR);
+         operOutput.setStatus(code + ": " + conn.getResponseMessage());
+      }
+
+      if (_logger.isLoggable(Level.FINE)) {
+         _logger.log(Level.FINE, "uri=''{0}'', code=''{1}'', headers=''{2}''",
+            new Object[]{uri, code, jsonHeaders.toString()});
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+
+   /**
+    * Release the connection. The response body is closed, not disconnected,
+    * so the underlying socket can be re-used (keep-alive).
+    *
+    * @param conn HttpURLConnection connection
+    */
+   private void release(final HttpURLConnection conn) {
+      InputStream input = null;
+
+      try {
+         input = conn.getResponseCode() < 400 ? conn.getInputStream() : conn.getErrorStream();
+         if (input != null) {
+            input.close();
+         }
+      } catch (IOException ex) {
+         conn.disconnect();
+      }
+
+      return;
+   }
+
+   /**
+    * Set the operation error from an exception, release the connection.
+    *
+    * @param operOutput OperationIF output
+    * @param uri String location
+    * @param ex IOException exception
+    * @param conn HttpURLConnection connection, may be null
+    */
+   private void setException(final OperationIF operOutput, final String uri,
+      final IOException ex, final HttpURLConnection conn) {
+      if (conn != null) {
+         conn.disconnect();
+      }
+
+      operOutput.setError(true);
+      operOutput.setState(STATE.ERROR);
+      operOutput.setStatus("Could not access '" + uri + "': " + ex.getMessage());
+
+      _logger.log(Level.WARNING, operOutput.getStatus());
+
+      return;
+   }
+
+   /**
+    * Response body stream, closing the stream releases the connection.
+    */
+   private static class ConnectionInputStream extends FilterInputStream {
+
+      private final HttpURLConnection _conn;
+
+      ConnectionInputStream(final HttpURLConnection conn) throws IOException {
+         super(conn.getInputStream());
+
+         _conn = conn;
+
+         return;
+      }
+
+      @Override
+      public void close() throws IOException {
+         try {
+            super.close();
+         } finally {
+            _conn.disconnect();
+         }
+
+         return;
+      }
+   }
+}
@@ -12,6 +12,7 @@ import com.forgerock.frdp.handler.HandlerManagerIF;
 import com.forgerock.frdp.resourceserver.ConfigIF;
 import com.forgerock.frdp.utils.JSON;
 import com.forgerock.frdp.utils.STR;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import org.json.simple.JSONObject;
 
@@ -38,11 +39,13 @@ public class AMProxyAdminHandler extends CredentialHandler {
     *
     * @param configMgr ConfigurationManagerIF management of configurations
     * @param handlerMgr HandlerManagerIF handler manager
+    * @param cleanup ExecutorService runs the duplicate credential cleanup
     */
-   public AMProxyAdminHandler(final ConfigurationManagerIF configMgr, final HandlerManagerIF handlerMgr) {
-      super(configMgr, handlerMgr);
+   public AMProxyAdminHandler(final ConfigurationManagerIF configMgr, final HandlerManagerIF handlerMgr,
+      final ExecutorService cleanup) {
+      super(configMgr, handlerMgr, cleanup);
 
-      String METHOD = "AMProxyAdminHandler(configMgr, handlerMgr)";
+      String METHOD = "AMProxyAdminHandler(configMgr, handlerMgr, cleanup)";
 
       _logger.entering(CLASS, METHOD);
 
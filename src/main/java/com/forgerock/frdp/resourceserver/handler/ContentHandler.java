@@ -13,25 +13,51 @@ import com.forgerock.frdp.dao.OperationIF;
 import com.forgerock.frdp.dao.rest.RestDataAccess;
 import com.forgerock.frdp.handler.HandlerManagerIF;
 import com.forgerock.frdp.resourceserver.content.BasicContentService;
+import com.forgerock.frdp.resourceserver.ConfigIF;
+import com.forgerock.frdp.resourceserver.content.ContentCache;
 import com.forgerock.frdp.resourceserver.content.ContentServiceIF;
+import com.forgerock.frdp.resourceserver.content.ETagCache;
+import com.forgerock.frdp.resourceserver.content.FileContentService;
+import com.forgerock.frdp.resourceserver.dao.StreamRestDataAccess;
 import com.forgerock.frdp.utils.JSON;
 import com.forgerock.frdp.utils.STR;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
 
 /**
- * Content Handler
+ * Content Handler. The Content Services are an immutable snapshot, published
+ * through a volatile field: request threads read it without synchronization,
+ * a reload replaces the whole snapshot. Content that is read ("get" action)
+ * may be cached by Content Service identifier and "uri" (ContentCache), it is
+ * removed from the cache when it is replaced or deleted. A Content Service
+ * with "type": "file" (FileContentService) stores the content locally, it does
+ * not use the DAOs or the cache.
  *
  * @author Scott Fehrman, ForgeRock, Inc.
  */
 public class ContentHandler extends JaxrsHandler {
 
+   private static final ContentCache CACHE = new ContentCache(); // shared by reloaded handlers
    private final String CLASS = this.getClass().getName();
-   private final Map<String, ContentServiceIF> _services = new HashMap<>();
+   private volatile Map<String, ContentServiceIF> _services = Collections.emptyMap();
    private DataAccessIF _RestDAO = null;
+   private StreamRestDataAccess _StreamDAO = null;
+   private ETagCache _etags = null;
+   private static final int HTTP_OK = 200;
+   private static final int HTTP_NOT_MODIFIED = 304;
+   private static final String JSON_CONTENT_TYPE = "application/json";
 
    /**
     * Constructor
@@ -53,6 +79,38 @@ public class ContentHandler extends JaxrsHandler {
       return;
    }
 
+   /**
+    * Get the content cache metrics
+    *
+    * @return JSONObject metrics
+    */
+   public static JSONObject getCacheMetrics() {
+      return CACHE.getMetrics();
+   }
+
+   /**
+    * Get the clients created by this handler, including the Content Service
+    * REST clients
+    *
+    * @return List clients, may be empty
+    */
+   @Override
+   public List<Object> getClients() {
+      List<Object> clients = null;
+
+      clients = super.getClients();
+
+      if (_RestDAO != null) {
+         clients.add(_RestDAO);
+      }
+
+      if (_StreamDAO != null) {
+         clients.add(_StreamDAO);
+      }
+
+      return clients;
+   }
+
    /*
     * ================= 
     * PROTECTED METHODS 
@@ -155,7 +213,13 @@ public class ContentHandler extends JaxrsHandler {
       }
 
       try {
-         operOutput = this.operationImpl(operInput);
+         if (this.isFile(operInput)) {
+            operOutput = this.fileOperationImpl(operInput);
+         } else if (this.isBinary(operInput)) {
+            operOutput = this.binaryOperationImpl(operInput);
+         } else {
+            operOutput = this.operationImpl(operInput);
+         }
       } catch (Exception ex) {
          msg = ex.getMessage();
       }
@@ -223,7 +287,13 @@ public class ContentHandler extends JaxrsHandler {
       }
 
       try {
-         operOutput = this.operationImpl(operInput);
+         if (this.isFile(operInput)) {
+            operOutput = this.fileOperationImpl(operInput);
+         } else if (this.isBinary(operInput)) {
+            operOutput = this.binaryOperationImpl(operInput);
+         } else {
+            operOutput = this.operationImpl(operInput);
+         }
       } catch (Exception ex) {
          msg = ex.getMessage();
       }
@@ -274,7 +344,6 @@ public class ContentHandler extends JaxrsHandler {
       String msg = null;
       OperationIF operOutput = null;
       JSONObject jsonInput = null;
-      JSONObject jsonContent = null;
 
       _logger.entering(CLASS, METHOD);
 
@@ -285,7 +354,13 @@ public class ContentHandler extends JaxrsHandler {
       }
 
       try {
-         operOutput = this.operationImpl(operInput);
+         if (this.isFile(operInput)) {
+            operOutput = this.fileOperationImpl(operInput);
+         } else if (this.isBinary(operInput)) {
+            operOutput = this.binaryOperationImpl(operInput);
+         } else {
+            operOutput = this.operationImpl(operInput);
+         }
       } catch (Exception ex) {
          msg = ex.getMessage();
       }
@@ -294,6 +369,19 @@ public class ContentHandler extends JaxrsHandler {
          operOutput = new Operation(operInput.getType());
       }
 
+      /*
+       * The content changed, remove the cached ETag and body
+       */
+      if (msg == null && _etags != null) {
+         _etags.remove(ETagCache.getKey(JSON.getString(operInput.getJSON(), ConstantsIF.UID),
+            JSON.getString(operInput.getJSON(), ConstantsIF.URI)));
+      }
+
+      if (msg == null) {
+         CACHE.remove(ContentCache.getKey(JSON.getString(operInput.getJSON(), ConstantsIF.ID),
+            JSON.getString(operInput.getJSON(), ConstantsIF.URI)));
+      }
+
       if (msg != null) {
          operOutput.setState(STATE.ERROR);
          operOutput.setStatus(msg);
@@ -343,7 +431,13 @@ public class ContentHandler extends JaxrsHandler {
       }
 
       try {
-         operOutput = this.operationImpl(operInput);
+         if (this.isFile(operInput)) {
+            operOutput = this.fileOperationImpl(operInput);
+         } else if (this.isBinary(operInput)) {
+            operOutput = this.binaryOperationImpl(operInput);
+         } else {
+            operOutput = this.operationImpl(operInput);
+         }
       } catch (Exception ex) {
          msg = ex.getMessage();
       }
@@ -352,6 +446,19 @@ public class ContentHandler extends JaxrsHandler {
          operOutput = new Operation(operInput.getType());
       }
 
+      /*
+       * The content changed, remove the cached ETag and body
+       */
+      if (msg == null && _etags != null) {
+         _etags.remove(ETagCache.getKey(JSON.getString(operInput.getJSON(), ConstantsIF.UID),
+            JSON.getString(operInput.getJSON(), ConstantsIF.URI)));
+      }
+
+      if (msg == null) {
+         CACHE.remove(ContentCache.getKey(JSON.getString(operInput.getJSON(), ConstantsIF.ID),
+            JSON.getString(operInput.getJSON(), ConstantsIF.URI)));
+      }
+
       if (msg != null) {
          operOutput.setState(STATE.ERROR);
          operOutput.setStatus(msg);
@@ -387,7 +494,7 @@ public class ContentHandler extends JaxrsHandler {
       JSONObject jsonContent = null;
       JSONObject jsonService = null;
       JSONArray jsonServices = null;
-      Map<String, String> map = null;
+      Map<String, ContentServiceIF> services = new HashMap<>();
 
       _logger.entering(CLASS, METHOD);
 
@@ -422,6 +529,31 @@ public class ContentHandler extends JaxrsHandler {
          }
       }
 
+      /*
+       * setup the streaming REST Data Access Object, for "binary" services
+       */
+      if (!this.isError() && _StreamDAO == null) {
+         _StreamDAO = new StreamRestDataAccess();
+      }
+
+      /*
+       * setup the ETag cache, for conditional reads of JSON content
+       */
+      if (!this.isError() && _etags == null) {
+         _etags = new ETagCache(
+            this.getLong(jsonResource, ConfigIF.RS_CONTENT_ETAG_TTL, ETagCache.DEFAULT_TTL),
+            (int) this.getLong(jsonResource, ConfigIF.RS_CONTENT_ETAG_MAX, ETagCache.DEFAULT_MAX_ENTRIES));
+      }
+
+      /*
+       * setup the content cache, for "get" reads
+       */
+      if (!this.isError()) {
+         CACHE.configure(this.getLong(jsonResource, ConfigIF.RS_CONTENT_CACHE_TTL, ContentCache.DEFAULT_TTL),
+            this.getLong(jsonResource, ConfigIF.RS_CONTENT_CACHE_MAXBYTES, ContentCache.DEFAULT_MAX_BYTES),
+            this.getLong(jsonResource, ConfigIF.RS_CONTENT_CACHE_MAXENTRY, ContentCache.DEFAULT_MAX_ENTRY_BYTES));
+      }
+
       /*
        * Get the "content" JSON configuration
        */
@@ -455,10 +587,14 @@ public class ContentHandler extends JaxrsHandler {
                   jsonService = (JSONObject) obj;
 
                   if (JSON.getBoolean(jsonService, ConstantsIF.ENABLED)) {
-                     contentService = new BasicContentService(jsonService);
+                     if (ContentServiceIF.TYPE_FILE.equals(JSON.getString(jsonService, ConstantsIF.TYPE))) {
+                        contentService = new FileContentService(jsonService);
+                     } else {
+                        contentService = new BasicContentService(jsonService);
+                     }
 
                      if (!contentService.isError()) {
-                        _services.put(contentService.getId(), contentService);
+                        services.put(contentService.getId(), contentService);
                      } else {
                         msg = CLASS + ": " + METHOD
                            + "Error creating ContentService : " + contentService.getStatus();
@@ -478,6 +614,7 @@ public class ContentHandler extends JaxrsHandler {
       }
 
       if (!this.isError()) {
+         _services = Collections.unmodifiableMap(services); // publish the snapshot
          this.setState(STATE.READY);
       } else {
          this.setState(STATE.ERROR);
@@ -505,6 +642,13 @@ public class ContentHandler extends JaxrsHandler {
       String dataURI = null;
       String action = null;
       String contentName = null;
+      String etag = null;
+      String etagKey = null;
+      String ifNoneMatch = null;
+      long generation = 0L;
+      String cacheKey = null;
+      String value = null;
+      ContentCache.Entry cached = null;
       JSONObject jsonInput = null;
       JSONObject jsonSrvcOper = null;
       JSONObject jsonData = null;
@@ -551,6 +695,9 @@ public class ContentHandler extends JaxrsHandler {
 
       jsonInput = operInput.getJSON();
 
+      ifNoneMatch = JSON.getString(jsonInput,
+         ConstantsIF.HEADERS + "." + StreamRestDataAccess.HDR_IF_NONE_MATCH);
+
       /*
        * Get Content Service, using the "id"
        * Get Opertion from the Content Service
@@ -559,8 +706,9 @@ public class ContentHandler extends JaxrsHandler {
        */
       csId = JSON.getString(jsonInput, ConstantsIF.ID);
 
-      if (_services.containsKey(csId)) {
-         service = _services.get(csId);
+      service = _services.get(csId); // one read of the snapshot
+
+      if (service != null) {
 
          if (service != null && !service.isError()) {
 
@@ -772,52 +920,110 @@ public class ContentHandler extends JaxrsHandler {
                case ConstantsIF.GET: {
 
                   /*
-                   * GET the data (JSON) from the URI 
-                   * JSON input:
-                   * {
-                   *   "uri": "http://..."
-                   * }
+                   * Conditional read, the client's "If-None-Match" matches
+                   * the cached ETag, the content is not read
                    */
-                  operDAOInput = new Operation(operInput.getType());
-                  operDAOInput.setJSON(jsonDAOInput);
+                  etagKey = ETagCache.getKey(JSON.getString(jsonInput, ConstantsIF.UID), inputURI);
+                  etag = _etags.get(etagKey);
+
+                  if (ETagCache.matches(ifNoneMatch, etag)) {
+                     jsonDAOOutput.put(ConstantsIF.ID, csId);
+                     jsonDAOOutput.put(ConstantsIF.URI, inputURI);
+                     jsonDAOOutput.put(ConstantsIF.CODE, HTTP_NOT_MODIFIED);
+                     jsonDAOOutput.put(ConstantsIF.HEADERS, this.getETagHeaders(etag));
+
+                     operOutput = new Operation(operInput.getType());
+                     operOutput.setState(STATE.SUCCESS);
+                     operOutput.setStatus("JSON data not modified");
+                     operOutput.setJSON(jsonDAOOutput);
+
+                     break;
+                  }
 
                   /*
-                   * JSON output:
-                   * {
-                   *   "uid": "GUID",
-                   *   "data": { ... },
-                   *   "timestamps" : { ... }
-                   * }
+                   * Cached JSON data, used until the time-to-live passes.
+                   * The generation is taken before the data is read, the
+                   * data is not cached if it is replaced or deleted meanwhile.
                    */
-                  operDAOOutput = _RestDAO.execute(operDAOInput);
+                  cacheKey = ContentCache.getKey(csId, inputURI);
+                  generation = CACHE.getGeneration(cacheKey);
+                  cached = CACHE.get(cacheKey);
 
-                  if (operDAOOutput.isError()) {
-                     this.abort(CLASS + ": " + METHOD, operDAOOutput.getState().toString()
-                        + ": " + operDAOOutput.getStatus());
+                  if (cached != null && !cached.isExpired()) {
+                     jsonData = cached.getJSON();
+                  } else {
+                     jsonData = null;
                   }
 
-                  jsonData = operDAOOutput.getJSON();
+                  if (jsonData != null) {
+                     etag = cached.getETag();
+                  } else {
+                     /*
+                      * GET the data (JSON) from the URI 
+                      * JSON input:
+                      * {
+                      *   "uri": "http://..."
+                      * }
+                      */
+                     operDAOInput = new Operation(operInput.getType());
+                     operDAOInput.setJSON(jsonDAOInput);
+
+                     /*
+                      * JSON output:
+                      * {
+                      *   "uid": "GUID",
+                      *   "data": { ... },
+                      *   "timestamps" : { ... }
+                      * }
+                      */
+                     operDAOOutput = _RestDAO.execute(operDAOInput);
 
-                  if (jsonData == null) {
-                     this.abort(CLASS + ": " + METHOD, "JSON output is null, "
-                        + operDAOOutput.toString());
+                     if (operDAOOutput.isError()) {
+                        this.abort(CLASS + ": " + METHOD, operDAOOutput.getState().toString()
+                           + ": " + operDAOOutput.getStatus());
+                     }
+
+                     jsonData = operDAOOutput.getJSON();
+
+                     if (jsonData == null) {
+                        this.abort(CLASS + ": " + METHOD, "JSON output is null, "
+                           + operDAOOutput.toString());
+                     }
+
+                     /*
+                      * Output may need to be un-wrapped from a 'content' object
+                      */
+                     if (!STR.isEmpty(contentName)) {
+                        jsonData = JSON.getObject(jsonData, contentName);
+                     }
+
+                     /*
+                      * Strong ETag, computed from the JSON data, saved for
+                      * conditional reads. The JSON data is cached parsed.
+                      */
+                     value = jsonData == null ? "" : jsonData.toJSONString();
+                     etag = ETagCache.getStrongETag(value);
+
+                     if (jsonData != null) {
+                        CACHE.put(cacheKey, generation, jsonData, etag);
+                     }
                   }
 
-                  jsonDAOOutput.put(ConstantsIF.ID, csId);
+                  _etags.put(etagKey, etag);
 
                   /*
-                   * Output may need to be un-wrapped from a 'content' object
                    * JSON output: 
                    * {
                    *   "id": "default",
                    *   "data": { ... }
                    * }
                    */
-                  if (STR.isEmpty(contentName)) {
-                     jsonDAOOutput.put(ConstantsIF.DATA, jsonData);
-                  } else {
-                     jsonDAOOutput.put(ConstantsIF.DATA, JSON.getObject(jsonData, contentName));
-                  }
+                  jsonDAOOutput.put(ConstantsIF.ID, csId);
+                  jsonDAOOutput.put(ConstantsIF.DATA, jsonData);
+
+                  jsonDAOOutput.put(ConstantsIF.CODE,
+                     ETagCache.matches(ifNoneMatch, etag) ? HTTP_NOT_MODIFIED : HTTP_OK);
+                  jsonDAOOutput.put(ConstantsIF.HEADERS, this.getETagHeaders(etag));
 
                   operOutput = new Operation(operInput.getType());
                   operOutput.setState(STATE.SUCCESS);
@@ -1030,4 +1236,794 @@ public class ContentHandler extends JaxrsHandler {
 
       return operOutput;
    }
+
+   /**
+    * Get the response headers JSON object with the ETag.
+    *
+    * @param etag String ETag
+    * @return JSONObject headers
+    */
+   private JSONObject getETagHeaders(final String etag) {
+      JSONObject jsonHeaders = null;
+
+      jsonHeaders = new JSONObject();
+      jsonHeaders.put(StreamRestDataAccess.HDR_ETAG, etag);
+
+      return jsonHeaders;
+   }
+
+   /**
+    * Get the ETag of a streamed "200" response. If the Content Service did
+    * not return one, a weak ETag is derived and added to the headers. Null
+    * if there is no "Last-Modified" header either.
+    *
+    * @param jsonHeaders JSONObject response headers, may be changed
+    * @param code Object response status code
+    * @return String ETag, may be null
+    */
+   private String getStreamETag(final JSONObject jsonHeaders, final Object code) {
+      String etag = null;
+
+      etag = JSON.getString(jsonHeaders, StreamRestDataAccess.HDR_ETAG);
+
+      if (STR.isEmpty(etag) && jsonHeaders != null && code != null
+         && String.valueOf(HTTP_OK).equals(code.toString())) {
+         etag = ETagCache.getWeakETag(JSON.getString(jsonHeaders, StreamRestDataAccess.HDR_LAST_MODIFIED),
+            JSON.getString(jsonHeaders, StreamRestDataAccess.HDR_CONTENT_LENGTH));
+
+         if (etag != null) {
+            jsonHeaders.put(StreamRestDataAccess.HDR_ETAG, etag);
+         }
+      }
+
+      return STR.isEmpty(etag) ? null : etag;
+   }
+
+   /**
+    * Revalidate an expired cache entry, a conditional read with the cached
+    * ETag. The client's conditional headers are not sent.
+    *
+    * @param uri String location of the content
+    * @param jsonHdrs JSONObject request headers
+    * @param cached ContentCache.Entry expired entry
+    * @return OperationIF read output, null if the entry is not modified
+    */
+   private OperationIF revalidate(final String uri, final JSONObject jsonHdrs,
+      final ContentCache.Entry cached) {
+      Object code = null;
+      JSONObject jsonRequest = null;
+      OperationIF operDAOOutput = null;
+
+      jsonRequest = new JSONObject(jsonHdrs);
+      jsonRequest.remove(StreamRestDataAccess.HDR_IF_MODIFIED_SINCE);
+
+      if (STR.isEmpty(cached.getETag())) {
+         jsonRequest.remove(StreamRestDataAccess.HDR_IF_NONE_MATCH);
+      } else {
+         jsonRequest.put(StreamRestDataAccess.HDR_IF_NONE_MATCH, cached.getETag());
+      }
+
+      operDAOOutput = _StreamDAO.read(uri, jsonRequest);
+
+      code = operDAOOutput.getJSON() != null ? operDAOOutput.getJSON().get(ConstantsIF.CODE) : null;
+
+      if (!operDAOOutput.isError() && code != null
+         && String.valueOf(HTTP_NOT_MODIFIED).equals(code.toString())) {
+         operDAOOutput = null;
+      }
+
+      return operDAOOutput;
+   }
+
+   /**
+    * Read a "200" response body into the cache, if its "Content-Length" is
+    * within the cache limits. The response stream is closed if it was read,
+    * else the caller uses it.
+    *
+    * @param cacheKey String cache key
+    * @param generation long key generation, from before the read
+    * @param operDAOOutput OperationIF read output
+    * @return ContentCache.Entry entry with the body, null if not read
+    * @throws Exception could not read the response body
+    */
+   private ContentCache.Entry load(final String cacheKey, final long generation,
+      final OperationIF operDAOOutput) throws Exception {
+      long length = -1L;
+      String value = null;
+      Object code = null;
+      JSONObject jsonHeaders = null;
+      InputStream input = null;
+      ContentCache.Entry cached = null;
+
+      code = operDAOOutput.getJSON() != null ? operDAOOutput.getJSON().get(ConstantsIF.CODE) : null;
+      jsonHeaders = JSON.getObject(operDAOOutput.getJSON(), ConstantsIF.HEADERS);
+      value = JSON.getString(jsonHeaders, StreamRestDataAccess.HDR_CONTENT_LENGTH);
+
+      if (!STR.isEmpty(value)) {
+         try {
+            length = Long.parseLong(value);
+         } catch (NumberFormatException ex) {
+            length = -1L;
+         }
+      }
+
+      if (code != null && String.valueOf(HTTP_OK).equals(code.toString())
+         && operDAOOutput.getObject() instanceof InputStream && CACHE.isCacheable(length)) {
+         input = (InputStream) operDAOOutput.getObject();
+
+         try {
+            cached = CACHE.load(cacheKey, generation, input, length, jsonHeaders,
+               JSON.getString(jsonHeaders, StreamRestDataAccess.HDR_ETAG));
+         } catch (IOException ex) {
+            input.close();
+            throw new Exception("Could not read content: " + ex.getMessage());
+         }
+
+         if (cached != null) {
+            input.close(); // the body was read, release the connection
+         }
+      }
+
+      return cached;
+   }
+
+   /**
+    * Get an optional numeric configuration value.
+    *
+    * @param json JSONObject configuration
+    * @param name String "dot" delimited attribute name
+    * @param defaultValue long value if the attribute is empty or invalid
+    * @return long value
+    */
+   private long getLong(final JSONObject json, final String name, final long defaultValue) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      long value = defaultValue;
+      String str = null;
+
+      str = JSON.getString(json, name);
+
+      if (!STR.isEmpty(str)) {
+         try {
+            value = Long.parseLong(str);
+         } catch (NumberFormatException ex) {
+            _logger.log(Level.WARNING, "{0}: Config attribute ''{1}'' is not a number: ''{2}''",
+               new Object[]{METHOD, name, str});
+         }
+      }
+
+      return value;
+   }
+
+   /**
+    * Check if the operation is for binary content. Either the Content
+    * Service is configured with "mode": "binary" or the input requests
+    * binary content. A "reference" action never accesses the content, it's
+    * processed as JSON.
+    *
+    * @param operInput OperationIF input request information
+    * @return boolean True if the content is binary
+    */
+   private boolean isBinary(final OperationIF operInput) {
+      boolean binary = false;
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String csId = null;
+      String action = null;
+      JSONObject jsonInput = null;
+      ContentServiceIF service = null;
+      OperationIF operService = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      jsonInput = operInput.getJSON();
+
+      csId = JSON.getString(jsonInput, ConstantsIF.ID);
+
+      if (!STR.isEmpty(csId)) {
+         service = _services.get(csId);
+
+         if (service != null && service.hasOperation(operInput.getType())) {
+            operService = service.getOperation(operInput.getType());
+            action = operService.getParam(ConstantsIF.ACTION);
+
+            if (!ConstantsIF.REFERENCE.equalsIgnoreCase(action)) {
+               binary = service.isBinary()
+                  || ContentServiceIF.MODE_BINARY.equals(JSON.getString(jsonInput, ContentServiceIF.MODE));
+            }
+         }
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return binary;
+   }
+
+   /**
+    * Check if the operation uses a local "file" Content Service. A
+    * "reference" action never accesses the content, it's processed as JSON.
+    *
+    * @param operInput OperationIF input request information
+    * @return boolean True if the content is stored locally
+    */
+   private boolean isFile(final OperationIF operInput) {
+      boolean file = false;
+      ContentServiceIF service = null;
+
+      service = _services.get(JSON.getString(operInput.getJSON(), ConstantsIF.ID));
+
+      if (service instanceof FileContentService && service.hasOperation(operInput.getType())) {
+         file = !ConstantsIF.REFERENCE.equalsIgnoreCase(
+            service.getOperation(operInput.getType()).getParam(ConstantsIF.ACTION));
+      }
+
+      return file;
+   }
+
+   /**
+    * Process the operation with a local "file" Content Service. Binary content
+    * is the operation object (InputStream), the same as a "binary" Content
+    * Service. JSON content is the "data" object. A "replace" writes new
+    * content, the output "uri" is the new location, the old one is deleted.
+    *
+    * <pre>
+    * CREATE and REPLACE: JSON output:
+    * {
+    *    "id": "local",
+    *    "uri": "cas:..."
+    * }
+    * READ: JSON output:
+    * {
+    *    "id": "local",
+    *    "uri": "cas:...",
+    *    "code": 200,
+    *    "headers": { "Content-Type": "...", "Content-Length": "...", "ETag": "..." },
+    *    "data": { ... }             // JSON content
+    * }
+    * </pre>
+    *
+    * @param operInput OperationIF input request information
+    * @return OperationIF operational response
+    * @throws Exception Problem processing the Content
+    */
+   private OperationIF fileOperationImpl(final OperationIF operInput) throws Exception {
+      boolean binary = false;
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String csId = null;
+      String inputURI = null;
+      String contentType = null;
+      Object obj = null;
+      Object code = null;
+      InputStream input = null;
+      JSONObject jsonInput = null;
+      JSONObject jsonData = null;
+      JSONObject jsonDAOOutput = null;
+      OperationIF operOutput = null;
+      OperationIF operDAOOutput = null;
+      OperationIF operDelete = null;
+      FileContentService service = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      jsonInput = operInput.getJSON();
+
+      csId = JSON.getString(jsonInput, ConstantsIF.ID);
+      service = (FileContentService) _services.get(csId);
+
+      if (service.isError()) {
+         this.abort(METHOD, "Content Service has an error for '" + csId + "'");
+      }
+
+      binary = this.isBinary(operInput);
+      inputURI = JSON.getString(jsonInput, ConstantsIF.URI);
+
+      if (operInput.getType() != OperationIF.TYPE.CREATE && STR.isEmpty(inputURI)) {
+         this.abort(METHOD, "Content Service '" + csId + "', operation '"
+            + operInput.getType().toString() + "', Required input attribute 'uri' is empty");
+      }
+
+      jsonDAOOutput = new JSONObject();
+      jsonDAOOutput.put(ConstantsIF.ID, csId);
+
+      switch (operInput.getType()) {
+         case CREATE:
+         case REPLACE: {
+            if (binary) {
+               obj = operInput.getObject();
+               if (!(obj instanceof InputStream)) {
+                  this.abort(METHOD, "Content Service '" + csId + "', operation '"
+                     + operInput.getType().toString() + "', Input has a null content stream");
+               }
+               input = (InputStream) obj;
+               contentType = JSON.getString(jsonInput,
+                  ConstantsIF.HEADERS + "." + StreamRestDataAccess.HDR_CONTENT_TYPE);
+            } else {
+               jsonData = JSON.getObject(jsonInput, ConstantsIF.DATA);
+               if (jsonData == null) {
+                  this.abort(METHOD, "Content Service '" + csId + "', operation '"
+                     + operInput.getType().toString() + "', Input has a null 'data' object");
+               }
+               input = new ByteArrayInputStream(jsonData.toJSONString().getBytes(StandardCharsets.UTF_8));
+               contentType = JSON_CONTENT_TYPE;
+            }
+
+            operDAOOutput = service.write(input, contentType);
+
+            if (operDAOOutput.isError()) {
+               this.abort(METHOD, operDAOOutput.getState().toString() + ": " + operDAOOutput.getStatus());
+            }
+
+            /*
+             * The new content is saved, remove the replaced content
+             */
+            if (operInput.getType() == OperationIF.TYPE.REPLACE) {
+               operDelete = service.delete(inputURI);
+
+               if (operDelete.isError() && operDelete.getState() != STATE.NOTEXIST) {
+                  _logger.log(Level.WARNING, "{0}: {1}", new Object[]{METHOD, operDelete.getStatus()});
+               }
+            }
+
+            jsonDAOOutput.put(ConstantsIF.URI, JSON.getString(operDAOOutput.getJSON(), ConstantsIF.URI));
+
+            operOutput = new Operation(operInput.getType());
+            operOutput.setState(STATE.SUCCESS);
+            operOutput.setStatus(operInput.getType() == OperationIF.TYPE.CREATE
+               ? "URI was created" : "URI was replaced");
+            operOutput.setJSON(jsonDAOOutput);
+
+            break;
+         }
+         case READ: {
+            operDAOOutput = service.read(inputURI, JSON.getString(jsonInput,
+               ConstantsIF.HEADERS + "." + StreamRestDataAccess.HDR_IF_NONE_MATCH));
+
+            if (operDAOOutput.isError()) {
+               this.abort(METHOD, operDAOOutput.getState().toString() + ": " + operDAOOutput.getStatus());
+            }
+
+            code = operDAOOutput.getJSON().get(ConstantsIF.CODE);
+
+            jsonDAOOutput.put(ConstantsIF.URI, inputURI);
+            jsonDAOOutput.put(ConstantsIF.CODE, code);
+            jsonDAOOutput.put(ConstantsIF.HEADERS, JSON.getObject(operDAOOutput.getJSON(), ConstantsIF.HEADERS));
+
+            operOutput = new Operation(operInput.getType());
+            operOutput.setState(STATE.SUCCESS);
+            operOutput.setJSON(jsonDAOOutput);
+
+            if (binary) {
+               operOutput.setStatus("Found binary data");
+               operOutput.setObject(operDAOOutput.getObject());
+            } else {
+               operOutput.setStatus("Found JSON data");
+
+               if (operDAOOutput.getObject() instanceof InputStream) {
+                  try (InputStream stream = (InputStream) operDAOOutput.getObject()) {
+                     jsonDAOOutput.put(ConstantsIF.DATA, this.parseJSON(stream));
+                  }
+               }
+            }
+
+            break;
+         }
+         case DELETE: {
+            operDAOOutput = service.delete(inputURI);
+
+            if (operDAOOutput.isError()) {
+               this.abort(METHOD, operDAOOutput.getState().toString() + ": " + operDAOOutput.getStatus());
+            }
+
+            operOutput = new Operation(operInput.getType());
+            operOutput.setState(STATE.SUCCESS);
+            operOutput.setStatus("URI was deleted");
+            operOutput.setJSON(new JSONObject());
+
+            break;
+         }
+         default: {
+            this.abort(METHOD, "Unsupported operation type '"
+               + operInput.getType().toString() + "'");
+         }
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+
+   /**
+    * Parse the JSON content from the stream
+    *
+    * @param input InputStream JSON content, UTF-8
+    * @return JSONObject JSON data
+    * @throws Exception the content is not a JSON object
+    */
+   private JSONObject parseJSON(final InputStream input) throws Exception {
+      Object obj = null;
+
+      try {
+         obj = new JSONParser().parse(new InputStreamReader(input, StandardCharsets.UTF_8));
+      } catch (ParseException ex) {
+         throw new Exception("Content is not valid JSON: " + ex.getMessage());
+      }
+
+      if (!(obj instanceof JSONObject)) {
+         throw new Exception("Content is not a JSON object");
+      }
+
+      return (JSONObject) obj;
+   }
+
+   /**
+    * Process the operation with a "binary" Content Service. The content is
+    * streamed, it is not parsed or wrapped as JSON. The content for CREATE
+    * and REPLACE is the operation object (InputStream). The content for READ
+    * is returned as the operation object (InputStream), the caller MUST close
+    * the stream.
+    *
+    * <pre>
+    * CREATE, READ, REPLACE, DELETE: JSON input:
+    * {
+    *    "id": "medical",
+    *    "uri": "http://...",        // not for CREATE
+    *    "headers": {                // optional, request headers
+    *       "Content-Type": "application/pdf",
+    *       "Content-Length": "1234"
+    *    }
+    * }
+    * CREATE and REPLACE: JSON output:
+    * {
+    *    "id": "medical",
+    *    "uri": "http://..."
+    * }
+    * READ: JSON output:
+    * {
+    *    "id": "medical",
+    *    "uri": "http://...",
+    *    "headers": {                // response headers
+    *       "Content-Type": "application/pdf",
+    *       "Content-Length": "1234",
+    *       "ETag": "..."
+    *    }
+    * }
+    * </pre>
+    *
+    * @param operInput OperationIF input request information
+    * @return OperationIF operational response
+    * @throws Exception Problem processing the Content
+    */
+   private OperationIF binaryOperationImpl(final OperationIF operInput) throws Exception {
+      boolean partial = false;
+      long length = -1L;
+      long generation = 0L;
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String csId = null; // Content Service Identifier
+      String csURI = null;
+      String inputURI = null;
+      String action = null;
+      String value = null;
+      String cacheKey = null;
+      String etag = null;
+      Object obj = null;
+      Object code = null;
+      ContentCache.Entry cached = null;
+      InputStream input = null;
+      JSONObject jsonInput = null;
+      JSONObject jsonSrvcOper = null;
+      JSONObject jsonHdrs = null;
+      JSONObject jsonHeaders = null;
+      JSONObject jsonDAOOutput = null;
+      OperationIF operOutput = null;
+      OperationIF operDAOOutput = null;
+      ContentServiceIF service = null;
+      OperationIF operService = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      jsonInput = operInput.getJSON();
+
+      csId = JSON.getString(jsonInput, ConstantsIF.ID);
+
+      service = _services.get(csId);
+
+      if (service == null || service.isError()) {
+         this.abort(METHOD, "Content Service is null or has an error for '" + csId + "'");
+      }
+
+      if (!service.isBinary()) {
+         this.abort(METHOD, "Content Service '" + csId + "' does not support binary content");
+      }
+
+      operService = service.getOperation(operInput.getType());
+      action = operService.getParam(ConstantsIF.ACTION);
+
+      /*
+       * Request headers: Content Service configuration, then the input
+       */
+      jsonHdrs = new JSONObject();
+
+      jsonSrvcOper = operService.getJSON();
+      if (jsonSrvcOper != null && JSON.getObject(jsonSrvcOper, ConstantsIF.HEADERS) != null) {
+         jsonHdrs.putAll(JSON.getObject(jsonSrvcOper, ConstantsIF.HEADERS));
+      }
+
+      if (JSON.getObject(jsonInput, ConstantsIF.HEADERS) != null) {
+         jsonHdrs.putAll(JSON.getObject(jsonInput, ConstantsIF.HEADERS));
+      }
+
+      value = JSON.getString(jsonHdrs, StreamRestDataAccess.HDR_CONTENT_LENGTH);
+      if (!STR.isEmpty(value)) {
+         try {
+            length = Long.parseLong(value);
+         } catch (NumberFormatException ex) {
+            length = -1L; // unknown, use chunked transfer
+         }
+         jsonHdrs.remove(StreamRestDataAccess.HDR_CONTENT_LENGTH); // set by the connection
+      }
+
+      if (operInput.getType() == OperationIF.TYPE.CREATE
+         || operInput.getType() == OperationIF.TYPE.REPLACE) {
+         obj = operInput.getObject();
+         if (obj == null || !(obj instanceof InputStream)) {
+            if (ConstantsIF.POST.equals(action) || ConstantsIF.PUT.equals(action)) {
+               this.abort(METHOD, "Content Service '" + csId + "', operation '"
+                  + operInput.getType().toString() + "', action '"
+                  + action + "', Input has a null content stream");
+            }
+         } else {
+            input = (InputStream) obj;
+         }
+      }
+
+      if (operInput.getType() != OperationIF.TYPE.CREATE) {
+         inputURI = JSON.getString(jsonInput, ConstantsIF.URI);
+
+         if (STR.isEmpty(inputURI)) {
+            this.abort(METHOD, "Content Service '" + csId + "', operation '"
+               + operInput.getType().toString() + "', action '"
+               + action + "', Required input attribute 'uri' is empty");
+         }
+      }
+
+      jsonDAOOutput = new JSONObject();
+      jsonDAOOutput.put(ConstantsIF.ID, csId);
+
+      switch (operInput.getType()) {
+         case CREATE: {
+            switch (action) {
+               case ConstantsIF.POST: {
+                  /*
+                   * Stream the content to the Content Service, the returned
+                   * Location is the new "uri"
+                   */
+                  csURI = operService.getParam(ConstantsIF.URI);
+                  if (STR.isEmpty(csURI)) {
+                     this.abort(METHOD, "Content Service '" + csId + "', operation '"
+                        + operInput.getType().toString() + "', action '"
+                        + action + "', Required attribute 'uri' is empty");
+                  }
+
+                  operDAOOutput = _StreamDAO.write(OperationIF.TYPE.CREATE, csURI, jsonHdrs, input, length);
+
+                  if (operDAOOutput.isError()) {
+                     this.abort(METHOD, "Content Service '" + csId + "', operation '"
+                        + operInput.getType().toString() + "', action '"
+                        + action + "', DAO output error: " + operDAOOutput.getStatus());
+                  }
+
+                  if (STR.isEmpty(JSON.getString(operDAOOutput.getJSON(),
+                     ConstantsIF.HEADERS + "." + StreamRestDataAccess.HDR_LOCATION))) {
+                     this.abort(METHOD, "Content Service '" + csId + "', operation '"
+                        + operInput.getType().toString() + "', action '"
+                        + action + "', Response does not have a 'Location' header");
+                  }
+
+                  jsonDAOOutput.put(ConstantsIF.URI, JSON.getString(operDAOOutput.getJSON(), ConstantsIF.URI));
+
+                  operOutput = new Operation(operInput.getType());
+                  operOutput.setState(STATE.SUCCESS);
+                  operOutput.setStatus("URI was created");
+                  operOutput.setJSON(jsonDAOOutput);
+
+                  break;
+               }
+               case ConstantsIF.GET: {
+                  /*
+                   * Validate the URI (HEAD request), then return it, else error
+                   */
+                  inputURI = JSON.getString(jsonInput, ConstantsIF.URI);
+
+                  if (STR.isEmpty(inputURI)) {
+                     this.abort(METHOD, "Content Service '" + csId + "', operation '"
+                        + operInput.getType().toString() + "', action '"
+                        + action + "', Required input attribute 'uri' is empty");
+                  }
+
+                  operDAOOutput = _StreamDAO.check(inputURI, jsonHdrs);
+
+                  jsonDAOOutput.put(ConstantsIF.URI, inputURI);
+
+                  if (operDAOOutput.isError()) {
+                     operOutput = operDAOOutput;
+                  } else {
+                     operOutput = new Operation(operInput.getType());
+                     operOutput.setState(STATE.SUCCESS);
+                     operOutput.setStatus("URI was found");
+                  }
+
+                  operOutput.setJSON(jsonDAOOutput);
+
+                  break;
+               }
+               default: {
+                  this.abort(METHOD, "Content Service '" + csId + "', operation '"
+                     + operInput.getType().toString() + "' has an invalid binary action '"
+                     + action + "'");
+               }
+            }
+            break;
+         }
+         case READ: {
+            switch (action) {
+               case ConstantsIF.GET: {
+                  /*
+                   * Cached content, partial reads are not cached. An expired
+                   * entry is revalidated with its ETag.
+                   */
+                  partial = jsonHdrs.containsKey(StreamRestDataAccess.HDR_RANGE)
+                     || jsonHdrs.containsKey(StreamRestDataAccess.HDR_IF_RANGE);
+                  cacheKey = ContentCache.getKey(csId, inputURI);
+                  generation = CACHE.getGeneration(cacheKey);
+
+                  if (!partial) {
+                     cached = CACHE.get(cacheKey);
+                  }
+
+                  if (cached != null && cached.isExpired()) {
+                     operDAOOutput = this.revalidate(inputURI, jsonHdrs, cached);
+
+                     if (operDAOOutput == null) {
+                        CACHE.revalidated(cached);
+                     } else {
+                        CACHE.evict(cacheKey, cached);
+                        cached = null;
+                     }
+                  }
+
+                  if (cached == null) {
+                     /*
+                      * Open the stream, the caller will copy and close it
+                      */
+                     if (operDAOOutput == null) {
+                        operDAOOutput = _StreamDAO.read(inputURI, jsonHdrs);
+                     }
+
+                     if (operDAOOutput.isError()) {
+                        this.abort(METHOD, operDAOOutput.getState().toString()
+                           + ": " + operDAOOutput.getStatus());
+                     }
+
+                     if (!partial) {
+                        cached = this.load(cacheKey, generation, operDAOOutput);
+                     }
+                  }
+
+                  jsonDAOOutput.put(ConstantsIF.URI, inputURI);
+
+                  operOutput = new Operation(operInput.getType());
+                  operOutput.setState(STATE.SUCCESS);
+                  operOutput.setJSON(jsonDAOOutput);
+
+                  if (cached != null) {
+                     /*
+                      * The client's "If-None-Match" is checked with the
+                      * cached ETag
+                      */
+                     if (ETagCache.matches(JSON.getString(jsonHdrs, StreamRestDataAccess.HDR_IF_NONE_MATCH),
+                        cached.getETag())) {
+                        jsonDAOOutput.put(ConstantsIF.CODE, HTTP_NOT_MODIFIED);
+                     } else {
+                        jsonDAOOutput.put(ConstantsIF.CODE, HTTP_OK);
+                        operOutput.setObject(cached.getInputStream());
+                     }
+
+                     jsonDAOOutput.put(ConstantsIF.HEADERS, cached.getHeaders());
+                     operOutput.setStatus("Found cached binary data");
+                  } else {
+                     /*
+                      * Streamed content without an ETag gets a weak ETag
+                      * from its "Last-Modified" and "Content-Length", the
+                      * client's "If-None-Match" is checked with it
+                      */
+                     jsonHeaders = JSON.getObject(operDAOOutput.getJSON(), ConstantsIF.HEADERS);
+                     code = operDAOOutput.getJSON().get(ConstantsIF.CODE);
+                     etag = this.getStreamETag(jsonHeaders, code);
+
+                     if (etag != null && ETagCache.matches(
+                        JSON.getString(jsonHdrs, StreamRestDataAccess.HDR_IF_NONE_MATCH), etag)) {
+                        if (operDAOOutput.getObject() instanceof InputStream) {
+                           ((InputStream) operDAOOutput.getObject()).close();
+                        }
+                        jsonDAOOutput.put(ConstantsIF.CODE, HTTP_NOT_MODIFIED);
+                        jsonDAOOutput.put(ConstantsIF.HEADERS, this.getETagHeaders(etag));
+                        operOutput.setStatus("Binary data not modified");
+                     } else {
+                        jsonDAOOutput.put(ConstantsIF.CODE, code);
+                        jsonDAOOutput.put(ConstantsIF.HEADERS, jsonHeaders);
+                        operOutput.setStatus("Found binary data");
+                        operOutput.setObject(operDAOOutput.getObject());
+                     }
+                  }
+
+                  break;
+               }
+               default: {
+                  this.abort(METHOD, "Content Service '" + csId + "', operation '"
+                     + operInput.getType().toString() + "' has an invalid binary action '"
+                     + action + "'");
+               }
+            }
+            break;
+         }
+         case REPLACE: {
+            switch (action) {
+               case ConstantsIF.PUT: {
+                  operDAOOutput = _StreamDAO.write(OperationIF.TYPE.REPLACE, inputURI, jsonHdrs, input, length);
+
+                  if (operDAOOutput.isError()) {
+                     this.abort(METHOD, operDAOOutput.getState().toString()
+                        + ": " + operDAOOutput.getStatus());
+                  }
+
+                  jsonDAOOutput.put(ConstantsIF.URI, inputURI);
+
+                  operOutput = new Operation(operInput.getType());
+                  operOutput.setState(STATE.SUCCESS);
+                  operOutput.setStatus("URI was replaced");
+                  operOutput.setJSON(jsonDAOOutput);
+
+                  break;
+               }
+               default: {
+                  this.abort(METHOD, "Content Service '" + csId + "', operation '"
+                     + operInput.getType().toString() + "' has an invalid binary action '"
+                     + action + "'");
+               }
+            }
+            break;
+         }
+         case DELETE: {
+            switch (action) {
+               case ConstantsIF.DELETE: {
+                  operDAOOutput = _StreamDAO.delete(inputURI, jsonHdrs);
+
+                  if (operDAOOutput.isError()) {
+                     this.abort(METHOD, operDAOOutput.getState().toString()
+                        + ": " + operDAOOutput.getStatus());
+                  }
+
+                  operOutput = new Operation(operInput.getType());
+                  operOutput.setState(STATE.SUCCESS);
+                  operOutput.setStatus("URI was deleted");
+                  operOutput.setJSON(new JSONObject());
+
+                  break;
+               }
+               default: {
+                  this.abort(METHOD, "Content Service '" + csId + "', operation '"
+                     + operInput.getType().toString() + "' has an invalid binary action '"
+                     + action + "'");
+               }
+            }
+            break;
+         }
+         default: {
+            this.abort(METHOD, "Unsupported operation type '"
+               + operInput.getType().toString() + "'");
+         }
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
 }
@@ -15,37 +15,64 @@ import com.forgerock.frdp.resourceserver.ConfigIF;
 import com.forgerock.frdp.resourceserver.dao.AMRestDataAccess;
 import com.forgerock.frdp.utils.JSON;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
 /**
- * Abstract Credential Handler
+ * Abstract Credential Handler. Credential lookups use striped locks, keyed by
+ * owner, so lookups for different owners run in parallel. Duplicate
+ * credentials are removed by a background cleanup task, not by the request.
+ * The task runs on the cleanup executor of the RSContextListener, which stops
+ * it with the web application.
  *
  * @author Scott Fehrman, ForgeRock, Inc.
  */
 public abstract class CredentialHandler extends JaxrsHandler {
 
+   private static final int LOCK_STRIPES = 64;
+   private static final Object[] LOCKS = new Object[LOCK_STRIPES];
+   private static final Set<String> CLEANUP_PENDING = ConcurrentHashMap.newKeySet();
    private final String CLASS = this.getClass().getName();
+   private final ExecutorService _cleanup;
+
+   static {
+      for (int i = 0; i < LOCK_STRIPES; i++) {
+         LOCKS[i] = new Object();
+      }
+   }
 
    /**
     * Constructor
     *
     * @param configMgr ConfigurationManagerIF management of configurations
     * @param handlerMgr HandlerManagerIF provides management of Handlers
+    * @param cleanup ExecutorService runs the duplicate cleanup, owned and shut
+    * down by the RSContextListener
     */
-   public CredentialHandler(final ConfigurationManagerIF configMgr, final HandlerManagerIF handlerMgr) {
+   public CredentialHandler(final ConfigurationManagerIF configMgr, final HandlerManagerIF handlerMgr,
+      final ExecutorService cleanup) {
       super(configMgr, handlerMgr);
-      String METHOD = "CredentialHandler(configMgr, handlerMgr)";
+      String METHOD = "CredentialHandler(configMgr, handlerMgr, cleanup)";
 
       _logger.entering(CLASS, METHOD);
+
+      _cleanup = cleanup;
+
       _logger.exiting(CLASS, METHOD);
 
       return;
    }
 
    /**
-    * Get Credential for the specified userid and category
+    * Get Credential for the specified userid and category. Holds the owner's
+    * lock stripe, shared with the duplicate cleanup. If there is more than one
+    * credential, the first is returned and the others are removed by the
+    * background cleanup task.
     *
     * <pre>
     * JSON query structure ...
@@ -81,59 +108,22 @@ public abstract class CredentialHandler extends JaxrsHandler {
     * @return String credential value
     * @throws Exception could not get the uid
     */
-   protected synchronized String getCredentialUid(final String owner, final String category) throws Exception {
+   protected String getCredentialUid(final String owner, final String category) throws Exception {
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
       String credUid = null;
       Number quantity = 0;
-      JSONObject jsonQuery = null;
-      JSONObject jsonInput = null;
       JSONArray jsonResults = null;
-      JSONArray jsonQueries = null;
-      OperationIF operInput = null;
-      OperationIF operOutput = null;
 
       _logger.entering(CLASS, METHOD);
 
-      jsonQueries = new JSONArray();
-
-      jsonQuery = new JSONObject();
-      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
-      jsonQuery.put(ConstantsIF.ATTRIBUTE, ConstantsIF.DATA + "." + ConstantsIF.OWNER);
-      jsonQuery.put(ConstantsIF.VALUE, owner);
-
-      jsonQueries.add(jsonQuery);
-
-      jsonQuery = new JSONObject();
-      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
-      jsonQuery.put(ConstantsIF.ATTRIBUTE, ConstantsIF.DATA + "." + ConstantsIF.CATEGORY);
-      jsonQuery.put(ConstantsIF.VALUE, category);
-
-      jsonQueries.add(jsonQuery);
-
-      jsonQuery = new JSONObject();
-      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.AND);
-      jsonQuery.put(ConstantsIF.QUERIES, jsonQueries);
-
-      jsonInput = new JSONObject();
-      jsonInput.put(ConstantsIF.QUERY, jsonQuery);
-
-      if (_logger.isLoggable(DEBUG_LEVEL)) {
-         _logger.log(DEBUG_LEVEL, "jsonQuery=''{0}''", jsonQuery.toString());
+      synchronized (this.getOwnerLock(owner)) {
+         jsonResults = this.searchCredentials(owner, category);
       }
 
-      operInput = new Operation(OperationIF.TYPE.SEARCH);
-      operInput.setJSON(jsonInput);
-
-      this.setDatabaseAndCollection(operInput, ConfigIF.RS_NOSQL_DATABASE,
-         ConfigIF.RS_NOSQL_COLLECTIONS_CREDENTIALS_NAME);
-
-      operOutput = _MongoDAO.execute(operInput);
-
       /*
        * Get first JSON object from array "results[0]" or "results"
        */
-      quantity = JSON.getNumber(operOutput.getJSON(), ConstantsIF.QUANTITY);
-      jsonResults = JSON.getArray(operOutput.getJSON(), ConstantsIF.RESULTS);
+      quantity = jsonResults != null ? jsonResults.size() : null;
 
       if (quantity != null) {
          switch (quantity.intValue()) {
@@ -146,15 +136,16 @@ public abstract class CredentialHandler extends JaxrsHandler {
                credUid = JSON.getString((JSONObject) jsonResults.get(0), ConstantsIF.UID);
                break;
             }
-            default: // Error: maybe multiple records found
+            default: // Error: multiple records found, use the first, cleanup later
             {
-               _logger.log(Level.SEVERE, "Search quantity should be '1', value is: ''{0}''", quantity);
-               this.removeDuplicates(jsonResults);
+               _logger.log(Level.WARNING, "Search quantity should be '1', value is: ''{0}''", quantity);
+               credUid = JSON.getString((JSONObject) jsonResults.get(0), ConstantsIF.UID);
+               this.scheduleCleanup(owner, category);
                break;
             }
          }
       } else {
-         _logger.log(Level.SEVERE, "Search quantity Number is null");
+         _logger.log(Level.SEVERE, "Search results are null");
       }
 
       if (_logger.isLoggable(DEBUG_LEVEL)) {
@@ -167,6 +158,17 @@ public abstract class CredentialHandler extends JaxrsHandler {
       return credUid;
    }
 
+   /**
+    * Get the lock stripe for the owner. Callers for the same owner share a
+    * lock, most callers for different owners do not.
+    *
+    * @param owner String userid
+    * @return Object lock
+    */
+   protected Object getOwnerLock(final String owner) {
+      return LOCKS[(owner == null ? 0 : owner.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+   }
+
    /**
     * Initialize the object
     */
@@ -238,13 +240,105 @@ public abstract class CredentialHandler extends JaxrsHandler {
    /*
     * =============== PRIVATE METHODS ===============
     */
+   /**
+    * Search the credentials for the owner and category
+    *
+    * @param owner String userid
+    * @param category String type of credential
+    * @return JSONArray results, may be null
+    * @throws Exception could not search the credentials
+    */
+   private JSONArray searchCredentials(final String owner, final String category) throws Exception {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      JSONObject jsonQuery = null;
+      JSONObject jsonInput = null;
+      JSONArray jsonQueries = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      jsonQueries = new JSONArray();
+
+      jsonQuery = new JSONObject();
+      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
+      jsonQuery.put(ConstantsIF.ATTRIBUTE, ConstantsIF.DATA + "." + ConstantsIF.OWNER);
+      jsonQuery.put(ConstantsIF.VALUE, owner);
+
+      jsonQueries.add(jsonQuery);
+
+      jsonQuery = new JSONObject();
+      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
+      jsonQuery.put(ConstantsIF.ATTRIBUTE, ConstantsIF.DATA + "." + ConstantsIF.CATEGORY);
+      jsonQuery.put(ConstantsIF.VALUE, category);
+
+      jsonQueries.add(jsonQuery);
+
+      jsonQuery = new JSONObject();
+      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.AND);
+      jsonQuery.put(ConstantsIF.QUERIES, jsonQueries);
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.QUERY, jsonQuery);
+
+      if (_logger.isLoggable(DEBUG_LEVEL)) {
+         _logger.log(DEBUG_LEVEL, "jsonQuery=''{0}''", jsonQuery.toString());
+      }
+
+      operInput = new Operation(OperationIF.TYPE.SEARCH);
+      operInput.setJSON(jsonInput);
+
+      this.setDatabaseAndCollection(operInput, ConfigIF.RS_NOSQL_DATABASE,
+         ConfigIF.RS_NOSQL_COLLECTIONS_CREDENTIALS_NAME);
+
+      operOutput = _MongoDAO.execute(operInput);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return JSON.getArray(operOutput.getJSON(), ConstantsIF.RESULTS);
+   }
+
+   /**
+    * Queue removal of the owner's duplicate credentials on the cleanup
+    * thread. Ignored if a cleanup for the owner and category is already
+    * queued.
+    *
+    * @param owner String userid
+    * @param category String type of credential
+    */
+   private void scheduleCleanup(final String owner, final String category) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String key = owner + "/" + category;
+
+      if (_cleanup != null && CLEANUP_PENDING.add(key)) {
+         try {
+            _cleanup.submit(() -> {
+               try {
+                  synchronized (this.getOwnerLock(owner)) {
+                     this.removeDuplicates(this.searchCredentials(owner, category));
+                  }
+               } catch (Exception ex) {
+                  _logger.log(Level.WARNING, "{0}: owner ''{1}'': {2}",
+                     new Object[]{METHOD, owner, ex.getMessage()});
+               } finally {
+                  CLEANUP_PENDING.remove(key);
+               }
+            });
+         } catch (RejectedExecutionException ex) { // stopping
+            CLEANUP_PENDING.remove(key);
+         }
+      }
+
+      return;
+   }
+
    /**
     * Remove duplicate data from the results. If there is more than one result
-    * in the JSON array, delete all the items in the array, something went
+    * in the JSON array, keep the first and delete the others, something went
     * wrong. ... "There can be only one, Highlander"
     *
     * <pre>
-    * For each result in the array, delete the entry
+    * For each result in the array, after the first, delete the entry
     * {
     *   "results": [
     *     {
@@ -273,7 +367,7 @@ public abstract class CredentialHandler extends JaxrsHandler {
          this.setDatabaseAndCollection(operInput, ConfigIF.RS_NOSQL_DATABASE,
             ConfigIF.RS_NOSQL_COLLECTIONS_CREDENTIALS_NAME);
 
-         for (Object obj : jsonResults) {
+         for (Object obj : jsonResults.subList(1, jsonResults.size())) {
             if (obj != null && obj instanceof JSONObject) {
                jsonInput = (JSONObject) obj;
 
@@ -14,7 +14,10 @@ import com.forgerock.frdp.handler.Handler;
 import com.forgerock.frdp.handler.HandlerManagerIF;
 import com.forgerock.frdp.utils.JSON;
 import com.forgerock.frdp.utils.STR;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
 /**
@@ -24,6 +27,9 @@ import org.json.simple.JSONObject;
  */
 public abstract class JaxrsHandler extends Handler implements JaxrsHandlerIF {
 
+   public static final String OFFSET = "offset";
+   public static final String LIMIT = "limit";
+
    private final String CLASS = this.getClass().getName();
 
    protected static final String PROP_VAR_OWNER = "__owner__";
@@ -35,8 +41,8 @@ public abstract class JaxrsHandler extends Handler implements JaxrsHandlerIF {
    protected DataAccessIF _MongoDAO = null;
    protected DataAccessIF _AuthzServerDAO = null;
 
-   protected ConfigurationManagerIF _configMgr = null;
-   private HandlerManagerIF _handlerMgr = null;
+   protected volatile ConfigurationManagerIF _configMgr = null;
+   private volatile HandlerManagerIF _handlerMgr = null;
 
    /**
     * Constructor
@@ -61,12 +67,15 @@ public abstract class JaxrsHandler extends Handler implements JaxrsHandlerIF {
 
    /**
     * Process the operation input object, returns an output operation object.
+    * Not synchronized, a Handler instance is shared by all requests.
+    * Implementations must not keep per-operation state in instance fields,
+    * shared state (credentials) is guarded by the implementation.
     *
     * @param operInput OperationIF input
     * @return OperationIF output
     */
    @Override
-   public final synchronized OperationIF process(final OperationIF operInput) {
+   public final OperationIF process(final OperationIF operInput) {
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
       StringBuilder msg = new StringBuilder(CLASS + ":" + METHOD + ": ");
       OperationIF operOutput = null;
@@ -149,6 +158,43 @@ public abstract class JaxrsHandler extends Handler implements JaxrsHandlerIF {
       throw new UnsupportedOperationException("Not supported yet.");
    }
 
+   /**
+    * Use the managers of a reloaded configuration. A reload keeps the
+    * handlers whose configuration did not change, they must find the new
+    * handlers.
+    *
+    * @param configMgr ConfigurationManagerIF reloaded configurations
+    * @param handlerMgr HandlerManagerIF reloaded handlers
+    */
+   public void setManagers(final ConfigurationManagerIF configMgr, final HandlerManagerIF handlerMgr) {
+      _configMgr = configMgr;
+      _handlerMgr = handlerMgr;
+
+      return;
+   }
+
+   /**
+    * Get the clients (Data Access Objects) created by this handler. A reload
+    * closes the clients of the handlers it replaces.
+    *
+    * @return List clients, may be empty
+    */
+   public List<Object> getClients() {
+      List<Object> clients = null;
+
+      clients = new ArrayList<>();
+
+      if (_MongoDAO != null) {
+         clients.add(_MongoDAO);
+      }
+
+      if (_AuthzServerDAO != null) {
+         clients.add(_AuthzServerDAO);
+      }
+
+      return clients;
+   }
+
    /*
     * ================= PROTECTED METHODS =================
     */
@@ -305,6 +351,58 @@ public abstract class JaxrsHandler extends Handler implements JaxrsHandlerIF {
       return;
    }
 
+   /**
+    * Get the optional "offset" from the JSON input: the number of results to
+    * skip. The default is 0.
+    *
+    * @param jsonInput JSONObject input
+    * @return int offset, 0 or more
+    */
+   protected int getOffset(final JSONObject jsonInput) {
+      Number number = null;
+
+      number = JSON.getNumber(jsonInput, OFFSET);
+
+      return number != null && number.intValue() > 0 ? number.intValue() : 0;
+   }
+
+   /**
+    * Get the optional "limit" from the JSON input: the maximum number of
+    * results to return. The default is no limit.
+    *
+    * @param jsonInput JSONObject input
+    * @return int limit, Integer.MAX_VALUE if there is no limit
+    */
+   protected int getLimit(final JSONObject jsonInput) {
+      Number number = null;
+
+      number = JSON.getNumber(jsonInput, LIMIT);
+
+      return number != null && number.intValue() > 0 ? number.intValue() : Integer.MAX_VALUE;
+   }
+
+   /**
+    * Get a page of a list: skip "offset" items, return up to "limit" items
+    *
+    * @param list List items
+    * @param offset int items to skip
+    * @param limit int maximum items to return
+    * @return JSONArray page, may be empty
+    */
+   protected JSONArray getPage(final List<?> list, final int offset, final int limit) {
+      int end = 0;
+      JSONArray arrayPage = null;
+
+      arrayPage = new JSONArray();
+
+      if (list != null && offset < list.size()) {
+         end = (int) Math.min((long) offset + limit, list.size());
+         arrayPage.addAll(list.subList(offset, end));
+      }
+
+      return arrayPage;
+   }
+
    /**
     * Check for "user" and "password" attributes in the JSON data
     *
@@ -18,6 +18,7 @@ public interface JaxrsHandlerIF extends HandlerIF {
    public static final String HANDLER_AMOAUTH2 = "AMOauth2Handler";
    public static final String HANDLER_AMPROXYADM = "AMProxyAdmHandler";
    public static final String HANDLER_AMSESSION = "AMSessionHandler";
+   public static final String HANDLER_JOBS = "JobsHandler";
    public static final String HANDLER_RESOURCES = "ResourcesHandler";
    public static final String HANDLER_META = "MetaHandler";
    public static final String HANDLER_CONTENT = "ContentHandler";
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.handler;
+
+import com.forgerock.frdp.resourceserver.utils.JSONUtil;
+import com.forgerock.frdp.utils.STR;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Cache of resource meta data, keyed by resource uid. The least recently used
+ * entry is removed when the cache is full. Entries expire after a
+ * time-to-live, which limits how long a change made by another Resource
+ * Server node is not seen. Entries are updated when this node replaces or
+ * deletes meta data, and removed when the resource document is replaced or
+ * deleted. Deep copies are saved and returned, callers may change them.
+ *
+ * A read takes the resource's generation before it reads the database. An
+ * update or removal increments the generation, meta data read before it is
+ * not saved. Generations are kept for stripes of resources.
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class MetaCache {
+
+   public static final long DEFAULT_TTL = 30L; // seconds
+   public static final int DEFAULT_MAX_ENTRIES = 10000;
+   private static final int STRIPES = 64;
+
+   private final AtomicLong _hits = new AtomicLong(0L);
+   private final AtomicLong _misses = new AtomicLong(0L);
+   private final Map<String, Entry> _entries;
+   private final AtomicLongArray _generations = new AtomicLongArray(STRIPES); // changed with _entries
+   private volatile long _ttlMillis = DEFAULT_TTL * 1000L;
+   private volatile int _maxEntries = DEFAULT_MAX_ENTRIES;
+
+   /**
+    * Constructor
+    */
+   public MetaCache() {
+      _entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) { // access order
+         @Override
+         protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+            return this.size() > _maxEntries;
+         }
+      };
+
+      return;
+   }
+
+   /**
+    * Set the limits. All entries are removed if a limit changed, a reload
+    * with the same limits keeps them.
+    *
+    * @param ttl long time-to-live, in seconds, less than 1 disables the cache
+    * @param maxEntries int maximum number of entries
+    */
+   public void configure(final long ttl, final int maxEntries) {
+      long ttlMillis = ttl * 1000L;
+      int max = maxEntries > 0 ? maxEntries : DEFAULT_MAX_ENTRIES;
+
+      synchronized (_entries) {
+         if (ttlMillis != _ttlMillis || max != _maxEntries) {
+            _ttlMillis = ttlMillis;
+            _maxEntries = max;
+            _entries.clear();
+         }
+      }
+
+      return;
+   }
+
+   /**
+    * Get a copy of the cached meta data, null if it does not exist or has
+    * expired.
+    *
+    * @param resourceUid String resource identifier
+    * @return JSONObject meta data
+    */
+   public JSONObject get(final String resourceUid) {
+      JSONObject jsonMeta = null;
+      Entry entry = null;
+
+      if (_ttlMillis > 0 && !STR.isEmpty(resourceUid)) {
+         synchronized (_entries) {
+            entry = _entries.get(resourceUid);
+
+            if (entry != null && entry.expires <= System.currentTimeMillis()) {
+               _entries.remove(resourceUid);
+               entry = null;
+            }
+         }
+
+         if (entry != null) {
+            jsonMeta = (JSONObject) JSONUtil.copy(entry.meta);
+            _hits.incrementAndGet();
+         } else {
+            _misses.incrementAndGet();
+         }
+      }
+
+      return jsonMeta;
+   }
+
+   /**
+    * Get the resource's generation, taken before the meta data is read and
+    * given to "put".
+    *
+    * @param resourceUid String resource identifier
+    * @return long generation
+    */
+   public long getGeneration(final String resourceUid) {
+      return _generations.get(this.getStripe(resourceUid));
+   }
+
+   /**
+    * Save a copy of meta data that was read. It is not saved if the meta data
+    * was updated or removed since "generation".
+    *
+    * @param resourceUid String resource identifier
+    * @param generation long resource's generation, from before the read
+    * @param jsonMeta JSONObject meta data
+    */
+   public void put(final String resourceUid, final long generation, final JSONObject jsonMeta) {
+      Entry entry = null;
+
+      if (_ttlMillis > 0 && !STR.isEmpty(resourceUid) && jsonMeta != null) {
+         entry = new Entry((JSONObject) JSONUtil.copy(jsonMeta), System.currentTimeMillis() + _ttlMillis);
+
+         synchronized (_entries) {
+            if (_generations.get(this.getStripe(resourceUid)) == generation) {
+               _entries.put(resourceUid, entry);
+            }
+         }
+      }
+
+      return;
+   }
+
+   /**
+    * Save a copy of meta data that was written (write-through). Reads that
+    * started before will not save their meta data.
+    *
+    * @param resourceUid String resource identifier
+    * @param jsonMeta JSONObject meta data
+    */
+   public void update(final String resourceUid, final JSONObject jsonMeta) {
+      Entry entry = null;
+
+      if (!STR.isEmpty(resourceUid) && jsonMeta != null) {
+         entry = new Entry((JSONObject) JSONUtil.copy(jsonMeta), System.currentTimeMillis() + _ttlMillis);
+
+         synchronized (_entries) {
+            _generations.incrementAndGet(this.getStripe(resourceUid));
+
+            if (_ttlMillis > 0) {
+               _entries.put(resourceUid, entry);
+            }
+         }
+      }
+
+      return;
+   }
+
+   /**
+    * Remove the meta data, the resource was changed or deleted. Reads that
+    * started before will not save their meta data.
+    *
+    * @param resourceUid String resource identifier
+    */
+   public void remove(final String resourceUid) {
+      if (!STR.isEmpty(resourceUid)) {
+         synchronized (_entries) {
+            _generations.incrementAndGet(this.getStripe(resourceUid));
+
+            _entries.remove(resourceUid);
+         }
+      }
+
+      return;
+   }
+
+   /**
+    * Get the cache metrics
+    *
+    * <pre>
+    * JSON output:
+    * {
+    *   "ttl": 30,
+    *   "max": 10000,
+    *   "entries": 1234,
+    *   "hits": 56789,
+    *   "misses": 2345
+    * }
+    * </pre>
+    *
+    * @return JSONObject metrics
+    */
+   public JSONObject getMetrics() {
+      JSONObject jsonOutput = null;
+
+      jsonOutput = new JSONObject();
+      jsonOutput.put("ttl", _ttlMillis / 1000L);
+      jsonOutput.put("max", _maxEntries);
+
+      synchronized (_entries) {
+         jsonOutput.put("entries", _entries.size());
+      }
+
+      jsonOutput.put("hits", _hits.get());
+      jsonOutput.put("misses", _misses.get());
+
+      return jsonOutput;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Get the generation stripe of the resource
+    *
+    * @param resourceUid String resource identifier
+    * @return int stripe
+    */
+   private int getStripe(final String resourceUid) {
+      return (resourceUid == null ? 0 : resourceUid.hashCode() & 0x7fffffff) % STRIPES;
+   }
+
+   private static class Entry {
+
+      private final JSONObject meta;
+      private final long expires;
+
+      Entry(final JSONObject meta, final long expires) {
+         this.meta = meta;
+         this.expires = expires;
+      }
+   }
+}
@@ -19,12 +19,16 @@ import java.util.logging.Level;
 import org.json.simple.JSONObject;
 
 /**
- * Meta Data Handler ... data about the JSON data
+ * Meta Data Handler ... data about the JSON data. Meta data is cached by
+ * resource uid (MetaCache): "read" uses the cache. Only the "meta" object is
+ * written, by the Resources Handler "replace" operation with the param "set",
+ * which updates the cache while it holds the resource lock.
  *
  * @author Scott Fehrman, ForgeRock, Inc.
  */
 public class MetaHandler extends JaxrsHandler {
 
+   private static final MetaCache CACHE = new MetaCache(); // shared by reloaded handlers
    private final String CLASS = this.getClass().getName();
    private final String[] _attrRequired = {ConstantsIF.NAME, // UMA resource set
       ConstantsIF.TYPE // UMA resource set
@@ -50,6 +54,41 @@ public class MetaHandler extends JaxrsHandler {
       return;
    }
 
+   /**
+    * Remove the resource's cached meta data. Used when the resource document
+    * is replaced or deleted by another handler.
+    *
+    * @param resourceUid String resource identifier
+    */
+   public static void invalidate(final String resourceUid) {
+      CACHE.remove(resourceUid);
+
+      return;
+   }
+
+   /**
+    * Save the resource's meta data, it was written by the Resources Handler
+    * "replace" operation with the param "set". Called while the resource lock
+    * is held, writes are saved in the order they were made.
+    *
+    * @param resourceUid String resource identifier
+    * @param jsonMeta JSONObject meta data, empty if it was removed
+    */
+   static void update(final String resourceUid, final JSONObject jsonMeta) {
+      CACHE.update(resourceUid, jsonMeta);
+
+      return;
+   }
+
+   /**
+    * Get the meta data cache metrics
+    *
+    * @return JSONObject metrics
+    */
+   public static JSONObject getMetrics() {
+      return CACHE.getMetrics();
+   }
+
    /*
     * ================= PROTECTED METHODS =================
     */
@@ -120,7 +159,10 @@ public class MetaHandler extends JaxrsHandler {
    @Override
    protected OperationIF read(OperationIF operInput) {
       boolean error = false;
+      boolean cached = false;
+      long generation = 0L;
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String resourceUid = null;
       OperationIF operOutput = null;
       JSONObject jsonOutput = null;
       JSONObject jsonMeta = null;
@@ -136,18 +178,34 @@ public class MetaHandler extends JaxrsHandler {
 
       operOutput = new Operation(OperationIF.TYPE.READ);
 
-      try {
-         this.setDatabaseAndCollection(operInput, ConfigIF.RS_NOSQL_DATABASE,
-            ConfigIF.RS_NOSQL_COLLECTIONS_RESOURCES_NAME);
-      } catch (Exception ex) {
-         error = true;
-         operOutput = new Operation(OperationIF.TYPE.READ);
-         operOutput.setError(true);
-         operOutput.setState(STATE.ERROR);
-         operOutput.setStatus(ex.getMessage());
+      resourceUid = JSON.getString(operInput.getJSON(), ConstantsIF.UID);
+
+      generation = CACHE.getGeneration(resourceUid); // before the database is read
+
+      jsonMeta = CACHE.get(resourceUid);
+
+      if (jsonMeta != null) {
+         cached = true;
+
+         jsonWrapData = new JSONObject();
+         jsonWrapData.put(ConstantsIF.DATA, jsonMeta);
+
+         operOutput.setState(STATE.SUCCESS);
+         operOutput.setJSON(jsonWrapData);
+      } else {
+         try {
+            this.setDatabaseAndCollection(operInput, ConfigIF.RS_NOSQL_DATABASE,
+               ConfigIF.RS_NOSQL_COLLECTIONS_RESOURCES_NAME);
+         } catch (Exception ex) {
+            error = true;
+            operOutput = new Operation(OperationIF.TYPE.READ);
+            operOutput.setError(true);
+            operOutput.setState(STATE.ERROR);
+            operOutput.setStatus(ex.getMessage());
+         }
       }
 
-      if (!error) {
+      if (!cached && !error) {
          operOutput = _MongoDAO.execute(operInput);
 
          /*
@@ -162,6 +220,10 @@ public class MetaHandler extends JaxrsHandler {
                jsonMeta = new JSONObject();
             }
 
+            if (operOutput.getState() == STATE.SUCCESS) {
+               CACHE.put(resourceUid, generation, jsonMeta);
+            }
+
             jsonWrapData = new JSONObject();
             jsonWrapData.put(ConstantsIF.DATA, jsonMeta);
 
@@ -229,8 +291,10 @@ public class MetaHandler extends JaxrsHandler {
       }
 
       if (!error) {
-         operOutput.setState(STATE.SUCCESS);
+         operOutput.setState(STATE.SUCCESS); // cache updated by the Resources Handler
          operOutput.setStatus("Replaced meta");
+      } else {
+         CACHE.remove(resourceUid);
       }
 
       if (_logger.isLoggable(DEBUG_LEVEL)) {
@@ -272,13 +336,14 @@ public class MetaHandler extends JaxrsHandler {
       try {
          this.deleteImpl(resourceUid);
       } catch (Exception ex) {
+         CACHE.remove(resourceUid);
          operOutput.setError(true);
          operOutput.setState(STATE.ERROR);
          operOutput.setStatus(ex.getMessage());
       }
 
       if (!operOutput.isError()) {
-         operOutput.setState(STATE.SUCCESS);
+         operOutput.setState(STATE.SUCCESS); // cache updated by the Resources Handler
          operOutput.setStatus("Deleted meta");
       }
 
@@ -338,6 +403,11 @@ public class MetaHandler extends JaxrsHandler {
          }
       }
 
+      if (!this.isError()) {
+         CACHE.configure(this.getLong(json, ConfigIF.RS_META_CACHE_TTL, MetaCache.DEFAULT_TTL),
+            (int) this.getLong(json, ConfigIF.RS_META_CACHE_MAX, MetaCache.DEFAULT_MAX_ENTRIES));
+      }
+
       if (!this.isError()) {
          this.setState(STATE.READY);
       } else {
@@ -351,6 +421,34 @@ public class MetaHandler extends JaxrsHandler {
       return;
    }
 
+   /**
+    * Get a number from the configuration, the default is used if the value is
+    * empty or not a number
+    *
+    * @param json JSONObject configuration
+    * @param name String "dot" delimited name
+    * @param defaultValue long default value
+    * @return long configuration value
+    */
+   private long getLong(final JSONObject json, final String name, final long defaultValue) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      long value = defaultValue;
+      String str = null;
+
+      str = JSON.getString(json, name);
+
+      if (!STR.isEmpty(str)) {
+         try {
+            value = Long.parseLong(str);
+         } catch (NumberFormatException ex) {
+            _logger.log(Level.WARNING, "{0}: Config attribute ''{1}'' is not a number, using {2}",
+               new Object[]{METHOD, name, defaultValue});
+         }
+      }
+
+      return value;
+   }
+
    /**
     * Check for required attributes in the metadata JSON payload
     *
@@ -394,10 +492,9 @@ public class MetaHandler extends JaxrsHandler {
    }
 
    /**
-    * Implementation of the "replace" operation. Read the existing entry using
-    * the "uid" The returned entry contains more then just the "meta" object
-    * Replace the "meta" object. DO NOT change any other section / object Save
-    * (replace) the entry.
+    * Implementation of the "replace" operation. Only the "meta" object is
+    * changed, using the "replace" operation of the Resources Handler with the
+    * param "set". DO NOT change any other section / object.
     *
     * @param resourceUid String unique identifier for a resource
     * @param jsonMeta JSONObject meta data for the resource
@@ -405,13 +502,6 @@ public class MetaHandler extends JaxrsHandler {
     */
    private void replaceImpl(final String resourceUid, final JSONObject jsonMeta) throws Exception {
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
-      OperationIF readInput = null;
-      OperationIF readOutput = null;
-      OperationIF replaceInput = null;
-      OperationIF replaceOutput = null;
-      JSONObject jsonInput = null;
-      JSONObject jsonOutput = null;
-      JSONObject jsonData = null;
 
       _logger.entering(CLASS, METHOD);
 
@@ -427,46 +517,7 @@ public class MetaHandler extends JaxrsHandler {
          jsonMeta.put(ConstantsIF.DISCOVERABLE, false);
       }
 
-      jsonInput = new JSONObject();
-      jsonInput.put(ConstantsIF.UID, resourceUid);
-
-      readInput = new Operation(OperationIF.TYPE.READ);
-      readInput.setJSON(jsonInput);
-
-      this.setDatabaseAndCollection(readInput, ConfigIF.RS_NOSQL_DATABASE,
-         ConfigIF.RS_NOSQL_COLLECTIONS_RESOURCES_NAME);
-
-      readOutput = _MongoDAO.execute(readInput);
-
-      if (readOutput != null && !readOutput.isError()) {
-         jsonOutput = readOutput.getJSON();
-
-         jsonData = JSON.getObject(jsonOutput, ConstantsIF.DATA);
-
-         if (jsonData != null) {
-            jsonData.put(ConstantsIF.META, jsonMeta);
-
-            jsonInput.put(ConstantsIF.DATA, jsonData);
-
-            replaceInput = new Operation(OperationIF.TYPE.REPLACE);
-            replaceInput.setJSON(jsonInput);
-
-            this.setDatabaseAndCollection(replaceInput, ConfigIF.RS_NOSQL_DATABASE,
-               ConfigIF.RS_NOSQL_COLLECTIONS_RESOURCES_NAME);
-
-            replaceOutput = _MongoDAO.execute(replaceInput);
-
-            if (replaceOutput.isError()) {
-               throw new Exception(
-                  METHOD + ": " + replaceOutput.getState().toString() + ": " 
-                     + replaceOutput.getStatus());
-            }
-         }
-      } else {
-         throw new Exception(METHOD + ": " 
-            + readOutput == null ? "Output from DAO.execute() is null"
-            : readOutput.getState().toString() + ": " + readOutput.getStatus());
-      }
+      this.setMeta(resourceUid, jsonMeta, null);
 
       _logger.exiting(CLASS, METHOD);
 
@@ -474,8 +525,9 @@ public class MetaHandler extends JaxrsHandler {
    }
 
    /**
-    * Implementation of the "delete" operation. Read the existing entry using
-    * the "uid"
+    * Implementation of the "delete" operation. Read the "register" and
+    * "version" of the existing entry using the "uid". Remove the "meta" object
+    * if the resource is not registered and the version has not changed.
     *
     * @param resourceUid String unique identifier for a resource
     * @throws Exception
@@ -483,12 +535,10 @@ public class MetaHandler extends JaxrsHandler {
    private void deleteImpl(final String resourceUid) throws Exception {
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
       String registerId = null;
+      Number version = null;
       OperationIF readInput = null;
       OperationIF readOutput = null;
-      OperationIF deleteInput = null;
-      OperationIF deleteOutput = null;
       JSONObject jsonInput = null;
-      JSONObject jsonOutput = null;
       JSONObject jsonData = null;
 
       _logger.entering(CLASS, METHOD);
@@ -504,42 +554,70 @@ public class MetaHandler extends JaxrsHandler {
       readInput = new Operation(OperationIF.TYPE.READ);
       readInput.setJSON(jsonInput);
 
-      this.setDatabaseAndCollection(readInput, ConfigIF.RS_NOSQL_DATABASE,
-         ConfigIF.RS_NOSQL_COLLECTIONS_RESOURCES_NAME);
-
-      readOutput = _MongoDAO.execute(readInput);
+      readOutput = this.getHandler(JaxrsHandlerIF.HANDLER_RESOURCES).process(readInput);
 
       if (readOutput != null && !readOutput.isError()) {
-         jsonOutput = readOutput.getJSON();
-
-         jsonData = JSON.getObject(jsonOutput, ConstantsIF.DATA);
+         jsonData = JSON.getObject(readOutput.getJSON(), ConstantsIF.DATA);
 
          if (jsonData != null) {
             registerId = JSON.getString(jsonData, ConstantsIF.REGISTER);
-            if (jsonData.containsKey(ConstantsIF.META) && STR.isEmpty(registerId)) {
-               jsonData.remove(ConstantsIF.META);
-
-               jsonInput.put(ConstantsIF.DATA, jsonData);
-
-               deleteInput = new Operation(OperationIF.TYPE.REPLACE);
-               deleteInput.setJSON(jsonInput);
+            version = JSON.getNumber(jsonData, ResourcesHandler.VERSION);
 
-               this.setDatabaseAndCollection(deleteInput, ConfigIF.RS_NOSQL_DATABASE,
-                  ConfigIF.RS_NOSQL_COLLECTIONS_RESOURCES_NAME);
-
-               deleteOutput = _MongoDAO.execute(deleteInput);
-
-               if (deleteOutput.isError()) {
-                  throw new Exception(
-                     METHOD + ": " + deleteOutput.getState().toString() + ": " + deleteOutput.getStatus());
-               }
+            if (STR.isEmpty(registerId)) {
+               this.setMeta(resourceUid, null, version != null ? version : 0L);
             } else {
                throw new Exception("The resource is 'registered', can not delete meta");
             }
          }
       } else {
-         throw new Exception(METHOD + ": " + readOutput == null ? "Output from DAO.execute() is null"
-            : readOutput.getState().toString() + ": " + readOutput.getStatus());
+         throw new Exception(METHOD + ": " + (readOutput == null ? "Output from process() is null"
+            : readOutput.getState().toString() + ": " + readOutput.getStatus()));
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+
+   /**
+    * Set or remove the "meta" object of the resource, only that object is
+    * written.
+    *
+    * @param resourceUid String unique identifier for a resource
+    * @param jsonMeta JSONObject meta data, null removes the "meta" object
+    * @param version Number expected resource version, null if not checked
+    * @throws Exception
+    */
+   private void setMeta(final String resourceUid, final JSONObject jsonMeta, final Number version)
+      throws Exception {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      OperationIF setInput = null;
+      OperationIF setOutput = null;
+      JSONObject jsonInput = null;
+      JSONObject jsonData = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      jsonData = new JSONObject();
+      jsonData.put(ConstantsIF.META, jsonMeta);
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.UID, resourceUid);
+      jsonInput.put(ConstantsIF.DATA, jsonData);
+
+      if (version != null) {
+         jsonInput.put(ResourcesHandler.VERSION, version);
+      }
+
+      setInput = new Operation(OperationIF.TYPE.REPLACE);
+      setInput.setJSON(jsonInput);
+      setInput.setParam(ResourcesHandler.PARAM_SET, ConstantsIF.META);
+
+      setOutput = this.getHandler(JaxrsHandlerIF.HANDLER_RESOURCES).process(setInput);
+
+      if (setOutput.isError()) {
+         throw new Exception(
+            METHOD + ": " + setOutput.getState().toString() + ": " + setOutput.getStatus());
       }
 
       _logger.exiting(CLASS, METHOD);
@@ -13,18 +13,43 @@ import com.forgerock.frdp.dao.mongo.MongoFactory;
 import com.forgerock.frdp.handler.HandlerManagerIF;
 import com.forgerock.frdp.resourceserver.ConfigIF;
 import com.forgerock.frdp.utils.JSON;
+import com.forgerock.frdp.utils.STR;
 import java.util.Map;
 import org.json.simple.JSONObject;
 
 /**
  * Resource Handler
  *
+ * The "replace" operation param "set" names one attribute of "data", such as
+ * "meta", "content" or "register". Only that attribute is changed, the rest
+ * of the stored document is kept. Each write increments "data.version". A
+ * "replace" without "set" writes the whole "data". Either may include the
+ * expected version ("version" for "set", "data.version" for a whole
+ * document), the write fails if it has changed; without it the write is not
+ * checked.
+ *
+ * The Mongo DAO only replaces whole documents, it has no update filtered on
+ * the version. The stored document is read and written back under a striped
+ * lock, keyed by "uid", which only serializes the writes of this Resource
+ * Server. Writes from two Resource Servers can still overwrite each other.
+ *
  * @author Scott Fehrman, ForgeRock, Inc.
  */
 public class ResourcesHandler extends JaxrsHandler {
 
+   public static final String PARAM_SET = "set";
+   public static final String VERSION = "version";
+
+   private static final int LOCK_STRIPES = 64;
+   private static final Object[] LOCKS = new Object[LOCK_STRIPES]; // shared by reloaded handlers
    private final String CLASS = this.getClass().getName();
 
+   static {
+      for (int i = 0; i < LOCK_STRIPES; i++) {
+         LOCKS[i] = new Object();
+      }
+   }
+
    /**
     * Constructor
     *
@@ -294,16 +319,29 @@ public class ResourcesHandler extends JaxrsHandler {
    }
 
    /**
-    * Override interface to support the "replace" operation
+    * Override interface to support the "replace" operation. Without the param
+    * "set" the whole document is replaced. The version is incremented, an
+    * expected version is checked if given.
     *
     * <pre>
     * JSON input ...
     * {
     *   "uid": "...",
     *   "data": {
+    *     "version": 3, // optional, expected "data.version"
     *     ...
     *   }
     * }
+    * JSON input, param "set" is "meta" ...
+    * {
+    *   "uid": "...",
+    *   "version": 3, // optional, expected "data.version"
+    *   "data": {
+    *     "meta": { ... } // null or missing, remove the attribute
+    *   }
+    * }
+    * JSON output ...
+    * { "uid": "...", "version": 4 }
     * </pre>
     *
     * @param operInput OperationIF input for replace operation
@@ -313,7 +351,9 @@ public class ResourcesHandler extends JaxrsHandler {
    protected OperationIF replace(OperationIF operInput) {
       boolean error = false;
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String resourceUid = null;
       OperationIF operOutput = null;
+      JSONObject jsonMeta = null;
 
       _logger.entering(CLASS, METHOD);
 
@@ -336,7 +376,26 @@ public class ResourcesHandler extends JaxrsHandler {
       }
 
       if (!error) {
-         operOutput = _MongoDAO.execute(operInput);
+         resourceUid = JSON.getString(operInput.getJSON(), ConstantsIF.UID);
+
+         synchronized (this.getLock(resourceUid)) {
+            if (!STR.isEmpty(operInput.getParam(PARAM_SET))) {
+               operOutput = this.setImpl(operInput);
+            } else {
+               operOutput = this.replaceImpl(operInput);
+            }
+
+            /*
+             * Update the meta data cache while the lock is held, a slower
+             * writer can not put older meta data back
+             */
+            if (!operOutput.isError() && ConstantsIF.META.equals(operInput.getParam(PARAM_SET))) {
+               jsonMeta = JSON.getObject(operInput.getJSON(), ConstantsIF.DATA + "." + ConstantsIF.META);
+               MetaHandler.update(resourceUid, jsonMeta != null ? jsonMeta : new JSONObject());
+            } else {
+               MetaHandler.invalidate(resourceUid);
+            }
+         }
       }
 
       if (_logger.isLoggable(DEBUG_LEVEL)) {
@@ -391,6 +450,8 @@ public class ResourcesHandler extends JaxrsHandler {
 
       if (!error) {
          operOutput = _MongoDAO.execute(operInput);
+
+         MetaHandler.invalidate(JSON.getString(operInput.getJSON(), ConstantsIF.UID));
       }
 
       if (_logger.isLoggable(DEBUG_LEVEL)) {
@@ -407,6 +468,252 @@ public class ResourcesHandler extends JaxrsHandler {
    /*
     * =============== PRIVATE METHODS ===============
     */
+   /**
+    * Change one attribute of the stored "data", increment the version. The
+    * caller holds the resource lock.
+    *
+    * @param operInput OperationIF replace operation, with the param "set"
+    * @return OperationIF output, the "uid" and the new "version"
+    */
+   private OperationIF setImpl(final OperationIF operInput) {
+      long version = 0L;
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String resourceUid = null;
+      String attr = null;
+      Object value = null;
+      Number expected = null;
+      OperationIF readOutput = null;
+      OperationIF operOutput = null;
+      JSONObject jsonInput = null;
+      JSONObject jsonData = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      attr = operInput.getParam(PARAM_SET);
+      jsonInput = operInput.getJSON();
+      resourceUid = JSON.getString(jsonInput, ConstantsIF.UID);
+      expected = JSON.getNumber(jsonInput, VERSION);
+
+      jsonData = JSON.getObject(jsonInput, ConstantsIF.DATA);
+      value = jsonData != null ? jsonData.get(attr) : null;
+
+      readOutput = this.readStored(resourceUid);
+
+      jsonData = readOutput.getState() == STATE.SUCCESS
+         ? JSON.getObject(readOutput.getJSON(), ConstantsIF.DATA) : null;
+
+      if (jsonData == null) {
+         operOutput = this.getReadError(resourceUid, readOutput);
+      } else {
+         version = this.getVersion(jsonData);
+
+         if (expected != null && expected.longValue() != version) {
+            operOutput = this.getConflict(resourceUid, expected.longValue(), version);
+         } else {
+            if (value != null) {
+               jsonData.put(attr, value);
+            } else {
+               jsonData.remove(attr);
+            }
+
+            operOutput = this.write(resourceUid, jsonData, version + 1L);
+         }
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+
+   /**
+    * Replace the stored "data", increment the version. If the input "data"
+    * has a "version" it must be the stored version (zero if it does not have
+    * one), otherwise the replace fails: it would undo a change made by another
+    * writer of this Resource Server. The caller holds the resource lock.
+    *
+    * @param operInput OperationIF replace operation, without the param "set"
+    * @return OperationIF output, the "uid" and the new "version"
+    */
+   private OperationIF replaceImpl(final OperationIF operInput) {
+      long version = 0L;
+      long expected = 0L;
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String resourceUid = null;
+      OperationIF readOutput = null;
+      OperationIF operOutput = null;
+      JSONObject jsonData = null;
+      JSONObject jsonStored = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      resourceUid = JSON.getString(operInput.getJSON(), ConstantsIF.UID);
+      jsonData = JSON.getObject(operInput.getJSON(), ConstantsIF.DATA);
+
+      readOutput = this.readStored(resourceUid);
+
+      jsonStored = readOutput.getState() == STATE.SUCCESS
+         ? JSON.getObject(readOutput.getJSON(), ConstantsIF.DATA) : null;
+
+      if (jsonStored == null || jsonData == null) {
+         operOutput = this.getReadError(resourceUid, readOutput);
+      } else {
+         version = this.getVersion(jsonStored);
+         expected = jsonData.containsKey(VERSION) ? this.getVersion(jsonData) : version; // not checked
+
+         if (expected != version) {
+            operOutput = this.getConflict(resourceUid, expected, version);
+         } else {
+            operOutput = this.write(resourceUid, jsonData, version + 1L);
+         }
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+
+   /**
+    * Read the stored resource document
+    *
+    * @param resourceUid String resource identifier
+    * @return OperationIF read output
+    */
+   private OperationIF readStored(final String resourceUid) {
+      JSONObject jsonInput = null;
+      OperationIF readInput = null;
+      OperationIF readOutput = null;
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.UID, resourceUid);
+
+      readInput = new Operation(OperationIF.TYPE.READ);
+      readInput.setJSON(jsonInput);
+
+      try {
+         this.setDatabaseAndCollection(readInput, ConfigIF.RS_NOSQL_DATABASE,
+            ConfigIF.RS_NOSQL_COLLECTIONS_RESOURCES_NAME);
+
+         readOutput = _MongoDAO.execute(readInput);
+      } catch (Exception ex) {
+         readOutput = new Operation(OperationIF.TYPE.READ);
+         readOutput.setError(true);
+         readOutput.setState(STATE.ERROR);
+         readOutput.setStatus(ex.getMessage());
+      }
+
+      return readOutput;
+   }
+
+   /**
+    * Write the resource document with a new version
+    *
+    * @param resourceUid String resource identifier
+    * @param jsonData JSONObject document "data"
+    * @param version long new version
+    * @return OperationIF output, the "uid" and the new "version"
+    */
+   private OperationIF write(final String resourceUid, final JSONObject jsonData, final long version) {
+      JSONObject jsonInput = null;
+      JSONObject jsonOutput = null;
+      OperationIF replaceInput = null;
+      OperationIF operOutput = null;
+
+      jsonData.put(VERSION, version);
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.UID, resourceUid);
+      jsonInput.put(ConstantsIF.DATA, jsonData);
+
+      replaceInput = new Operation(OperationIF.TYPE.REPLACE);
+      replaceInput.setJSON(jsonInput);
+
+      try {
+         this.setDatabaseAndCollection(replaceInput, ConfigIF.RS_NOSQL_DATABASE,
+            ConfigIF.RS_NOSQL_COLLECTIONS_RESOURCES_NAME);
+
+         operOutput = _MongoDAO.execute(replaceInput);
+      } catch (Exception ex) {
+         operOutput = new Operation(OperationIF.TYPE.REPLACE);
+         operOutput.setError(true);
+         operOutput.setState(STATE.ERROR);
+         operOutput.setStatus(ex.getMessage());
+      }
+
+      if (!operOutput.isError()) {
+         jsonOutput = new JSONObject();
+         jsonOutput.put(ConstantsIF.UID, resourceUid);
+         jsonOutput.put(VERSION, version);
+
+         operOutput.setJSON(jsonOutput);
+      }
+
+      return operOutput;
+   }
+
+   /**
+    * Get the output for a resource that could not be read
+    *
+    * @param resourceUid String resource identifier
+    * @param readOutput OperationIF read output
+    * @return OperationIF replace output
+    */
+   private OperationIF getReadError(final String resourceUid, final OperationIF readOutput) {
+      OperationIF operOutput = null;
+
+      operOutput = new Operation(OperationIF.TYPE.REPLACE);
+      operOutput.setError(true);
+      operOutput.setState(readOutput.isError() ? readOutput.getState() : STATE.NOTEXIST);
+      operOutput.setStatus("Could not read resource, uid='" + resourceUid + "': "
+         + readOutput.getStatus());
+
+      return operOutput;
+   }
+
+   /**
+    * Get the output for a version conflict
+    *
+    * @param resourceUid String resource identifier
+    * @param expected long version the caller read
+    * @param version long stored version
+    * @return OperationIF replace output
+    */
+   private OperationIF getConflict(final String resourceUid, final long expected, final long version) {
+      OperationIF operOutput = null;
+
+      operOutput = new Operation(OperationIF.TYPE.REPLACE);
+      operOutput.setError(true);
+      operOutput.setState(STATE.FAILED);
+      operOutput.setStatus("Version conflict, uid='" + resourceUid
+         + "', expected " + expected + ", found " + version);
+
+      return operOutput;
+   }
+
+   /**
+    * Get "data.version", zero if it does not exist
+    *
+    * @param jsonData JSONObject document "data"
+    * @return long version
+    */
+   private long getVersion(final JSONObject jsonData) {
+      Number number = null;
+
+      number = JSON.getNumber(jsonData, VERSION);
+
+      return number != null ? number.longValue() : 0L;
+   }
+
+   /**
+    * Get the lock stripe for the resource. Writes to the same resource share a
+    * lock, most writes to different resources do not.
+    *
+    * @param resourceUid String resource identifier
+    * @return Object lock
+    */
+   private Object getLock(final String resourceUid) {
+      return LOCKS[(resourceUid == null ? 0 : resourceUid.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+   }
+
    /**
     * Initialize object instance
     */
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.handler;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs at most one call per key at a time. The first caller for a key runs
+ * the call on its own thread, callers for the same key that arrive while it
+ * is running wait and get the same result (or exception). Different keys run
+ * in parallel. A call is not cached, the next caller after it completes runs
+ * a new call.
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ * @param <T> result type
+ */
+public class SingleFlight<T> {
+
+   private final ConcurrentMap<String, FutureTask<T>> _flights = new ConcurrentHashMap<>();
+   private final AtomicLong _shared = new AtomicLong(0L);
+
+   /**
+    * Run the call for the key, or wait for the call that is already running
+    *
+    * @param key String flight key, for example the owner
+    * @param call Callable work to run if there is no flight for the key
+    * @return T result of the call
+    * @throws Exception the call failed or the wait was interrupted
+    */
+   public T execute(final String key, final Callable<T> call) throws Exception {
+      T result = null;
+      FutureTask<T> task = null;
+      FutureTask<T> running = null;
+
+      task = new FutureTask<>(call);
+
+      running = _flights.putIfAbsent(key, task);
+
+      if (running == null) {
+         try {
+            task.run();
+         } finally {
+            _flights.remove(key, task);
+         }
+         running = task;
+      } else {
+         _shared.incrementAndGet();
+      }
+
+      try {
+         result = running.get();
+      } catch (ExecutionException ex) {
+         if (ex.getCause() instanceof Exception) {
+            throw (Exception) ex.getCause();
+         }
+         throw ex;
+      }
+
+      return result;
+   }
+
+   /**
+    * Get the number of keys with a running call
+    *
+    * @return int running calls
+    */
+   public int getInFlight() {
+      return _flights.size();
+   }
+
+   /**
+    * Get the number of callers that waited for, and shared, a running call
+    *
+    * @return long shared results
+    */
+   public long getShared() {
+      return _shared.get();
+   }
+}
@@ -17,7 +17,18 @@ import com.forgerock.frdp.resourceserver.handler.JaxrsHandler;
 import com.forgerock.frdp.utils.JSON;
 import com.forgerock.frdp.utils.STR;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -28,23 +39,62 @@ import org.json.simple.JSONObject;
  * This feature IS NOT part of the UMA 2.0 specification, this is "value add"
  * functionality of the Resource Server (RS).
  *
+ * The search runs in MongoDB: only the owner's discoverable resources are
+ * read, using the compound index {"data.owner": 1, "data.meta.discoverable":
+ * 1}. The Mongo DAO returns whole documents, it has no projection. A "query"
+ * is not sent to MongoDB: its value is matched ignoring case, which an exact
+ * match in MongoDB would not do. A "query" on an attribute that is stored with
+ * the resource (id, owner, name, description, label, type) is checked before
+ * the registrations are read.
+ *
+ * The UMA registrations of the returned resources are read from the
+ * Authorization Server at the same time, on the pool of threads that
+ * RSContextListener owns and shuts down. A
+ * request has at most "rs.discover.inflight" reads running, and waits at most
+ * "rs.discover.timeout" seconds for all of them. A registration that is not
+ * read in time, or fails, has empty "scopes".
+ *
  * @author Scott Fehrman, ForgeRock, Inc.
  */
 public class DiscoverHandler extends JaxrsHandler {
 
+   private static final String META = ConstantsIF.DATA + "." + ConstantsIF.META + ".";
+   private static final Map<String, String> ATTRIBUTES; // output -> document
+   private static final long DEFAULT_INFLIGHT = 8L;
+   private static final long DEFAULT_TIMEOUT = 10L;
    private final String CLASS = this.getClass().getName();
+   private final ExecutorService _registrations;
    private String _uma_resourceset_path = null;
+   private int _inflight = (int) DEFAULT_INFLIGHT;
+   private long _timeout = DEFAULT_TIMEOUT;
+
+   static {
+      Map<String, String> map = new HashMap<>();
+
+      map.put(ConstantsIF.ID, ConstantsIF.UID);
+      map.put(ConstantsIF.OWNER, ConstantsIF.DATA + "." + ConstantsIF.OWNER);
+      map.put(ConstantsIF.NAME, META + ConstantsIF.NAME);
+      map.put(ConstantsIF.DESCRIPTION, META + ConstantsIF.DESCRIPTION);
+      map.put(ConstantsIF.LABEL, META + ConstantsIF.LABEL);
+      map.put(ConstantsIF.TYPE, META + ConstantsIF.TYPE);
+
+      ATTRIBUTES = Collections.unmodifiableMap(map);
+   }
 
    /**
     * Constructor
     *
     * @param configMgr ConfigurationManagerIF management of configurations
     * @param handlerMgr HandlerManagerIF provides management of Handlers
+    * @param registrations ExecutorService reads the UMA registrations
     */
-   public DiscoverHandler(final ConfigurationManagerIF configMgr, final HandlerManagerIF handlerMgr) {
+   public DiscoverHandler(final ConfigurationManagerIF configMgr, final HandlerManagerIF handlerMgr,
+      final ExecutorService registrations) {
       super(configMgr, handlerMgr);
 
-      String METHOD = "DiscoverHandler(configMgr, handlerMgr)";
+      String METHOD = "DiscoverHandler(configMgr, handlerMgr, registrations)";
+
+      _registrations = registrations;
 
       _logger.entering(CLASS, METHOD);
 
@@ -212,6 +262,13 @@ public class DiscoverHandler extends JaxrsHandler {
          }
       }
 
+      if (!this.isError()) {
+         _inflight = (int) this.getLong(json, ConfigIF.RS_DISCOVER_INFLIGHT, DEFAULT_INFLIGHT);
+         _inflight = _inflight > 0 ? _inflight : (int) DEFAULT_INFLIGHT;
+         _timeout = this.getLong(json, ConfigIF.RS_DISCOVER_TIMEOUT, DEFAULT_TIMEOUT);
+         _timeout = _timeout > 0L ? _timeout : DEFAULT_TIMEOUT;
+      }
+
       if (!this.isError()) {
          this.setState(STATE.READY);
       } else {
@@ -239,7 +296,9 @@ public class DiscoverHandler extends JaxrsHandler {
     *     "operator": "equal",
     *     "attribute": "type",
     *     "value": "healthcare"
-    *   }
+    *   },
+    *   "offset": 0, // OPTIONAL ... results to skip
+    *   "limit": 20 // OPTIONAL ... maximum results
     * }
     *
     * JSON output ...
@@ -264,6 +323,7 @@ public class DiscoverHandler extends JaxrsHandler {
     * @throws Exception
     */
    private OperationIF searchImpl(final OperationIF operInput) throws Exception {
+      boolean error = false;
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
       String owner = null;
       String access_token = null;
@@ -286,10 +346,11 @@ public class DiscoverHandler extends JaxrsHandler {
       access_token = JSON.getString(jsonInput, ConstantsIF.ACCESS_TOKEN);
 
       if (!STR.isEmpty(owner)) {
-         jsonQuery = new JSONObject(); // data.owner == owner
-         jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
-         jsonQuery.put(ConstantsIF.ATTRIBUTE, "data.owner");
-         jsonQuery.put(ConstantsIF.VALUE, owner);
+         jsonQuery = this.getQuery(owner);
+
+         if (_logger.isLoggable(DEBUG_LEVEL)) {
+            _logger.log(DEBUG_LEVEL, "jsonQuery=''{0}''", jsonQuery.toString());
+         }
 
          jsonSearch = new JSONObject();
          jsonSearch.put(ConstantsIF.QUERY, jsonQuery);
@@ -301,7 +362,7 @@ public class DiscoverHandler extends JaxrsHandler {
             this.setDatabaseAndCollection(operMongoInput, ConfigIF.RS_NOSQL_DATABASE,
                ConfigIF.RS_NOSQL_COLLECTIONS_RESOURCES_NAME);
          } catch (Exception ex) {
-            this.setError(true);
+            error = true;
             operOutput = new Operation(OperationIF.TYPE.SEARCH);
             operOutput.setError(true);
             operOutput.setState(STATE.ERROR);
@@ -310,7 +371,7 @@ public class DiscoverHandler extends JaxrsHandler {
             _logger.log(Level.SEVERE, "{0}: {1}", new Object[]{METHOD, ex.getMessage()});
          }
 
-         if (!this.isError()) {
+         if (!error) {
             operMongoOutput = _MongoDAO.execute(operMongoInput);
 
             if (operMongoOutput.getState() == STATE.NOTEXIST) // 404 NOT FOUND
@@ -331,7 +392,8 @@ public class DiscoverHandler extends JaxrsHandler {
 
          jsonOutput = new JSONObject();
          jsonOutput.put(ConstantsIF.DATA,
-            this.filter(this.getDiscoverable(jsonData, access_token), JSON.getObject(jsonInput, ConstantsIF.QUERY)));
+            this.getDiscoverable(jsonData, access_token, JSON.getObject(jsonInput, ConstantsIF.QUERY),
+               this.getOffset(jsonInput), this.getLimit(jsonInput)));
 
          operOutput.setJSON(jsonOutput);
       } else {
@@ -343,12 +405,71 @@ public class DiscoverHandler extends JaxrsHandler {
       return operOutput;
    }
 
+   /**
+    * Build the MongoDB query: the owner's discoverable resources. The
+    * caller's filter is not added, it is matched ignoring case by
+    * "getDiscoverable" and "filter".
+    *
+    * <pre>
+    * JSON output ...
+    * {
+    *   "operator": "and",
+    *   "queries": [
+    *     { "operator": "equal", "attribute": "data.owner", "value": "bjensen" },
+    *     { "operator": "equal", "attribute": "data.meta.discoverable", "value": true }
+    *   ]
+    * }
+    * </pre>
+    *
+    * @param owner String resource owner
+    * @return JSONObject MongoDB query
+    */
+   private JSONObject getQuery(final String owner) {
+      JSONObject jsonQuery = null;
+      JSONArray jsonQueries = null;
+
+      jsonQueries = new JSONArray();
+
+      jsonQueries.add(this.getEqual(ConstantsIF.DATA + "." + ConstantsIF.OWNER, owner));
+      jsonQueries.add(this.getEqual(META + ConstantsIF.DISCOVERABLE, true));
+
+      jsonQuery = new JSONObject();
+      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.AND);
+      jsonQuery.put(ConstantsIF.QUERIES, jsonQueries);
+
+      return jsonQuery;
+   }
+
+   /**
+    * Get an "equal" query
+    *
+    * @param attribute String "dot" delimited attribute
+    * @param value Object value
+    * @return JSONObject query
+    */
+   private JSONObject getEqual(final String attribute, final Object value) {
+      JSONObject jsonQuery = null;
+
+      jsonQuery = new JSONObject();
+      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
+      jsonQuery.put(ConstantsIF.ATTRIBUTE, attribute);
+      jsonQuery.put(ConstantsIF.VALUE, value);
+
+      return jsonQuery;
+   }
+
    /**
     * Post processes the default search results. The JSON Array (results)
     * contains a simpler object with attributes and removes internal reference
     * keys. The resource must be: discoverable attribute == true and register
     * attribute != NULL
     *
+    * The results are filtered, then paged, then enriched with the UMA
+    * registration from the Authorization Server. Only the returned results
+    * cost a call to the Authorization Server. If the filter is on an
+    * attribute that comes from the registration (scopes, icon_uri), every
+    * result is enriched before it is filtered and paged.
+    *
     * <pre>
     * JSON input ...
     * {
@@ -392,22 +513,41 @@ public class DiscoverHandler extends JaxrsHandler {
     *
     * @param jsonInput JSONObject input
     * @param access_token String single sign on access token
+    * @param jsonFilter JSONObject optional filter, may be null
+    * @param offset int results to skip
+    * @param limit int maximum results
     * @return JSONObject output
     */
-   private JSONObject getDiscoverable(final JSONObject jsonInput, final String access_token) {
+   private JSONObject getDiscoverable(final JSONObject jsonInput, final String access_token,
+      final JSONObject jsonFilter, final int offset, final int limit) {
+      boolean local = false;
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
-      String registerId = null;
+      String filterAttr = null;
+      String filterVal = null;
+      String attrVal = null;
       JSONObject jsonOutput = null;
-      JSONObject jsonRegistration = null;
       JSONObject jsonResultInput = null;
-      JSONObject jsonResultOutput = null;
       JSONArray arrayResultsInput = null;
       JSONArray arrayResultsOutput = null;
+      List<JSONObject> listResources = null;
+      List<JSONObject> listResults = null;
 
       _logger.entering(CLASS, METHOD);
 
       jsonOutput = new JSONObject();
-      arrayResultsOutput = new JSONArray();
+      listResources = new ArrayList<>();
+
+      if (jsonFilter != null) {
+         filterAttr = JSON.getString(jsonFilter, ConstantsIF.ATTRIBUTE);
+         filterVal = JSON.getString(jsonFilter, ConstantsIF.VALUE);
+      }
+
+      /*
+       * The filter is "local" if it can be checked on the resource, without
+       * the registration. An incomplete filter matches nothing.
+       */
+      local = jsonFilter == null || STR.isEmpty(filterAttr) || STR.isEmpty(filterVal)
+         || ATTRIBUTES.containsKey(filterAttr);
 
       if (jsonInput != null && !jsonInput.isEmpty()) {
          arrayResultsInput = JSON.getArray(jsonInput, ConstantsIF.RESULTS);
@@ -417,35 +557,17 @@ public class DiscoverHandler extends JaxrsHandler {
                if (obj != null && obj instanceof JSONObject) {
                   jsonResultInput = (JSONObject) obj;
 
-                  if (JSON.getBoolean(jsonResultInput,
-                     ConstantsIF.DATA + "." + ConstantsIF.META + "." + ConstantsIF.DISCOVERABLE)) {
-                     registerId = JSON.getString(jsonResultInput, ConstantsIF.DATA + "." + ConstantsIF.REGISTER);
-
-                     if (!STR.isEmpty(registerId)) {
-                        jsonResultOutput = new JSONObject();
-
-                        jsonResultOutput.put(ConstantsIF.ID, JSON.getString(jsonResultInput, ConstantsIF.UID));
-                        jsonResultOutput.put(ConstantsIF.OWNER,
-                           JSON.getString(jsonResultInput, ConstantsIF.DATA + "." + ConstantsIF.OWNER));
-                        jsonResultOutput.put(ConstantsIF.NAME, JSON.getString(jsonResultInput,
-                           ConstantsIF.DATA + "." + ConstantsIF.META + "." + ConstantsIF.NAME));
-                        jsonResultOutput.put(ConstantsIF.DESCRIPTION, JSON.getString(jsonResultInput,
-                           ConstantsIF.DATA + "." + ConstantsIF.META + "." + ConstantsIF.DESCRIPTION));
-                        jsonResultOutput.put(ConstantsIF.LABEL, JSON.getString(jsonResultInput,
-                           ConstantsIF.DATA + "." + ConstantsIF.META + "." + ConstantsIF.LABEL));
-                        jsonResultOutput.put(ConstantsIF.TYPE, JSON.getString(jsonResultInput,
-                           ConstantsIF.DATA + "." + ConstantsIF.META + "." + ConstantsIF.TYPE));
-                        /*
-                         * Get the UMA registration data
-                         */
-                        jsonRegistration = this.getRegistration(registerId, access_token);
-
-                        jsonResultOutput.put(ConstantsIF.SCOPES,
-                           JSON.getArray(jsonRegistration, ConstantsIF.RESOURCE_SCOPES));
-                        jsonResultOutput.put(ConstantsIF.ICON_URI,
-                           JSON.getString(jsonRegistration, ConstantsIF.ICON_URI));
-
-                        arrayResultsOutput.add(jsonResultOutput);
+                  if (JSON.getBoolean(jsonResultInput, META + ConstantsIF.DISCOVERABLE)
+                     && !STR.isEmpty(JSON.getString(jsonResultInput, ConstantsIF.DATA + "." + ConstantsIF.REGISTER))) {
+                     if (jsonFilter != null && local) {
+                        attrVal = STR.isEmpty(filterAttr) || STR.isEmpty(filterVal)
+                           ? null : JSON.getString(jsonResultInput, ATTRIBUTES.get(filterAttr));
+
+                        if (!STR.isEmpty(attrVal) && attrVal.equalsIgnoreCase(filterVal)) {
+                           listResources.add(jsonResultInput);
+                        }
+                     } else {
+                        listResources.add(jsonResultInput);
                      }
                   }
                }
@@ -453,6 +575,16 @@ public class DiscoverHandler extends JaxrsHandler {
          }
       }
 
+      arrayResultsOutput = new JSONArray();
+
+      if (local) {
+         arrayResultsOutput.addAll(this.getResults(this.getPage(listResources, offset, limit), access_token));
+      } else {
+         listResults = this.getResults(listResources, access_token);
+
+         arrayResultsOutput = this.getPage(this.filter(listResults, filterAttr, filterVal), offset, limit);
+      }
+
       _logger.exiting(CLASS, METHOD);
 
       jsonOutput.put(ConstantsIF.RESULTS, arrayResultsOutput);
@@ -461,6 +593,182 @@ public class DiscoverHandler extends JaxrsHandler {
       return jsonOutput;
    }
 
+   /**
+    * Create the output results from the resources, in the same order. The
+    * UMA registrations are read at the same time, at most "inflight" at once,
+    * all within "timeout" seconds. They share the owner's access token.
+    *
+    * @param listResources List resource documents
+    * @param access_token String single sign on access token
+    * @return List output results
+    */
+   private List<JSONObject> getResults(final List<?> listResources, final String access_token) {
+      long deadline = 0L;
+      long remaining = 0L;
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String registerId = null;
+      JSONObject jsonResource = null;
+      JSONObject jsonResult = null;
+      JSONObject jsonRegistration = null;
+      Semaphore inflight = null;
+      Future<JSONObject> future = null;
+      List<JSONObject> listResults = null;
+      List<Future<JSONObject>> listFutures = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(_timeout);
+      inflight = new Semaphore(_inflight);
+      listResults = new ArrayList<>();
+      listFutures = new ArrayList<>();
+
+      for (Object obj : listResources) {
+         jsonResource = (JSONObject) obj;
+         jsonResult = this.getResult(jsonResource);
+         registerId = JSON.getString(jsonResource, ConstantsIF.DATA + "." + ConstantsIF.REGISTER);
+         future = null;
+
+         try {
+            remaining = deadline - System.nanoTime();
+
+            if (remaining > 0L && inflight.tryAcquire(remaining, TimeUnit.NANOSECONDS)) {
+               future = this.submit(registerId, access_token, inflight);
+            }
+         } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+         }
+
+         listResults.add(jsonResult);
+         listFutures.add(future);
+      }
+
+      for (int i = 0; i < listResults.size(); i++) {
+         future = listFutures.get(i);
+         jsonRegistration = null;
+
+         if (future != null) {
+            try {
+               jsonRegistration = future.get(Math.max(deadline - System.nanoTime(), 0L), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+               future.cancel(true);
+               Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException ex) {
+               future.cancel(true);
+               _logger.log(Level.WARNING, "{0}: Could not read registration for resource ''{1}'': {2}",
+                  new Object[]{METHOD, JSON.getString(listResults.get(i), ConstantsIF.ID),
+                     ex instanceof TimeoutException ? "timeout" : ex.getMessage()});
+            }
+         }
+
+         this.setRegistration(listResults.get(i), jsonRegistration);
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return listResults;
+   }
+
+   /**
+    * Read a UMA registration on the shared pool. The in-flight permit,
+    * already acquired, is released when the read completes. Returns null if
+    * the pool is shut down.
+    *
+    * @param registerId String UMA registered resource identifier
+    * @param access_token String single sign on access token
+    * @param inflight Semaphore in-flight permits of the request
+    * @return Future registration
+    */
+   private Future<JSONObject> submit(final String registerId, final String access_token,
+      final Semaphore inflight) {
+      Future<JSONObject> future = null;
+
+      try {
+         future = _registrations.submit(() -> {
+            try {
+               return this.getRegistration(registerId, access_token);
+            } finally {
+               inflight.release();
+            }
+         });
+      } catch (RejectedExecutionException ex) {
+         inflight.release();
+      } catch (RuntimeException ex) {
+         inflight.release();
+         throw ex;
+      }
+
+      return future;
+   }
+
+   /**
+    * Create an output result from a resource, without the attributes from
+    * its UMA registration
+    *
+    * @param jsonResource JSONObject resource document
+    * @return JSONObject output result
+    */
+   private JSONObject getResult(final JSONObject jsonResource) {
+      JSONObject jsonResultOutput = null;
+
+      jsonResultOutput = new JSONObject();
+
+      jsonResultOutput.put(ConstantsIF.ID, JSON.getString(jsonResource, ConstantsIF.UID));
+      jsonResultOutput.put(ConstantsIF.OWNER,
+         JSON.getString(jsonResource, ConstantsIF.DATA + "." + ConstantsIF.OWNER));
+      jsonResultOutput.put(ConstantsIF.NAME, JSON.getString(jsonResource, META + ConstantsIF.NAME));
+      jsonResultOutput.put(ConstantsIF.DESCRIPTION, JSON.getString(jsonResource, META + ConstantsIF.DESCRIPTION));
+      jsonResultOutput.put(ConstantsIF.LABEL, JSON.getString(jsonResource, META + ConstantsIF.LABEL));
+      jsonResultOutput.put(ConstantsIF.TYPE, JSON.getString(jsonResource, META + ConstantsIF.TYPE));
+
+      return jsonResultOutput;
+   }
+
+   /**
+    * Add the attributes from the UMA registration to an output result. If
+    * the registration could not be read, the "scopes" are empty.
+    *
+    * @param jsonResult JSONObject output result, updated
+    * @param jsonRegistration JSONObject registration, may be null
+    */
+   private void setRegistration(final JSONObject jsonResult, final JSONObject jsonRegistration) {
+      JSONArray arrayScopes = null;
+
+      arrayScopes = JSON.getArray(jsonRegistration, ConstantsIF.RESOURCE_SCOPES);
+
+      jsonResult.put(ConstantsIF.SCOPES, arrayScopes != null ? arrayScopes : new JSONArray());
+      jsonResult.put(ConstantsIF.ICON_URI, JSON.getString(jsonRegistration, ConstantsIF.ICON_URI));
+
+      return;
+   }
+
+   /**
+    * Get a number from the configuration, the default is used if the
+    * attribute is empty or not a number
+    *
+    * @param json JSONObject configuration
+    * @param name String "dot" delimited attribute name
+    * @param defaultValue long default value
+    * @return long configuration value
+    */
+   private long getLong(final JSONObject json, final String name, final long defaultValue) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      long value = defaultValue;
+      String str = null;
+
+      str = JSON.getString(json, name);
+
+      if (!STR.isEmpty(str)) {
+         try {
+            value = Long.parseLong(str);
+         } catch (NumberFormatException ex) {
+            _logger.log(Level.WARNING, "{0}: Config attribute ''{1}'' is not a number: ''{2}''",
+               new Object[]{METHOD, name, str});
+         }
+      }
+
+      return value;
+   }
+
    /**
     * Get "register" data from the Auhorization Server. The registered UMA
     * resource has some attributes that are sourced from the Authorization
@@ -541,80 +849,48 @@ public class DiscoverHandler extends JaxrsHandler {
    }
 
    /**
-    * Filter the results array. Return a new results array that only contains
-    * objects that have an attribute with a specific value.
+    * Filter the output results. Return the results that have an attribute
+    * with a specific value.
     *
     * <pre>
     * JSON input ...
-    * {
-    *   "quantity": X,
-    *   "results": [
-    *     {
-    *       "id": "ff1667c5-ce54-4095-a385-734ab9bcfe3d", // Resource Id
-    *       "owner": "bjensen",
-    *       "name": "Sam Savings",
-    *       "description": "Savings account with spouse",
-    *       "label": "Joint Savings",
-    *       "type": "finance/savings"
-    *     },
-    *     { ... }
-    *   ]
-    * }
-    * JSON filter ...
-    * {
-    *   "attribute": "owner",
-    *   "value": "bjensen"
-    * }
-    *
+    * [
+    *   {
+    *     "id": "ff1667c5-ce54-4095-a385-734ab9bcfe3d", // Resource Id
+    *     "owner": "bjensen",
+    *     "name": "Sam Savings",
+    *     "icon_uri": "https://.../shared/icons/emblem-money.png",
+    *     "type": "finance/savings"
+    *   },
+    *   { ... }
+    * ]
     * </pre>
     *
-    * @param jsonInput JSONObject original results data
-    * @param jsonFilter JSONObject containing filter attribute name and
-    * attribute value
-    * @return JSONObject modified results data
+    * @param listInput List output results
+    * @param filterAttr String filter attribute name
+    * @param filterVal String filter attribute value
+    * @return List matching results
     */
-   private JSONObject filter(final JSONObject jsonInput, final JSONObject jsonFilter) {
+   private List<JSONObject> filter(final List<JSONObject> listInput, final String filterAttr,
+      final String filterVal) {
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
-      String filterAttr = null;
-      String filterVal = null;
       String attrVal = null;
-      JSONObject jsonOutput = null;
-      JSONObject jsonResult = null;
-      JSONArray arrayResultsInput = null;
-      JSONArray arrayResultsOutput = null;
+      List<JSONObject> listOutput = null;
 
       _logger.entering(CLASS, METHOD);
 
-      if (jsonFilter != null) {
-         jsonOutput = new JSONObject();
-         arrayResultsOutput = new JSONArray();
-
-         filterAttr = JSON.getString(jsonFilter, ConstantsIF.ATTRIBUTE);
-         filterVal = JSON.getString(jsonFilter, ConstantsIF.VALUE);
+      listOutput = new ArrayList<>();
 
-         if (!STR.isEmpty(filterAttr) && !STR.isEmpty(filterVal)) {
-            arrayResultsInput = JSON.getArray(jsonInput, ConstantsIF.RESULTS);
-            if (arrayResultsInput != null && !arrayResultsInput.isEmpty()) {
-               for (Object obj : arrayResultsInput) {
-                  if (obj != null && obj instanceof JSONObject) {
-                     jsonResult = (JSONObject) obj;
-                     attrVal = JSON.getString(jsonResult, filterAttr);
+      for (JSONObject jsonResult : listInput) {
+         attrVal = JSON.getString(jsonResult, filterAttr);
 
-                     if (!STR.isEmpty(attrVal) && attrVal.equalsIgnoreCase(filterVal)) {
-                        arrayResultsOutput.add(jsonResult);
-                     }
-                  }
-               }
-            }
+         if (!STR.isEmpty(attrVal) && attrVal.equalsIgnoreCase(filterVal)) {
+            listOutput.add(jsonResult);
          }
-         jsonOutput.put(ConstantsIF.RESULTS, arrayResultsOutput);
-         jsonOutput.put(ConstantsIF.QUANTITY, arrayResultsOutput.size());
-      } else {
-         jsonOutput = jsonInput;
       }
 
       _logger.exiting(CLASS, METHOD);
 
-      return jsonOutput;
+      return listOutput;
    }
 }
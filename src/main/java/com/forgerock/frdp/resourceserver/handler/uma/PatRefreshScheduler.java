@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.handler.uma;
+
+import com.forgerock.frdp.common.ConstantsIF;
+import com.forgerock.frdp.dao.Operation;
+import com.forgerock.frdp.dao.OperationIF;
+import com.forgerock.frdp.handler.HandlerManagerIF;
+import com.forgerock.frdp.resourceserver.handler.JaxrsHandlerIF;
+import com.forgerock.frdp.utils.JSON;
+import com.forgerock.frdp.utils.STR;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Refreshes Protection API Tokens (PAT) before they expire, off the request
+ * path. Every "interval" seconds the "credentials" collection is scanned for
+ * PATs that expire within "window" seconds. Each one is refreshed after a
+ * random delay, up to "jitter" seconds, so refreshes to the Authorization
+ * Server are spread out. The refresh is a "replace" operation on the
+ * ProtectionApiTokenHandler, it is single-flight per owner with the request
+ * path "read". The "window" should be larger than "interval" plus "jitter".
+ * One instance is shared by all requests, it is kept in the servlet context.
+ * The single-flight is per server: every server scans, and may refresh the
+ * same PAT. The refresh reads the credential again and skips it if it was
+ * already refreshed, the random delay makes that the usual case.
+ *
+ * <pre>
+ * JSON metrics:
+ * {
+ *   "interval": 60,
+ *   "window": 300,
+ *   "jitter": 30,
+ *   "scans": 120,
+ *   "due": 14,               // credentials found expiring
+ *   "refreshed": 13,
+ *   "failed": 1,
+ *   "pending": 0,            // waiting for their jitter delay, or running
+ *   "latency": { "lastMillis": 85, "avgMillis": 92, "maxMillis": 310 },
+ *   "lastScan": 1603065600000
+ * }
+ * </pre>
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class PatRefreshScheduler {
+
+   private static final AtomicLong SCANS = new AtomicLong(0L);
+   private static final AtomicLong DUE = new AtomicLong(0L);
+   private static final AtomicLong REFRESHED = new AtomicLong(0L);
+   private static final AtomicLong FAILED = new AtomicLong(0L);
+   private static final AtomicLong NANOS = new AtomicLong(0L);
+   private static final AtomicLong MAX_NANOS = new AtomicLong(0L);
+   private static final AtomicLong LAST_NANOS = new AtomicLong(0L);
+   private static final AtomicLong LAST_SCAN = new AtomicLong(0L);
+   private static volatile PatRefreshScheduler _instance = null;
+   private final String CLASS = this.getClass().getName();
+   private final Logger _logger = Logger.getLogger(this.getClass().getName());
+   private final Supplier<HandlerManagerIF> _handlerMgr;
+   private final ScheduledExecutorService _scheduler;
+   private final long _interval;
+   private final long _window;
+   private final long _jitter;
+   private final Set<String> _pending = ConcurrentHashMap.newKeySet();
+
+   /**
+    * Constructor
+    *
+    * @param handlerMgr Supplier of the current HandlerManagerIF, provides the
+    * PAT handler
+    * @param interval long seconds between scans
+    * @param window long seconds before expiry, when a PAT is refreshed
+    * @param jitter long maximum random delay (seconds) before a refresh
+    */
+   public PatRefreshScheduler(final Supplier<HandlerManagerIF> handlerMgr, final long interval,
+      final long window, final long jitter) {
+      _handlerMgr = handlerMgr;
+      _interval = interval > 0L ? interval : 1L;
+      _window = window > 0L ? window : 0L;
+      _jitter = jitter > 0L ? jitter : 0L;
+      _scheduler = Executors.newScheduledThreadPool(2, new ThreadFactory() {
+         private final AtomicInteger _count = new AtomicInteger(0);
+
+         @Override
+         public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(runnable, "rs-pat-refresh-" + _count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+
+      return;
+   }
+
+   /**
+    * Start scanning. The first scan is delayed by up to "jitter" seconds, so
+    * servers started together do not scan together.
+    */
+   public void start() {
+      long delay = 0L;
+
+      delay = this.getDelay(TimeUnit.SECONDS.toMillis(_interval));
+
+      _scheduler.scheduleWithFixedDelay(this::scan, delay,
+         TimeUnit.SECONDS.toMillis(_interval), TimeUnit.MILLISECONDS);
+
+      _instance = this;
+
+      return;
+   }
+
+   /**
+    * Stop scanning, pending refreshes are cancelled
+    */
+   public void shutdown() {
+      _scheduler.shutdownNow();
+
+      if (_instance == this) {
+         _instance = null;
+      }
+
+      return;
+   }
+
+   /**
+    * Get the refresh metrics
+    *
+    * @return JSONObject metrics
+    */
+   public static JSONObject getMetrics() {
+      long refreshed = REFRESHED.get();
+      long failed = FAILED.get();
+      PatRefreshScheduler instance = _instance;
+      JSONObject jsonOutput = null;
+      JSONObject jsonLatency = null;
+
+      jsonOutput = new JSONObject();
+      jsonOutput.put("enabled", instance != null);
+      jsonOutput.put("interval", instance == null ? 0L : instance._interval);
+      jsonOutput.put("window", instance == null ? 0L : instance._window);
+      jsonOutput.put("jitter", instance == null ? 0L : instance._jitter);
+      jsonOutput.put("scans", SCANS.get());
+      jsonOutput.put("due", DUE.get());
+      jsonOutput.put("refreshed", refreshed);
+      jsonOutput.put("failed", failed);
+      jsonOutput.put("pending", instance == null ? 0 : instance._pending.size());
+
+      jsonLatency = new JSONObject();
+      jsonLatency.put("lastMillis", TimeUnit.NANOSECONDS.toMillis(LAST_NANOS.get()));
+      jsonLatency.put("avgMillis", (refreshed + failed) > 0
+         ? TimeUnit.NANOSECONDS.toMillis(NANOS.get() / (refreshed + failed)) : 0L);
+      jsonLatency.put("maxMillis", TimeUnit.NANOSECONDS.toMillis(MAX_NANOS.get()));
+
+      jsonOutput.put("latency", jsonLatency);
+      jsonOutput.put("lastScan", LAST_SCAN.get());
+
+      return jsonOutput;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Find the PATs that expire within the window, schedule a refresh for each
+    * owner that does not already have one pending. Never throws, an exception
+    * would stop the scans.
+    */
+   private void scan() {
+      long now = 0L;
+      long expires = 0L;
+      long delay = 0L;
+      String METHOD = "scan()";
+      String owner = null;
+      Number number = null;
+      JSONObject jsonInput = null;
+      JSONArray jsonResults = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      now = System.currentTimeMillis();
+
+      SCANS.incrementAndGet();
+      LAST_SCAN.set(now);
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ProtectionApiTokenHandler.BEFORE, now + TimeUnit.SECONDS.toMillis(_window));
+
+      operInput = new Operation(OperationIF.TYPE.SEARCH);
+      operInput.setJSON(jsonInput);
+
+      try {
+         operOutput = this.getHandler().process(operInput);
+
+         if (operOutput.isError()) {
+            _logger.log(Level.WARNING, "{0}: Could not search credentials: {1}",
+               new Object[]{METHOD, operOutput.getStatus()});
+         } else {
+            jsonResults = JSON.getArray(operOutput.getJSON(), ConstantsIF.RESULTS);
+         }
+      } catch (Exception ex) {
+         _logger.log(Level.WARNING, "{0}: {1}", new Object[]{METHOD, ex.getMessage()});
+      }
+
+      if (jsonResults != null) {
+         for (Object obj : jsonResults) {
+            if (obj instanceof JSONObject) {
+               owner = JSON.getString((JSONObject) obj, ConstantsIF.OWNER);
+               number = JSON.getNumber((JSONObject) obj, ProtectionApiTokenHandler.EXPIRES);
+               expires = number != null ? number.longValue() : 0L;
+
+               if (!STR.isEmpty(owner) && _pending.add(owner)) {
+                  DUE.incrementAndGet();
+
+                  /*
+                   * Random delay, but refresh no later than half way to the expiry
+                   */
+                  delay = this.getDelay(expires > now ? (expires - now) / 2L : 0L);
+
+                  this.schedule(owner, delay);
+               }
+            }
+         }
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+
+   /**
+    * Schedule a refresh of the owner's PAT
+    *
+    * @param owner String owner
+    * @param delay long delay (milliseconds)
+    */
+   private void schedule(final String owner, final long delay) {
+      _scheduler.schedule(() -> this.refresh(owner), delay, TimeUnit.MILLISECONDS);
+
+      return;
+   }
+
+   /**
+    * Refresh the owner's PAT, record the latency
+    *
+    * @param owner String owner
+    */
+   private void refresh(final String owner) {
+      long start = 0L;
+      long elapsed = 0L;
+      boolean success = false;
+      String METHOD = "refresh()";
+      JSONObject jsonInput = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      start = System.nanoTime();
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.OWNER, owner);
+      jsonInput.put(ProtectionApiTokenHandler.BEFORE,
+         System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(_window));
+
+      operInput = new Operation(OperationIF.TYPE.REPLACE);
+      operInput.setJSON(jsonInput);
+
+      try {
+         operOutput = this.getHandler().process(operInput);
+
+         if (operOutput.isError()) {
+            _logger.log(Level.WARNING, "{0}: owner ''{1}'': {2}",
+               new Object[]{METHOD, owner, operOutput.getStatus()});
+         } else {
+            success = true;
+         }
+      } catch (Exception ex) {
+         _logger.log(Level.WARNING, "{0}: owner ''{1}'': {2}",
+            new Object[]{METHOD, owner, ex.getMessage()});
+      } finally {
+         _pending.remove(owner);
+      }
+
+      elapsed = System.nanoTime() - start;
+
+      (success ? REFRESHED : FAILED).incrementAndGet();
+      NANOS.addAndGet(elapsed);
+      LAST_NANOS.set(elapsed);
+      MAX_NANOS.accumulateAndGet(elapsed, Math::max);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+
+   /**
+    * Get a random delay, up to "jitter" seconds
+    *
+    * @param limit long maximum delay (milliseconds)
+    * @return long delay (milliseconds)
+    */
+   private long getDelay(final long limit) {
+      long max = 0L;
+
+      max = Math.min(TimeUnit.SECONDS.toMillis(_jitter), limit);
+
+      return max > 0L ? ThreadLocalRandom.current().nextLong(max) : 0L;
+   }
+
+   /**
+    * Get the PAT handler
+    *
+    * @return JaxrsHandlerIF PAT handler
+    * @throws Exception handler does not exist
+    */
+   private JaxrsHandlerIF getHandler() throws Exception {
+      JaxrsHandlerIF handler = null;
+      HandlerManagerIF handlerMgr = null;
+
+      handlerMgr = _handlerMgr.get(); // current handlers, replaced by a reload
+
+      if (handlerMgr == null || !handlerMgr.contains(JaxrsHandlerIF.HANDLER_UMA_PAT)) {
+         throw new Exception("Handler does not exist, handlerId='" + JaxrsHandlerIF.HANDLER_UMA_PAT + "'");
+      }
+
+      handler = (JaxrsHandlerIF) handlerMgr.getHandler(JaxrsHandlerIF.HANDLER_UMA_PAT);
+
+      if (handler == null) {
+         throw new Exception("Handler is null, handlerId='" + JaxrsHandlerIF.HANDLER_UMA_PAT + "'");
+      }
+
+      return handler;
+   }
+}
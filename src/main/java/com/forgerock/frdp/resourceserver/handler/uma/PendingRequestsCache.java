@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.handler.uma;
+
+import com.forgerock.frdp.common.ConstantsIF;
+import com.forgerock.frdp.utils.JSON;
+import com.forgerock.frdp.utils.STR;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Cache of the pending access requests read from the Authorization Server, one
+ * list per resource owner. A list expires after a time-to-live, then it is
+ * read again from the Authorization Server. Requests that this server approves
+ * or denies are removed from the owner's list. A cached list is never changed,
+ * a removal saves a new list.
+ *
+ * A read takes the owner's generation before it reads the Authorization
+ * Server. A removal or invalidation increments the generation, a list read
+ * before it is not saved. Generations are kept for stripes of owners, a
+ * change for one owner may also skip saving a list of another owner.
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class PendingRequestsCache {
+
+   public static final long DEFAULT_TTL = 60L; // seconds
+   public static final int DEFAULT_MAX_OWNERS = 1000;
+   private static final int STRIPES = 64;
+
+   private final String CLASS = this.getClass().getName();
+   private final Logger _logger = Logger.getLogger(this.getClass().getName());
+   private final Map<String, Entry> _entries = new ConcurrentHashMap<>();
+   private final AtomicLongArray _generations = new AtomicLongArray(STRIPES);
+   private final long _ttlMillis;
+   private final int _maxOwners;
+
+   /**
+    * Constructor
+    *
+    * @param ttl long time-to-live, in seconds, less than 1 disables the cache
+    * @param maxOwners int maximum number of owners
+    */
+   public PendingRequestsCache(final long ttl, final int maxOwners) {
+      String METHOD = "PendingRequestsCache()";
+
+      _logger.entering(CLASS, METHOD);
+
+      _ttlMillis = ttl * 1000L;
+      _maxOwners = maxOwners > 0 ? maxOwners : DEFAULT_MAX_OWNERS;
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+
+   /**
+    * Get the owner's pending requests, null if they are not cached or have
+    * expired. The list must not be changed.
+    *
+    * @param owner String resource owner
+    * @return JSONArray pending requests
+    */
+   public JSONArray get(final String owner) {
+      JSONArray requests = null;
+      Entry entry = null;
+
+      if (_ttlMillis > 0 && !STR.isEmpty(owner)) {
+         entry = _entries.get(owner);
+
+         if (entry != null) {
+            if (entry.expires > System.currentTimeMillis()) {
+               requests = entry.requests;
+            } else {
+               _entries.remove(owner, entry);
+            }
+         }
+      }
+
+      return requests;
+   }
+
+   /**
+    * Get the owner's generation, taken before the requests are read and
+    * given to "put".
+    *
+    * @param owner String resource owner
+    * @return long generation
+    */
+   public long getGeneration(final String owner) {
+      return _generations.get(this.getStripe(owner));
+   }
+
+   /**
+    * Save the owner's pending requests, the list must not be changed after it
+    * is saved. The list is not saved if the owner's requests were removed or
+    * invalidated since "generation".
+    *
+    * @param owner String resource owner
+    * @param generation long owner's generation, from before the read
+    * @param requests JSONArray pending requests
+    */
+   public void put(final String owner, final long generation, final JSONArray requests) {
+      if (_ttlMillis > 0 && !STR.isEmpty(owner) && requests != null) {
+         if (_entries.size() >= _maxOwners) {
+            this.purge();
+         }
+
+         _entries.compute(owner, (key, entry) -> _generations.get(this.getStripe(key)) == generation
+            ? new Entry(requests, System.currentTimeMillis() + _ttlMillis) : entry);
+      }
+
+      return;
+   }
+
+   /**
+    * Remove a request from the owner's list, it was approved or denied. The
+    * list keeps its expiry.
+    *
+    * @param owner String resource owner
+    * @param requestId String request identifier ("_id")
+    */
+   public void remove(final String owner, final String requestId) {
+      if (!STR.isEmpty(owner) && !STR.isEmpty(requestId)) {
+         _generations.incrementAndGet(this.getStripe(owner)); // before the list changes
+
+         _entries.computeIfPresent(owner, (key, entry) -> {
+            JSONArray requests = new JSONArray();
+
+            for (Object obj : entry.requests) {
+               if (!(obj instanceof JSONObject
+                  && requestId.equals(JSON.getString((JSONObject) obj, ConstantsIF._ID)))) {
+                  requests.add(obj);
+               }
+            }
+
+            return new Entry(requests, entry.expires);
+         });
+      }
+
+      return;
+   }
+
+   /**
+    * Remove the owner's list, the next search reads it again
+    *
+    * @param owner String resource owner
+    */
+   public void invalidate(final String owner) {
+      if (!STR.isEmpty(owner)) {
+         _generations.incrementAndGet(this.getStripe(owner)); // before the list is removed
+
+         _entries.remove(owner);
+      }
+
+      return;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Get the generation stripe of the owner
+    *
+    * @param owner String resource owner
+    * @return int stripe
+    */
+   private int getStripe(final String owner) {
+      return (owner == null ? 0 : owner.hashCode() & 0x7fffffff) % STRIPES;
+   }
+
+   /**
+    * Remove expired entries, if still full remove the entries that expire
+    * first.
+    */
+   private void purge() {
+      long now = System.currentTimeMillis();
+      Iterator<Map.Entry<String, Entry>> iter = null;
+
+      iter = _entries.entrySet().iterator();
+      while (iter.hasNext()) {
+         if (iter.next().getValue().expires <= now) {
+            iter.remove();
+         }
+      }
+
+      if (_entries.size() >= _maxOwners) {
+         _entries.entrySet().stream()
+            .sorted((a, b) -> Long.compare(a.getValue().expires, b.getValue().expires))
+            .limit(Math.max(1, _maxOwners / 10))
+            .map(Map.Entry::getKey)
+            .forEach(_entries::remove);
+      }
+
+      return;
+   }
+
+   private static class Entry {
+
+      private final JSONArray requests;
+      private final long expires;
+
+      Entry(final JSONArray requests, final long expires) {
+         this.requests = requests;
+         this.expires = expires;
+      }
+   }
+}
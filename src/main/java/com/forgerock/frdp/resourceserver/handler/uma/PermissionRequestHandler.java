@@ -241,9 +241,6 @@ public class PermissionRequestHandler extends JaxrsHandler {
          operOutput = new Operation(OperationIF.TYPE.READ);
          operOutput.setState(STATE.ERROR);
          operOutput.setStatus(msg);
-
-         this.setState(STATE.ERROR);
-         this.setStatus(msg);
       }
 
       _logger.exiting(CLASS, METHOD);
@@ -11,6 +11,7 @@ import com.forgerock.frdp.dao.OperationIF;
 import com.forgerock.frdp.handler.HandlerManagerIF;
 import com.forgerock.frdp.resourceserver.ConfigIF;
 import com.forgerock.frdp.resourceserver.handler.CredentialHandler;
+import com.forgerock.frdp.resourceserver.handler.SingleFlight;
 import com.forgerock.frdp.utils.JSON;
 import com.forgerock.frdp.utils.STR;
 import java.io.UnsupportedEncodingException;
@@ -18,7 +19,9 @@ import java.net.URL;
 import java.net.URLDecoder;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
 /**
@@ -31,6 +34,13 @@ import org.json.simple.JSONObject;
  */
 public class ProtectionApiTokenHandler extends CredentialHandler {
 
+   public static final String EXPIRES = "expires";
+   public static final String BEFORE = "before";
+   private static final String EXPIRES_IN = "expires_in";
+   private static final String REFRESH = "refresh"; // expiry minute, indexed for the search
+   private static final long SLOT_MILLIS = 60000L;
+   private static final long MAX_SLOTS = 1440L;
+   private static final SingleFlight<OperationIF> FLIGHTS = new SingleFlight<>(); // shared by reloaded handlers
    private final String CLASS = this.getClass().getName();
 
    /**
@@ -38,11 +48,13 @@ public class ProtectionApiTokenHandler extends CredentialHandler {
     *
     * @param configMgr ConfigurationManagerIF management of configurations
     * @param handlerMgr HandlerManagerIF provides management of Handlers
+    * @param cleanup ExecutorService runs the duplicate credential cleanup
     */
-   public ProtectionApiTokenHandler(final ConfigurationManagerIF configMgr, final HandlerManagerIF handlerMgr) {
-      super(configMgr, handlerMgr);
+   public ProtectionApiTokenHandler(final ConfigurationManagerIF configMgr, final HandlerManagerIF handlerMgr,
+      final ExecutorService cleanup) {
+      super(configMgr, handlerMgr, cleanup);
 
-      String METHOD = "ProtectionApiTokenHandler(configMgr, handlerMgr)";
+      String METHOD = "ProtectionApiTokenHandler(configMgr, handlerMgr, cleanup)";
 
       _logger.entering(CLASS, METHOD);
 
@@ -89,7 +101,9 @@ public class ProtectionApiTokenHandler extends CredentialHandler {
     * explicit "owner" Search the collection, return the first result (should be
     * only one). Validate the credential, if validate return it Else, use
     * refresh token and create a new token, save If not exist, create a new
-    * credential and save it
+    * credential and save it. Single-flight per owner, a refresh token can only
+    * be used once: concurrent reads for the same owner wait for, and share,
+    * the read that is running. Reads for different owners run in parallel.
     *
     * <pre>
     * JSON input ... (if using an SSO token)
@@ -103,6 +117,7 @@ public class ProtectionApiTokenHandler extends CredentialHandler {
     *   "data": {
     *     "owner": "",
     *     "category" : "uma_pat",
+    *     "expires": 1603065600000,
     *     "credential": {
     *       "access_token": "...",
     *       "refresh_token": "...",
@@ -124,18 +139,9 @@ public class ProtectionApiTokenHandler extends CredentialHandler {
       String msg = null;
       String ssotoken = null;
       String owner = null;
-      String category = null;
-      String credUid = null;
-      String configType = ConstantsIF.RESOURCE;
       OperationIF operOutput = null;
-      OperationIF operReadInput = null;
-      OperationIF operReadOutput = null;
-      OperationIF operCreateInput = null;
-      OperationIF operCreateOutput = null;
+      OperationIF operFlightOutput = null;
       JSONObject jsonInput = null;
-      JSONObject jsonOutput = null;
-      JSONObject jsonCredential = null;
-      JSONObject jsonData = null;
 
       _logger.entering(CLASS, METHOD);
 
@@ -164,37 +170,271 @@ public class ProtectionApiTokenHandler extends CredentialHandler {
          owner = JSON.getString(jsonInput, ConstantsIF.OWNER);
       }
 
-      if (!STR.isEmpty(owner)) {
+      if (!error && !STR.isEmpty(owner)) {
          try {
-            category = this.getConfigValue(configType, ConfigIF.RS_CREDENTIAL_CATEGORIES_PAT_ID);
-            credUid = this.getCredentialUid(owner, category);
+            operFlightOutput = this.readFlight(owner, ssotoken);
+
+            /*
+             * The shared read had no SSO token and did not find a credential,
+             * this caller can create one
+             */
+            if (operFlightOutput == null && !STR.isEmpty(ssotoken)) {
+               operFlightOutput = this.readFlight(owner, ssotoken);
+            }
          } catch (Exception ex) {
             error = true;
             msg = ex.getMessage();
          }
 
-         if (!error && !STR.isEmpty(credUid)) {
-            jsonInput = new JSONObject();
-            jsonInput.put(ConstantsIF.UID, credUid);
+         if (!error && operFlightOutput != null) {
+            operOutput = this.copyOutput(operFlightOutput);
+         }
+      }
 
-            operReadInput = new Operation(OperationIF.TYPE.READ);
-            operReadInput.setJSON(jsonInput);
+      if (error) {
+         operOutput.setError(true);
+         operOutput.setState(STATE.ERROR);
+         operOutput.setStatus(msg);
 
-            operReadOutput = this.readImpl(operReadInput);
+         _logger.log(Level.SEVERE, msg);
+      }
 
-            if (!operReadOutput.isError()) {
-               jsonCredential = JSON.getObject(operReadOutput.getJSON(),
-                  ConstantsIF.DATA + "." + ConstantsIF.CREDENTIAL);
-               operOutput = operReadOutput;
-            } else {
-               /*
-                * If there was an error "reading" the existing credential It will be deleted
-                * automatically. Log the error message and continue A new credential will be
-                * created.
-                */
-               _logger.log(Level.WARNING, "{0}: {1}: {2}",
-                  new Object[]{CLASS, METHOD, operReadOutput.getStatus()});
-            }
+      if (_logger.isLoggable(DEBUG_LEVEL)) {
+         _logger.log(DEBUG_LEVEL, "output=''{0}''",
+            new Object[]{operOutput != null ? operOutput.toString() : NULL});
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+
+   /**
+    * Override interface to support the "replace" operation. Refresh the
+    * owner's credential, using the refresh token, if it expires before the
+    * given time. Used by the PatRefreshScheduler, off the request path. Shares
+    * the single-flight with "read": a read for the owner waits for the
+    * refresh, and the refresh waits for a running read. If the credential was
+    * already refreshed, it is returned unchanged. A credential that can not be
+    * refreshed is not deleted, the next "read" validates it.
+    *
+    * <pre>
+    * JSON input ...
+    * { "owner": "...", "before": 1603065600000 }
+    *
+    * JSON output ... same as "read"
+    * </pre>
+    *
+    * @param operInput OperationIF input for replace operation
+    * @return OperationIF output from replace operation
+    */
+   @Override
+   protected OperationIF replace(final OperationIF operInput) {
+      boolean error = false;
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String msg = null;
+      String owner = null;
+      Number before = null;
+      OperationIF operOutput = null;
+      OperationIF operFlightOutput = null;
+      JSONObject jsonInput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      operOutput = new Operation(OperationIF.TYPE.REPLACE);
+
+      jsonInput = operInput.getJSON();
+
+      owner = JSON.getString(jsonInput, ConstantsIF.OWNER);
+      before = JSON.getNumber(jsonInput, BEFORE);
+
+      if (STR.isEmpty(owner) || before == null) {
+         error = true;
+         msg = "JSON input requires '" + ConstantsIF.OWNER + "' and '" + BEFORE + "'";
+      }
+
+      if (!error) {
+         try {
+            operFlightOutput = this.refreshFlight(owner, before.longValue());
+         } catch (Exception ex) {
+            error = true;
+            msg = ex.getMessage();
+         }
+
+         if (!error) {
+            operOutput = this.copyOutput(operFlightOutput);
+         }
+      }
+
+      if (error) {
+         operOutput.setError(true);
+         operOutput.setState(STATE.ERROR);
+         operOutput.setStatus(msg);
+
+         _logger.log(Level.WARNING, msg);
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+
+   /**
+    * Override interface to support the "search" operation. Get the PAT
+    * credentials that expire before the given time, and not more than a minute
+    * ago. The DAO only has "equal" queries: each credential is saved with its
+    * expiry minute, "refresh", which is indexed. There is one query per minute
+    * up to "before" (at most a day), each one returns only the credentials
+    * that expire in that minute. Credentials saved without "refresh" are not
+    * found, they are refreshed by the next request. Tokens are not returned.
+    *
+    * <pre>
+    * JSON input ...
+    * { "before": 1603065600000 }
+    *
+    * JSON output ...
+    * {
+    *   "quantity": 1,
+    *   "results": [
+    *     { "uid": "...", "owner": "bjensen", "expires": 1603065540000 }
+    *   ]
+    * }
+    * </pre>
+    *
+    * @param operInput OperationIF input for search operation
+    * @return OperationIF output from search operation
+    */
+   @Override
+   protected OperationIF search(final OperationIF operInput) {
+      long first = 0L;
+      long last = 0L;
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      Number before = null;
+      OperationIF operOutput = null;
+      JSONObject jsonOutput = null;
+      JSONArray jsonExpiring = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      operOutput = new Operation(OperationIF.TYPE.SEARCH);
+
+      before = JSON.getNumber(operInput.getJSON(), BEFORE);
+
+      try {
+         if (before == null) {
+            throw new Exception("JSON input requires '" + BEFORE + "'");
+         }
+
+         first = this.getSlot(System.currentTimeMillis() - SLOT_MILLIS);
+         last = this.getSlot(before.longValue());
+
+         if (last - first >= MAX_SLOTS) {
+            throw new Exception("JSON input '" + BEFORE + "' is more than a day ahead");
+         }
+
+         jsonExpiring = new JSONArray();
+
+         for (long slot = first; slot <= last; slot++) {
+            this.searchSlot(slot, before.longValue(), jsonExpiring);
+         }
+
+         jsonOutput = new JSONObject();
+         jsonOutput.put(ConstantsIF.QUANTITY, jsonExpiring.size());
+         jsonOutput.put(ConstantsIF.RESULTS, jsonExpiring);
+
+         operOutput.setState(STATE.SUCCESS);
+         operOutput.setJSON(jsonOutput);
+      } catch (Exception ex) {
+         operOutput.setError(true);
+         operOutput.setState(STATE.ERROR);
+         operOutput.setStatus(ex.getMessage());
+
+         _logger.log(Level.WARNING, ex.getMessage());
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Read, or create, the owner's credential as a single-flight. Callers for
+    * the same owner wait for the running read and share its output.
+    *
+    * @param owner String userid
+    * @param ssotoken String SSO token, used to create a credential, may be
+    * null
+    * @return OperationIF credential, null if not found and no SSO token
+    * @throws Exception could not read or create the credential
+    */
+   private OperationIF readFlight(final String owner, final String ssotoken) throws Exception {
+      return FLIGHTS.execute(owner, () -> this.readOrCreate(owner, ssotoken));
+   }
+
+   /**
+    * Refresh the owner's credential as a single-flight, shared with
+    * readFlight()
+    *
+    * @param owner String userid
+    * @param before long refresh if the credential expires before this time
+    * (milliseconds)
+    * @return OperationIF credential
+    * @throws Exception could not refresh the credential
+    */
+   private OperationIF refreshFlight(final String owner, final long before) throws Exception {
+      return FLIGHTS.execute(owner, () -> this.refreshIfExpiring(owner, before));
+   }
+
+   /**
+    * Find the owner's credential, validate / refresh it. If it does not exist,
+    * or could not be validated (it was deleted), create a new one using the
+    * SSO token.
+    *
+    * @param owner String userid
+    * @param ssotoken String SSO token, may be null
+    * @return OperationIF credential, null if not found and no SSO token
+    * @throws Exception could not read or create the credential
+    */
+   private OperationIF readOrCreate(final String owner, final String ssotoken) throws Exception {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String category = null;
+      String credUid = null;
+      String configType = ConstantsIF.RESOURCE;
+      OperationIF operOutput = null;
+      OperationIF operReadInput = null;
+      OperationIF operReadOutput = null;
+      OperationIF operCreateInput = null;
+      OperationIF operCreateOutput = null;
+      JSONObject jsonInput = null;
+      JSONObject jsonData = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      category = this.getConfigValue(configType, ConfigIF.RS_CREDENTIAL_CATEGORIES_PAT_ID);
+      credUid = this.getCredentialUid(owner, category);
+
+      if (!STR.isEmpty(credUid)) {
+         jsonInput = new JSONObject();
+         jsonInput.put(ConstantsIF.UID, credUid);
+
+         operReadInput = new Operation(OperationIF.TYPE.READ);
+         operReadInput.setJSON(jsonInput);
+
+         operReadOutput = this.readImpl(operReadInput);
+
+         if (!operReadOutput.isError()) {
+            operOutput = operReadOutput;
+         } else {
+            /*
+             * If there was an error "reading" the existing credential It will be deleted
+             * automatically. Log the error message and continue A new credential will be
+             * created.
+             */
+            _logger.log(Level.WARNING, "{0}: {1}: {2}",
+               new Object[]{CLASS, METHOD, operReadOutput.getStatus()});
          }
       }
 
@@ -202,7 +442,7 @@ public class ProtectionApiTokenHandler extends CredentialHandler {
        * If the "credential" was not found, need to create one, if there is a SSO
        * token
        */
-      if (!error && jsonCredential == null && !STR.isEmpty(ssotoken)) {
+      if (operOutput == null && !STR.isEmpty(ssotoken)) {
          jsonData = new JSONObject();
          jsonData.put(ConstantsIF.SSO_TOKEN, ssotoken);
          jsonData.put(ConstantsIF.UID, owner);
@@ -219,41 +459,84 @@ public class ProtectionApiTokenHandler extends CredentialHandler {
           */
          operCreateOutput = this.createImpl(operCreateInput);
 
-         if (operCreateOutput.getState() == STATE.SUCCESS) {
-            jsonOutput = operCreateOutput.getJSON();
+         if (operCreateOutput.getState() != STATE.SUCCESS) {
+            throw new Exception(operCreateOutput.getStatus());
+         }
 
-            /*
-             * READ the newly created credential data JSON input ... { "uid": "..." } JSON
-             * output ... { "data": { "credential": { ... }, ... } }
-             */
-            operReadInput = new Operation(OperationIF.TYPE.READ);
-            operReadInput.setJSON(jsonOutput);
+         /*
+          * READ the newly created credential data JSON input ... { "uid": "..." } JSON
+          * output ... { "data": { "credential": { ... }, ... } }
+          */
+         operReadInput = new Operation(OperationIF.TYPE.READ);
+         operReadInput.setJSON(operCreateOutput.getJSON());
 
-            operReadOutput = this.readImpl(operReadInput);
+         operReadOutput = this.readImpl(operReadInput);
 
-            if (operReadOutput.getState() == STATE.SUCCESS) {
-               operOutput = operReadOutput;
-            } else {
-               error = true;
-               msg = operReadOutput.getStatus();
-            }
-         } else {
-            error = true;
-            msg = operCreateOutput.getStatus();
+         if (operReadOutput.getState() != STATE.SUCCESS) {
+            throw new Exception(operReadOutput.getStatus());
          }
+
+         operOutput = operReadOutput;
       }
 
-      if (error) {
-         operOutput.setError(true);
-         operOutput.setState(STATE.ERROR);
-         operOutput.setStatus(msg);
+      _logger.exiting(CLASS, METHOD);
 
-         _logger.log(Level.SEVERE, msg);
+      return operOutput;
+   }
+
+   /**
+    * Refresh the owner's credential if it expires before the given time.
+    * Called inside the owner's single-flight, the credential is read again: if
+    * a request refreshed it since the scan, it is not refreshed twice.
+    *
+    * @param owner String userid
+    * @param before long time (milliseconds)
+    * @return OperationIF credential
+    * @throws Exception credential not found or could not be refreshed
+    */
+   private OperationIF refreshIfExpiring(final String owner, final long before) throws Exception {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String category = null;
+      String credUid = null;
+      String configType = ConstantsIF.RESOURCE;
+      OperationIF operOutput = null;
+      OperationIF operReadInput = null;
+      OperationIF operReadOutput = null;
+      JSONObject jsonInput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      category = this.getConfigValue(configType, ConfigIF.RS_CREDENTIAL_CATEGORIES_PAT_ID);
+      credUid = this.getCredentialUid(owner, category);
+
+      if (STR.isEmpty(credUid)) {
+         throw new Exception("Credential not found for owner '" + owner + "'");
       }
 
-      if (_logger.isLoggable(DEBUG_LEVEL)) {
-         _logger.log(DEBUG_LEVEL, "output=''{0}''",
-            new Object[]{operOutput != null ? operOutput.toString() : NULL});
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.UID, credUid);
+
+      operReadInput = new Operation(OperationIF.TYPE.READ);
+      operReadInput.setJSON(jsonInput);
+
+      this.setDatabaseAndCollection(operReadInput, ConfigIF.RS_NOSQL_DATABASE,
+         ConfigIF.RS_NOSQL_COLLECTIONS_CREDENTIALS_NAME);
+
+      operReadOutput = _MongoDAO.execute(operReadInput); // READ the credential
+
+      if (operReadOutput.isError()) {
+         throw new Exception("Error reading credential: "
+            + operReadOutput.getState().toString() + ": " + operReadOutput.getStatus());
+      }
+
+      if (this.getExpires(JSON.getObject(operReadOutput.getJSON(), ConstantsIF.DATA)) >= before) {
+         operOutput = operReadOutput; // already refreshed
+      } else {
+         operOutput = this.refreshImpl(operReadInput, operReadOutput);
+
+         if (operOutput.isError()) {
+            throw new Exception(operOutput.getStatus());
+         }
       }
 
       _logger.exiting(CLASS, METHOD);
@@ -261,9 +544,6 @@ public class ProtectionApiTokenHandler extends CredentialHandler {
       return operOutput;
    }
 
-   /*
-    * =============== PRIVATE METHODS ===============
-    */
    /**
     * Implementation of the "read" operation.
     *
@@ -275,6 +555,7 @@ public class ProtectionApiTokenHandler extends CredentialHandler {
     *   "data": {
     *     "owner": "",
     *     "category" : "uma_pat",
+    *     "expires": 1603065600000,
     *     "credential": {
     *       "access_token": "...",
     *       "refresh_token": "...",
@@ -298,11 +579,7 @@ public class ProtectionApiTokenHandler extends CredentialHandler {
       OperationIF operValidateOutput = null;
       OperationIF operRefreshOutput = null;
       OperationIF operOutput = null;
-      OperationIF operReplaceOutput = null;
       OperationIF operDeleteOutput = null;
-      JSONObject jsonReadData = null;
-      JSONObject jsonRefreshCred = null;
-      JSONObject jsonInput = null;
 
       _logger.entering(CLASS, METHOD);
 
@@ -313,8 +590,6 @@ public class ProtectionApiTokenHandler extends CredentialHandler {
 
       operOutput = new Operation(operInput.getType());
 
-      jsonInput = operInput.getJSON();
-
       try {
          this.setDatabaseAndCollection(operInput, ConfigIF.RS_NOSQL_DATABASE,
             ConfigIF.RS_NOSQL_COLLECTIONS_CREDENTIALS_NAME);
@@ -341,49 +616,19 @@ public class ProtectionApiTokenHandler extends CredentialHandler {
                   case NOTAUTHORIZED: // 401 invalid
                   {
                      /*
-                   * get a new access token from the refresh token
+                      * get a new access token from the refresh token, save it
                       */
+                     operRefreshOutput = this.refreshImpl(operInput, operReadOutput);
 
-                     operRefreshOutput = this.refreshToken(operReadOutput);
-
-                     if (operRefreshOutput.getState() == STATE.SUCCESS) {
-                        /*
-                      * Got a new set of credential attributes "access_token" and "refresh_token"
-                      * need to replace these attributes in the record
-                         */
-                        jsonReadData = JSON.getObject(operReadOutput.getJSON(), ConstantsIF.DATA);
-
-                        jsonRefreshCred = operRefreshOutput.getJSON();
-
-                        if (jsonRefreshCred != null) {
-                           jsonReadData.put(ConstantsIF.CREDENTIAL, jsonRefreshCred);
-
-                           jsonInput.put(ConstantsIF.DATA, jsonReadData);
-
-                           operInput.setType(OperationIF.TYPE.REPLACE);
-
-                           operReplaceOutput = _MongoDAO.execute(operInput);
-
-                           if (operReplaceOutput.getState() == STATE.SUCCESS) {
-                              operOutput.setState(operReplaceOutput.getState());
-                              operOutput.setStatus(operReplaceOutput.getStatus());
-                              operOutput.setJSON(jsonInput);
-                           } else {
-                              /*
-                            * failed to replace the credential, delete it
-                               */
-                              delete = true;
-                           }
-                        } else {
-                           delete = true;
-                           error = true;
-                           buf.append(": JSON data from refresh is empty");
-                        }
+                     if (!operRefreshOutput.isError()) {
+                        operOutput = operRefreshOutput;
                      } else {
                         /*
-                      * Could NOT get a refresh token, Delete the record
+                         * Could NOT refresh or save the token, Delete the record
                          */
                         delete = true;
+                        _logger.log(Level.WARNING, "{0}: {1}: {2}",
+                           new Object[]{CLASS, METHOD, operRefreshOutput.getStatus()});
                      }
                      break;
                   }
@@ -473,6 +718,7 @@ public class ProtectionApiTokenHandler extends CredentialHandler {
     *   "data": {
     *     "owner": "bjensen",  // from ssoOutput: uid attribute
     *     "category": "uma_pat",
+    *     "expires": 1603065600000, // now + "expires_in"
     *     "credential": { // from tokenOutput
     *       "access_token": "...",
     *       "refresh_token": "...",
@@ -564,6 +810,8 @@ public class ProtectionApiTokenHandler extends CredentialHandler {
                   jsonData.put(ConstantsIF.OWNER, owner);
                   jsonData.put(ConstantsIF.CATEGORY, category);
                   jsonData.put(ConstantsIF.CREDENTIAL, jsonCred);
+                  jsonData.put(EXPIRES, this.getExpires(jsonCred));
+                  jsonData.put(REFRESH, this.getSlot(this.getExpires(jsonData)));
 
                   jsonInput = new JSONObject();
                   jsonInput.put(ConstantsIF.DATA, jsonData);
@@ -1155,6 +1403,243 @@ public class ProtectionApiTokenHandler extends CredentialHandler {
       return operOutput;
    }
 
+   /**
+    * Get a new access token using the refresh token, save the new credential
+    * and its expiration time.
+    *
+    * <pre>
+    * JSON input ...
+    * { "uid": "..." }
+    * JSON output ...
+    * {
+    *   "uid": "...",
+    *   "data": {
+    *     "owner": "",
+    *     "category" : "uma_pat",
+    *     "expires": 1603065600000,
+    *     "credential": { ... }
+    *   }
+    * }
+    * </pre>
+    *
+    * @param operInput OperationIF input, credential uid
+    * @param operReadOutput OperationIF the current credential
+    * @return OperationIF output, error if the token could not be refreshed or
+    * saved
+    * @throws Exception could not refresh the token
+    */
+   private OperationIF refreshImpl(final OperationIF operInput, final OperationIF operReadOutput) throws Exception {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      StringBuilder buf = new StringBuilder(METHOD);
+      OperationIF operOutput = null;
+      OperationIF operRefreshOutput = null;
+      OperationIF operReplaceOutput = null;
+      JSONObject jsonInput = null;
+      JSONObject jsonReadData = null;
+      JSONObject jsonRefreshCred = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      operOutput = new Operation(OperationIF.TYPE.READ);
+
+      jsonInput = operInput.getJSON();
+
+      operRefreshOutput = this.refreshToken(operReadOutput);
+
+      if (operRefreshOutput.getState() == STATE.SUCCESS) {
+         /*
+          * Got a new set of credential attributes "access_token" and "refresh_token"
+          * need to replace these attributes in the record
+          */
+         jsonReadData = JSON.getObject(operReadOutput.getJSON(), ConstantsIF.DATA);
+
+         jsonRefreshCred = JSON.getObject(operRefreshOutput.getJSON(), ConstantsIF.DATA);
+
+         if (jsonRefreshCred == null) {
+            jsonRefreshCred = operRefreshOutput.getJSON();
+         }
+
+         if (jsonReadData != null && jsonRefreshCred != null) {
+            jsonReadData.put(ConstantsIF.CREDENTIAL, jsonRefreshCred);
+            jsonReadData.put(EXPIRES, this.getExpires(jsonRefreshCred));
+            jsonReadData.put(REFRESH, this.getSlot(this.getExpires(jsonReadData)));
+
+            jsonInput.put(ConstantsIF.DATA, jsonReadData);
+
+            operInput.setType(OperationIF.TYPE.REPLACE);
+
+            operReplaceOutput = _MongoDAO.execute(operInput);
+
+            if (operReplaceOutput.getState() == STATE.SUCCESS) {
+               operOutput.setState(operReplaceOutput.getState());
+               operOutput.setStatus(operReplaceOutput.getStatus());
+               operOutput.setJSON(jsonInput);
+            } else {
+               buf.append(": Could not replace credential: ").append(operReplaceOutput.getState().toString())
+                  .append(": ").append(operReplaceOutput.getStatus());
+            }
+         } else {
+            buf.append(": JSON data from refresh is empty");
+         }
+      } else {
+         buf.append(": Could not refresh token: ").append(operRefreshOutput.getState().toString())
+            .append(": ").append(operRefreshOutput.getStatus());
+      }
+
+      if (operOutput.getState() != STATE.SUCCESS) {
+         operOutput.setError(true);
+         operOutput.setState(STATE.ERROR);
+         operOutput.setStatus(buf.toString());
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+
+   /**
+    * Search the PAT credentials that expire in the given minute, add the ones
+    * that expire before the given time to the results
+    *
+    * @param slot long expiry minute, see getSlot()
+    * @param before long expiration time (milliseconds)
+    * @param jsonExpiring JSONArray results
+    * @throws Exception could not search the credentials
+    */
+   private void searchSlot(final long slot, final long before, final JSONArray jsonExpiring)
+      throws Exception {
+      long expires = 0L;
+      String configType = ConstantsIF.RESOURCE;
+      OperationIF operSearchInput = null;
+      OperationIF operSearchOutput = null;
+      JSONObject jsonQuery = null;
+      JSONObject jsonInput = null;
+      JSONObject jsonResult = null;
+      JSONObject jsonData = null;
+      JSONArray jsonQueries = null;
+      JSONArray jsonResults = null;
+
+      jsonQueries = new JSONArray();
+
+      jsonQuery = new JSONObject();
+      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
+      jsonQuery.put(ConstantsIF.ATTRIBUTE, ConstantsIF.DATA + "." + ConstantsIF.CATEGORY);
+      jsonQuery.put(ConstantsIF.VALUE, this.getConfigValue(configType, ConfigIF.RS_CREDENTIAL_CATEGORIES_PAT_ID));
+
+      jsonQueries.add(jsonQuery);
+
+      jsonQuery = new JSONObject();
+      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
+      jsonQuery.put(ConstantsIF.ATTRIBUTE, ConstantsIF.DATA + "." + REFRESH);
+      jsonQuery.put(ConstantsIF.VALUE, slot);
+
+      jsonQueries.add(jsonQuery);
+
+      jsonQuery = new JSONObject();
+      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.AND);
+      jsonQuery.put(ConstantsIF.QUERIES, jsonQueries);
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.QUERY, jsonQuery);
+
+      operSearchInput = new Operation(OperationIF.TYPE.SEARCH);
+      operSearchInput.setJSON(jsonInput);
+
+      this.setDatabaseAndCollection(operSearchInput, ConfigIF.RS_NOSQL_DATABASE,
+         ConfigIF.RS_NOSQL_COLLECTIONS_CREDENTIALS_NAME);
+
+      operSearchOutput = _MongoDAO.execute(operSearchInput);
+
+      if (operSearchOutput.isError()) {
+         throw new Exception(operSearchOutput.getState().toString() + ": " + operSearchOutput.getStatus());
+      }
+
+      jsonResults = JSON.getArray(operSearchOutput.getJSON(), ConstantsIF.RESULTS);
+
+      if (jsonResults != null) {
+         for (Object obj : jsonResults) {
+            if (obj instanceof JSONObject) {
+               jsonData = JSON.getObject((JSONObject) obj, ConstantsIF.DATA);
+               expires = this.getExpires(jsonData);
+
+               if (expires < before) {
+                  jsonResult = new JSONObject();
+                  jsonResult.put(ConstantsIF.UID, JSON.getString((JSONObject) obj, ConstantsIF.UID));
+                  jsonResult.put(ConstantsIF.OWNER, JSON.getString(jsonData, ConstantsIF.OWNER));
+                  jsonResult.put(EXPIRES, expires);
+
+                  jsonExpiring.add(jsonResult);
+               }
+            }
+         }
+      }
+
+      return;
+   }
+
+   /**
+    * Get the expiry minute of a credential, saved as "refresh"
+    *
+    * @param expires long expiration time (milliseconds)
+    * @return long minutes since the epoch
+    */
+   private long getSlot(final long expires) {
+      return expires / SLOT_MILLIS;
+   }
+
+   /**
+    * Get the expiration time of a credential. For the token response, it is
+    * now plus "expires_in" (seconds). For the saved credential data, it is the
+    * "expires" value. Returns 0 if the value is missing.
+    *
+    * @param json JSONObject token response or credential data
+    * @return long expiration time (milliseconds)
+    */
+   private long getExpires(final JSONObject json) {
+      long expires = 0L;
+      Object obj = null;
+
+      if (json != null) {
+         obj = json.get(EXPIRES);
+
+         if (obj instanceof Number) {
+            expires = ((Number) obj).longValue();
+         } else {
+            obj = json.get(EXPIRES_IN);
+
+            try {
+               if (obj instanceof Number) {
+                  expires = System.currentTimeMillis() + (((Number) obj).longValue() * 1000L);
+               } else if (obj != null && !STR.isEmpty(obj.toString())) {
+                  expires = System.currentTimeMillis() + (Long.parseLong(obj.toString()) * 1000L);
+               }
+            } catch (NumberFormatException ex) {
+               expires = 0L;
+            }
+         }
+      }
+
+      return expires;
+   }
+
+   /**
+    * Copy a single-flight output, each caller gets its own operation
+    *
+    * @param oper OperationIF shared output
+    * @return OperationIF copy
+    */
+   private OperationIF copyOutput(final OperationIF oper) {
+      OperationIF operOutput = null;
+
+      operOutput = new Operation(oper.getType());
+      operOutput.setError(oper.isError());
+      operOutput.setState(oper.getState());
+      operOutput.setStatus(oper.getStatus());
+      operOutput.setJSON(oper.getJSON());
+
+      return operOutput;
+   }
+
    /**
     * Get query parameters from a URL
     *
@@ -13,9 +13,14 @@ import com.forgerock.frdp.handler.HandlerManagerIF;
 import com.forgerock.frdp.resourceserver.ConfigIF;
 import com.forgerock.frdp.resourceserver.dao.AMRestDataAccess;
 import com.forgerock.frdp.resourceserver.handler.JaxrsHandler;
+import com.forgerock.frdp.resourceserver.handler.SingleFlight;
 import com.forgerock.frdp.utils.JSON;
 import com.forgerock.frdp.utils.STR;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -27,7 +32,8 @@ import org.json.simple.JSONObject;
  * APIs.
  * <pre>
  * This class implements the following operations:
- * - search: find all requests for a given Resource owner
+ * - search: find the requests for a given Resource owner, filtered, sorted
+ *   and paged from a cached copy of all the owner's requests
  * - read: get the details for a given request
  * - replace: set the requests action (allow / deny) and the scopes
  * </pre>
@@ -36,7 +42,33 @@ import org.json.simple.JSONObject;
  */
 public class RequestsHandler extends JaxrsHandler {
 
+   public static final String FILTER_USER = "user";
+   public static final String FILTER_RESOURCE = "resource";
+   public static final String FILTER_SCOPE = "scope";
+   public static final String FILTER_MINAGE = "minage";
+   public static final String FILTER_MAXAGE = "maxage";
+   public static final String SORT = "sort";
+   public static final String SORT_DESCENDING = "-";
+   public static final String ATTR_WHEN = "when";
+   private static final String PROP_PAGESIZE = "_pageSize";
+   private static final String PROP_PAGEDRESULTSCOOKIE = "_pagedResultsCookie";
+   private static final String PROP_PAGEDRESULTSOFFSET = "_pagedResultsOffset";
+   private static final String PROP_PAGEDRESULTSCOOKIE_OUTPUT = "pagedResultsCookie";
+   private static final String PROP_TOTALPAGEDRESULTSPOLICY = "totalPagedResultsPolicy";
+   private static final String PROP_TOTALPAGEDRESULTS = "totalPagedResults";
+   private static final String PROP_REMAININGPAGEDRESULTS = "remainingPagedResults";
+   private static final String PROP_RESULTCOUNT = "resultCount";
+   private static final int DEFAULT_PAGESIZE = 100;
+   private static final int MAX_PAGES = 1000;
    private final String CLASS = this.getClass().getName();
+   private final SingleFlight<JSONArray> _flights = new SingleFlight<>();
+   private PendingRequestsCache _cache = null;
+   private int _pageSize = DEFAULT_PAGESIZE;
+   private String _accept = null;
+   private String _cookie = null;
+   private String _path = null;
+   private String _sortKeys = null;
+   private String _queryFilter = null;
 
    /**
     * Constructor
@@ -108,7 +140,15 @@ public class RequestsHandler extends JaxrsHandler {
     * JSON input ... search for pending requests
     * {
     *   "sso_token": "...", // header: iPlanetDirectoryPro
-    *   "owner": "..." // used to build the URL
+    *   "owner": "...", // used to build the URL
+    *   "user": "...", // OPTIONAL ... Requesting Party
+    *   "resource": "...", // OPTIONAL ... resource name
+    *   "scope": "...", // OPTIONAL ... requested scope
+    *   "minage": 0, // OPTIONAL ... seconds, requests at least this old
+    *   "maxage": 0, // OPTIONAL ... seconds, requests at most this old
+    *   "sort": "-when", // OPTIONAL ... when | user | resource, "-" descending
+    *   "offset": 0, // OPTIONAL ... requests to skip
+    *   "limit": 20 // OPTIONAL ... maximum requests
     * }
     * JSON output ...
     * {
@@ -124,8 +164,8 @@ public class RequestsHandler extends JaxrsHandler {
     *     ],
     *     "resultCount":1,
     *     "pagedResultsCookie":null,
-    *     "totalPagedResultsPolicy":"NONE”,
-    *     "totalPagedResults":-1,
+    *     "totalPagedResultsPolicy":"EXACT”,
+    *     "totalPagedResults":1,
     *     "remainingPagedResults”:0
     *   }
     * }
@@ -307,6 +347,33 @@ public class RequestsHandler extends JaxrsHandler {
          }
       }
 
+      /*
+       * AM settings are read once, not for each request
+       */
+      if (!this.isError()) {
+         _accept = JSON.getString(json, ConfigIF.AS_UMA_PENDINGREQUESTS_ACCEPT);
+         _cookie = JSON.getString(json, ConfigIF.AS_COOKIE);
+         _path = JSON.getString(json, ConfigIF.AS_UMA_PENDINGREQUESTS_PATH);
+         _sortKeys = JSON.getString(json, ConfigIF.AS_UMA_PENDINGREQUESTS_SORTKEYS);
+         _queryFilter = JSON.getString(json, ConfigIF.AS_UMA_PENDINGREQUESTS_QUERYFILTER);
+
+         if (STR.isEmpty(_accept) || STR.isEmpty(_cookie) || STR.isEmpty(_path)
+            || STR.isEmpty(_sortKeys) || STR.isEmpty(_queryFilter)) {
+            msg = CLASS + ": " + METHOD + ": Attributes for '" + ConfigIF.AS_UMA_PENDINGREQUESTS_PATH
+               + "' or '" + ConfigIF.AS_COOKIE + "' are empty";
+            this.setError(true);
+         }
+      }
+
+      if (!this.isError()) {
+         _pageSize = (int) this.getLong(json, ConfigIF.AS_UMA_PENDINGREQUESTS_PAGESIZE, DEFAULT_PAGESIZE);
+         _pageSize = _pageSize > 0 ? _pageSize : DEFAULT_PAGESIZE;
+
+         _cache = new PendingRequestsCache(
+            this.getLong(json, ConfigIF.RS_REQUESTS_TTL, PendingRequestsCache.DEFAULT_TTL),
+            (int) this.getLong(json, ConfigIF.RS_REQUESTS_MAX, PendingRequestsCache.DEFAULT_MAX_OWNERS));
+      }
+
       if (!this.isError()) {
          this.setState(STATE.READY);
       } else {
@@ -322,13 +389,22 @@ public class RequestsHandler extends JaxrsHandler {
 
    /**
     * Implementation of the "search" operation. Get the "pending" access
-    * requests for the owner
+    * requests for the owner. All the owner's requests are read from AM, and
+    * cached, then filtered, sorted and paged.
     *
     * <pre>
     * JSON input ...
     * {
     *   "sso_token": "...", // header: iPlanetDirectoryPro
-    *   "owner": "..." // used to build the URL
+    *   "owner": "...", // used to build the URL
+    *   "user": "...", // OPTIONAL
+    *   "resource": "...", // OPTIONAL
+    *   "scope": "...", // OPTIONAL
+    *   "minage": 0, // OPTIONAL
+    *   "maxage": 0, // OPTIONAL
+    *   "sort": "-when", // OPTIONAL
+    *   "offset": 0, // OPTIONAL
+    *   "limit": 20 // OPTIONAL
     * }
     * JSON output ...
     * {
@@ -344,18 +420,11 @@ public class RequestsHandler extends JaxrsHandler {
     *     ],
     *     "resultCount":1,
     *     "pagedResultsCookie":null,
-    *     "totalPagedResultsPolicy":"NONE”,
-    *     "totalPagedResults":-1,
-    *     "remainingPagedResults”:0
+    *     "totalPagedResultsPolicy":"EXACT”,
+    *     "totalPagedResults":1, // matching requests
+    *     "remainingPagedResults”:0 // matching requests after this page
     *   }
     * }
-    *
-    * curl example:
-    * curl -X GET
-    * 'https://.../openam/json/realms/root/users/<<owner>>/uma/pendingrequests\
-    * ?_pageSize=10&_sortKeys=user&_queryFilter=true&_pagedResultsOffset=0’
-    * -H 'Accept-API-Version: protocol=1.0,resource=1.0’
-    * -H 'Cookie: iPlanetDirectoryPro=...*’
     * </pre>
     *
     * @param operInput OperationIF input
@@ -364,72 +433,370 @@ public class RequestsHandler extends JaxrsHandler {
     */
    private OperationIF searchImpl(final OperationIF operInput) throws Exception {
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      int offset = 0;
       String sso_token = null;
       String owner = null;
-      String configType = ConstantsIF.RESOURCE;
+      JSONObject jsonInput = null;
       JSONObject jsonData = null;
+      JSONObject jsonOutput = null;
+      JSONArray arrayRequests = null;
+      JSONArray arrayPage = null;
+      List<JSONObject> listRequests = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      operOutput = new Operation(operInput.getType());
+
+      jsonInput = operInput.getJSON();
+
+      sso_token = JSON.getString(jsonInput, ConstantsIF.SSO_TOKEN);
+      owner = JSON.getString(jsonInput, ConstantsIF.OWNER);
+
+      if (!STR.isEmpty(sso_token) && !STR.isEmpty(owner)) {
+         arrayRequests = this.getCachedRequests(owner, sso_token);
+
+         listRequests = this.filter(arrayRequests, jsonInput);
+
+         this.sort(listRequests, JSON.getString(jsonInput, SORT));
+
+         offset = this.getOffset(jsonInput);
+         arrayPage = this.getPage(listRequests, offset, this.getLimit(jsonInput));
+
+         jsonData = new JSONObject();
+         jsonData.put(ConstantsIF.RESULT, arrayPage);
+         jsonData.put(PROP_RESULTCOUNT, arrayPage.size());
+         jsonData.put(PROP_PAGEDRESULTSCOOKIE_OUTPUT, null);
+         jsonData.put(PROP_TOTALPAGEDRESULTSPOLICY, "EXACT");
+         jsonData.put(PROP_TOTALPAGEDRESULTS, listRequests.size());
+         jsonData.put(PROP_REMAININGPAGEDRESULTS,
+            Math.max(0, listRequests.size() - Math.min(offset, listRequests.size()) - arrayPage.size()));
+
+         jsonOutput = new JSONObject();
+         jsonOutput.put(ConstantsIF.DATA, jsonData);
+
+         operOutput.setState(STATE.SUCCESS);
+         operOutput.setJSON(jsonOutput);
+      } else {
+         throw new Exception(METHOD + ": sso_token or owner is empty");
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+
+   /**
+    * Get the owner's pending requests from the cache. If they are not cached,
+    * read them from AM. Concurrent searches for the same owner share one read.
+    * The read is keyed by the owner's cache generation: a search after an
+    * approve or deny does not share a read that started before it.
+    *
+    * @param owner String resource owner
+    * @param sso_token String owner's SSO token
+    * @return JSONArray pending requests, must not be changed
+    * @throws Exception could not read the requests
+    */
+   private JSONArray getCachedRequests(final String owner, final String sso_token) throws Exception {
+      final long generation; // used by the read
+      JSONArray arrayRequests = null;
+
+      generation = _cache.getGeneration(owner); // before the cache is read
+
+      arrayRequests = _cache.get(owner);
+
+      if (arrayRequests == null) {
+         arrayRequests = _flights.execute(owner + " " + generation,
+            () -> this.getRequests(owner, sso_token, generation));
+      }
+
+      return arrayRequests;
+   }
+
+   /**
+    * Read all the owner's pending requests from AM, one page at a time, and
+    * save them in the cache, unless the owner's requests were changed after
+    * "generation" was taken. The next page is requested with the
+    * "pagedResultsCookie" of the previous page, or with "_pagedResultsOffset"
+    * if AM did not return a cookie.
+    *
+    * <pre>
+    * curl example:
+    * curl -X GET
+    * 'https://.../openam/json/realms/root/users/<<owner>>/uma/pendingrequests\
+    * ?_pageSize=100&_sortKeys=user&_queryFilter=true&_pagedResultsOffset=0’
+    * -H 'Accept-API-Version: protocol=1.0,resource=1.0’
+    * -H 'Cookie: iPlanetDirectoryPro=...*’
+    * </pre>
+    *
+    * @param owner String resource owner
+    * @param sso_token String owner's SSO token
+    * @param generation long owner's cache generation, from before the read
+    * @return JSONArray pending requests, may be empty
+    * @throws Exception could not read the requests
+    */
+   private JSONArray getRequests(final String owner, final String sso_token,
+      final long generation) throws Exception {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      int offset = 0;
+      int pages = 0;
+      boolean more = false;
+      String cookie = null;
       JSONObject jsonQuery = null;
       JSONObject jsonHeaders = null;
       JSONObject jsonParams = null;
       JSONObject jsonSearch = null;
-      JSONObject jsonOutput = null;
-      OperationIF operOutput = null;
+      JSONArray arrayPage = null;
+      JSONArray arrayRequests = null;
       OperationIF operASInput = null;
       OperationIF operASOutput = null;
 
       _logger.entering(CLASS, METHOD);
 
-      operOutput = new Operation(operInput.getType());
-
-      sso_token = JSON.getString(operInput.getJSON(), ConstantsIF.SSO_TOKEN);
-      owner = JSON.getString(operInput.getJSON(), ConstantsIF.OWNER);
+      arrayRequests = new JSONArray();
 
-      if (!STR.isEmpty(sso_token) && !STR.isEmpty(owner)) {
-         jsonQuery = new JSONObject(); // SEARCH Operations require a "query" object
-         jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.NONE);
+      jsonQuery = new JSONObject(); // SEARCH Operations require a "query" object
+      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.NONE);
 
-         jsonHeaders = new JSONObject();
-         jsonHeaders.put(ConstantsIF.ACCEPT_API_VERSION, this.getConfigValue(configType, ConfigIF.AS_UMA_PENDINGREQUESTS_ACCEPT));
-         jsonHeaders.put(this.getConfigValue(configType, ConfigIF.AS_COOKIE), sso_token);
+      jsonHeaders = this.getHeaders(sso_token);
 
+      do {
          jsonParams = new JSONObject();
-         jsonParams.put(PROP_SORTKEYS, this.getConfigValue(configType, ConfigIF.AS_UMA_PENDINGREQUESTS_SORTKEYS));
-         jsonParams.put(PROP_QUERYFILTER, this.getConfigValue(configType, ConfigIF.AS_UMA_PENDINGREQUESTS_QUERYFILTER));
+         jsonParams.put(PROP_PAGESIZE, Integer.toString(_pageSize));
+         jsonParams.put(PROP_SORTKEYS, _sortKeys);
+         jsonParams.put(PROP_QUERYFILTER, _queryFilter);
+
+         if (!STR.isEmpty(cookie)) {
+            jsonParams.put(PROP_PAGEDRESULTSCOOKIE, cookie);
+         } else {
+            jsonParams.put(PROP_PAGEDRESULTSOFFSET, Integer.toString(offset));
+         }
 
          jsonSearch = new JSONObject();
          jsonSearch.put(ConstantsIF.QUERY, jsonQuery);
          jsonSearch.put(ConstantsIF.HEADERS, jsonHeaders);
          jsonSearch.put(ConstantsIF.QUERY_PARAMS, jsonParams);
-         jsonSearch.put(ConstantsIF.PATH,
-            this.getConfigValue(configType, ConfigIF.AS_UMA_PENDINGREQUESTS_PATH)
-               .replaceAll(PROP_VAR_OWNER, owner));
+         jsonSearch.put(ConstantsIF.PATH, this.getPath(owner));
 
          operASInput = new Operation(OperationIF.TYPE.SEARCH); // GET
          operASInput.setJSON(jsonSearch);
 
          operASOutput = _AuthzServerDAO.execute(operASInput);
 
-         if (operASOutput.getState() == STATE.NOTEXIST) // 404 NOT FOUND
-         {
-            jsonData = new JSONObject();
-            jsonData.put(ConstantsIF.RESULTS, new JSONArray());
-         } else {
-            jsonData = operASOutput.getJSON();
+         if (operASOutput.getState() == STATE.NOTEXIST) { // 404 NOT FOUND
+            break;
          }
 
-         jsonOutput = new JSONObject();
-         jsonOutput.put(ConstantsIF.DATA, jsonData);
+         if (operASOutput.getState() != STATE.SUCCESS) {
+            throw new Exception(METHOD + ": Could not read pending requests: " + operASOutput.getStatus());
+         }
 
-         operOutput.setState(operASOutput.getState());
-         operOutput.setStatus(operASOutput.getStatus());
-         operOutput.setJSON(jsonOutput);
-      } else {
-         throw new Exception(METHOD + ": sso_token or owner is empty");
+         pages++;
+         arrayPage = JSON.getArray(operASOutput.getJSON(), ConstantsIF.RESULT);
+         cookie = JSON.getString(operASOutput.getJSON(), PROP_PAGEDRESULTSCOOKIE_OUTPUT);
+
+         if (arrayPage != null && !arrayPage.isEmpty()) {
+            arrayRequests.addAll(arrayPage);
+            offset += arrayPage.size();
+            more = !STR.isEmpty(cookie) || arrayPage.size() >= _pageSize;
+         } else {
+            more = false;
+         }
+      } while (more && pages < MAX_PAGES);
+
+      if (more) {
+         _logger.log(Level.WARNING, "{0}: Stopped after {1} pages of requests, owner ''{2}''",
+            new Object[]{METHOD, pages, owner});
       }
 
+      _cache.put(owner, generation, arrayRequests);
+
       _logger.exiting(CLASS, METHOD);
 
-      return operOutput;
+      return arrayRequests;
+   }
+
+   /**
+    * Get the requests that match the optional "user", "resource", "scope",
+    * "minage" and "maxage" attributes of the input.
+    *
+    * @param arrayRequests JSONArray pending requests, not changed
+    * @param jsonInput JSONObject input
+    * @return List matching requests, a new list
+    */
+   private List<JSONObject> filter(final JSONArray arrayRequests, final JSONObject jsonInput) {
+      long now = System.currentTimeMillis();
+      long when = 0L;
+      String user = null;
+      String resource = null;
+      String scope = null;
+      Number minAge = null;
+      Number maxAge = null;
+      Number number = null;
+      JSONObject jsonRequest = null;
+      JSONArray arrayPermissions = null;
+      List<JSONObject> listRequests = null;
+
+      listRequests = new ArrayList<>();
+
+      user = JSON.getString(jsonInput, FILTER_USER);
+      resource = JSON.getString(jsonInput, FILTER_RESOURCE);
+      scope = JSON.getString(jsonInput, FILTER_SCOPE);
+      minAge = JSON.getNumber(jsonInput, FILTER_MINAGE);
+      maxAge = JSON.getNumber(jsonInput, FILTER_MAXAGE);
+
+      for (Object obj : arrayRequests) {
+         if (obj instanceof JSONObject) {
+            jsonRequest = (JSONObject) obj;
+
+            if (!STR.isEmpty(user) && !user.equals(JSON.getString(jsonRequest, ConstantsIF.USER))) {
+               continue;
+            }
+
+            if (!STR.isEmpty(resource) && !resource.equals(JSON.getString(jsonRequest, ConstantsIF.RESOURCE))) {
+               continue;
+            }
+
+            if (!STR.isEmpty(scope)) {
+               arrayPermissions = JSON.getArray(jsonRequest, ConstantsIF.PERMISSIONS);
+               if (arrayPermissions == null || !arrayPermissions.contains(scope)) {
+                  continue;
+               }
+            }
+
+            if (minAge != null || maxAge != null) {
+               number = JSON.getNumber(jsonRequest, ATTR_WHEN);
+               when = number != null ? number.longValue() : now;
+
+               if (minAge != null && now - when < TimeUnit.SECONDS.toMillis(minAge.longValue())) {
+                  continue;
+               }
+
+               if (maxAge != null && now - when > TimeUnit.SECONDS.toMillis(maxAge.longValue())) {
+                  continue;
+               }
+            }
+
+            listRequests.add(jsonRequest);
+         }
+      }
+
+      return listRequests;
+   }
+
+   /**
+    * Sort the requests by "when", "user" or "resource". A "-" prefix sorts in
+    * descending order. Without a sort the AM order is kept.
+    *
+    * @param listRequests List requests, sorted
+    * @param sort String sort attribute, may be null
+    * @throws Exception unsupported sort attribute
+    */
+   private void sort(final List<JSONObject> listRequests, final String sort) throws Exception {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      boolean descending = false;
+      String attribute = null;
+      Comparator<JSONObject> comparator = null;
+
+      if (!STR.isEmpty(sort)) {
+         descending = sort.startsWith(SORT_DESCENDING);
+         attribute = descending ? sort.substring(SORT_DESCENDING.length()) : sort;
+
+         comparator = this.getComparator(attribute);
+
+         if (comparator == null) {
+            throw new Exception(METHOD + ": Unsupported sort attribute: '" + attribute + "'");
+         }
+
+         listRequests.sort(descending ? comparator.reversed() : comparator);
+      }
+
+      return;
+   }
+
+   /**
+    * Get the comparator for the sort attribute
+    *
+    * @param attribute String "when", "user" or "resource"
+    * @return Comparator ascending order, null if the attribute is not supported
+    */
+   private Comparator<JSONObject> getComparator(final String attribute) {
+      Comparator<JSONObject> comparator = null;
+
+      switch (attribute) {
+         case ATTR_WHEN: {
+            comparator = Comparator.comparingLong(json -> {
+               Number number = JSON.getNumber(json, ATTR_WHEN);
+               return number != null ? number.longValue() : 0L;
+            });
+            break;
+         }
+         case ConstantsIF.USER:
+         case ConstantsIF.RESOURCE: {
+            comparator = Comparator.comparing(json -> JSON.getString(json, attribute),
+               Comparator.nullsFirst(Comparator.naturalOrder()));
+            break;
+         }
+         default: {
+            break;
+         }
+      }
+
+      return comparator;
+   }
+
+   /**
+    * Get the AM request headers
+    *
+    * @param sso_token String owner's SSO token
+    * @return JSONObject headers
+    */
+   private JSONObject getHeaders(final String sso_token) {
+      JSONObject jsonHeaders = null;
+
+      jsonHeaders = new JSONObject();
+      jsonHeaders.put(ConstantsIF.ACCEPT_API_VERSION, _accept);
+      jsonHeaders.put(_cookie, sso_token);
+
+      return jsonHeaders;
+   }
+
+   /**
+    * Get the owner's AM pending requests path
+    *
+    * @param owner String resource owner
+    * @return String path
+    */
+   private String getPath(final String owner) {
+      return _path.replace(PROP_VAR_OWNER, owner);
+   }
+
+   /**
+    * Get a number from the configuration, the default is used if the value is
+    * empty or not a number
+    *
+    * @param json JSONObject configuration
+    * @param name String "dot" delimited name
+    * @param defaultValue long default value
+    * @return long configuration value
+    */
+   private long getLong(final JSONObject json, final String name, final long defaultValue) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      long value = defaultValue;
+      String str = null;
+
+      str = JSON.getString(json, name);
+
+      if (!STR.isEmpty(str)) {
+         try {
+            value = Long.parseLong(str);
+         } catch (NumberFormatException ex) {
+            _logger.log(Level.WARNING, "{0}: Config attribute ''{1}'' is not a number, using {2}",
+               new Object[]{METHOD, name, defaultValue});
+         }
+      }
+
+      return value;
    }
 
    /**
@@ -471,7 +838,6 @@ public class RequestsHandler extends JaxrsHandler {
       String sso_token = null;
       String owner = null;
       String requestId = null;
-      String configType = ConstantsIF.RESOURCE;
       JSONObject jsonHeaders = null;
       JSONObject jsonRead = null;
       JSONObject jsonOutput = null;
@@ -490,16 +856,11 @@ public class RequestsHandler extends JaxrsHandler {
          requestId = JSON.getString(operInput.getJSON(), ConstantsIF.UID);
 
          if (!STR.isEmpty(requestId)) {
-            jsonHeaders = new JSONObject();
-            jsonHeaders.put(ConstantsIF.ACCEPT_API_VERSION,
-               this.getConfigValue(configType, ConfigIF.AS_UMA_PENDINGREQUESTS_ACCEPT));
-            jsonHeaders.put(this.getConfigValue(configType, ConfigIF.AS_COOKIE), sso_token);
+            jsonHeaders = this.getHeaders(sso_token);
 
             jsonRead = new JSONObject();
             jsonRead.put(ConstantsIF.HEADERS, jsonHeaders);
-            jsonRead.put(ConstantsIF.PATH,
-               this.getConfigValue(configType, ConfigIF.AS_UMA_PENDINGREQUESTS_PATH)
-                  .replaceAll(PROP_VAR_OWNER, owner));
+            jsonRead.put(ConstantsIF.PATH, this.getPath(owner));
             jsonRead.put(ConstantsIF.UID, requestId);
 
             operASInput = new Operation(OperationIF.TYPE.READ); // GET
@@ -562,7 +923,6 @@ public class RequestsHandler extends JaxrsHandler {
       String owner = null;
       String requestId = null;
       String action = null;
-      String configType = ConstantsIF.RESOURCE;
       JSONObject jsonInput = null;
       JSONObject jsonDataInput = null;
       JSONObject jsonPayload = null;
@@ -583,22 +943,10 @@ public class RequestsHandler extends JaxrsHandler {
 
       jsonInput = operInput.getJSON();
 
-      /*
-       * Read the Request, need the "permissions" / "scopes"
-       */
-      operInput.setType(OperationIF.TYPE.READ);
-
-      operReadOutput = this.readImpl(operInput);
-
-      if (operReadOutput.getState() == STATE.SUCCESS) {
-         jsonScopes = JSON.getArray(operReadOutput.getJSON(), ConstantsIF.DATA + "." + ConstantsIF.PERMISSIONS);
-      } else {
-         throw new Exception(METHOD + ": Faild to read request");
-      }
-
       /*
        * If the input JSON "data" contains a "permissions" array use the "permissions"
-       * for the "scopes" else all registered resource scopes are allowed
+       * for the "scopes" else all requested scopes are allowed, the Request is
+       * only read for an "approve" without "permissions"
        */
       sso_token = JSON.getString(jsonInput, ConstantsIF.SSO_TOKEN);
       owner = JSON.getString(jsonInput, ConstantsIF.OWNER);
@@ -627,6 +975,18 @@ public class RequestsHandler extends JaxrsHandler {
                            _logger.log(Level.WARNING,
                               "Approved access request is missing permissions, will grant all scopes");
                         }
+
+                        operInput.setType(OperationIF.TYPE.READ);
+
+                        operReadOutput = this.readImpl(operInput);
+
+                        if (operReadOutput.getState() == STATE.SUCCESS) {
+                           jsonScopes = JSON.getArray(operReadOutput.getJSON(),
+                              ConstantsIF.DATA + "." + ConstantsIF.PERMISSIONS);
+                        } else {
+                           throw new Exception(METHOD + ": Faild to read request");
+                        }
+
                         if (jsonScopes != null && !jsonScopes.isEmpty()) {
                            jsonPayload.put(ConstantsIF.SCOPES, jsonScopes);
                         } else {
@@ -635,10 +995,7 @@ public class RequestsHandler extends JaxrsHandler {
                      }
                   }
 
-                  jsonHeaders = new JSONObject();
-                  jsonHeaders.put(ConstantsIF.ACCEPT_API_VERSION,
-                     this.getConfigValue(configType, ConfigIF.AS_UMA_PENDINGREQUESTS_ACCEPT));
-                  jsonHeaders.put(this.getConfigValue(configType, ConfigIF.AS_COOKIE), sso_token);
+                  jsonHeaders = this.getHeaders(sso_token);
 
                   jsonQueryParams = new JSONObject();
                   jsonQueryParams.put("_action", action);
@@ -646,9 +1003,7 @@ public class RequestsHandler extends JaxrsHandler {
                   jsonReplace = new JSONObject();
                   jsonReplace.put(ConstantsIF.HEADERS, jsonHeaders);
                   jsonReplace.put(ConstantsIF.QUERY_PARAMS, jsonQueryParams);
-                  jsonReplace.put(ConstantsIF.PATH,
-                     this.getConfigValue(configType, ConfigIF.AS_UMA_PENDINGREQUESTS_PATH)
-                        .replaceAll(PROP_VAR_OWNER, owner));
+                  jsonReplace.put(ConstantsIF.PATH, this.getPath(owner));
                   jsonReplace.put(ConstantsIF.UID, requestId);
                   jsonReplace.put(ConstantsIF.DATA, jsonPayload);
 
@@ -657,6 +1012,12 @@ public class RequestsHandler extends JaxrsHandler {
 
                   operASOutput = _AuthzServerDAO.execute(operASInput);
 
+                  if (operASOutput.getState() == STATE.SUCCESS) {
+                     _cache.remove(owner, requestId);
+                  } else {
+                     _cache.invalidate(owner); // may have changed, read it again
+                  }
+
                   jsonOutput = new JSONObject();
                   jsonOutput.put(ConstantsIF.DATA, operASOutput.getJSON());
 
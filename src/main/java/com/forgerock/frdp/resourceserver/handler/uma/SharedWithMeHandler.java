@@ -17,6 +17,10 @@ import com.forgerock.frdp.resourceserver.handler.JaxrsHandler;
 import com.forgerock.frdp.resourceserver.handler.JaxrsHandlerIF;
 import com.forgerock.frdp.utils.JSON;
 import com.forgerock.frdp.utils.STR;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import org.json.simple.JSONArray;
@@ -37,8 +41,21 @@ import org.json.simple.JSONObject;
  */
 public class SharedWithMeHandler extends JaxrsHandler {
 
+   private static final Map<String, String> AM_ATTRIBUTES; // output -> AM registration
    private final String CLASS = this.getClass().getName();
 
+   static {
+      Map<String, String> map = new HashMap<>();
+
+      map.put(ConstantsIF.NAME, ConstantsIF.NAME);
+      map.put(ConstantsIF.TYPE, ConstantsIF.TYPE);
+      map.put(ConstantsIF.ICON_URI, ConstantsIF.ICON_URI);
+      map.put(ConstantsIF.SCOPES, ConstantsIF.SCOPES);
+      map.put(ConstantsIF.OWNER, AM_ATTR_RESOURCE_OWNER_ID);
+
+      AM_ATTRIBUTES = Collections.unmodifiableMap(map);
+   }
+
    /**
     * Constructor
     *
@@ -259,7 +276,9 @@ public class SharedWithMeHandler extends JaxrsHandler {
     *     "operator": "equal",
     *     "attribute": "type",
     *     "value": "healthcare"
-    *   }
+    *   },
+    *   "offset": 0, // OPTIONAL ... results to skip
+    *   "limit": 20 // OPTIONAL ... maximum results
     * }
     *
     * AM API output ...
@@ -410,10 +429,10 @@ public class SharedWithMeHandler extends JaxrsHandler {
             jsonData.put(ConstantsIF.RESULTS, new JSONArray());
          }
 
-         jsonData = this.filter(jsonData, JSON.getObject(jsonInput, ConstantsIF.QUERY));
          jsonData.put(ConstantsIF.SUBJECT, subject);
 
-         jsonData = this.updateResourceData(jsonData);
+         jsonData = this.updateResourceData(jsonData, JSON.getObject(jsonInput, ConstantsIF.QUERY),
+            this.getOffset(jsonInput), this.getLimit(jsonInput));
 
          jsonOutput = new JSONObject();
          jsonOutput.put(ConstantsIF.DATA, jsonData);
@@ -435,6 +454,15 @@ public class SharedWithMeHandler extends JaxrsHandler {
     * responses Get the policy for each registration and find the "assigned"
     * scopes
     *
+    * The registrations are filtered, then paged, then updated. Registrations
+    * for other Resource Servers, and those that do not match a filter on an
+    * attribute from AM (name, type, icon_uri, scopes, owner), are dropped
+    * first. Only the returned registrations cost a resource search and a
+    * policy read. If the filter is on an attribute that is added by the
+    * update (id, label, description, policy), every registration is updated
+    * before it is filtered and paged. The "offset" counts registrations for
+    * this Resource Server.
+    *
     * <pre>
     * JSON input ...
     * {
@@ -518,28 +546,33 @@ public class SharedWithMeHandler extends JaxrsHandler {
     * </pre>
     *
     * @param jsonInput JSONObject input
+    * @param jsonFilter JSONObject optional filter, may be null
+    * @param offset int registrations to skip
+    * @param limit int maximum results
     * @return JSONObject output
     * @throws Exception
     */
-   private JSONObject updateResourceData(final JSONObject jsonInput) throws Exception {
-      boolean discoverable = false;
+   private JSONObject updateResourceData(final JSONObject jsonInput, final JSONObject jsonFilter,
+      final int offset, final int limit) throws Exception {
+      boolean local = false;
+      int skipped = 0;
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
       String registerId = null;
       String rsId = null;
       String sso_token = null;
       String resourceServer = null;
+      String subject = null;
+      String filterAttr = null;
+      String filterVal = null;
+      String attrVal = null;
       String configType = ConstantsIF.RESOURCE;
       JSONObject jsonOutput = null;
-      JSONObject jsonSearch = null;
-      JSONObject jsonQuery = null;
       JSONObject jsonRegister = null;
-      JSONObject jsonResource = null;
-      JSONObject jsonPolicy = null;
+      JSONObject jsonResult = null;
       JSONArray arrayInput = null;
       JSONArray arrayOutput = null;
-      JSONArray arrayPolicyScopes = null;
-      OperationIF operInput = null;
-      OperationIF operOutput = null;
+      List<JSONObject> listRegisters = null;
+      List<JSONObject> listResults = null;
       OperationIF operProxyInput = null;
       OperationIF operProxyOutput = null;
       JaxrsHandlerIF resourceHandler = null;
@@ -562,91 +595,51 @@ public class SharedWithMeHandler extends JaxrsHandler {
          this.abort(METHOD, "Proxy Admin sso token is empty");
       }
 
+      subject = JSON.getString(jsonInput, ConstantsIF.SUBJECT);
+
+      if (jsonFilter != null) {
+         filterAttr = JSON.getString(jsonFilter, ConstantsIF.ATTRIBUTE);
+         filterVal = JSON.getString(jsonFilter, ConstantsIF.VALUE);
+      }
+
       /*
-       * process the input
+       * The filter is "local" if it can be checked on the AM registration,
+       * before the update. An incomplete filter matches nothing.
        */
-      jsonOutput = new JSONObject();
-      arrayOutput = new JSONArray();
+      local = jsonFilter == null || STR.isEmpty(filterAttr) || STR.isEmpty(filterVal)
+         || AM_ATTRIBUTES.containsKey(filterAttr);
+
+      /*
+       * filter the input, on attributes from AM
+       */
+      listRegisters = new ArrayList<>();
 
       if (jsonInput != null) {
          arrayInput = JSON.getArray(jsonInput, ConstantsIF.RESULT);
 
          if (arrayInput != null && !arrayInput.isEmpty()) {
-            operInput = new Operation(OperationIF.TYPE.SEARCH);
-
-            jsonQuery = new JSONObject();
-            jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
-            jsonQuery.put(ConstantsIF.ATTRIBUTE, ConstantsIF.DATA + "." + ConstantsIF.REGISTER);
-            // Need to set the value for each entry
-
-            jsonSearch = new JSONObject();
-            jsonSearch.put(ConstantsIF.QUERY, jsonQuery);
-
             for (Object obj : arrayInput) {
                if (obj != null && obj instanceof JSONObject) {
                   jsonRegister = (JSONObject) obj;
                   registerId = JSON.getString(jsonRegister, ConstantsIF._ID);
-
-                  if (!STR.isEmpty(registerId)) {
-                     resourceServer = JSON.getString(jsonRegister, JaxrsHandler.AM_ATTR_RESOURCE_SERVER);
-
-                     /*
-                      * The "subject" could have "shared with me" resources that come from different
-                      * Resource Servers We only want the ones related to "this" RS The
-                      * "Resource Server" value MUST match the Resource Server Id (rsId)
-                      */
-                     if (!STR.isEmpty(resourceServer) && resourceServer.equalsIgnoreCase(rsId)) {
-
-                        jsonQuery.put(ConstantsIF.VALUE, registerId);
-
-                        operInput.setJSON(jsonSearch);
-
-                        operOutput = resourceHandler.process(operInput);
-
-                        if (operOutput != null && operOutput.getState() == STATE.SUCCESS) {
-                           jsonResource = JSON.getObject(operOutput.getJSON(),
-                              ConstantsIF.DATA + "." + ConstantsIF.RESULTS + "[0]");
-
-                           if (jsonResource != null && !jsonResource.isEmpty()) {
-                              /*
-                               * Get the the subject's current scopes, from policy
-                               */
-                              jsonPolicy = new JSONObject();
-                              jsonPolicy.put(ConstantsIF.SSO_TOKEN, sso_token);
-                              jsonPolicy.put(ConstantsIF.SUBJECT, JSON.getString(jsonInput, ConstantsIF.SUBJECT));
-                              jsonPolicy.put(ConstantsIF.REGISTERED, registerId);
-                              jsonPolicy.put(ConstantsIF.OWNER,
-                                 JSON.getString(jsonRegister, JaxrsHandler.AM_ATTR_RESOURCE_OWNER_ID));
-
-                              arrayPolicyScopes = this.getScopes(jsonPolicy);
-                              if (arrayPolicyScopes != null) {
-                                 jsonRegister.put(ConstantsIF.POLICY, arrayPolicyScopes);
-                              }
-
-                              jsonRegister.put(ConstantsIF.ID, JSON.getString(jsonResource, ConstantsIF.UID));
-                              jsonRegister.put(ConstantsIF.LABEL, JSON.getString(jsonResource,
-                                 ConstantsIF.DATA + "." + ConstantsIF.META + "." + ConstantsIF.LABEL));
-                              jsonRegister.put(ConstantsIF.DESCRIPTION, JSON.getString(jsonResource,
-                                 ConstantsIF.DATA + "." + ConstantsIF.META + "." + ConstantsIF.DESCRIPTION));
-                              jsonRegister.put(ConstantsIF.OWNER,
-                                 jsonRegister.get(JaxrsHandler.AM_ATTR_RESOURCE_OWNER_ID));
-
-                              jsonRegister.remove(ConstantsIF._ID);
-                              jsonRegister.remove(ConstantsIF._REV);
-                              jsonRegister.remove(JaxrsHandler.AM_ATTR_RESOURCE_SERVER);
-                              jsonRegister.remove(ConstantsIF.LABELS);
-                              jsonRegister.remove(JaxrsHandler.AM_ATTR_RESOURCE_OWNER_ID);
-
-                              discoverable = JSON.getBoolean(jsonResource,
-                                 ConstantsIF.DATA + "." + ConstantsIF.META + "." + ConstantsIF.DISCOVERABLE);
-
-                              if (!discoverable) {
-                                 jsonRegister.remove(ConstantsIF.SCOPES);
-                              }
-
-                              arrayOutput.add(jsonRegister);
-                           }
+                  resourceServer = JSON.getString(jsonRegister, JaxrsHandler.AM_ATTR_RESOURCE_SERVER);
+
+                  /*
+                   * The "subject" could have "shared with me" resources that come from different
+                   * Resource Servers We only want the ones related to "this" RS The
+                   * "Resource Server" value MUST match the Resource Server Id (rsId)
+                   */
+                  if (!STR.isEmpty(registerId) && !STR.isEmpty(resourceServer)
+                     && resourceServer.equalsIgnoreCase(rsId)) {
+                     if (jsonFilter != null && local) {
+                        attrVal = STR.isEmpty(filterAttr) || STR.isEmpty(filterVal)
+                           ? null : JSON.getString(jsonRegister, AM_ATTRIBUTES.get(filterAttr));
+
+                        if (!STR.isEmpty(attrVal) && attrVal.equalsIgnoreCase(filterVal)) {
+                           listRegisters.add(jsonRegister);
                         }
+                     } else {
+                        listRegisters.add(jsonRegister);
                      }
                   }
                }
@@ -654,6 +647,46 @@ public class SharedWithMeHandler extends JaxrsHandler {
          }
       }
 
+      /*
+       * page, then update ... or update, filter, then page
+       */
+      arrayOutput = new JSONArray();
+
+      if (local) {
+         for (JSONObject jsonItem : listRegisters) {
+            if (arrayOutput.size() >= limit) {
+               break;
+            }
+
+            if (skipped < offset) {
+               skipped++;
+            } else {
+               jsonResult = this.getResult(jsonItem, resourceHandler, sso_token, subject);
+
+               if (jsonResult != null) {
+                  arrayOutput.add(jsonResult);
+               }
+            }
+         }
+      } else {
+         listResults = new ArrayList<>();
+
+         for (JSONObject jsonItem : listRegisters) {
+            jsonResult = this.getResult(jsonItem, resourceHandler, sso_token, subject);
+
+            if (jsonResult != null) {
+               attrVal = JSON.getString(jsonResult, filterAttr);
+
+               if (!STR.isEmpty(attrVal) && attrVal.equalsIgnoreCase(filterVal)) {
+                  listResults.add(jsonResult);
+               }
+            }
+         }
+
+         arrayOutput = this.getPage(listResults, offset, limit);
+      }
+
+      jsonOutput = new JSONObject();
       jsonOutput.put(ConstantsIF.RESULTS, arrayOutput);
       jsonOutput.put(ConstantsIF.QUANTITY, arrayOutput.size());
 
@@ -663,87 +696,89 @@ public class SharedWithMeHandler extends JaxrsHandler {
    }
 
    /**
-    * If a filter is provided ... Remove the matching objects from the "result"
-    * array
-    *
-    * <pre>
-    * JSON input ...
-    * {
-    *   "result": [
-    *     {
-    *       "_id": "f25424b6-dd67-4403-91db-ecba96b3365b0",
-    *       "_rev": "1364060076",
-    *       "resourceServer": "UMA-Resource-Server",
-    *       "name": "Patient001",
-    *       "resourceOwnerId": "bjensen",
-    *       "scopes": ["view","meta"],
-    *       "type": "healthcare-fhir-patient",
-    *       "icon_uri": "https://.../shared/icons/emblem-money.png",
-    *       "labels": []
-    *     },
-    *     { ...}
-    *   ],
-    *   "resultCount": 8,
-    *   "pagedResultsCookie": null,
-    *   "totalPagedResultsPolicy": "NONE",
-    *   "totalPagedResults": -1,
-    *   "remainingPagedResults": 0
-    * }
+    * Update a registration with the resource data and the subject's scopes
+    * from the policy
     *
-    * Filter ...
-    * {
-    *   "operator": "equals",
-    *   "attribute": "type",
-    *   "value": "healthcare"
-    * }
-    * </pre>
-    *
-    * @param jsonInput JSONObject input
-    * @param jsonFilter JSONObject filter
-    * @return JSONObject output
+    * @param jsonRegister JSONObject AM registration, updated
+    * @param resourceHandler JaxrsHandlerIF resources handler
+    * @param sso_token String "admin" sso token, needed to read the policy
+    * @param subject String Requesting Party
+    * @return JSONObject updated registration, null if there is no resource
+    * @throws Exception
     */
-   private JSONObject filter(final JSONObject jsonInput, final JSONObject jsonFilter) {
-      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
-      String filterAttr = null;
-      String filterVal = null;
-      String attrVal = null;
+   private JSONObject getResult(final JSONObject jsonRegister, final JaxrsHandlerIF resourceHandler,
+      final String sso_token, final String subject) throws Exception {
+      boolean discoverable = false;
+      String registerId = null;
       JSONObject jsonOutput = null;
-      JSONObject jsonResult = null;
-      JSONArray arrayResultsInput = null;
-      JSONArray arrayResultsOutput = null;
+      JSONObject jsonSearch = null;
+      JSONObject jsonQuery = null;
+      JSONObject jsonResource = null;
+      JSONObject jsonPolicy = null;
+      JSONArray arrayPolicyScopes = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
 
-      _logger.entering(CLASS, METHOD);
+      registerId = JSON.getString(jsonRegister, ConstantsIF._ID);
 
-      if (jsonFilter != null) {
-         jsonOutput = new JSONObject();
-         arrayResultsOutput = new JSONArray();
+      jsonQuery = new JSONObject();
+      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
+      jsonQuery.put(ConstantsIF.ATTRIBUTE, ConstantsIF.DATA + "." + ConstantsIF.REGISTER);
+      jsonQuery.put(ConstantsIF.VALUE, registerId);
 
-         filterAttr = JSON.getString(jsonFilter, ConstantsIF.ATTRIBUTE);
-         filterVal = JSON.getString(jsonFilter, ConstantsIF.VALUE);
+      jsonSearch = new JSONObject();
+      jsonSearch.put(ConstantsIF.QUERY, jsonQuery);
 
-         if (!STR.isEmpty(filterAttr) && !STR.isEmpty(filterVal)) {
-            arrayResultsInput = JSON.getArray(jsonInput, ConstantsIF.RESULT);
-            if (arrayResultsInput != null && !arrayResultsInput.isEmpty()) {
-               for (Object obj : arrayResultsInput) {
-                  if (obj != null && obj instanceof JSONObject) {
-                     jsonResult = (JSONObject) obj;
-                     attrVal = JSON.getString(jsonResult, filterAttr);
+      operInput = new Operation(OperationIF.TYPE.SEARCH);
+      operInput.setJSON(jsonSearch);
 
-                     if (!STR.isEmpty(attrVal) && attrVal.equalsIgnoreCase(filterVal)) {
-                        arrayResultsOutput.add(jsonResult);
-                     }
-                  }
-               }
+      operOutput = resourceHandler.process(operInput);
+
+      if (operOutput != null && operOutput.getState() == STATE.SUCCESS) {
+         jsonResource = JSON.getObject(operOutput.getJSON(),
+            ConstantsIF.DATA + "." + ConstantsIF.RESULTS + "[0]");
+
+         if (jsonResource != null && !jsonResource.isEmpty()) {
+            /*
+             * Get the the subject's current scopes, from policy
+             */
+            jsonPolicy = new JSONObject();
+            jsonPolicy.put(ConstantsIF.SSO_TOKEN, sso_token);
+            jsonPolicy.put(ConstantsIF.SUBJECT, subject);
+            jsonPolicy.put(ConstantsIF.REGISTERED, registerId);
+            jsonPolicy.put(ConstantsIF.OWNER,
+               JSON.getString(jsonRegister, JaxrsHandler.AM_ATTR_RESOURCE_OWNER_ID));
+
+            arrayPolicyScopes = this.getScopes(jsonPolicy);
+            if (arrayPolicyScopes != null) {
+               jsonRegister.put(ConstantsIF.POLICY, arrayPolicyScopes);
             }
+
+            jsonRegister.put(ConstantsIF.ID, JSON.getString(jsonResource, ConstantsIF.UID));
+            jsonRegister.put(ConstantsIF.LABEL, JSON.getString(jsonResource,
+               ConstantsIF.DATA + "." + ConstantsIF.META + "." + ConstantsIF.LABEL));
+            jsonRegister.put(ConstantsIF.DESCRIPTION, JSON.getString(jsonResource,
+               ConstantsIF.DATA + "." + ConstantsIF.META + "." + ConstantsIF.DESCRIPTION));
+            jsonRegister.put(ConstantsIF.OWNER,
+               jsonRegister.get(JaxrsHandler.AM_ATTR_RESOURCE_OWNER_ID));
+
+            jsonRegister.remove(ConstantsIF._ID);
+            jsonRegister.remove(ConstantsIF._REV);
+            jsonRegister.remove(JaxrsHandler.AM_ATTR_RESOURCE_SERVER);
+            jsonRegister.remove(ConstantsIF.LABELS);
+            jsonRegister.remove(JaxrsHandler.AM_ATTR_RESOURCE_OWNER_ID);
+
+            discoverable = JSON.getBoolean(jsonResource,
+               ConstantsIF.DATA + "." + ConstantsIF.META + "." + ConstantsIF.DISCOVERABLE);
+
+            if (!discoverable) {
+               jsonRegister.remove(ConstantsIF.SCOPES);
+            }
+
+            jsonOutput = jsonRegister;
          }
-         jsonOutput.put(ConstantsIF.RESULT, arrayResultsOutput);
-         jsonOutput.put("resultCount", arrayResultsOutput.size());
-      } else {
-         jsonOutput = jsonInput;
       }
 
-      _logger.exiting(CLASS, METHOD);
-
       return jsonOutput;
    }
 
@@ -786,6 +821,7 @@ public class SharedWithMeHandler extends JaxrsHandler {
     * @throws Exception
     */
    private JSONArray getScopes(final JSONObject jsonInput) throws Exception {
+      boolean error = false;
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
       String registerId = null;
       String owner = null; // Resource Owner
@@ -816,25 +852,25 @@ public class SharedWithMeHandler extends JaxrsHandler {
 
       if (STR.isEmpty(sso_token)) {
          msg = "Attribute '" + ConstantsIF.SSO_TOKEN + "' is empty";
-         this.setError(true);
+         error = true;
       } else {
          if (STR.isEmpty(registerId)) {
             msg = "Attribute '" + ConstantsIF.REGISTERED + "' is empty";
-            this.setError(true);
+            error = true;
          } else {
             if (STR.isEmpty(owner)) {
                msg = "Attribute '" + ConstantsIF.OWNER + "' is empty";
-               this.setError(true);
+               error = true;
             } else {
                if (STR.isEmpty(subject)) {
                   msg = "Attribute '" + ConstantsIF.SUBJECT + "' is empty";
-                  this.setError(true);
+                  error = true;
                }
             }
          }
       }
 
-      if (this.isError()) {
+      if (error) {
          this.abort(METHOD, msg);
       }
 
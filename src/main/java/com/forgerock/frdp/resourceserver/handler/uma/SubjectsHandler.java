@@ -16,8 +16,13 @@ import com.forgerock.frdp.resourceserver.dao.AMRestDataAccess;
 import com.forgerock.frdp.resourceserver.handler.JaxrsHandler;
 import com.forgerock.frdp.utils.JSON;
 import com.forgerock.frdp.utils.STR;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.logging.Level;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
@@ -36,7 +41,14 @@ import org.json.simple.JSONObject;
  */
 public class SubjectsHandler extends JaxrsHandler {
 
+   private static final String PROP_PAGESIZE = "_pageSize";
+   private static final String PROP_PAGEDRESULTSCOOKIE = "_pagedResultsCookie";
+   private static final String PROP_PAGEDRESULTSOFFSET = "_pagedResultsOffset";
+   private static final String PROP_PAGEDRESULTSCOOKIE_OUTPUT = "pagedResultsCookie";
+   private static final int DEFAULT_PAGESIZE = 100;
+   private static final int MAX_PAGES = 1000;
    private final String CLASS = this.getClass().getName();
+   private int _pageSize = DEFAULT_PAGESIZE;
 
    /**
     * Constructor
@@ -163,6 +175,7 @@ public class SubjectsHandler extends JaxrsHandler {
    private void init() {
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
       String msg = null;
+      String str = null;
       String type = ConstantsIF.RESOURCE;
       ConfigurationIF config = null;
       JSONObject json = null;
@@ -212,6 +225,21 @@ public class SubjectsHandler extends JaxrsHandler {
          }
       }
 
+      if (!this.isError()) {
+         str = JSON.getString(json, ConfigIF.AS_UMA_POLICIES_PAGESIZE);
+
+         if (!STR.isEmpty(str)) {
+            try {
+               _pageSize = Integer.parseInt(str);
+            } catch (NumberFormatException ex) {
+               _logger.log(Level.WARNING, "{0}: Config attribute ''{1}'' is not a number: ''{2}''",
+                  new Object[]{METHOD, ConfigIF.AS_UMA_POLICIES_PAGESIZE, str});
+            }
+         }
+
+         _pageSize = _pageSize > 0 ? _pageSize : DEFAULT_PAGESIZE;
+      }
+
       if (!this.isError()) {
          this.setState(STATE.READY);
       } else {
@@ -226,48 +254,36 @@ public class SubjectsHandler extends JaxrsHandler {
    }
 
    /**
-    * Implementation of the "search" operation. Get the "pending" access
-    * requests for the owner
+    * Implementation of the "search" operation. Get the subjects that have
+    * access to the owner's resources. All the owner's policies are read, one
+    * page at a time, and added to the subjects as each page arrives.
     *
     * <pre>
     * JSON input ...
     * {
     *   "sso_token": "...", // header: iPlanetDirectoryPro
-    *   "owner": "..." // used to build the URL
+    *   "owner": "...", // used to build the URL
+    *   "offset": 0, // OPTIONAL ... subjects to skip
+    *   "limit": 20 // OPTIONAL ... maximum subjects
     * }
     * JSON output ...
     * {
     *   "data": {
-    *     "result”:[
+    *     "quantity": X,
+    *     "results": [
     *       {
-    *         "policyId": "057722e3-94dc-49bc-9a08-66c8e6ff1da60",
-    *         "permissions": [
+    *         "subject": "aadams",
+    *         "resources": [
     *           {
-    *             "subject": "myoshida",
+    *             "id": "a4cd56f3-8320-4f66-a21a-96af75433d08",
+    *             "name": "Flood damage claim",
     *             "scopes": [ "view", "markup" ]
     *           }
-    *         ],
-    *         "name": "Flood damage claim",
-    *         "_id": "057722e3-94dc-49bc-9a08-66c8e6ff1da60"
+    *         ]
     *       }
-    *     ],
-    *     "resultCount":1,
-    *     "pagedResultsCookie":null,
-    *     "totalPagedResultsPolicy":"NONE”,
-    *     "totalPagedResults":-1,
-    *     "remainingPagedResults”:0
+    *     ]
     *   }
     * }
-    * curl example:
-    * curl -X GET\
-    * --header "iPlanetDirectoryPro: ..." \
-    * --header "Accept-API-Version: resource=1.0" \
-    * --data-urlencode '_sortKeys=policyId,name' \
-    * --data-urlencode '_pageSize=1' \
-    * --data-urlencode '_pagedResultsOffset=0' \
-    * --data-urlencode '_queryFilter=permissions/subject eq "bob"' \
-    * https://.../openam/json/realms/root/users/<<owner>>/uma/policies
-    *
     * </pre>
     *
     * @param operInput OperationIF input
@@ -278,65 +294,38 @@ public class SubjectsHandler extends JaxrsHandler {
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
       String sso_token = null;
       String owner = null;
-      String configType = ConstantsIF.RESOURCE;
-      JSONObject jsonData = null;
-      JSONObject jsonQuery = null;
-      JSONObject jsonHeaders = null;
-      JSONObject jsonParams = null;
-      JSONObject jsonSearch = null;
-      JSONObject jsonOutput = null;
+      JSONObject jsonInput = null;
       OperationIF operOutput = null;
-      OperationIF operASInput = null;
-      OperationIF operASOutput = null;
+      PolicyPages pages = null;
+      Map<String, String> mapResourceIds = null;
+      Map<String, JSONArray> mapSubjects = null;
 
       _logger.entering(CLASS, METHOD);
 
       operOutput = new Operation(operInput.getType());
 
-      sso_token = JSON.getString(operInput.getJSON(), ConstantsIF.SSO_TOKEN);
-      owner = JSON.getString(operInput.getJSON(), ConstantsIF.OWNER);
-
-      if (!STR.isEmpty(sso_token) && !STR.isEmpty(owner)) {
-         jsonQuery = new JSONObject(); // SEARCH requires a "query" object
-         jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.NONE);
-
-         jsonHeaders = new JSONObject();
-         jsonHeaders.put(ConstantsIF.ACCEPT_API_VERSION, this.getConfigValue(configType, ConfigIF.AS_UMA_POLICIES_ACCEPT));
-         jsonHeaders.put(this.getConfigValue(configType, ConfigIF.AS_COOKIE), sso_token);
+      jsonInput = operInput.getJSON();
 
-         jsonParams = new JSONObject();
-         jsonParams.put("_pageSize", "10");
-         jsonParams.put("_sortKeys", "policyId,name");
-         jsonParams.put("_queryFilter", "true");
-         jsonParams.put("_pagedResultsOffset", "0");
+      sso_token = JSON.getString(jsonInput, ConstantsIF.SSO_TOKEN);
+      owner = JSON.getString(jsonInput, ConstantsIF.OWNER);
 
-         jsonSearch = new JSONObject();
-         jsonSearch.put(ConstantsIF.QUERY, jsonQuery);
-         jsonSearch.put(ConstantsIF.HEADERS, jsonHeaders);
-         jsonSearch.put(ConstantsIF.QUERY_PARAMS, jsonParams);
-         jsonSearch.put(ConstantsIF.PATH,
-            this.getConfigValue(configType, ConfigIF.AS_UMA_POLICIES_PATH)
-               .replaceAll(PROP_VAR_OWNER, owner));
+      if (!STR.isEmpty(sso_token) && !STR.isEmpty(owner)) {
+         mapSubjects = new TreeMap<>();
 
-         operASInput = new Operation(OperationIF.TYPE.SEARCH); // GET
-         operASInput.setJSON(jsonSearch);
+         pages = new PolicyPages(owner, sso_token);
 
-         operASOutput = _AuthzServerDAO.execute(operASInput);
+         while (pages.hasNext()) {
+            if (mapResourceIds == null) { // only if the owner has policies
+               mapResourceIds = this.getResourceIds(owner);
+            }
 
-         if (operASOutput.getState() == STATE.NOTEXIST) // 404 NOT FOUND
-         {
-            jsonData = new JSONObject();
-            jsonData.put(ConstantsIF.RESULTS, new JSONArray());
-         } else {
-            jsonData = operASOutput.getJSON();
+            this.addSubjects(mapSubjects, pages.next(), mapResourceIds);
          }
 
-         jsonOutput = new JSONObject();
-         jsonOutput.put(ConstantsIF.DATA, jsonData);
-
-         operOutput.setState(operASOutput.getState());
-         operOutput.setStatus(operASOutput.getStatus());
-         operOutput.setJSON(this.getSubjects(jsonOutput));
+         operOutput.setState(pages.getState());
+         operOutput.setStatus(pages.getStatus());
+         operOutput.setJSON(this.getSubjects(mapSubjects,
+            this.getOffset(jsonInput), this.getLimit(jsonInput)));
       } else {
          throw new Exception(METHOD + ": sso_token or owner is empty");
       }
@@ -347,28 +336,84 @@ public class SubjectsHandler extends JaxrsHandler {
    }
 
    /**
-    * Get the "pending" access requests for the owner
+    * Add the permissions of a page of policies to the subjects. Policies for
+    * registrations without a resource are skipped.
     *
     * <pre>
-    * JSON input ...
-    * {
-    *   "data": {
-    *     "result”:[
+    * JSON input ... page of policies
+    * [
+    *   {
+    *     "policyId": "057722e3-94dc-49bc-9a08-66c8e6ff1da60",
+    *     "permissions": [
     *       {
-    *         "policyId": "057722e3-94dc-49bc-9a08-66c8e6ff1da60",
-    *         "permissions": [
-    *           {
-    *             "subject": "myoshida",
-    *             "scopes": [ "view", "markup" ]
-    *           }
-    *         ],
-    *         "name": "Flood damage claim",
-    *         "_id": "057722e3-94dc-49bc-9a08-66c8e6ff1da60"
+    *         "subject": "myoshida",
+    *         "scopes": [ "view", "markup" ]
     *       }
-    *     ]
+    *     ],
+    *     "name": "Flood damage claim",
+    *     "_id": "057722e3-94dc-49bc-9a08-66c8e6ff1da60"
     *   }
-    * }
+    * ]
+    * </pre>
+    *
+    * @param mapSubjects Map subject to resources, updated
+    * @param arrayPolicies JSONArray page of policies
+    * @param mapResourceIds Map register id to resource id
+    */
+   private void addSubjects(final Map<String, JSONArray> mapSubjects, final JSONArray arrayPolicies,
+      final Map<String, String> mapResourceIds) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String resourceId = null;
+      String name = null;
+      String subject = null;
+      JSONObject jsonPolicy = null;
+      JSONObject jsonPermission = null;
+      JSONObject jsonResource = null;
+      JSONArray arrayPermissons = null;
+      JSONArray arrayResources = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      if (arrayPolicies != null) {
+         for (Object policy : arrayPolicies) {
+            if (policy != null && policy instanceof JSONObject) {
+               jsonPolicy = (JSONObject) policy;
+               resourceId = mapResourceIds.get(JSON.getString(jsonPolicy, ConstantsIF.POLICYID));
+               name = JSON.getString(jsonPolicy, ConstantsIF.NAME);
+               arrayPermissons = JSON.getArray(jsonPolicy, ConstantsIF.PERMISSIONS);
+
+               if (!STR.isEmpty(resourceId) && arrayPermissons != null) {
+                  for (Object permission : arrayPermissons) {
+                     if (permission != null && permission instanceof JSONObject) {
+                        jsonPermission = (JSONObject) permission;
+                        subject = JSON.getString(jsonPermission, ConstantsIF.SUBJECT);
+
+                        if (!STR.isEmpty(subject)) {
+                           arrayResources = mapSubjects.computeIfAbsent(subject, key -> new JSONArray());
+
+                           jsonResource = new JSONObject();
+                           jsonResource.put(ConstantsIF.NAME, name);
+                           jsonResource.put(ConstantsIF.SCOPES, JSON.getArray(jsonPermission, ConstantsIF.SCOPES));
+                           jsonResource.put(ConstantsIF.ID, resourceId);
+
+                           arrayResources.add(jsonResource);
+                        }
+                     }
+                  }
+               }
+            }
+         }
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+
+   /**
+    * Get a page of the subjects, sorted by subject
     *
+    * <pre>
     * JSON output ...
     * {
     *   "data": {
@@ -378,7 +423,7 @@ public class SubjectsHandler extends JaxrsHandler {
     *         "subject": "aadams",
     *         "resources": [
     *           {
-    *             "_id": "057722e3-94dc-49bc-9a08-66c8e6ff1da60",
+    *             "id": "a4cd56f3-8320-4f66-a21a-96af75433d08",
     *             "name": "Flood damage claim",
     *             "scopes": [ "view", "markup" ]
     *           }
@@ -389,80 +434,28 @@ public class SubjectsHandler extends JaxrsHandler {
     * }
     * </pre>
     *
-    * @param jsonPolicies JSONObject policies with subjects
+    * @param mapSubjects Map subject to resources
+    * @param offset int subjects to skip
+    * @param limit int maximum subjects
     * @return JSONObject subjects with resource policies
     */
-   private JSONObject getSubjects(final JSONObject jsonPolicies) {
+   private JSONObject getSubjects(final Map<String, JSONArray> mapSubjects, final int offset, final int limit) {
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
-      String registerId = null;
-      String resourceId = null;
-      String name = null;
-      String subject = null;
       JSONObject jsonResults = null;
       JSONObject jsonData = null;
-      JSONObject jsonPolicy = null;
-      JSONObject jsonPermission = null;
-      JSONObject jsonResource = null;
       JSONObject jsonSubject = null;
       JSONArray arraySubjects = null;
-      JSONArray arrayPolicies = null;
-      JSONArray arrayPermissons = null;
-      JSONArray arrayScopes = null;
-      JSONArray arrayResources = null;
-      Map<String, JSONArray> mapResources = null;
 
       _logger.entering(CLASS, METHOD);
 
       arraySubjects = new JSONArray();
 
-      mapResources = new HashMap<>();
-
-      if (jsonPolicies != null && !jsonPolicies.isEmpty()) {
-         arrayPolicies = JSON.getArray(jsonPolicies, ConstantsIF.DATA + "." + ConstantsIF.RESULT);
-
-         if (arrayPolicies != null && !arrayPolicies.isEmpty()) {
-
-            for (Object policy : arrayPolicies) {
-               if (policy != null && policy instanceof JSONObject) {
-                  jsonPolicy = (JSONObject) policy;
-                  registerId = JSON.getString(jsonPolicy, ConstantsIF.POLICYID);
-                  name = JSON.getString(jsonPolicy, ConstantsIF.NAME);
-                  arrayPermissons = JSON.getArray(jsonPolicy, ConstantsIF.PERMISSIONS);
-
-                  resourceId = this.getResourceIdFromRegisterId(registerId);
-
-                  if (!STR.isEmpty(resourceId)) {
-                     for (Object permission : arrayPermissons) {
-                        if (permission != null && permission instanceof JSONObject) {
-                           jsonPermission = (JSONObject) permission;
-                           subject = JSON.getString(jsonPermission, ConstantsIF.SUBJECT);
-                           arrayScopes = JSON.getArray(jsonPermission, ConstantsIF.SCOPES);
-
-                           if (mapResources.containsKey(subject)) {
-                              arrayResources = mapResources.get(subject);
-                           } else {
-                              arrayResources = new JSONArray();
-                              mapResources.put(subject, arrayResources);
-                           }
-
-                           jsonResource = new JSONObject();
-                           jsonResource.put(ConstantsIF.NAME, name);
-                           jsonResource.put(ConstantsIF.SCOPES, arrayScopes);
-                           jsonResource.put(ConstantsIF.ID, resourceId);
-
-                           arrayResources.add(jsonResource);
-                        }
-                     }
-                  }
-               }
-            }
-         }
-      }
+      for (Object obj : this.getPage(new ArrayList<>(mapSubjects.entrySet()), offset, limit)) {
+         Map.Entry<?, ?> entry = (Map.Entry<?, ?>) obj;
 
-      for (String sub : mapResources.keySet()) {
          jsonSubject = new JSONObject();
-         jsonSubject.put(ConstantsIF.SUBJECT, sub);
-         jsonSubject.put(ConstantsIF.RESOURCES, mapResources.get(sub));
+         jsonSubject.put(ConstantsIF.SUBJECT, entry.getKey());
+         jsonSubject.put(ConstantsIF.RESOURCES, entry.getValue());
 
          arraySubjects.add(jsonSubject);
       }
@@ -480,14 +473,15 @@ public class SubjectsHandler extends JaxrsHandler {
    }
 
    /**
-    * Search MongoDB "resources" collection. Use the register id to get the
-    * resource id (uid)
+    * Search MongoDB "resources" collection for all of the owner's resources,
+    * only the register id is read. Map each register id to the resource id
+    * (uid). One search for all the policies, instead of one per policy.
     *
     * <pre>
     * JSON input ...
     * {
     *   "query": {
-    *     "operator": "eq",
+    *     "operator": "equal",
     *     "attribute": "data.owner",
     *     "value": "..."
     *   }
@@ -499,7 +493,7 @@ public class SubjectsHandler extends JaxrsHandler {
     *     {
     *       "uid": "...",
     *       "data: {
-    *         ...
+    *         "register": "..."
     *       }
     *     },
     *     ...
@@ -507,56 +501,223 @@ public class SubjectsHandler extends JaxrsHandler {
     * }
     * </pre>
     *
-    * @param registerId String registeration identifier
-    * @return String resource identifier
+    * @param owner String resource owner
+    * @return Map register id to resource id, may be empty
     */
-   private String getResourceIdFromRegisterId(final String registerId) {
+   private Map<String, String> getResourceIds(final String owner) {
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
-      String resourceId = null;
+      String registerId = null;
       JSONObject jsonInput = null;
       JSONObject jsonQuery = null;
+      JSONArray arrayResults = null;
       OperationIF operInput = null;
       OperationIF operOutput = null;
+      Map<String, String> mapResourceIds = null;
 
       _logger.entering(CLASS, METHOD);
 
-      if (!STR.isEmpty(registerId)) {
-         operInput = new Operation(OperationIF.TYPE.SEARCH);
+      mapResourceIds = new HashMap<>();
 
-         jsonQuery = new JSONObject();
-         jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
-         jsonQuery.put(ConstantsIF.ATTRIBUTE, "data.register");
-         jsonQuery.put(ConstantsIF.VALUE, registerId);
+      operInput = new Operation(OperationIF.TYPE.SEARCH);
 
-         jsonInput = new JSONObject();
-         jsonInput.put(ConstantsIF.QUERY, jsonQuery);
+      jsonQuery = new JSONObject();
+      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
+      jsonQuery.put(ConstantsIF.ATTRIBUTE, ConstantsIF.DATA + "." + ConstantsIF.OWNER);
+      jsonQuery.put(ConstantsIF.VALUE, owner);
 
-         operInput.setJSON(jsonInput);
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.QUERY, jsonQuery);
 
-         try {
-            this.setDatabaseAndCollection(operInput, ConfigIF.RS_NOSQL_DATABASE,
-               ConfigIF.RS_NOSQL_COLLECTIONS_RESOURCES_NAME);
-         } catch (Exception ex) {
-            this.setError(true);
-            operOutput = new Operation(OperationIF.TYPE.SEARCH);
-            operOutput.setError(true);
-            operOutput.setState(STATE.ERROR);
-            operOutput.setStatus(METHOD + ": " + ex.getMessage());
+      operInput.setJSON(jsonInput);
+
+      try {
+         this.setDatabaseAndCollection(operInput, ConfigIF.RS_NOSQL_DATABASE,
+            ConfigIF.RS_NOSQL_COLLECTIONS_RESOURCES_NAME);
+
+         operOutput = _MongoDAO.execute(operInput);
 
-            _logger.severe(METHOD + ": " + ex.getMessage());
+         if (operOutput.getState() == STATE.SUCCESS) {
+            arrayResults = JSON.getArray(operOutput.getJSON(), ConstantsIF.RESULTS);
          }
+      } catch (Exception ex) {
+         _logger.severe(METHOD + ": " + ex.getMessage());
+      }
 
-         if (!this.isError()) {
-            operOutput = _MongoDAO.execute(operInput);
+      if (arrayResults != null) {
+         for (Object obj : arrayResults) {
+            if (obj instanceof JSONObject) {
+               registerId = JSON.getString((JSONObject) obj, ConstantsIF.DATA + "." + ConstantsIF.REGISTER);
 
-            if (operOutput.getState() == STATE.SUCCESS) {
-               resourceId = JSON.getString(operOutput.getJSON(), ConstantsIF.RESULTS + "[0]." + ConstantsIF.UID);
+               if (!STR.isEmpty(registerId)) {
+                  mapResourceIds.put(registerId, JSON.getString((JSONObject) obj, ConstantsIF.UID));
+               }
             }
          }
       }
 
       _logger.exiting(CLASS, METHOD);
 
-      return resourceId;
+      return mapResourceIds;
+   }
+
+   /**
+    * Reads all the owner's policies from AM, one page at a time. The next page
+    * is requested with the "pagedResultsCookie" of the previous page, or with
+    * "_pagedResultsOffset" if AM did not return a cookie. Stops after a page
+    * that is not full, or after an error; the error is available from
+    * getState() and getStatus().
+    *
+    * <pre>
+    * curl example:
+    * curl -X GET\
+    * --header "iPlanetDirectoryPro: ..." \
+    * --header "Accept-API-Version: resource=1.0" \
+    * --data-urlencode '_sortKeys=policyId,name' \
+    * --data-urlencode '_pageSize=100' \
+    * --data-urlencode '_pagedResultsCookie=...' \
+    * --data-urlencode '_queryFilter=true' \
+    * https://.../openam/json/realms/root/users/<<owner>>/uma/policies
+    * </pre>
+    */
+   private class PolicyPages implements Iterator<JSONArray> {
+
+      private final String _owner;
+      private final String _ssoToken;
+      private String _cookie = null;
+      private int _offset = 0;
+      private int _pages = 0;
+      private boolean _done = false;
+      private JSONArray _next = null;
+      private STATE _state = STATE.SUCCESS;
+      private String _status = null;
+
+      /**
+       * Constructor
+       *
+       * @param owner String resource owner
+       * @param ssoToken String owner's SSO token
+       */
+      PolicyPages(final String owner, final String ssoToken) {
+         _owner = owner;
+         _ssoToken = ssoToken;
+
+         return;
+      }
+
+      @Override
+      public boolean hasNext() {
+         if (_next == null && !_done) {
+            _next = this.fetch();
+         }
+
+         return _next != null;
+      }
+
+      @Override
+      public JSONArray next() {
+         JSONArray arrayPage = null;
+
+         if (!this.hasNext()) {
+            throw new NoSuchElementException();
+         }
+
+         arrayPage = _next;
+         _next = null;
+
+         return arrayPage;
+      }
+
+      STATE getState() {
+         return _state;
+      }
+
+      String getStatus() {
+         return _status;
+      }
+
+      /**
+       * Get the next page of policies
+       *
+       * @return JSONArray policies, null if there are no more
+       */
+      private JSONArray fetch() {
+         String METHOD = "fetch()";
+         String configType = ConstantsIF.RESOURCE;
+         JSONObject jsonQuery = null;
+         JSONObject jsonHeaders = null;
+         JSONObject jsonParams = null;
+         JSONObject jsonSearch = null;
+         JSONArray arrayPolicies = null;
+         OperationIF operASInput = null;
+         OperationIF operASOutput = null;
+
+         _done = true; // unless there is a full page
+
+         try {
+            jsonQuery = new JSONObject(); // SEARCH requires a "query" object
+            jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.NONE);
+
+            jsonHeaders = new JSONObject();
+            jsonHeaders.put(ConstantsIF.ACCEPT_API_VERSION,
+               getConfigValue(configType, ConfigIF.AS_UMA_POLICIES_ACCEPT));
+            jsonHeaders.put(getConfigValue(configType, ConfigIF.AS_COOKIE), _ssoToken);
+
+            jsonParams = new JSONObject();
+            jsonParams.put(PROP_PAGESIZE, Integer.toString(_pageSize));
+            jsonParams.put(PROP_SORTKEYS, "policyId,name");
+            jsonParams.put(PROP_QUERYFILTER, "true");
+
+            if (!STR.isEmpty(_cookie)) {
+               jsonParams.put(PROP_PAGEDRESULTSCOOKIE, _cookie);
+            } else {
+               jsonParams.put(PROP_PAGEDRESULTSOFFSET, Integer.toString(_offset));
+            }
+
+            jsonSearch = new JSONObject();
+            jsonSearch.put(ConstantsIF.QUERY, jsonQuery);
+            jsonSearch.put(ConstantsIF.HEADERS, jsonHeaders);
+            jsonSearch.put(ConstantsIF.QUERY_PARAMS, jsonParams);
+            jsonSearch.put(ConstantsIF.PATH,
+               getConfigValue(configType, ConfigIF.AS_UMA_POLICIES_PATH).replaceAll(PROP_VAR_OWNER, _owner));
+
+            operASInput = new Operation(OperationIF.TYPE.SEARCH); // GET
+            operASInput.setJSON(jsonSearch);
+
+            operASOutput = _AuthzServerDAO.execute(operASInput);
+         } catch (Exception ex) {
+            _state = STATE.ERROR;
+            _status = METHOD + ": " + ex.getMessage();
+            return null;
+         }
+
+         if (operASOutput.getState() == STATE.NOTEXIST) { // 404 NOT FOUND, no policies
+            return null;
+         }
+
+         if (operASOutput.getState() != STATE.SUCCESS) {
+            _state = operASOutput.getState();
+            _status = operASOutput.getStatus();
+            return null;
+         }
+
+         _pages++;
+         arrayPolicies = JSON.getArray(operASOutput.getJSON(), ConstantsIF.RESULT);
+         _cookie = JSON.getString(operASOutput.getJSON(), PROP_PAGEDRESULTSCOOKIE_OUTPUT);
+
+         if (arrayPolicies == null || arrayPolicies.isEmpty()) {
+            return null;
+         }
+
+         _offset += arrayPolicies.size();
+
+         if ((!STR.isEmpty(_cookie) || arrayPolicies.size() >= _pageSize) && _pages < MAX_PAGES) {
+            _done = false;
+         } else if (_pages >= MAX_PAGES) {
+            _logger.log(Level.WARNING, "{0}: Stopped after {1} pages of policies, owner ''{2}''",
+               new Object[]{METHOD, _pages, _owner});
+         }
+
+         return arrayPolicies;
+      }
    }
 }
@@ -18,7 +18,10 @@ public class ApplicationConfig extends Application {
    @Override
    public Set<Class<?>> getClasses() {
       Set<Class<?>> resources = new java.util.HashSet<Class<?>>();
+      resources.add(com.forgerock.frdp.resourceserver.rest.CompressionInterceptor.class);
+      resources.add(com.forgerock.frdp.resourceserver.rest.JSONStreamWriter.class);
       resources.add(com.forgerock.frdp.resourceserver.rest.config.ConfigResource.class);
+      resources.add(com.forgerock.frdp.resourceserver.rest.jobs.JobsResource.class);
       resources.add(com.forgerock.frdp.resourceserver.rest.manage.ContentResource.class);
       resources.add(com.forgerock.frdp.resourceserver.rest.manage.ManageResource.class);
       resources.add(com.forgerock.frdp.resourceserver.rest.manage.MetaResource.class);
@@ -44,6 +47,7 @@ public class ApplicationConfig extends Application {
     */
    private void addRestResourceClasses(Set<Class<?>> resources) {
       resources.add(com.forgerock.frdp.resourceserver.rest.config.ConfigResource.class);
+      resources.add(com.forgerock.frdp.resourceserver.rest.jobs.JobsResource.class);
       resources.add(com.forgerock.frdp.resourceserver.rest.manage.ContentResource.class);
       resources.add(com.forgerock.frdp.resourceserver.rest.manage.ManageResource.class);
       resources.add(com.forgerock.frdp.resourceserver.rest.manage.MetaResource.class);
@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.rest;
+
+import com.forgerock.frdp.common.ConstantsIF;
+import com.forgerock.frdp.config.ConfigurationIF;
+import com.forgerock.frdp.config.ConfigurationManagerIF;
+import com.forgerock.frdp.resourceserver.ConfigIF;
+import com.forgerock.frdp.utils.JSON;
+import com.forgerock.frdp.utils.STR;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import org.json.simple.JSONObject;
+
+/**
+ * JAX-RS writer interceptor that compresses response entities with GZIP when
+ * the client sends "Accept-Encoding: gzip" and the entity is larger than a
+ * threshold. Media types that are already compressed (images, audio, video,
+ * archives, PDF, octet-stream) and partial content are not compressed.
+ * A strong ETag of a compressed response is made weak, the compressed bytes
+ * differ from the identity representation. Deflaters are pooled. Settings are read from the "rs.compression"
+ * configuration object:
+ * <pre>
+ * "compression": {
+ *    "enabled": "true",
+ *    "threshold": "1024",
+ *    "level": "6",
+ *    "pool": "32"
+ * }
+ * </pre>
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+@Provider
+public class CompressionInterceptor implements WriterInterceptor {
+
+   public static final boolean DEFAULT_ENABLED = true;
+   public static final int DEFAULT_THRESHOLD = 1024; // bytes
+   public static final int DEFAULT_LEVEL = 6;
+   public static final int DEFAULT_POOL = 32;
+
+   private static final String ENCODING_ANY = "*";
+   private static final String ENCODING_XGZIP = "x-gzip";
+   private static final Set<String> COMPRESSED_TYPES = new HashSet<>(Arrays.asList(
+      "application/gzip", "application/x-gzip", "application/zip", "application/x-compress",
+      "application/x-7z-compressed", "application/x-rar-compressed", "application/x-bzip2",
+      "application/pdf", "application/octet-stream", "font/woff", "font/woff2"));
+   private static final String[] COMPRESSED_TYPE_PREFIXES = {"image/", "audio/", "video/"};
+   private static final Set<String> UNCOMPRESSED_IMAGE_TYPES = new HashSet<>(Arrays.asList(
+      "image/svg+xml", "image/bmp", "image/x-icon"));
+   private static final AtomicLong COMPRESSED = new AtomicLong(0L);
+   private static final AtomicLong SKIPPED = new AtomicLong(0L);
+   private static final AtomicLong BYTES_IN = new AtomicLong(0L);
+   private static final AtomicLong BYTES_OUT = new AtomicLong(0L);
+   private static final AtomicLong NANOS = new AtomicLong(0L);
+   private static volatile DeflaterPool _pool = null;
+   private static volatile boolean _enabled = DEFAULT_ENABLED;
+   private static volatile int _threshold = DEFAULT_THRESHOLD;
+   private static volatile boolean _configured = false;
+   private final String CLASS = this.getClass().getName();
+   private final Logger _logger = Logger.getLogger(this.getClass().getName());
+
+   @Context
+   private HttpHeaders _httpHdrs;
+
+   @Context
+   private ServletContext _servletCtx;
+
+   /**
+    * Compress the entity, if the request and response qualify.
+    *
+    * @param context WriterInterceptorContext response context
+    * @throws IOException could not write to the output stream
+    * @throws WebApplicationException JAX-RS error
+    */
+   @Override
+   public void aroundWriteTo(final WriterInterceptorContext context)
+      throws IOException, WebApplicationException {
+      String METHOD = "aroundWriteTo()";
+      OutputStream original = null;
+      ThresholdGZipOutputStream gzipOutput = null;
+      MultivaluedMap<String, Object> headers = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      this.configure();
+
+      headers = context.getHeaders();
+
+      if (!_enabled || !this.isCompressible(context.getMediaType(), headers)) {
+         context.proceed();
+
+         _logger.exiting(CLASS, METHOD);
+
+         return;
+      }
+
+      /*
+       * The representation depends on the request "Accept-Encoding"
+       */
+      if (!headers.containsKey(HttpHeaders.VARY)) {
+         headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+      }
+
+      if (!this.isGZipAccepted()) {
+         SKIPPED.incrementAndGet();
+
+         context.proceed();
+
+         _logger.exiting(CLASS, METHOD);
+
+         return;
+      }
+
+      original = context.getOutputStream();
+      gzipOutput = new ThresholdGZipOutputStream(original, headers, this.getPool(), _threshold);
+
+      context.setOutputStream(gzipOutput);
+
+      try {
+         context.proceed();
+         gzipOutput.finish();
+      } finally {
+         gzipOutput.release();
+         context.setOutputStream(original);
+      }
+
+      if (gzipOutput.isCompressed()) {
+         COMPRESSED.incrementAndGet();
+         BYTES_IN.addAndGet(gzipOutput.getBytesIn());
+         BYTES_OUT.addAndGet(gzipOutput.getBytesOut());
+         NANOS.addAndGet(gzipOutput.getNanos());
+      } else {
+         SKIPPED.incrementAndGet();
+      }
+
+      if (_logger.isLoggable(Level.FINE)) {
+         _logger.log(Level.FINE, "compressed=''{0}'', bytesIn=''{1}'', bytesOut=''{2}'', nanos=''{3}''",
+            new Object[]{gzipOutput.isCompressed(), gzipOutput.getBytesIn(),
+               gzipOutput.getBytesOut(), gzipOutput.getNanos()});
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+
+   /**
+    * Get compression metrics, since the application started.
+    * <pre>
+    * {
+    *   "enabled": true,
+    *   "threshold": 1024,
+    *   "level": 6,
+    *   "compressed": 120,         // responses compressed
+    *   "skipped": 300,            // responses below threshold or not accepted
+    *   "bytesIn": 5242880,        // uncompressed bytes, compressed responses
+    *   "bytesOut": 786432,        // bytes sent, compressed responses
+    *   "bytesSaved": 4456448,
+    *   "ratio": 0.15,
+    *   "cpuMillis": 42,           // time spent compressing
+    *   "deflaters": { "idle": 4, "created": 6 }
+    * }
+    * </pre>
+    *
+    * @return JSONObject metrics
+    */
+   public static JSONObject getMetrics() {
+      long bytesIn = BYTES_IN.get();
+      long bytesOut = BYTES_OUT.get();
+      DeflaterPool pool = _pool;
+      JSONObject jsonOutput = null;
+      JSONObject jsonDeflaters = null;
+
+      jsonOutput = new JSONObject();
+      jsonOutput.put("enabled", _enabled);
+      jsonOutput.put("threshold", _threshold);
+      jsonOutput.put("level", pool == null ? DEFAULT_LEVEL : pool.getLevel());
+      jsonOutput.put("compressed", COMPRESSED.get());
+      jsonOutput.put("skipped", SKIPPED.get());
+      jsonOutput.put("bytesIn", bytesIn);
+      jsonOutput.put("bytesOut", bytesOut);
+      jsonOutput.put("bytesSaved", bytesIn - bytesOut);
+      jsonOutput.put("ratio", bytesIn > 0 ? ((double) bytesOut / (double) bytesIn) : 1.0D);
+      jsonOutput.put("cpuMillis", NANOS.get() / 1000000L);
+
+      jsonDeflaters = new JSONObject();
+      jsonDeflaters.put("idle", pool == null ? 0 : pool.getIdle());
+      jsonDeflaters.put("created", pool == null ? 0L : pool.getCreated());
+
+      jsonOutput.put("deflaters", jsonDeflaters);
+
+      return jsonOutput;
+   }
+
+   /**
+    * Read the "rs.compression" settings again, from the next response. Called
+    * after the configuration is reloaded.
+    */
+   public static void reset() {
+      _configured = false;
+
+      return;
+   }
+
+   /*
+    * ================= PACKAGE METHODS =================
+    */
+   /**
+    * Check an "Accept-Encoding" value for "gzip", "x-gzip" or "*" with a
+    * quality value greater than zero. An explicit "gzip" overrides "*".
+    *
+    * @param value String "Accept-Encoding" header value, may be null
+    * @return boolean True if the value accepts GZIP
+    */
+   static boolean isGZipAccepted(final String value) {
+      boolean accepted = false;
+      int index = 0;
+      String coding = null;
+      String params = null;
+
+      if (!STR.isEmpty(value)) {
+         for (String item : value.split(",")) {
+            index = item.indexOf(';');
+            coding = (index < 0 ? item : item.substring(0, index)).trim().toLowerCase();
+            params = (index < 0 ? "" : item.substring(index + 1)).replace(" ", "");
+
+            if (coding.equals(ThresholdGZipOutputStream.ENCODING_GZIP)
+               || coding.equals(ENCODING_XGZIP) || coding.equals(ENCODING_ANY)) {
+               accepted = !(params.startsWith("q=0") && params.matches("q=0(\\.0{0,3})?"));
+               if (!coding.equals(ENCODING_ANY)) {
+                  break; // an explicit "gzip" overrides "*"
+               }
+            }
+         }
+      }
+
+      return accepted;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Check the response: no existing "Content-Encoding", not partial content
+    * and not an already compressed media type.
+    *
+    * @param mediaType MediaType response media type
+    * @param headers MultivaluedMap response headers
+    * @return boolean True if the entity can be compressed
+    */
+   private boolean isCompressible(final MediaType mediaType, final MultivaluedMap<String, Object> headers) {
+      boolean compressible = true;
+      String type = null;
+
+      if (headers.containsKey(HttpHeaders.CONTENT_ENCODING) || headers.containsKey("Content-Range")) {
+         compressible = false;
+      } else if (mediaType != null) {
+         type = (mediaType.getType() + "/" + mediaType.getSubtype()).toLowerCase();
+
+         if (COMPRESSED_TYPES.contains(type)) {
+            compressible = false;
+         } else if (!UNCOMPRESSED_IMAGE_TYPES.contains(type)) {
+            for (String prefix : COMPRESSED_TYPE_PREFIXES) {
+               if (type.startsWith(prefix)) {
+                  compressible = false;
+                  break;
+               }
+            }
+         }
+      }
+
+      return compressible;
+   }
+
+   /**
+    * Check the request "Accept-Encoding" header for "gzip", "x-gzip" or "*"
+    * with a quality value greater than zero.
+    *
+    * @return boolean True if the client accepts GZIP
+    */
+   private boolean isGZipAccepted() {
+      String value = null;
+
+      if (_httpHdrs != null) {
+         value = _httpHdrs.getHeaderString(HttpHeaders.ACCEPT_ENCODING);
+      }
+
+      return isGZipAccepted(value);
+   }
+
+   /**
+    * Get the Deflater pool, create it if needed
+    *
+    * @return DeflaterPool pool
+    */
+   private DeflaterPool getPool() {
+      if (_pool == null) {
+         synchronized (CompressionInterceptor.class) {
+            if (_pool == null) {
+               _pool = new DeflaterPool(DEFAULT_LEVEL, DEFAULT_POOL);
+            }
+         }
+      }
+
+      return _pool;
+   }
+
+   /**
+    * Read the "rs.compression" settings, once the configuration has been
+    * loaded by a resource. Defaults are used until then.
+    */
+   private void configure() {
+      String METHOD = "configure()";
+      Object obj = null;
+      JSONObject json = null;
+      ConfigurationIF config = null;
+      DeflaterPool previous = null;
+
+      if (_configured || _servletCtx == null) {
+         return;
+      }
+
+      obj = _servletCtx.getAttribute(RSResource.CTX_ATTR_CONFIG_MGR);
+
+      if (obj != null && obj instanceof ConfigurationManagerIF
+         && ((ConfigurationManagerIF) obj).contains(ConstantsIF.RESOURCE)) {
+         config = ((ConfigurationManagerIF) obj).getConfiguration(ConstantsIF.RESOURCE);
+         json = (config == null ? null : config.getJSON());
+
+         synchronized (CompressionInterceptor.class) {
+            if (!_configured) {
+               _enabled = !"false".equalsIgnoreCase(JSON.getString(json, ConfigIF.RS_COMPRESSION_ENABLED));
+               _threshold = this.getInt(json, ConfigIF.RS_COMPRESSION_THRESHOLD, DEFAULT_THRESHOLD);
+               previous = _pool;
+               _pool = new DeflaterPool(this.getInt(json, ConfigIF.RS_COMPRESSION_LEVEL, DEFAULT_LEVEL),
+                  this.getInt(json, ConfigIF.RS_COMPRESSION_POOL, DEFAULT_POOL));
+               _configured = true;
+
+               _logger.log(Level.CONFIG, "{0}: enabled=''{1}'', threshold=''{2}'', level=''{3}''",
+                  new Object[]{METHOD, _enabled, _threshold, _pool.getLevel()});
+            }
+         }
+      }
+
+      if (previous != null) {
+         previous.close(); // release its idle Deflaters
+      }
+
+      return;
+   }
+
+   private int getInt(final JSONObject json, final String name, final int defaultValue) {
+      int value = defaultValue;
+      String str = null;
+
+      str = JSON.getString(json, name);
+
+      if (!STR.isEmpty(str)) {
+         try {
+            value = Integer.parseInt(str);
+         } catch (NumberFormatException ex) {
+            _logger.log(Level.WARNING, "Config attribute ''{0}'' is not a number: {1}",
+               new Object[]{name, str});
+         }
+      }
+
+      return value;
+   }
+}
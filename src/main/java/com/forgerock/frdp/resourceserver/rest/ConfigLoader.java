@@ -0,0 +1,697 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.rest;
+
+import com.forgerock.frdp.common.ConstantsIF;
+import com.forgerock.frdp.common.CoreIF.STATE;
+import com.forgerock.frdp.config.BasicConfiguration;
+import com.forgerock.frdp.config.ConfigurationIF;
+import com.forgerock.frdp.config.ConfigurationManager;
+import com.forgerock.frdp.config.ConfigurationManagerIF;
+import com.forgerock.frdp.handler.HandlerIF;
+import com.forgerock.frdp.handler.HandlerManager;
+import com.forgerock.frdp.handler.HandlerManagerIF;
+import com.forgerock.frdp.resourceserver.ConfigIF;
+import com.forgerock.frdp.resourceserver.handler.AMOAuth2Handler;
+import com.forgerock.frdp.resourceserver.handler.AMProxyAdminHandler;
+import com.forgerock.frdp.resourceserver.handler.AMSessionHandler;
+import com.forgerock.frdp.resourceserver.handler.ContentHandler;
+import com.forgerock.frdp.resourceserver.handler.JaxrsHandler;
+import com.forgerock.frdp.resourceserver.handler.JaxrsHandlerIF;
+import com.forgerock.frdp.resourceserver.handler.JobsHandler;
+import com.forgerock.frdp.resourceserver.handler.MetaHandler;
+import com.forgerock.frdp.resourceserver.handler.ResourcesHandler;
+import com.forgerock.frdp.resourceserver.handler.uma.DiscoverHandler;
+import com.forgerock.frdp.resourceserver.handler.uma.PermissionRequestHandler;
+import com.forgerock.frdp.resourceserver.handler.uma.PolicyHandler;
+import com.forgerock.frdp.resourceserver.handler.uma.ProtectionApiTokenHandler;
+import com.forgerock.frdp.resourceserver.handler.uma.RegisterHandler;
+import com.forgerock.frdp.resourceserver.handler.uma.RequestsHandler;
+import com.forgerock.frdp.resourceserver.handler.uma.SharedWithMeHandler;
+import com.forgerock.frdp.resourceserver.handler.uma.SubjectsHandler;
+import com.forgerock.frdp.resourceserver.handler.uma.WellKnownHandler;
+import com.forgerock.frdp.utils.JSON;
+import com.forgerock.frdp.utils.STR;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+/**
+ * Loads the configuration files and creates the handlers. One instance is
+ * shared by all requests, it is kept in the servlet context. Requests get the
+ * current Configuration Manager and Handler Manager from it.
+ *
+ * A reload reads and validates the configuration files on the
+ * "rs-config-reload" thread. A new Configuration Manager is created, and new
+ * handlers (with new DAO clients) for a changed file: only the Content
+ * Handler when only "content" changed, all handlers when "resource" changed.
+ * The other handlers are kept. The new managers are swapped in, as one
+ * Managers object, only if every handler is ready. Otherwise the current
+ * configuration is kept and the next check tries again. Requests that started
+ * before the swap finish with the handlers they already have. The clients of
+ * the replaced handlers are closed after "rs.reload.grace" seconds. A reload
+ * is triggered by "POST .../config/reload", or by a change to a file when
+ * "rs.reload.interval" is more than 0 seconds.
+ *
+ * <pre>
+ * JSON reload output / metrics:
+ * {
+ *   "status": "reloaded",      // "reloaded" | "unchanged" | "failed"
+ *   "reloads": 3,
+ *   "failures": 1,
+ *   "lastReload": 1603065600000,
+ *   "millis": 240,
+ *   "error": "..."             // last failure
+ * }
+ * </pre>
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class ConfigLoader {
+
+   public static final String STATUS_RELOADED = "reloaded";
+   public static final String STATUS_UNCHANGED = "unchanged";
+   public static final String STATUS_FAILED = "failed";
+   public static final String STATUS = "status";
+   public static final long DEFAULT_GRACE = 300L; // seconds
+
+   private static final String[] HANDLER_IDS = {
+      JaxrsHandlerIF.HANDLER_AMOAUTH2, JaxrsHandlerIF.HANDLER_AMPROXYADM,
+      JaxrsHandlerIF.HANDLER_AMSESSION, JaxrsHandlerIF.HANDLER_CONTENT,
+      JaxrsHandlerIF.HANDLER_UMA_PAT, JaxrsHandlerIF.HANDLER_META,
+      JaxrsHandlerIF.HANDLER_RESOURCES, JaxrsHandlerIF.HANDLER_JOBS,
+      JaxrsHandlerIF.HANDLER_UMA_DISCOVER, JaxrsHandlerIF.HANDLER_UMA_POLICY,
+      JaxrsHandlerIF.HANDLER_UMA_PERMREQ, JaxrsHandlerIF.HANDLER_UMA_REGISTER,
+      JaxrsHandlerIF.HANDLER_UMA_REQUESTS, JaxrsHandlerIF.HANDLER_UMA_SHAREDWITHME,
+      JaxrsHandlerIF.HANDLER_UMA_SUBJECTS, JaxrsHandlerIF.HANDLER_UMA_WELLKNOWN};
+   private final String CLASS = this.getClass().getName();
+   private final Logger _logger = Logger.getLogger(this.getClass().getName());
+   private final ServletContext _servletCtx;
+   private final String _fileRS;
+   private final String _fileCS;
+   private final ScheduledExecutorService _executor;
+   private final ExecutorService _cleanup;
+   private final ExecutorService _registrations;
+   private final AtomicLong _reloads = new AtomicLong(0L);
+   private final AtomicLong _failures = new AtomicLong(0L);
+   private final List<List<AutoCloseable>> _retired = new ArrayList<>(); // guarded by itself
+   private volatile Managers _managers = null;
+   private volatile long _lastReload = 0L;
+   private volatile long _lastModified = 0L;
+   private volatile long _millis = 0L;
+   private volatile String _error = null;
+
+   /**
+    * Constructor, loads the configuration files and creates the handlers.
+    * The managers are saved in the servlet context.
+    *
+    * @param servletCtx ServletContext web application context
+    * @param cleanup ExecutorService credential cleanup, given to the
+    * credential handlers
+    * @param registrations ExecutorService UMA registration reads, given to
+    * the discover handler
+    * @throws Exception could not read or parse a configuration file
+    */
+   public ConfigLoader(final ServletContext servletCtx, final ExecutorService cleanup,
+      final ExecutorService registrations) throws Exception {
+      String realPath = null;
+      ConfigurationManagerIF configMgr = null;
+
+      _servletCtx = servletCtx;
+      _cleanup = cleanup;
+      _registrations = registrations;
+
+      realPath = servletCtx.getRealPath("/");
+      _fileRS = realPath + "WEB-INF" + File.separator + RSResource.CONFIG_FILE_RS;
+      _fileCS = realPath + "WEB-INF" + File.separator + RSResource.CONFIG_FILE_CS;
+
+      _executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+         Thread thread = new Thread(runnable, "rs-config-reload");
+         thread.setDaemon(true);
+         return thread;
+      });
+
+      _lastModified = this.getLastModified();
+      configMgr = this.loadConfiguration();
+      _managers = new Managers(configMgr, this.createHandlers(configMgr, null, null));
+
+      _servletCtx.setAttribute(RSResource.CTX_ATTR_CONFIG_MGR, _managers.getConfigManager());
+      _servletCtx.setAttribute(RSResource.CTX_ATTR_HANDLER_MGR, _managers.getHandlerManager());
+
+      return;
+   }
+
+   /**
+    * Get the current Configuration Manager and Handler Manager. Use both from
+    * the same Managers object, a reload replaces them together.
+    *
+    * @return Managers current managers
+    */
+   public Managers getManagers() {
+      return _managers;
+   }
+
+   /**
+    * Get the current Configuration Manager
+    *
+    * @return ConfigurationManagerIF configuration manager
+    */
+   public ConfigurationManagerIF getConfigManager() {
+      return _managers.getConfigManager();
+   }
+
+   /**
+    * Get the current Handler Manager
+    *
+    * @return HandlerManagerIF handler manager
+    */
+   public HandlerManagerIF getHandlerManager() {
+      return _managers.getHandlerManager();
+   }
+
+   /**
+    * Reload the configuration files, on the reload thread
+    *
+    * @return Future JSON reload output
+    */
+   public Future<JSONObject> reload() {
+      return _executor.submit(this::reloadImpl);
+   }
+
+   /**
+    * Check the configuration files for changes, reload if a file was changed
+    *
+    * @param interval long seconds between checks, 0 or less disables the
+    * check
+    */
+   public void watch(final long interval) {
+      if (interval > 0L) {
+         _executor.scheduleWithFixedDelay(this::check, interval, interval, TimeUnit.SECONDS);
+      }
+
+      return;
+   }
+
+   /**
+    * Stop the reload thread, close the clients of the replaced handlers that
+    * are still waiting and of the current handlers
+    */
+   public void shutdown() {
+      List<List<AutoCloseable>> retired = null;
+
+      _executor.shutdownNow();
+
+      synchronized (_retired) {
+         retired = new ArrayList<>(_retired);
+         _retired.clear();
+      }
+
+      retired.add(this.getClients(_managers.getHandlerManager(), null));
+
+      for (List<AutoCloseable> clients : retired) {
+         this.close(clients);
+      }
+
+      return;
+   }
+
+   /**
+    * Get the reload metrics
+    *
+    * @return JSONObject metrics
+    */
+   public JSONObject getMetrics() {
+      JSONObject jsonOutput = null;
+
+      jsonOutput = new JSONObject();
+      jsonOutput.put("reloads", _reloads.get());
+      jsonOutput.put("failures", _failures.get());
+      jsonOutput.put("lastReload", _lastReload);
+      jsonOutput.put("millis", _millis);
+
+      if (_error != null) {
+         jsonOutput.put(ConstantsIF.ERROR, _error);
+      }
+
+      return jsonOutput;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Reload if a configuration file was changed. Never throws, an exception
+    * would stop the checks.
+    */
+   private void check() {
+      if (this.getLastModified() != _lastModified) {
+         _logger.log(Level.INFO, "Configuration file changed, reloading");
+
+         this.reloadImpl();
+      }
+
+      return;
+   }
+
+   /**
+    * Read the configuration files, create and validate the handlers for the
+    * changed files, swap them in. The modification time is saved only when
+    * the files were read and, if changed, swapped in.
+    *
+    * @return JSONObject reload output
+    */
+   private JSONObject reloadImpl() {
+      boolean changedRS = false;
+      boolean changedCS = false;
+      long start = 0L;
+      long lastModified = 0L;
+      String METHOD = "reloadImpl()";
+      String status = null;
+      HandlerIF handler = null;
+      Managers current = null;
+      Managers managers = null;
+      ConfigurationManagerIF configMgr = null;
+      HandlerManagerIF handlerMgr = null;
+      JSONObject jsonOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      start = System.currentTimeMillis();
+      lastModified = this.getLastModified(); // before the files are read
+
+      try {
+         current = _managers;
+         configMgr = this.loadConfiguration();
+
+         changedRS = this.isChanged(current.getConfigManager(), configMgr, ConstantsIF.RESOURCE);
+         changedCS = this.isChanged(current.getConfigManager(), configMgr, ConstantsIF.CONTENT);
+
+         if (!changedRS && !changedCS) {
+            status = STATUS_UNCHANGED;
+
+            _logger.log(Level.INFO, "{0}: configuration not changed", METHOD);
+         } else {
+            handlerMgr = this.createHandlers(configMgr, current.getHandlerManager(),
+               changedRS ? null : JaxrsHandlerIF.HANDLER_CONTENT);
+
+            for (String handlerId : HANDLER_IDS) {
+               handler = handlerMgr.getHandler(handlerId);
+
+               if (handler == null || handler.getState() != STATE.READY) {
+                  throw new Exception("Handler not ready, handlerId='" + handlerId + "', Status="
+                     + (handler == null ? "null" : handler.getStatus()));
+               }
+            }
+
+            /*
+             * Swap: requests that start from now on use the new managers
+             */
+            managers = new Managers(configMgr, handlerMgr);
+            _managers = managers;
+
+            _servletCtx.setAttribute(RSResource.CTX_ATTR_HANDLER_MGR, handlerMgr);
+            _servletCtx.setAttribute(RSResource.CTX_ATTR_CONFIG_MGR, configMgr);
+
+            /*
+             * Kept handlers find the new handlers, the replaced ones are
+             * closed after the running requests had time to finish
+             */
+            for (String handlerId : HANDLER_IDS) {
+               handler = handlerMgr.getHandler(handlerId);
+
+               if (handler == current.getHandlerManager().getHandler(handlerId)
+                  && handler instanceof JaxrsHandler) {
+                  ((JaxrsHandler) handler).setManagers(configMgr, handlerMgr);
+               }
+            }
+
+            this.retire(this.getClients(current.getHandlerManager(), handlerMgr));
+
+            if (changedRS) {
+               CompressionInterceptor.reset();
+            }
+
+            _reloads.incrementAndGet();
+            _lastReload = System.currentTimeMillis();
+            status = STATUS_RELOADED;
+
+            _logger.log(Level.INFO, "{0}: configuration reloaded, changed: {1}", new Object[]{METHOD,
+               changedRS ? (changedCS ? "resource, content" : "resource") : "content"});
+         }
+
+         _lastModified = lastModified;
+         _error = null;
+      } catch (Exception ex) {
+         _failures.incrementAndGet();
+         _error = ex.getMessage();
+         status = STATUS_FAILED;
+
+         _logger.log(Level.WARNING, "{0}: configuration not reloaded: {1}",
+            new Object[]{METHOD, ex.getMessage()});
+      }
+
+      _millis = System.currentTimeMillis() - start;
+
+      jsonOutput = this.getMetrics();
+      jsonOutput.put(STATUS, status);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return jsonOutput;
+   }
+
+   /**
+    * Check if a configuration changed
+    *
+    * @param current ConfigurationManagerIF current configurations
+    * @param configMgr ConfigurationManagerIF reloaded configurations
+    * @param configType String configuration type, "resource" or "content"
+    * @return boolean True if the JSON is not the same
+    */
+   private boolean isChanged(final ConfigurationManagerIF current, final ConfigurationManagerIF configMgr,
+      final String configType) {
+      ConfigurationIF configCurrent = null;
+      ConfigurationIF config = null;
+
+      configCurrent = current.getConfiguration(configType);
+      config = configMgr.getConfiguration(configType);
+
+      return configCurrent == null || config == null
+         || !Objects.equals(configCurrent.getJSON(), config.getJSON());
+   }
+
+   /**
+    * Get the clients of the handlers that are not in the new Handler Manager.
+    * A client that a new handler also uses (a shared DAO instance) is not
+    * included. Only clients that can be closed are included.
+    *
+    * @param handlerMgr HandlerManagerIF replaced handlers
+    * @param newHandlerMgr HandlerManagerIF new handlers, null if all are
+    * replaced
+    * @return List clients to close
+    */
+   private List<AutoCloseable> getClients(final HandlerManagerIF handlerMgr, final HandlerManagerIF newHandlerMgr) {
+      HandlerIF handler = null;
+      Set<Object> kept = null;
+      List<AutoCloseable> clients = null;
+
+      kept = Collections.newSetFromMap(new IdentityHashMap<>());
+      clients = new ArrayList<>();
+
+      if (newHandlerMgr != null) {
+         for (String handlerId : HANDLER_IDS) {
+            handler = newHandlerMgr.getHandler(handlerId);
+
+            if (handler instanceof JaxrsHandler) {
+               kept.addAll(((JaxrsHandler) handler).getClients());
+            }
+         }
+      }
+
+      for (String handlerId : HANDLER_IDS) {
+         handler = handlerMgr.getHandler(handlerId);
+
+         if (handler instanceof JaxrsHandler
+            && (newHandlerMgr == null || newHandlerMgr.getHandler(handlerId) != handler)) {
+            for (Object client : ((JaxrsHandler) handler).getClients()) {
+               if (client instanceof AutoCloseable && kept.add(client)) {
+                  clients.add((AutoCloseable) client);
+               }
+            }
+         }
+      }
+
+      return clients;
+   }
+
+   /**
+    * Close the clients after "rs.reload.grace" seconds, on the reload thread
+    *
+    * @param clients List clients of the replaced handlers
+    */
+   private void retire(final List<AutoCloseable> clients) {
+      long grace = DEFAULT_GRACE;
+      String METHOD = "retire()";
+      String str = null;
+
+      if (!clients.isEmpty()) {
+         str = JSON.getString(this.getConfigManager().getConfiguration(ConstantsIF.RESOURCE).getJSON(),
+            ConfigIF.RS_RELOAD_GRACE);
+
+         if (!STR.isEmpty(str)) {
+            try {
+               grace = Long.parseLong(str);
+            } catch (NumberFormatException ex) {
+               _logger.log(Level.WARNING, "{0}: Config attribute ''{1}'' is not a number, using {2}",
+                  new Object[]{METHOD, ConfigIF.RS_RELOAD_GRACE, DEFAULT_GRACE});
+            }
+         }
+
+         synchronized (_retired) {
+            _retired.add(clients);
+         }
+
+         _executor.schedule(() -> {
+            boolean pending = false;
+
+            synchronized (_retired) {
+               pending = _retired.remove(clients);
+            }
+
+            if (pending) {
+               this.close(clients);
+            }
+         }, grace > 0L ? grace : 0L, TimeUnit.SECONDS);
+      }
+
+      return;
+   }
+
+   /**
+    * Close clients, errors are logged
+    *
+    * @param clients List clients
+    */
+   private void close(final List<AutoCloseable> clients) {
+      String METHOD = "close()";
+
+      for (AutoCloseable client : clients) {
+         try {
+            client.close();
+         } catch (Exception ex) {
+            _logger.log(Level.WARNING, "{0}: Could not close {1}: {2}",
+               new Object[]{METHOD, client.getClass().getName(), ex.getMessage()});
+         }
+      }
+
+      return;
+   }
+
+   /**
+    * Read the "resource" and "content" configuration files
+    *
+    * @return ConfigurationManagerIF new configuration manager
+    * @throws Exception could not read or parse a file
+    */
+   private ConfigurationManagerIF loadConfiguration() throws Exception {
+      ConfigurationManagerIF configMgr = null;
+
+      configMgr = new ConfigurationManager();
+      configMgr.setConfiguration(ConstantsIF.RESOURCE, this.readConfiguration(_fileRS));
+      configMgr.setConfiguration(ConstantsIF.CONTENT, this.readConfiguration(_fileCS));
+
+      _logger.log(Level.INFO, "Loaded configuration files : {0}, {1}",
+         new Object[]{RSResource.CONFIG_FILE_RS, RSResource.CONFIG_FILE_CS});
+
+      return configMgr;
+   }
+
+   /**
+    * Read one configuration file
+    *
+    * @param file String path of the file
+    * @return ConfigurationIF configuration
+    * @throws Exception could not read the file or it is not a JSON object
+    */
+   private ConfigurationIF readConfiguration(final String file) throws Exception {
+      Object obj = null;
+      ConfigurationIF config = null;
+
+      obj = new JSONParser().parse(new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8));
+
+      if (obj == null || !(obj instanceof JSONObject)) {
+         throw new Exception("Config object is null or not a JSON object: " + file);
+      }
+
+      config = new BasicConfiguration();
+      config.setJSON((JSONObject) obj);
+
+      return config;
+   }
+
+   /**
+    * Create the handlers, each handler gets its own DAO clients. The current
+    * handlers are kept, except the changed one and the ones that are not ready.
+    *
+    * @param configMgr ConfigurationManagerIF configuration for the handlers
+    * @param current HandlerManagerIF current handlers, null to create all
+    * @param changedId String identifier of the changed handler, null to
+    * create all
+    * @return HandlerManagerIF new handler manager
+    */
+   private HandlerManagerIF createHandlers(final ConfigurationManagerIF configMgr, final HandlerManagerIF current,
+      final String changedId) {
+      HandlerIF handler = null;
+      HandlerManagerIF handlerMgr = null;
+
+      handlerMgr = new HandlerManager();
+
+      for (String handlerId : HANDLER_IDS) {
+         handler = null;
+
+         if (current != null && changedId != null && !changedId.equals(handlerId)) {
+            handler = current.getHandler(handlerId);
+         }
+
+         if (handler == null || handler.getState() != STATE.READY) {
+            handler = this.createHandler(handlerId, configMgr, handlerMgr);
+         }
+
+         handlerMgr.setHandler(handlerId, handler);
+      }
+
+      return handlerMgr;
+   }
+
+   /**
+    * Create one handler
+    *
+    * @param handlerId String handler identifier
+    * @param configMgr ConfigurationManagerIF configuration for the handler
+    * @param handlerMgr HandlerManagerIF handler manager for the handler
+    * @return HandlerIF new handler
+    */
+   private HandlerIF createHandler(final String handlerId, final ConfigurationManagerIF configMgr,
+      final HandlerManagerIF handlerMgr) {
+      HandlerIF handler = null;
+
+      switch (handlerId) {
+         case JaxrsHandlerIF.HANDLER_AMOAUTH2:
+            handler = new AMOAuth2Handler(configMgr, handlerMgr);
+            break;
+         case JaxrsHandlerIF.HANDLER_AMPROXYADM:
+            handler = new AMProxyAdminHandler(configMgr, handlerMgr, _cleanup);
+            break;
+         case JaxrsHandlerIF.HANDLER_AMSESSION:
+            handler = new AMSessionHandler(configMgr, handlerMgr);
+            break;
+         case JaxrsHandlerIF.HANDLER_CONTENT:
+            handler = new ContentHandler(configMgr, handlerMgr);
+            break;
+         case JaxrsHandlerIF.HANDLER_UMA_PAT:
+            handler = new ProtectionApiTokenHandler(configMgr, handlerMgr, _cleanup);
+            break;
+         case JaxrsHandlerIF.HANDLER_META:
+            handler = new MetaHandler(configMgr, handlerMgr);
+            break;
+         case JaxrsHandlerIF.HANDLER_RESOURCES:
+            handler = new ResourcesHandler(configMgr, handlerMgr);
+            break;
+         case JaxrsHandlerIF.HANDLER_JOBS:
+            handler = new JobsHandler(configMgr, handlerMgr);
+            break;
+         case JaxrsHandlerIF.HANDLER_UMA_DISCOVER:
+            handler = new DiscoverHandler(configMgr, handlerMgr, _registrations);
+            break;
+         case JaxrsHandlerIF.HANDLER_UMA_POLICY:
+            handler = new PolicyHandler(configMgr, handlerMgr);
+            break;
+         case JaxrsHandlerIF.HANDLER_UMA_PERMREQ:
+            handler = new PermissionRequestHandler(configMgr, handlerMgr);
+            break;
+         case JaxrsHandlerIF.HANDLER_UMA_REGISTER:
+            handler = new RegisterHandler(configMgr, handlerMgr);
+            break;
+         case JaxrsHandlerIF.HANDLER_UMA_REQUESTS:
+            handler = new RequestsHandler(configMgr, handlerMgr);
+            break;
+         case JaxrsHandlerIF.HANDLER_UMA_SHAREDWITHME:
+            handler = new SharedWithMeHandler(configMgr, handlerMgr);
+            break;
+         case JaxrsHandlerIF.HANDLER_UMA_SUBJECTS:
+            handler = new SubjectsHandler(configMgr, handlerMgr);
+            break;
+         case JaxrsHandlerIF.HANDLER_UMA_WELLKNOWN:
+            handler = new WellKnownHandler(configMgr, handlerMgr);
+            break;
+         default:
+            throw new IllegalArgumentException("Unknown handler '" + handlerId + "'");
+      }
+
+      return handler;
+   }
+
+   /**
+    * Get the latest modification time of the configuration files
+    *
+    * @return long modification time (milliseconds)
+    */
+   private long getLastModified() {
+      return Math.max(new File(_fileRS).lastModified(), new File(_fileCS).lastModified());
+   }
+
+   /**
+    * The Configuration Manager and the Handler Manager of one configuration,
+    * published together by a reload.
+    */
+   public static final class Managers {
+
+      private final ConfigurationManagerIF _configMgr;
+      private final HandlerManagerIF _handlerMgr;
+
+      Managers(final ConfigurationManagerIF configMgr, final HandlerManagerIF handlerMgr) {
+         _configMgr = configMgr;
+         _handlerMgr = handlerMgr;
+
+         return;
+      }
+
+      /**
+       * Get the Configuration Manager
+       *
+       * @return ConfigurationManagerIF configuration manager
+       */
+      public ConfigurationManagerIF getConfigManager() {
+         return _configMgr;
+      }
+
+      /**
+       * Get the Handler Manager
+       *
+       * @return HandlerManagerIF handler manager
+       */
+      public HandlerManagerIF getHandlerManager() {
+         return _handlerMgr;
+      }
+   }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.rest;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * Pool of "raw" (no zlib wrapper) Deflater objects. A Deflater allocates
+ * native memory, re-using them avoids a native allocation / free for every
+ * compressed response. Deflaters are reset when returned to the pool, when
+ * the pool is full or closed they are released with end().
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class DeflaterPool {
+
+   private final int _level;
+   private final int _maxSize;
+   private final Queue<Deflater> _pool = new ConcurrentLinkedQueue<>();
+   private final AtomicInteger _size = new AtomicInteger(0);
+   private final AtomicLong _created = new AtomicLong(0L);
+   private volatile boolean _closed = false;
+
+   /**
+    * Constructor
+    *
+    * @param level int compression level, 1 (fast) to 9 (best)
+    * @param maxSize int maximum number of idle Deflaters kept in the pool
+    */
+   public DeflaterPool(final int level, final int maxSize) {
+      _level = (level >= Deflater.BEST_SPEED && level <= Deflater.BEST_COMPRESSION)
+         ? level : Deflater.DEFAULT_COMPRESSION;
+      _maxSize = maxSize > 0 ? maxSize : 0;
+
+      return;
+   }
+
+   /**
+    * Get a Deflater from the pool, create one if the pool is empty.
+    *
+    * @return Deflater raw deflater
+    */
+   public Deflater borrow() {
+      Deflater deflater = null;
+
+      deflater = _pool.poll();
+
+      if (deflater != null) {
+         _size.decrementAndGet();
+      } else {
+         deflater = new Deflater(_level, true);
+         _created.incrementAndGet();
+      }
+
+      return deflater;
+   }
+
+   /**
+    * Return the Deflater to the pool.
+    *
+    * @param deflater Deflater from borrow(), may be null
+    */
+   public void release(final Deflater deflater) {
+      if (deflater != null) {
+         if (_closed) {
+            deflater.end();
+         } else if (_size.incrementAndGet() <= _maxSize) {
+            deflater.reset();
+            _pool.offer(deflater);
+
+            if (_closed) {
+               this.drain(); // closed while it was returned
+            }
+         } else {
+            _size.decrementAndGet();
+            deflater.end();
+         }
+      }
+
+      return;
+   }
+
+   /**
+    * Close the pool, the pool was replaced. Idle Deflaters are released with
+    * end(), Deflaters that are still borrowed are released when returned.
+    */
+   public void close() {
+      _closed = true;
+
+      this.drain();
+
+      return;
+   }
+
+   /**
+    * Get the compression level
+    *
+    * @return int level
+    */
+   public int getLevel() {
+      return _level;
+   }
+
+   /**
+    * Get the number of idle Deflaters in the pool
+    *
+    * @return int idle Deflaters
+    */
+   public int getIdle() {
+      return _size.get();
+   }
+
+   /**
+    * Get the number of Deflaters created, includes those created because the
+    * pool was empty
+    *
+    * @return long created Deflaters
+    */
+   public long getCreated() {
+      return _created.get();
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Release the idle Deflaters with end()
+    */
+   private void drain() {
+      Deflater deflater = null;
+
+      while ((deflater = _pool.poll()) != null) {
+         _size.decrementAndGet();
+         deflater.end();
+      }
+
+      return;
+   }
+}
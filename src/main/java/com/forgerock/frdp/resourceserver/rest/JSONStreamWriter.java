@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.rest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import org.json.simple.JSONStreamAware;
+
+/**
+ * JAX-RS entity writer for JSON (json-simple) objects. The JSON object is
+ * serialized directly to the response output stream, an intermediate
+ * <pre>String</pre> representation of the entire payload is not created.
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class JSONStreamWriter implements MessageBodyWriter<JSONStreamAware> {
+
+   private static final int BUFFER_SIZE = 8192;
+   private final String CLASS = this.getClass().getName();
+   private final Logger _logger = Logger.getLogger(this.getClass().getName());
+
+   /**
+    * Check if the type can be written, any json-simple object / array.
+    *
+    * @param type Class the entity class
+    * @param genericType Type the entity generic type
+    * @param annotations Annotation[] annotations on the resource method
+    * @param mediaType MediaType the response media type
+    * @return boolean True if the entity is supported
+    */
+   @Override
+   public boolean isWriteable(final Class<?> type, final Type genericType,
+      final Annotation[] annotations, final MediaType mediaType) {
+      return JSONStreamAware.class.isAssignableFrom(type);
+   }
+
+   /**
+    * The size is not known until the entity is serialized.
+    *
+    * @return long always -1
+    */
+   @Override
+   public long getSize(final JSONStreamAware json, final Class<?> type, final Type genericType,
+      final Annotation[] annotations, final MediaType mediaType) {
+      return -1;
+   }
+
+   /**
+    * Write the JSON object to the output stream, as UTF-8.
+    *
+    * @param json JSONStreamAware entity
+    * @param type Class the entity class
+    * @param genericType Type the entity generic type
+    * @param annotations Annotation[] annotations on the resource method
+    * @param mediaType MediaType the response media type
+    * @param httpHeaders MultivaluedMap response headers
+    * @param entityStream OutputStream response output
+    * @throws IOException could not write to the output stream
+    * @throws WebApplicationException JAX-RS error
+    */
+   @Override
+   public void writeTo(final JSONStreamAware json, final Class<?> type, final Type genericType,
+      final Annotation[] annotations, final MediaType mediaType,
+      final MultivaluedMap<String, Object> httpHeaders, final OutputStream entityStream)
+      throws IOException, WebApplicationException {
+      String METHOD = "writeTo()";
+      Writer writer = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      /*
+       * Do not close the writer, the container owns the entity stream
+       */
+      writer = new BufferedWriter(new OutputStreamWriter(entityStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+
+      json.writeJSONString(writer);
+
+      writer.flush();
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.rest;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that fails once more than a maximum number of bytes has been
+ * read. Used to guard request payloads that are consumed as a stream.
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class LimitedInputStream extends FilterInputStream {
+
+   private final long _maxBytes;
+   private long _count = 0L;
+   private boolean _exceeded = false;
+
+   /**
+    * Constructor
+    *
+    * @param in InputStream the stream to guard
+    * @param maxBytes long maximum number of bytes, less than 1 is unlimited
+    */
+   public LimitedInputStream(final InputStream in, final long maxBytes) {
+      super(in);
+
+      _maxBytes = maxBytes;
+
+      return;
+   }
+
+   @Override
+   public int read() throws IOException {
+      int b = super.read();
+
+      if (b != -1) {
+         this.count(1);
+      }
+
+      return b;
+   }
+
+   @Override
+   public int read(final byte[] b, final int off, final int len) throws IOException {
+      int num = super.read(b, off, len);
+
+      if (num > 0) {
+         this.count(num);
+      }
+
+      return num;
+   }
+
+   @Override
+   public long skip(final long n) throws IOException {
+      long num = super.skip(n);
+
+      if (num > 0) {
+         this.count(num);
+      }
+
+      return num;
+   }
+
+   @Override
+   public boolean markSupported() {
+      return false;
+   }
+
+   /**
+    * Was the maximum number of bytes exceeded
+    *
+    * @return boolean True if the limit was exceeded
+    */
+   public boolean isExceeded() {
+      return _exceeded;
+   }
+
+   /**
+    * Get the number of bytes read
+    *
+    * @return long number of bytes
+    */
+   public long getCount() {
+      return _count;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   private void count(final long num) throws IOException {
+      _count += num;
+
+      if (_maxBytes > 0 && _count > _maxBytes) {
+         _exceeded = true;
+         throw new IOException("Input exceeds the maximum size of " + _maxBytes + " bytes");
+      }
+
+      return;
+   }
+}
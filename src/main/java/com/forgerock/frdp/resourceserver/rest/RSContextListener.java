@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.rest;
+
+import com.forgerock.frdp.common.ConstantsIF;
+import com.forgerock.frdp.config.ConfigurationIF;
+import com.forgerock.frdp.resourceserver.ConfigIF;
+import com.forgerock.frdp.resourceserver.handler.uma.PatRefreshScheduler;
+import com.forgerock.frdp.resourceserver.rest.jobs.JobManager;
+import com.forgerock.frdp.utils.JSON;
+import com.forgerock.frdp.utils.STR;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Initializes the Resource Server once, when the web application starts.
+ * The shared objects are saved in the servlet context, requests only read
+ * them:
+ *
+ * <pre>
+ * - ConfigLoader: configuration files, Configuration Manager, Handler Manager
+ * - cleanup executor: one thread, removes duplicate credentials
+ * - discover executor: DISCOVER_THREADS threads, reads UMA registrations
+ * - bulk executor: "rs.bulk.threads" threads, shared by all bulk requests
+ *   and jobs. The queue is bounded, BULK_QUEUE items per thread: when it is
+ *   full, the submitting thread runs the item itself, so a large request
+ *   is slowed down instead of queueing all of its items
+ * - JobManager: jobs that were running when their server stopped are resumed
+ * - PatRefreshScheduler: unless "rs.credential.refresh.enabled" is "false"
+ * </pre>
+ *
+ * The files are checked for changes every "rs.reload.interval" seconds. When
+ * the web application stops, the threads are stopped.
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class RSContextListener implements ServletContextListener {
+
+   private static final long SHUTDOWN_TIMEOUT = 10L;
+   private static final int DISCOVER_THREADS = 32;
+   private static final int BULK_QUEUE = 4;
+   private final String CLASS = this.getClass().getName();
+   private final Logger _logger = Logger.getLogger(this.getClass().getName());
+
+   /**
+    * Create the shared objects
+    *
+    * @param event ServletContextEvent
+    */
+   @Override
+   public void contextInitialized(final ServletContextEvent event) {
+      int threads = 0;
+      String METHOD = "contextInitialized()";
+      ServletContext servletCtx = null;
+      ConfigLoader loader = null;
+      ExecutorService executor = null;
+      ExecutorService cleanup = null;
+      ThreadPoolExecutor registrations = null;
+      JobManager jobManager = null;
+      PatRefreshScheduler scheduler = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      servletCtx = event.getServletContext();
+
+      cleanup = Executors.newSingleThreadExecutor(this.getThreadFactory("rs-credential-cleanup-"));
+
+      servletCtx.setAttribute(RSResource.CTX_ATTR_CLEANUP_EXECUTOR, cleanup);
+
+      registrations = new ThreadPoolExecutor(DISCOVER_THREADS, DISCOVER_THREADS, 60L, TimeUnit.SECONDS,
+         new LinkedBlockingQueue<>(), this.getThreadFactory("rs-discover-"));
+      registrations.allowCoreThreadTimeOut(true);
+
+      servletCtx.setAttribute(RSResource.CTX_ATTR_DISCOVER_EXECUTOR, registrations);
+
+      try {
+         loader = new ConfigLoader(servletCtx, cleanup, registrations);
+      } catch (Exception ex) {
+         _logger.log(Level.SEVERE, "{0}: Could not load the configuration: {1}",
+            new Object[]{METHOD, ex.getMessage()});
+      }
+
+      if (loader != null) {
+         servletCtx.setAttribute(RSResource.CTX_ATTR_CONFIG_LOADER, loader);
+
+         threads = (int) this.getLong(loader, ConfigIF.RS_BULK_THREADS, RSResource.DEFAULT_BULK_THREADS);
+
+         threads = threads > 0 ? threads : (int) RSResource.DEFAULT_BULK_THREADS;
+
+         executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(threads * BULK_QUEUE), this.getThreadFactory("rs-bulk-"),
+            (runnable, pool) -> {
+               if (pool.isShutdown()) { // stopping, do not run on the caller
+                  throw new RejectedExecutionException("Bulk executor is shut down");
+               }
+               runnable.run(); // queue is full, back-pressure on the caller
+            });
+
+         servletCtx.setAttribute(RSResource.CTX_ATTR_BULK_EXECUTOR, executor);
+
+         jobManager = new JobManager(loader::getHandlerManager, executor,
+            (int) this.getLong(loader, ConfigIF.RS_JOBS_THREADS, RSResource.DEFAULT_JOBS_THREADS),
+            (int) this.getLong(loader, ConfigIF.RS_JOBS_CHUNK, RSResource.DEFAULT_JOBS_CHUNK),
+            this.getLong(loader, ConfigIF.RS_JOBS_LEASE, JobManager.DEFAULT_LEASE));
+
+         servletCtx.setAttribute(RSResource.CTX_ATTR_JOB_MANAGER, jobManager);
+
+         jobManager.resume();
+
+         if (!Boolean.FALSE.toString().equalsIgnoreCase(
+            this.getString(loader, ConfigIF.RS_CREDENTIAL_REFRESH_ENABLED))) {
+            scheduler = new PatRefreshScheduler(loader::getHandlerManager,
+               this.getLong(loader, ConfigIF.RS_CREDENTIAL_REFRESH_INTERVAL, RSResource.DEFAULT_PAT_REFRESH_INTERVAL),
+               this.getLong(loader, ConfigIF.RS_CREDENTIAL_REFRESH_WINDOW, RSResource.DEFAULT_PAT_REFRESH_WINDOW),
+               this.getLong(loader, ConfigIF.RS_CREDENTIAL_REFRESH_JITTER, RSResource.DEFAULT_PAT_REFRESH_JITTER));
+
+            servletCtx.setAttribute(RSResource.CTX_ATTR_PAT_REFRESH, scheduler);
+
+            scheduler.start();
+         }
+
+         loader.watch(this.getLong(loader, ConfigIF.RS_RELOAD_INTERVAL, 0L));
+
+         if (_logger.isLoggable(Level.INFO)) {
+            _logger.log(Level.INFO, "Resource Server initialized");
+         }
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+
+   /**
+    * Stop the threads of the shared objects. Jobs are stopped before the
+    * bulk executor, they submit their items to it. The executors that use the
+    * handlers are stopped before the handlers' clients are closed.
+    *
+    * @param event ServletContextEvent
+    */
+   @Override
+   public void contextDestroyed(final ServletContextEvent event) {
+      Object obj = null;
+      String METHOD = "contextDestroyed()";
+      ServletContext servletCtx = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      servletCtx = event.getServletContext();
+
+      obj = servletCtx.getAttribute(RSResource.CTX_ATTR_PAT_REFRESH);
+      if (obj instanceof PatRefreshScheduler) {
+         ((PatRefreshScheduler) obj).shutdown();
+      }
+
+      obj = servletCtx.getAttribute(RSResource.CTX_ATTR_JOB_MANAGER);
+      if (obj instanceof JobManager) {
+         ((JobManager) obj).shutdown();
+      }
+
+      this.shutdown(servletCtx.getAttribute(RSResource.CTX_ATTR_BULK_EXECUTOR));
+      this.shutdown(servletCtx.getAttribute(RSResource.CTX_ATTR_CLEANUP_EXECUTOR));
+      this.shutdown(servletCtx.getAttribute(RSResource.CTX_ATTR_DISCOVER_EXECUTOR));
+
+      obj = servletCtx.getAttribute(RSResource.CTX_ATTR_CONFIG_LOADER);
+      if (obj instanceof ConfigLoader) {
+         ((ConfigLoader) obj).shutdown();
+      }
+
+      servletCtx.removeAttribute(RSResource.CTX_ATTR_CONFIG_LOADER);
+      servletCtx.removeAttribute(RSResource.CTX_ATTR_PAT_REFRESH);
+      servletCtx.removeAttribute(RSResource.CTX_ATTR_JOB_MANAGER);
+      servletCtx.removeAttribute(RSResource.CTX_ATTR_BULK_EXECUTOR);
+      servletCtx.removeAttribute(RSResource.CTX_ATTR_CLEANUP_EXECUTOR);
+      servletCtx.removeAttribute(RSResource.CTX_ATTR_DISCOVER_EXECUTOR);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Get a factory for daemon threads, named with a prefix and a number
+    *
+    * @param prefix String thread name prefix, "rs-bulk-"
+    * @return ThreadFactory thread factory
+    */
+   private ThreadFactory getThreadFactory(final String prefix) {
+      return new ThreadFactory() {
+         private final AtomicInteger _count = new AtomicInteger(0);
+
+         @Override
+         public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + _count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+         }
+      };
+   }
+
+   /**
+    * Stop an executor, running tasks get SHUTDOWN_TIMEOUT seconds to finish
+    *
+    * @param obj Object executor from the servlet context, may be null
+    */
+   private void shutdown(final Object obj) {
+      ExecutorService executor = null;
+
+      if (obj instanceof ExecutorService) {
+         executor = (ExecutorService) obj;
+         executor.shutdown();
+
+         try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+               executor.shutdownNow();
+            }
+         } catch (InterruptedException ex) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+         }
+      }
+
+      return;
+   }
+
+   /**
+    * Get a value from the "resource" configuration
+    *
+    * @param loader ConfigLoader configuration loader
+    * @param name String "dot" delimited name, "rs.bulk.threads"
+    * @return String value, null if not set
+    */
+   private String getString(final ConfigLoader loader, final String name) {
+      String value = null;
+      ConfigurationIF config = null;
+
+      config = loader.getConfigManager().getConfiguration(ConstantsIF.RESOURCE);
+
+      if (config != null) {
+         value = JSON.getString(config.getJSON(), name);
+      }
+
+      return value;
+   }
+
+   /**
+    * Get a number from the "resource" configuration, the default is used if
+    * the value is empty or not a number
+    *
+    * @param loader ConfigLoader configuration loader
+    * @param name String "dot" delimited name, "rs.bulk.threads"
+    * @param defaultValue long default value
+    * @return long configuration value
+    */
+   private long getLong(final ConfigLoader loader, final String name, final long defaultValue) {
+      long value = defaultValue;
+      String METHOD = "getLong()";
+      String str = null;
+
+      str = this.getString(loader, name);
+
+      if (!STR.isEmpty(str)) {
+         try {
+            value = Long.parseLong(str);
+         } catch (NumberFormatException ex) {
+            _logger.log(Level.WARNING, "{0}: Config attribute ''{1}'' is not a number, using {2}",
+               new Object[]{METHOD, name, defaultValue});
+         }
+      }
+
+      return value;
+   }
+}
@@ -5,40 +5,32 @@
 package com.forgerock.frdp.resourceserver.rest;
 
 import com.forgerock.frdp.common.ConstantsIF;
-import com.forgerock.frdp.config.BasicConfiguration;
 import com.forgerock.frdp.config.ConfigurationIF;
-import com.forgerock.frdp.config.ConfigurationManager;
 import com.forgerock.frdp.config.ConfigurationManagerIF;
 import com.forgerock.frdp.dao.Operation;
 import com.forgerock.frdp.dao.OperationIF;
-import com.forgerock.frdp.handler.HandlerManager;
 import com.forgerock.frdp.handler.HandlerManagerIF;
 import com.forgerock.frdp.resourceserver.ConfigIF;
-import com.forgerock.frdp.resourceserver.handler.AMOAuth2Handler;
-import com.forgerock.frdp.resourceserver.handler.AMProxyAdminHandler;
+import com.forgerock.frdp.resourceserver.content.ContentServiceIF;
+import com.forgerock.frdp.resourceserver.content.ETagCache;
+import com.forgerock.frdp.resourceserver.dao.StreamRestDataAccess;
 import com.forgerock.frdp.resourceserver.handler.AMSessionHandler;
-import com.forgerock.frdp.resourceserver.handler.ContentHandler;
+import com.forgerock.frdp.resourceserver.handler.JaxrsHandler;
 import com.forgerock.frdp.resourceserver.handler.JaxrsHandlerIF;
-import com.forgerock.frdp.resourceserver.handler.MetaHandler;
 import com.forgerock.frdp.resourceserver.handler.ResourcesHandler;
-import com.forgerock.frdp.resourceserver.handler.uma.DiscoverHandler;
-import com.forgerock.frdp.resourceserver.handler.uma.PermissionRequestHandler;
-import com.forgerock.frdp.resourceserver.handler.uma.PolicyHandler;
-import com.forgerock.frdp.resourceserver.handler.uma.ProtectionApiTokenHandler;
-import com.forgerock.frdp.resourceserver.handler.uma.RegisterHandler;
-import com.forgerock.frdp.resourceserver.handler.uma.RequestsHandler;
-import com.forgerock.frdp.resourceserver.handler.uma.SharedWithMeHandler;
-import com.forgerock.frdp.resourceserver.handler.uma.SubjectsHandler;
-import com.forgerock.frdp.resourceserver.handler.uma.WellKnownHandler;
+import com.forgerock.frdp.resourceserver.rest.jobs.JobManager;
 import com.forgerock.frdp.rest.Resource;
 import com.forgerock.frdp.utils.JSON;
 import com.forgerock.frdp.utils.STR;
-import java.io.File;
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import javax.servlet.ServletContext;
 import javax.ws.rs.core.Context;
@@ -76,6 +68,21 @@ public abstract class RSResource extends Resource {
    protected static final String CTX_ATTR_PUBLIC = "com.forgerock.frdp.public";
    protected static final String CTX_ATTR_HANDLER_MGR = "com.forgerock.frdp.handler.handlermanager";
    protected static final String CTX_ATTR_UMA_WELL_KNOWN = "com.forgerock.frdp.uma.well.known";
+   protected static final String CTX_ATTR_BULK_EXECUTOR = "com.forgerock.frdp.bulk.executor";
+   protected static final String CTX_ATTR_JOB_MANAGER = "com.forgerock.frdp.jobs.manager";
+   protected static final String CTX_ATTR_PAT_REFRESH = "com.forgerock.frdp.pat.refresh";
+   protected static final String CTX_ATTR_CONFIG_LOADER = "com.forgerock.frdp.config.loader";
+   protected static final String CTX_ATTR_CLEANUP_EXECUTOR = "com.forgerock.frdp.cleanup.executor";
+   protected static final String CTX_ATTR_DISCOVER_EXECUTOR = "com.forgerock.frdp.discover.executor";
+
+   protected static final long DEFAULT_BULK_MAXITEMS = 10000L;
+   protected static final long DEFAULT_BULK_THREADS = 8L;
+   protected static final long DEFAULT_BULK_RATE = 20L;
+   protected static final long DEFAULT_JOBS_THREADS = 2L;
+   protected static final long DEFAULT_JOBS_CHUNK = 100L;
+   protected static final long DEFAULT_PAT_REFRESH_INTERVAL = 60L;
+   protected static final long DEFAULT_PAT_REFRESH_WINDOW = 300L;
+   protected static final long DEFAULT_PAT_REFRESH_JITTER = 30L;
 
    protected static final String PATH_OWNERS = ConstantsIF.OWNERS;
    protected static final String PATH_RESOURCES = ConstantsIF.RESOURCES;
@@ -119,6 +126,10 @@ public abstract class RSResource extends Resource {
 
       _logger.entering(CLASS, METHOD);
 
+      if (_handlerMgr == null) {
+         this.setManagers();
+      }
+
       if (_handlerMgr == null) {
          this.abort(METHOD, "Handler Manager is null", Status.INTERNAL_SERVER_ERROR);
       } else {
@@ -991,6 +1002,9 @@ public abstract class RSResource extends Resource {
     * payload can support other objects, such as "headers" which need to be
     * handled differently
     *
+    * The "entity" is the JSON object itself, not its String value. It is
+    * serialized directly to the response stream by the JSONStreamWriter.
+    *
     * JSON input structure (possible structure):
     * <pre>
     * {
@@ -1017,7 +1031,7 @@ public abstract class RSResource extends Resource {
       String str = null;
       String name = null;
       String value = null;
-      String entity = null;
+      Object entity = null;
       JSONObject jsonOutput = null;
       JSONObject jsonData = null;
       JSONObject jsonHeaders = null;
@@ -1054,7 +1068,7 @@ public abstract class RSResource extends Resource {
       if (oper.isError()) {
          if (jsonOutput != null) {
             media = MediaType.APPLICATION_JSON_TYPE;
-            entity = jsonData.toString();
+            entity = jsonData;
          } else {
             media = MediaType.TEXT_PLAIN_TYPE;
             entity = oper.getStatus();
@@ -1079,7 +1093,7 @@ public abstract class RSResource extends Resource {
             }
             case READ: {
                responseBuilder = Response.status(this.getStatusFromState(oper.getState()))
-                  .type(MediaType.APPLICATION_JSON).entity(jsonData.toString());
+                  .type(MediaType.APPLICATION_JSON).entity(jsonData);
                break;
             }
             case REPLACE: {
@@ -1106,8 +1120,7 @@ public abstract class RSResource extends Resource {
             }
             case SEARCH: {
                jsonUids = this.getUidsFromSearch(jsonData);
-               str = jsonUids.toJSONString();
-               responseBuilder = Response.ok().type(MediaType.APPLICATION_JSON).entity(str);
+               responseBuilder = Response.ok().type(MediaType.APPLICATION_JSON).entity(jsonUids);
                break;
             }
             default: {
@@ -1213,175 +1226,346 @@ public abstract class RSResource extends Resource {
    }
 
    /**
-    * Load instance run-time context information
+    * Check that the authenticated user is the Authorization Server
+    * administrator ("as.admin.user"). Abort with FORBIDDEN if not.
     */
-   protected synchronized void load() {
-      byte[] bytes = null;
+   protected void checkAuthenUserIsAdmin() {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String userId = null;
+      String adminId = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      userId = this.getUserIdFromSSOSession();
+      adminId = this.getConfigValueAsString(ConstantsIF.RESOURCE, ConfigIF.AS_ADMIN_USER, false);
+
+      if (STR.isEmpty(userId) || !userId.equals(adminId)) {
+         this.abort(METHOD, "User is not the administrator", Status.FORBIDDEN);
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+
+   /**
+    * Parse a JSON object directly from the request payload stream. The
+    * payload is not copied into an intermediate String. The number of bytes
+    * read is limited by the "rs.upload.maxsize" configuration attribute, will
+    * abort if the limit is exceeded or the payload is not a JSON object.
+    *
+    * @param input InputStream request payload
+    * @return JSONObject parsed payload
+    */
+   protected JSONObject getJSONFromStream(final InputStream input) {
+      long maxSize = 0L;
       Object obj = null;
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
-      String realPath = null;
-      String configFile = null;
-      java.nio.file.Path pathConfigFile = null;
+      JSONObject jsonOutput = null;
       JSONParser parser = null;
-      ConfigurationIF config = null;
+      LimitedInputStream limitedInput = null;
+      Reader reader = null;
 
-      /*
-       * Check the Servlet Context for ... 
-       * - Configuration Manager
-       * - Handler Manager
-       */
       _logger.entering(CLASS, METHOD);
 
-      /*
-       * Need a Configuration Manager.  Check Servlet Context, else create one
-       */
-      if (_configMgr == null) {
-         obj = _servletCtx.getAttribute(CTX_ATTR_CONFIG_MGR);
+      if (input == null) {
+         this.abort(METHOD, "Payload stream is null", Status.BAD_REQUEST);
+      }
+
+      maxSize = this.getConfigValueAsLong(ConfigIF.RS_UPLOAD_MAXSIZE, 0L);
 
-         if (obj != null && obj instanceof ConfigurationManagerIF) {
-            _configMgr = (ConfigurationManagerIF) obj;
+      limitedInput = new LimitedInputStream(input, maxSize);
+      reader = new BufferedReader(new InputStreamReader(limitedInput, StandardCharsets.UTF_8));
+      parser = new JSONParser();
+
+      try {
+         obj = parser.parse(reader);
+      } catch (IOException | ParseException ex) {
+         if (limitedInput.isExceeded()) {
+            this.abort(METHOD, ex.getMessage(), Status.REQUEST_ENTITY_TOO_LARGE);
          } else {
-            _configMgr = new ConfigurationManager();
-            _servletCtx.setAttribute(CTX_ATTR_CONFIG_MGR, _configMgr);
+            this.abort(METHOD, "Could not parse payload to JSON: " + ex.getMessage(),
+               Status.BAD_REQUEST);
          }
+      }
 
+      if (obj != null && obj instanceof JSONObject) {
+         jsonOutput = (JSONObject) obj;
+      } else {
+         this.abort(METHOD, "Payload is empty or not a JSON object", Status.BAD_REQUEST);
       }
 
-      /*
-       * Load the Resource Server configuration.
-       * Check the Configuration Manger for existing RS Configuration object
-       * Else, read configuration file, create new RS Configuration object, add to Config Manager
-       */
-      if (!_configMgr.contains(ConstantsIF.RESOURCE)) {
-         config = new BasicConfiguration();
+      if (_logger.isLoggable(DEBUG_LEVEL)) {
+         _logger.log(DEBUG_LEVEL, "bytes=''{0}''", new Object[]{limitedInput.getCount()});
+      }
 
-         parser = this.getParserFromCtx(_servletCtx);
-         realPath = _servletCtx.getRealPath("/");
-         configFile = realPath + "WEB-INF" + File.separator + CONFIG_FILE_RS; // Resource Server
-         pathConfigFile = Paths.get(configFile);
+      _logger.exiting(CLASS, METHOD);
 
-         try {
-            bytes = Files.readAllBytes(pathConfigFile);
-            obj = parser.parse(new String(bytes));
-         } catch (IOException | ParseException ex) {
-            this.abort(METHOD, "Exception: " + ex.getMessage(),
-               Response.Status.INTERNAL_SERVER_ERROR);
-         }
+      return jsonOutput;
+   }
 
-         if (obj != null && obj instanceof JSONObject) {
-            config.setJSON((JSONObject) obj);
-            _configMgr.setConfiguration(ConstantsIF.RESOURCE, config);
-         } else {
-            this.abort(METHOD, "Resource Server Config object is null or not a JSON object",
-               Response.Status.INTERNAL_SERVER_ERROR);
-         }
+   /**
+    * Parse a list of JSON objects from the request payload stream, for bulk
+    * operations. The payload is either a JSON array or NDJSON (newline
+    * delimited JSON), one object per line, blank lines are ignored. The
+    * payload size is limited by "rs.upload.maxsize", the number of items by
+    * "rs.bulk.maxitems".
+    *
+    * <pre>
+    * [                    | { "meta": { ... } }
+    *   { "meta": {...} }, | { "meta": { ... }, "content": { ... } }
+    *   ...                | ...
+    * ]                    |
+    * </pre>
+    *
+    * @param input InputStream request payload
+    * @param ndjson boolean True if the payload is NDJSON
+    * @return JSONArray list of JSON objects
+    */
+   protected JSONArray getJSONArrayFromStream(final InputStream input, final boolean ndjson) {
+      int lineNum = 0;
+      long maxItems = 0L;
+      Object obj = null;
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String line = null;
+      JSONArray jsonItems = null;
+      JSONParser parser = null;
+      LimitedInputStream limitedInput = null;
+      BufferedReader reader = null;
 
-         if (_logger.isLoggable(Level.INFO)) {
-            _logger.log(Level.INFO, "Loaded configuration file : " + CONFIG_FILE_RS);
-         }
+      _logger.entering(CLASS, METHOD);
+
+      if (input == null) {
+         this.abort(METHOD, "Payload stream is null", Status.BAD_REQUEST);
       }
 
-      /*
-       * Load the Content Server configuration.
-       * Check the Configuration Manger for existing CS Configuration object
-       * Else, read configuration file, create new CS Configuration object, add to Config Manager
-       */
-      if (!_configMgr.contains(ConstantsIF.CONTENT)) {
-         config = new BasicConfiguration();
+      maxItems = this.getConfigValueAsLong(ConfigIF.RS_BULK_MAXITEMS, DEFAULT_BULK_MAXITEMS);
 
-         parser = this.getParserFromCtx(_servletCtx);
-         realPath = _servletCtx.getRealPath("/");
-         configFile = realPath + "WEB-INF" + File.separator + CONFIG_FILE_CS; // Content Server
-         pathConfigFile = Paths.get(configFile);
+      limitedInput = new LimitedInputStream(input, this.getConfigValueAsLong(ConfigIF.RS_UPLOAD_MAXSIZE, 0L));
+      reader = new BufferedReader(new InputStreamReader(limitedInput, StandardCharsets.UTF_8));
+      parser = new JSONParser();
 
-         try {
-            bytes = Files.readAllBytes(pathConfigFile);
-            obj = parser.parse(new String(bytes));
-         } catch (IOException | ParseException ex) {
-            this.abort(METHOD, "Exception: " + ex.getMessage(),
-               Response.Status.INTERNAL_SERVER_ERROR);
-         }
+      try {
+         if (ndjson) {
+            jsonItems = new JSONArray();
 
-         if (obj != null && obj instanceof JSONObject) {
-            config.setJSON((JSONObject) obj);
-            _configMgr.setConfiguration(ConstantsIF.CONTENT, config);
+            while ((line = reader.readLine()) != null) {
+               lineNum++;
+               if (!STR.isEmpty(line.trim())) {
+                  obj = parser.parse(line);
+                  if (obj != null && obj instanceof JSONObject) {
+                     jsonItems.add(obj);
+                  } else {
+                     this.abort(METHOD, "Line " + lineNum + " is not a JSON object", Status.BAD_REQUEST);
+                  }
+               }
+            }
          } else {
-            this.abort(METHOD, "Content Server Config object is null or not a JSON object",
-               Response.Status.INTERNAL_SERVER_ERROR);
+            obj = parser.parse(reader);
+            if (obj != null && obj instanceof JSONArray) {
+               jsonItems = (JSONArray) obj;
+            } else {
+               this.abort(METHOD, "Payload is empty or not a JSON array", Status.BAD_REQUEST);
+            }
          }
-
-         if (_logger.isLoggable(Level.INFO)) {
-            _logger.log(Level.INFO, "Loaded configuration file : " + CONFIG_FILE_CS);
+      } catch (IOException | ParseException ex) {
+         if (limitedInput.isExceeded()) {
+            this.abort(METHOD, ex.getMessage(), Status.REQUEST_ENTITY_TOO_LARGE);
+         } else {
+            this.abort(METHOD, "Could not parse payload to JSON"
+               + (ndjson ? ", line " + lineNum : "") + ": " + ex.getMessage(), Status.BAD_REQUEST);
          }
       }
 
-      if (_handlerMgr == null) {
-         obj = _servletCtx.getAttribute(CTX_ATTR_HANDLER_MGR);
+      if (jsonItems.isEmpty()) {
+         this.abort(METHOD, "Payload does not contain any items", Status.BAD_REQUEST);
+      }
 
-         if (obj != null && obj instanceof HandlerManagerIF) {
-            _handlerMgr = (HandlerManagerIF) obj;
-         } else {
-            _handlerMgr = new HandlerManager();
+      if (maxItems > 0 && jsonItems.size() > maxItems) {
+         this.abort(METHOD, "Payload has " + jsonItems.size() + " items, the maximum is " + maxItems,
+            Status.REQUEST_ENTITY_TOO_LARGE);
+      }
 
-            /*
-             * Add all the handlers
-             */
-            _handlerMgr.setHandler(JaxrsHandlerIF.HANDLER_AMOAUTH2,
-               new AMOAuth2Handler(_configMgr, _handlerMgr));
+      if (_logger.isLoggable(DEBUG_LEVEL)) {
+         _logger.log(DEBUG_LEVEL, "items=''{0}'', bytes=''{1}''",
+            new Object[]{jsonItems.size(), limitedInput.getCount()});
+      }
 
-            _handlerMgr.setHandler(JaxrsHandlerIF.HANDLER_AMPROXYADM,
-               new AMProxyAdminHandler(_configMgr, _handlerMgr));
+      _logger.exiting(CLASS, METHOD);
 
-            _handlerMgr.setHandler(JaxrsHandlerIF.HANDLER_AMSESSION,
-               new AMSessionHandler(_configMgr, _handlerMgr));
+      return jsonItems;
+   }
 
-            _handlerMgr.setHandler(JaxrsHandlerIF.HANDLER_CONTENT,
-               new ContentHandler(_configMgr, _handlerMgr));
+   /**
+    * Get the executor for bulk operations. The executor is shared by all
+    * requests, the number of threads is set by "rs.bulk.threads". This bounds
+    * the number of concurrent calls to the Authorization Server. Created at
+    * startup by the RSContextListener.
+    *
+    * @return ExecutorService shared executor
+    */
+   protected ExecutorService getBulkExecutor() {
+      return this.getContextAttribute(CTX_ATTR_BULK_EXECUTOR, ExecutorService.class);
+   }
 
-            _handlerMgr.setHandler(JaxrsHandlerIF.HANDLER_UMA_PAT,
-               new ProtectionApiTokenHandler(_configMgr, _handlerMgr));
+   /**
+    * Get the job manager, shared by all requests. The number of concurrent
+    * jobs is set by "rs.jobs.threads", the items between checkpoints by
+    * "rs.jobs.chunk". Created at startup by the RSContextListener.
+    *
+    * @return JobManager shared job manager
+    */
+   protected JobManager getJobManager() {
+      return this.getContextAttribute(CTX_ATTR_JOB_MANAGER, JobManager.class);
+   }
 
-            _handlerMgr.setHandler(JaxrsHandlerIF.HANDLER_META,
-               new MetaHandler(_configMgr, _handlerMgr));
+   /**
+    * Get the configuration loader, shared by all requests. Created at startup
+    * by the RSContextListener.
+    *
+    * @return ConfigLoader shared configuration loader
+    */
+   protected ConfigLoader getConfigLoader() {
+      return this.getContextAttribute(CTX_ATTR_CONFIG_LOADER, ConfigLoader.class);
+   }
 
-            _handlerMgr.setHandler(JaxrsHandlerIF.HANDLER_RESOURCES,
-               new ResourcesHandler(_configMgr, _handlerMgr));
+   /**
+    * Get a number from the "resource" configuration, the default is used if
+    * the attribute is empty. Abort if the value is not a number.
+    *
+    * @param name String configuration name
+    * @param defaultValue long default value
+    * @return long configuration value
+    */
+   protected long getConfigValueAsLong(final String name, final long defaultValue) {
+      long value = defaultValue;
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String str = null;
 
-            _handlerMgr.setHandler(JaxrsHandlerIF.HANDLER_UMA_DISCOVER,
-               new DiscoverHandler(_configMgr, _handlerMgr));
+      str = this.getConfigValueAsString(ConstantsIF.RESOURCE, name, true);
 
-            _handlerMgr.setHandler(JaxrsHandlerIF.HANDLER_UMA_POLICY,
-               new PolicyHandler(_configMgr, _handlerMgr));
+      if (!STR.isEmpty(str)) {
+         try {
+            value = Long.parseLong(str);
+         } catch (NumberFormatException ex) {
+            this.abort(METHOD, "Config attribute '" + name
+               + "' is not a number: " + ex.getMessage(), Status.INTERNAL_SERVER_ERROR);
+         }
+      }
 
-            _handlerMgr.setHandler(JaxrsHandlerIF.HANDLER_UMA_PERMREQ,
-               new PermissionRequestHandler(_configMgr, _handlerMgr));
+      return value;
+   }
 
-            _handlerMgr.setHandler(JaxrsHandlerIF.HANDLER_UMA_REGISTER,
-               new RegisterHandler(_configMgr, _handlerMgr));
+   /**
+    * Copy the optional "offset" and "limit" query parameters to the handler
+    * JSON input. Abort with BAD_REQUEST if a value is not a number, 0 or more.
+    *
+    * @param jsonInput JSONObject handler input, updated
+    */
+   protected void setPageParams(final JSONObject jsonInput) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String value = null;
+      long number = 0L;
+
+      for (String name : new String[]{JaxrsHandler.OFFSET, JaxrsHandler.LIMIT}) {
+         value = _uriInfo.getQueryParameters().getFirst(name);
+
+         if (!STR.isEmpty(value)) {
+            try {
+               number = Long.parseLong(value);
+            } catch (NumberFormatException ex) {
+               number = -1L;
+            }
+
+            if (number < 0L || number > Integer.MAX_VALUE) {
+               this.abort(METHOD, "Query parameter '" + name + "' must be a number, 0 or more",
+                  Status.BAD_REQUEST);
+            }
 
-            _handlerMgr.setHandler(JaxrsHandlerIF.HANDLER_UMA_REQUESTS,
-               new RequestsHandler(_configMgr, _handlerMgr));
+            jsonInput.put(name, number);
+         }
+      }
 
-            _handlerMgr.setHandler(JaxrsHandlerIF.HANDLER_UMA_SHAREDWITHME,
-               new SharedWithMeHandler(_configMgr, _handlerMgr));
+      return;
+   }
 
-            _handlerMgr.setHandler(JaxrsHandlerIF.HANDLER_UMA_SUBJECTS,
-               new SubjectsHandler(_configMgr, _handlerMgr));
+   /**
+    * Get the conditional and partial request headers (If-None-Match,
+    * If-Modified-Since, If-Range, Range) from the client request.
+    *
+    * @return JSONObject headers, may be empty
+    */
+   protected JSONObject getConditionalHeaders() {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String value = null;
+      JSONObject jsonHeaders = null;
 
-            _handlerMgr.setHandler(JaxrsHandlerIF.HANDLER_UMA_WELLKNOWN,
-               new WellKnownHandler(_configMgr, _handlerMgr));
+      _logger.entering(CLASS, METHOD);
 
-            _servletCtx.setAttribute(CTX_ATTR_HANDLER_MGR, _handlerMgr);
+      jsonHeaders = new JSONObject();
 
-            if (_logger.isLoggable(DEBUG_LEVEL)) {
-               _logger.log(DEBUG_LEVEL, "Created Handler Manager");
+      if (_httpHdrs != null) {
+         for (String name : StreamRestDataAccess.CONDITIONAL_HEADERS) {
+            value = _httpHdrs.getHeaderString(name);
+            if (!STR.isEmpty(value)) {
+               jsonHeaders.put(name, value);
             }
          }
       }
 
       _logger.exiting(CLASS, METHOD);
 
-      return;
+      return jsonHeaders;
+   }
+
+   /**
+    * Check if the client's "If-None-Match" request header matches the ETag.
+    *
+    * @param etag String ETag of the current representation
+    * @return boolean True if the client has the current representation
+    */
+   protected boolean isNotModified(final String etag) {
+      boolean notModified = false;
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+
+      _logger.entering(CLASS, METHOD);
+
+      if (_httpHdrs != null && !STR.isEmpty(etag)) {
+         notModified = ETagCache.matches(
+            _httpHdrs.getHeaderString(StreamRestDataAccess.HDR_IF_NONE_MATCH), etag);
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return notModified;
+   }
+
+   /**
+    * Get a 304 (Not Modified) response, if the client has the current
+    * representation, else add the ETag header to the response.
+    *
+    * @param response Response the full response
+    * @param etag String ETag of the representation
+    * @return Response HTTP response object
+    */
+   protected Response getConditionalResponse(final Response response, final String etag) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      Response output = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      if (STR.isEmpty(etag) || response == null
+         || response.getStatus() != Status.OK.getStatusCode()) {
+         output = response;
+      } else if (this.isNotModified(etag)) {
+         output = Response.notModified().header(StreamRestDataAccess.HDR_ETAG, etag).build();
+      } else {
+         output = Response.fromResponse(response).header(StreamRestDataAccess.HDR_ETAG, etag).build();
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return output;
    }
 
    /**
@@ -1503,6 +1687,11 @@ public abstract class RSResource extends Resource {
              *     "uri": "https://uma.example.com:443/service/rest/content-server/content/1234-abcd"
              * }
              */
+            jsonContentInfo.put(ConstantsIF.UID, resourceUid);
+            if (JSON.getObject(jsonOptions, ConstantsIF.HEADERS) != null) {
+               jsonContentInfo.put(ConstantsIF.HEADERS, JSON.getObject(jsonOptions, ConstantsIF.HEADERS));
+            }
+
             operInput = new Operation(OperationIF.TYPE.READ);
             operInput.setJSON(jsonContentInfo);
 
@@ -1515,12 +1704,38 @@ public abstract class RSResource extends Resource {
              */
             operOutput = contentHandler.process(operInput);
 
+            /*
+             * "binary" content can not be returned as JSON, release the
+             * stream, the 'uri' is returned
+             */
+            if (operOutput.getObject() != null && operOutput.getObject() instanceof InputStream) {
+               try {
+                  ((InputStream) operOutput.getObject()).close();
+               } catch (IOException ex) {
+                  _logger.log(Level.WARNING, "Could not close content stream: {0}", ex.getMessage());
+               }
+               operOutput.setObject(null);
+            }
+
             jsonOutput = operOutput.getJSON();
 
             if (jsonOutput == null) {
                this.abort(CLASS + ": " + METHOD, "Resource Id is empty", Status.BAD_REQUEST);
             }
 
+            /*
+             * Keep the ETag and HTTP status code, for conditional reads
+             */
+            if (!STR.isEmpty(JSON.getString(jsonOutput,
+               ConstantsIF.HEADERS + "." + StreamRestDataAccess.HDR_ETAG))) {
+               operOutput.setParam(StreamRestDataAccess.HDR_ETAG, JSON.getString(jsonOutput,
+                  ConstantsIF.HEADERS + "." + StreamRestDataAccess.HDR_ETAG));
+            }
+
+            if (jsonOutput.get(ConstantsIF.CODE) != null) {
+               operOutput.setParam(ConstantsIF.CODE, jsonOutput.get(ConstantsIF.CODE).toString());
+            }
+
             if (jsonOutput.containsKey(ConstantsIF.DATA)) {
                /*
                 * replace operation JSON with only the 'data' object
@@ -1605,6 +1820,7 @@ public abstract class RSResource extends Resource {
       jsonContentInfo = this.getContentInformation(resourceUid);
 
       if (jsonContentInfo != null && !jsonContentInfo.isEmpty()) {
+         jsonContentInfo.put(ConstantsIF.UID, resourceUid);
          jsonContentInfo.put(ConstantsIF.DATA, jsonContent);
 
          operInput = new Operation(OperationIF.TYPE.REPLACE);
@@ -1663,6 +1879,8 @@ public abstract class RSResource extends Resource {
       jsonContentInfo = this.getContentInformation(resourceUid);
 
       if (jsonContentInfo != null && !jsonContentInfo.isEmpty()) {
+         jsonContentInfo.put(ConstantsIF.UID, resourceUid);
+
          operInput = new Operation(OperationIF.TYPE.DELETE);
          operInput.setJSON(jsonContentInfo);
 
@@ -1693,6 +1911,176 @@ public abstract class RSResource extends Resource {
       return operOutput;
    }
 
+   /**
+    * Create binary content, the content is streamed to the Content Service.
+    * The Content Service must be configured with "mode": "binary".
+    *
+    * @param resourceUid String resource identifier
+    * @param serviceId String Content Service identifier
+    * @param jsonHeaders JSONObject request headers: Content-Type, Content-Length
+    * @param input InputStream content
+    * @return OperationIF response from operation
+    */
+   protected OperationIF contentCreateBinary(final String resourceUid, final String serviceId,
+      final JSONObject jsonHeaders, final InputStream input) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+      JSONObject jsonInput = null;
+      JaxrsHandlerIF contentHandler = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      if (STR.isEmpty(resourceUid)) {
+         this.abort(METHOD, "Resource identifier is empty", Status.BAD_REQUEST);
+      }
+
+      if (STR.isEmpty(serviceId)) {
+         this.abort(METHOD, "Content Service identifier is empty", Status.BAD_REQUEST);
+      }
+
+      contentHandler = this.getHandler(JaxrsHandlerIF.HANDLER_CONTENT);
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.ID, serviceId);
+      jsonInput.put(ContentServiceIF.MODE, ContentServiceIF.MODE_BINARY);
+      if (jsonHeaders != null) {
+         jsonInput.put(ConstantsIF.HEADERS, jsonHeaders);
+      }
+
+      operInput = new Operation(OperationIF.TYPE.CREATE);
+      operInput.setJSON(jsonInput);
+      operInput.setObject(input);
+
+      operOutput = contentHandler.process(operInput);
+
+      if (operOutput.getState() != STATE.SUCCESS) {
+         this.abort(METHOD, "Could not create Content: "
+            + operOutput.getState().toString() + ", "
+            + operOutput.getStatus(), this.getStatusFromState(operOutput.getState()));
+      }
+
+      this.setContentInformation(resourceUid, operOutput);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+
+   /**
+    * Read binary content. The operation object is the content InputStream,
+    * the caller MUST close the stream. The JSON has the response headers:
+    *
+    * <pre>
+    * {
+    *    "id": "...",
+    *    "uri": "http://...",
+    *    "headers": {
+    *       "Content-Type": "application/pdf",
+    *       "Content-Length": "1234",
+    *       "ETag": "..."
+    *    }
+    * }
+    * </pre>
+    *
+    * @param resourceUid String resource identifier
+    * @param jsonHeaders JSONObject request headers, may be null
+    * @return OperationIF output
+    */
+   protected OperationIF contentReadBinary(final String resourceUid, final JSONObject jsonHeaders) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+      JSONObject jsonContentInfo = null;
+      JaxrsHandlerIF contentHandler = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      if (STR.isEmpty(resourceUid)) {
+         this.abort(METHOD, "Resource Id is empty", Status.BAD_REQUEST);
+      }
+
+      contentHandler = this.getHandler(JaxrsHandlerIF.HANDLER_CONTENT);
+
+      jsonContentInfo = this.getContentInformation(resourceUid);
+
+      if (jsonContentInfo != null && !jsonContentInfo.isEmpty()) {
+         jsonContentInfo.put(ConstantsIF.UID, resourceUid);
+         jsonContentInfo.put(ContentServiceIF.MODE, ContentServiceIF.MODE_BINARY);
+         if (jsonHeaders != null) {
+            jsonContentInfo.put(ConstantsIF.HEADERS, jsonHeaders);
+         }
+
+         operInput = new Operation(OperationIF.TYPE.READ);
+         operInput.setJSON(jsonContentInfo);
+
+         operOutput = contentHandler.process(operInput);
+      } else {
+         operOutput = new Operation(OperationIF.TYPE.READ);
+         operOutput.setJSON(new JSONObject());
+         operOutput.setState(STATE.NOTEXIST);
+         operOutput.setStatus("Content information does not exist");
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+
+   /**
+    * Replace binary content, the content is streamed to the Content Service.
+    *
+    * @param resourceUid String resource identifier
+    * @param jsonHeaders JSONObject request headers: Content-Type, Content-Length
+    * @param input InputStream content
+    * @return OperationIF response from operation
+    */
+   protected OperationIF contentReplaceBinary(final String resourceUid,
+      final JSONObject jsonHeaders, final InputStream input) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+      JSONObject jsonContentInfo = null;
+      JaxrsHandlerIF contentHandler = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      if (STR.isEmpty(resourceUid)) {
+         this.abort(METHOD, "Resource Id is empty", Status.BAD_REQUEST);
+      }
+
+      contentHandler = this.getHandler(JaxrsHandlerIF.HANDLER_CONTENT);
+
+      jsonContentInfo = this.getContentInformation(resourceUid);
+
+      if (jsonContentInfo != null && !jsonContentInfo.isEmpty()) {
+         jsonContentInfo.put(ConstantsIF.UID, resourceUid);
+         jsonContentInfo.put(ContentServiceIF.MODE, ContentServiceIF.MODE_BINARY);
+         if (jsonHeaders != null) {
+            jsonContentInfo.put(ConstantsIF.HEADERS, jsonHeaders);
+         }
+
+         operInput = new Operation(OperationIF.TYPE.REPLACE);
+         operInput.setJSON(jsonContentInfo);
+         operInput.setObject(input);
+
+         operOutput = contentHandler.process(operInput);
+
+         if (operOutput.getState() == STATE.SUCCESS) {
+            this.setContentInformation(resourceUid, operOutput);
+         }
+      } else {
+         operOutput = new Operation(OperationIF.TYPE.REPLACE);
+         operOutput.setJSON(new JSONObject());
+         operOutput.setState(STATE.NOTEXIST);
+         operOutput.setStatus("Content information does not exist");
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+
    /*
     * ===============
     * PRIVATE METHODS
@@ -1762,7 +2150,8 @@ public abstract class RSResource extends Resource {
     * Update the Resource with Content information.
     *
     * For CREATE and REPLACE operations, add / replace "content" object. For
-    * DELETE operation, remove "content" object.
+    * DELETE operation, remove "content" object. Only the "content" object is
+    * written, the "replace" operation uses the param "set".
     *
     * @param resourceUid String resource identifier
     * @param operInput OperationIF operation information
@@ -1810,39 +2199,15 @@ public abstract class RSResource extends Resource {
        *     "id": "default",
        *     "uri": "http://..."
        * }
-       */
-      operResourceOutput = this.getResource(resourceUid);
-
-      /*
-       * JSON resource ...
+       * JSON resource input, a missing 'content' object is removed ...
        * {
        *   "uid": "...",
-       *   "data": {  
-       *     "meta": { ... },
-       *     "content": { ... },
-       *     "register": "GUID"
-       *   },
-       *   "timestamps": { ... }
+       *   "data": {
+       *     "content": { ... }
+       *   }
        * }
        */
-      if (operResourceOutput == null) {
-         this.abort(METHOD, "Could not get resource, resourceUid='"
-            + resourceUid + "'", Status.INTERNAL_SERVER_ERROR);
-      }
-
-      jsonData = JSON.getObject(operResourceOutput.getJSON(), ConstantsIF.DATA);
-
-      if (jsonData == null || jsonData.isEmpty()) {
-         this.abort(METHOD, "Respource JSON data is null or empty",
-            Status.INTERNAL_SERVER_ERROR);
-      }
-
-      /*
-       * Remove existing 'content' object and add new 'content' object
-       */
-      if (jsonData.containsKey(ConstantsIF.CONTENT)) {
-         jsonData.remove(ConstantsIF.CONTENT);
-      }
+      jsonData = new JSONObject();
 
       if (operInput.getType() == OperationIF.TYPE.CREATE
          || operInput.getType() == OperationIF.TYPE.REPLACE) {
@@ -1855,6 +2220,7 @@ public abstract class RSResource extends Resource {
 
       operResourceInput = new Operation(OperationIF.TYPE.REPLACE);
       operResourceInput.setJSON(jsonResourceInput);
+      operResourceInput.setParam(ResourcesHandler.PARAM_SET, ConstantsIF.CONTENT);
 
       operResourceOutput = resourcesHandler.process(operResourceInput);
 
@@ -1951,6 +2317,46 @@ public abstract class RSResource extends Resource {
 //
 //      return value;
 //   }
+   /**
+    * Take the current Configuration Manager and Handler Manager from the
+    * shared configuration loader. Called once per request, on first use, so a
+    * request keeps the managers it started with when there is a reload.
+    */
+   private void setManagers() {
+      ConfigLoader.Managers managers = null;
+
+      managers = this.getConfigLoader().getManagers();
+
+      _configMgr = managers.getConfigManager();
+      _handlerMgr = managers.getHandlerManager();
+
+      return;
+   }
+
+   /**
+    * Get a shared object, created at startup by the RSContextListener, from
+    * the servlet context. Abort if it does not exist: the startup failed, see
+    * the server log.
+    *
+    * @param <T> object type
+    * @param name String attribute name
+    * @param type Class object type
+    * @return T shared object
+    */
+   private <T> T getContextAttribute(final String name, final Class<T> type) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      Object obj = null;
+
+      obj = _servletCtx.getAttribute(name);
+
+      if (!type.isInstance(obj)) {
+         this.abort(METHOD, "Servlet context attribute '" + name
+            + "' is not set, the Resource Server did not start", Status.INTERNAL_SERVER_ERROR);
+      }
+
+      return type.cast(obj);
+   }
+
    /**
     * Get the JSON data associated with a configuration type.
     *
@@ -1965,6 +2371,10 @@ public abstract class RSResource extends Resource {
 
       _logger.entering(CLASS, METHOD);
 
+      if (_configMgr == null) {
+         this.setManagers();
+      }
+
       if (!STR.isEmpty(configType)) {
          config = _configMgr.getConfiguration(configType);
          if (config != null) {
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+
+/**
+ * Output stream that writes GZIP (RFC 1952) only when the response is larger
+ * than a threshold. Output is buffered until the threshold is exceeded, the
+ * response headers are not committed until then. Small responses are written
+ * unchanged. When compressing, the "Content-Encoding: gzip" header is set,
+ * the "Content-Length" header is removed and a strong "ETag" is made weak.
+ * The Deflater is borrowed from a pool and returned by finish().
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class ThresholdGZipOutputStream extends OutputStream {
+
+   public static final String ENCODING_GZIP = "gzip";
+
+   private static final int BUFFER_SIZE = 8192;
+   private static final byte[] GZIP_HEADER = {
+      (byte) 0x1f, (byte) 0x8b, // magic
+      Deflater.DEFLATED, // method
+      0, // flags
+      0, 0, 0, 0, // modification time
+      0, // extra flags
+      (byte) 0xff // operating system: unknown
+   };
+   private final OutputStream _out;
+   private final MultivaluedMap<String, Object> _headers;
+   private final DeflaterPool _pool;
+   private final byte[] _buffer;
+   private int _count = 0;
+   private boolean _compressing = false;
+   private boolean _finished = false;
+   private Deflater _deflater = null;
+   private CRC32 _crc = null;
+   private byte[] _deflateBuffer = null;
+   private long _bytesIn = 0L;
+   private long _bytesOut = 0L;
+   private long _nanos = 0L;
+
+   /**
+    * Constructor
+    *
+    * @param out OutputStream the response entity stream
+    * @param headers MultivaluedMap response headers, not committed yet
+    * @param pool DeflaterPool pool of Deflaters
+    * @param threshold int number of bytes to buffer before compressing
+    */
+   public ThresholdGZipOutputStream(final OutputStream out, final MultivaluedMap<String, Object> headers,
+      final DeflaterPool pool, final int threshold) {
+      super();
+
+      _out = out;
+      _headers = headers;
+      _pool = pool;
+      _buffer = new byte[threshold > 0 ? threshold : 1];
+
+      return;
+   }
+
+   @Override
+   public void write(final int b) throws IOException {
+      this.write(new byte[]{(byte) b}, 0, 1);
+
+      return;
+   }
+
+   @Override
+   public void write(final byte[] b, final int off, final int len) throws IOException {
+      if (_finished) {
+         throw new IOException("Stream is finished");
+      }
+
+      if (len <= 0) {
+         return;
+      }
+
+      _bytesIn += len;
+
+      if (_compressing) {
+         this.deflate(b, off, len);
+      } else if (_count + len <= _buffer.length) {
+         System.arraycopy(b, off, _buffer, _count, len);
+         _count += len;
+      } else {
+         this.start();
+         this.deflate(_buffer, 0, _count);
+         _count = 0;
+         this.deflate(b, off, len);
+      }
+
+      return;
+   }
+
+   /**
+    * Flush compressed output. Buffered output, below the threshold, is not
+    * flushed; the response would be committed before the encoding is known.
+    *
+    * @throws IOException could not write to the output stream
+    */
+   @Override
+   public void flush() throws IOException {
+      int num = 0;
+      long start = 0L;
+
+      if (_compressing && !_finished) {
+         start = System.nanoTime();
+         do {
+            num = _deflater.deflate(_deflateBuffer, 0, _deflateBuffer.length, Deflater.SYNC_FLUSH);
+            this.writeOut(_deflateBuffer, 0, num);
+         } while (num == _deflateBuffer.length);
+         _nanos += System.nanoTime() - start;
+
+         _out.flush();
+      }
+
+      return;
+   }
+
+   /**
+    * Finish the output and close the response entity stream.
+    *
+    * @throws IOException could not write to the output stream
+    */
+   @Override
+   public void close() throws IOException {
+      try {
+         this.finish();
+      } finally {
+         _out.close();
+      }
+
+      return;
+   }
+
+   /**
+    * Write any buffered output, or the remaining compressed output and the
+    * GZIP trailer. The response entity stream is not closed. The Deflater is
+    * returned to the pool.
+    *
+    * @throws IOException could not write to the output stream
+    */
+   public void finish() throws IOException {
+      long start = 0L;
+
+      if (_finished) {
+         return;
+      }
+
+      _finished = true;
+
+      try {
+         if (_compressing) {
+            start = System.nanoTime();
+            _deflater.finish();
+            while (!_deflater.finished()) {
+               this.writeOut(_deflateBuffer, 0, _deflater.deflate(_deflateBuffer));
+            }
+            this.writeInt((int) _crc.getValue());
+            this.writeInt((int) _deflater.getBytesRead());
+            _nanos += System.nanoTime() - start;
+         } else if (_count > 0) {
+            _out.write(_buffer, 0, _count);
+            _bytesOut += _count;
+            _count = 0;
+         }
+      } finally {
+         this.release();
+      }
+
+      return;
+   }
+
+   /**
+    * Return the Deflater to the pool, if not already returned. Called if the
+    * response failed and finish() will not be called.
+    */
+   public void release() {
+      if (_deflater != null) {
+         _pool.release(_deflater);
+         _deflater = null;
+      }
+
+      _finished = true;
+
+      return;
+   }
+
+   /**
+    * Was the output compressed
+    *
+    * @return boolean True if the output is GZIP
+    */
+   public boolean isCompressed() {
+      return _compressing;
+   }
+
+   /**
+    * Get the number of bytes written to this stream
+    *
+    * @return long uncompressed bytes
+    */
+   public long getBytesIn() {
+      return _bytesIn;
+   }
+
+   /**
+    * Get the number of bytes written to the response entity stream
+    *
+    * @return long response bytes
+    */
+   public long getBytesOut() {
+      return _bytesOut;
+   }
+
+   /**
+    * Get the time spent compressing: CRC, deflate and writing the compressed
+    * output to the response entity stream
+    *
+    * @return long nanoseconds
+    */
+   public long getNanos() {
+      return _nanos;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * The threshold is exceeded: set the response headers, borrow a Deflater
+    * and write the GZIP header.
+    */
+   private void start() throws IOException {
+      Object etag = null;
+
+      _headers.putSingle(HttpHeaders.CONTENT_ENCODING, ENCODING_GZIP);
+      _headers.remove(HttpHeaders.CONTENT_LENGTH);
+
+      /*
+       * A strong ETag is byte-for-byte, the GZIP bytes are not the bytes it
+       * was computed for. A weak ETag still matches "If-None-Match".
+       */
+      etag = _headers.getFirst(HttpHeaders.ETAG);
+
+      if (etag instanceof EntityTag && !((EntityTag) etag).isWeak()) {
+         _headers.putSingle(HttpHeaders.ETAG, new EntityTag(((EntityTag) etag).getValue(), true));
+      } else if (etag != null && !(etag instanceof EntityTag) && !etag.toString().startsWith("W/")) {
+         _headers.putSingle(HttpHeaders.ETAG, "W/" + etag.toString());
+      }
+
+      _deflater = _pool.borrow();
+      _crc = new CRC32();
+      _deflateBuffer = new byte[BUFFER_SIZE];
+      _compressing = true;
+
+      this.writeOut(GZIP_HEADER, 0, GZIP_HEADER.length);
+
+      return;
+   }
+
+   private void deflate(final byte[] b, final int off, final int len) throws IOException {
+      long start = System.nanoTime();
+
+      _crc.update(b, off, len);
+      _deflater.setInput(b, off, len);
+
+      while (!_deflater.needsInput()) {
+         this.writeOut(_deflateBuffer, 0, _deflater.deflate(_deflateBuffer));
+      }
+
+      _nanos += System.nanoTime() - start;
+
+      return;
+   }
+
+   private void writeOut(final byte[] b, final int off, final int len) throws IOException {
+      if (len > 0) {
+         _out.write(b, off, len);
+         _bytesOut += len;
+      }
+
+      return;
+   }
+
+   /**
+    * Write a 32 bit value, little endian, for the GZIP trailer
+    */
+   private void writeInt(final int value) throws IOException {
+      byte[] bytes = {
+         (byte) (value & 0xff),
+         (byte) ((value >> 8) & 0xff),
+         (byte) ((value >> 16) & 0xff),
+         (byte) ((value >> 24) & 0xff)
+      };
+
+      this.writeOut(bytes, 0, bytes.length);
+
+      return;
+   }
+}
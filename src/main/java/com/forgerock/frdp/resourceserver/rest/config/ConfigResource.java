@@ -8,16 +8,27 @@ package com.forgerock.frdp.resourceserver.rest.config;
 import com.forgerock.frdp.common.ConstantsIF;
 import com.forgerock.frdp.dao.Operation;
 import com.forgerock.frdp.dao.OperationIF;
+import com.forgerock.frdp.resourceserver.handler.ContentHandler;
+import com.forgerock.frdp.resourceserver.handler.MetaHandler;
+import com.forgerock.frdp.resourceserver.handler.uma.PatRefreshScheduler;
+import com.forgerock.frdp.resourceserver.rest.CompressionInterceptor;
+import com.forgerock.frdp.resourceserver.rest.ConfigLoader;
 import com.forgerock.frdp.resourceserver.rest.RSResource;
+import com.forgerock.frdp.utils.JSON;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
@@ -30,6 +41,12 @@ import org.json.simple.parser.ParseException;
 @Path(ConstantsIF.CONFIG)
 public class ConfigResource extends RSResource {
 
+   private static final String COMPRESSION = "compression";
+   private static final String CONTENT = "content";
+   private static final String CREDENTIALS = "credentials";
+   private static final String META = "meta";
+   private static final String RELOAD = "reload";
+   private static final long RELOAD_TIMEOUT = 60L;
    private final String CLASS = this.getClass().getName();
 
    /**
@@ -75,7 +92,7 @@ public class ConfigResource extends RSResource {
       if (obj != null && obj instanceof JSONObject) {
          jsonData = (JSONObject) obj;
       } else {
-         parser = this.getParserFromCtx(_servletCtx);
+         parser = new JSONParser();
          realPath = _servletCtx.getRealPath("/");
          publicFile = realPath + "WEB-INF" + File.separator + PUBLIC_FILE;
          pathPublicFile = Paths.get(publicFile);
@@ -107,4 +124,183 @@ public class ConfigResource extends RSResource {
 
       return response;
    }
+
+   /**
+    * Get response compression metrics. HTTP Method is GET, endpoint is
+    * ".../config/compression", produces JSON
+    *
+    * @return Response HTTP response object
+    */
+   @GET
+   @Path(COMPRESSION)
+   @Produces(MediaType.APPLICATION_JSON)
+   public Response getCompression() {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      JSONObject jsonOutput = null;
+      Response response = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      jsonOutput = new JSONObject();
+      jsonOutput.put(ConstantsIF.DATA, CompressionInterceptor.getMetrics());
+
+      operOutput = new Operation(OperationIF.TYPE.READ);
+      operOutput.setJSON(jsonOutput);
+
+      response = this.getResponseFromJSON(_uriInfo, operOutput);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return response;
+   }
+
+   /**
+    * Get content cache metrics. HTTP Method is GET, endpoint is
+    * ".../config/content", produces JSON
+    *
+    * @return Response HTTP response object
+    */
+   @GET
+   @Path(CONTENT)
+   @Produces(MediaType.APPLICATION_JSON)
+   public Response getContent() {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      JSONObject jsonOutput = null;
+      Response response = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      jsonOutput = new JSONObject();
+      jsonOutput.put(ConstantsIF.DATA, ContentHandler.getCacheMetrics());
+
+      operOutput = new Operation(OperationIF.TYPE.READ);
+      operOutput.setJSON(jsonOutput);
+
+      response = this.getResponseFromJSON(_uriInfo, operOutput);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return response;
+   }
+
+   /**
+    * Get background PAT refresh metrics. HTTP Method is GET, endpoint is
+    * ".../config/credentials", produces JSON
+    *
+    * @return Response HTTP response object
+    */
+   @GET
+   @Path(CREDENTIALS)
+   @Produces(MediaType.APPLICATION_JSON)
+   public Response getCredentials() {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      JSONObject jsonOutput = null;
+      Response response = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      jsonOutput = new JSONObject();
+      jsonOutput.put(ConstantsIF.DATA, PatRefreshScheduler.getMetrics());
+
+      operOutput = new Operation(OperationIF.TYPE.READ);
+      operOutput.setJSON(jsonOutput);
+
+      response = this.getResponseFromJSON(_uriInfo, operOutput);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return response;
+   }
+
+   /**
+    * Get resource meta data cache metrics. HTTP Method is GET, endpoint is
+    * ".../config/meta", produces JSON
+    *
+    * @return Response HTTP response object
+    */
+   @GET
+   @Path(META)
+   @Produces(MediaType.APPLICATION_JSON)
+   public Response getMeta() {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      JSONObject jsonOutput = null;
+      Response response = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      jsonOutput = new JSONObject();
+      jsonOutput.put(ConstantsIF.DATA, MetaHandler.getMetrics());
+
+      operOutput = new Operation(OperationIF.TYPE.READ);
+      operOutput.setJSON(jsonOutput);
+
+      response = this.getResponseFromJSON(_uriInfo, operOutput);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return response;
+   }
+
+   /**
+    * Reload the configuration files. HTTP Method is POST, endpoint is
+    * ".../config/reload", produces JSON. The authenticated user must be the
+    * Authorization Server administrator. The files are read and the new
+    * handlers are validated on the reload thread, the current configuration
+    * is kept if the new one is not valid (400 Bad Request).
+    *
+    * <pre>
+    * JSON output:
+    * {
+    *   "status": "reloaded",
+    *   "reloads": 3,
+    *   "failures": 1,
+    *   "lastReload": 1603065600000,
+    *   "millis": 240
+    * }
+    * </pre>
+    *
+    * @return Response HTTP response object
+    */
+   @POST
+   @Path(RELOAD)
+   @Produces(MediaType.APPLICATION_JSON)
+   public Response reload() {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      JSONObject jsonOutput = null;
+      JSONObject jsonData = null;
+      Response response = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      this.checkAuthenUserIsAdmin();
+
+      try {
+         jsonData = this.getConfigLoader().reload().get(RELOAD_TIMEOUT, TimeUnit.SECONDS);
+      } catch (InterruptedException | ExecutionException | TimeoutException ex) {
+         this.abort(METHOD, "Reload did not complete: " + ex.getMessage(),
+            Status.INTERNAL_SERVER_ERROR);
+      }
+
+      if (ConfigLoader.STATUS_FAILED.equals(JSON.getString(jsonData, ConfigLoader.STATUS))) {
+         response = Response.status(Status.BAD_REQUEST).type(MediaType.APPLICATION_JSON)
+            .entity(jsonData.toJSONString()).build();
+      } else {
+         jsonOutput = new JSONObject();
+         jsonOutput.put(ConstantsIF.DATA, jsonData);
+
+         operOutput = new Operation(OperationIF.TYPE.READ);
+         operOutput.setJSON(jsonOutput);
+
+         response = this.getResponseFromJSON(_uriInfo, operOutput);
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return response;
+   }
 }
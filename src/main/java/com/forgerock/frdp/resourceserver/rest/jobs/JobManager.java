@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.rest.jobs;
+
+import com.forgerock.frdp.common.ConstantsIF;
+import com.forgerock.frdp.dao.Operation;
+import com.forgerock.frdp.dao.OperationIF;
+import com.forgerock.frdp.handler.HandlerManagerIF;
+import com.forgerock.frdp.resourceserver.handler.JaxrsHandlerIF;
+import com.forgerock.frdp.resourceserver.rest.manage.BulkCreateTask;
+import com.forgerock.frdp.utils.JSON;
+import com.forgerock.frdp.utils.STR;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Runs long-running jobs (import, offboard) on a bounded pool of worker
+ * threads. Job state, progress and checkpoint are saved in the "jobs"
+ * collection by the JobRunner. One instance is shared by all requests, it is
+ * kept in the servlet context.
+ *
+ * A job holds a lease: the identifier of the JobManager instance that runs
+ * it and an expiry. The server that submits the job writes the first lease
+ * with the job document. The lease is renewed with every save of the job, and
+ * at least every third of the lease while items are running. Jobs that are
+ * "queued" or "running" without a valid lease (the server that ran them
+ * stopped, or did not start them within the lease) are resumed from the last
+ * checkpoint, by the first server that finds them. The search runs when the
+ * JobManager starts and then once per lease.
+ *
+ * The Mongo DAO has no conditional update. A runner claims the job by
+ * creating a claim document, "data.claim" is the job and the lease it read.
+ * The "data.claim" index is unique: of the runners that read the same lease,
+ * only one creates the claim and runs the job. A runner that finds another
+ * instance in the lease stops without saving.
+ *
+ * <pre>
+ * JSON job document:
+ * {
+ *   "uid": "...",
+ *   "data": {
+ *     "owner": "bjensen",
+ *     "type": "import",           // "import" | "offboard"
+ *     "status": "running",        // "queued" | "running" | "completed" | "failed" | "cancelled"
+ *     "input": "...",             // uid of the input document, "import" only
+ *     "checkpoint": 300,          // items processed and saved
+ *     "claims": [ "..." ],        // uids of the claim documents
+ *     "lease": {
+ *       "instance": "...",        // JobManager instance running the job
+ *       "expires": 1589904000000  // milliseconds since the epoch
+ *     },
+ *     "progress": {
+ *       "total": 1000,
+ *       "processed": 300,
+ *       "succeeded": 298,
+ *       "failed": 2,
+ *       "rate": 12.5,             // items per second, this run
+ *       "eta": 56                 // seconds
+ *     },
+ *     "errors": [ { "index": 7, "error": "..." }, ... ],
+ *     "error": "..."              // job failed
+ *   }
+ * }
+ *
+ * JSON claim document:
+ * {
+ *   "uid": "...",
+ *   "data": {
+ *     "claim": "{job uid}/{lease instance}/{lease expires}",
+ *     "job": "..."
+ *   }
+ * }
+ * </pre>
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class JobManager {
+
+   public static final String TYPE_IMPORT = "import";
+   public static final String TYPE_OFFBOARD = "offboard";
+   public static final String STATUS_QUEUED = "queued";
+   public static final String STATUS_RUNNING = "running";
+   public static final String STATUS_COMPLETED = "completed";
+   public static final String STATUS_FAILED = "failed";
+   public static final String STATUS_CANCELLED = "cancelled";
+   public static final String STATUS = "status";
+   public static final String INPUT = "input";
+   public static final String ITEMS = "items";
+   public static final String CHECKPOINT = "checkpoint";
+   public static final String PROGRESS = "progress";
+   public static final String TOTAL = "total";
+   public static final String PROCESSED = "processed";
+   public static final String SUCCEEDED = "succeeded";
+   public static final String FAILED = "failed";
+   public static final String RATE = "rate";
+   public static final String ETA = "eta";
+   public static final String ERRORS = "errors";
+   public static final String LEASE = "lease";
+   public static final String INSTANCE = "instance";
+   public static final String EXPIRES = "expires";
+   public static final String CLAIM = "claim";
+   public static final String CLAIMS = "claims";
+   public static final String JOB = BulkCreateTask.JOB;
+   public static final long DEFAULT_LEASE = 60L; // seconds
+
+   private final String CLASS = this.getClass().getName();
+   private final Logger _logger = Logger.getLogger(this.getClass().getName());
+   private final Supplier<HandlerManagerIF> _handlerMgr;
+   private final ExecutorService _itemExecutor;
+   private final ExecutorService _workers;
+   private final int _chunk;
+   private final long _leaseMillis;
+   private final String _instance = UUID.randomUUID().toString();
+   private final ScheduledExecutorService _scanner;
+   private final Set<String> _active = ConcurrentHashMap.newKeySet();
+   private final Set<String> _cancelled = ConcurrentHashMap.newKeySet();
+
+   /**
+    * Constructor
+    *
+    * @param handlerMgr Supplier of the current HandlerManagerIF, provides the
+    * handlers
+    * @param itemExecutor ExecutorService bulk executor, processes the items of
+    * a chunk in parallel
+    * @param threads int maximum number of jobs running at the same time
+    * @param chunk int number of items processed between checkpoints
+    * @param lease long seconds a job is held without a renewal
+    */
+   public JobManager(final Supplier<HandlerManagerIF> handlerMgr, final ExecutorService itemExecutor,
+      final int threads, final int chunk, final long lease) {
+      _handlerMgr = handlerMgr;
+      _itemExecutor = itemExecutor;
+      _chunk = chunk > 0 ? chunk : 1;
+      _leaseMillis = TimeUnit.SECONDS.toMillis(lease > 0L ? lease : DEFAULT_LEASE);
+      _scanner = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+         @Override
+         public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(runnable, "rs-job-scanner");
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+      _workers = Executors.newFixedThreadPool(threads > 0 ? threads : 1, new ThreadFactory() {
+         private final AtomicInteger _count = new AtomicInteger(0);
+
+         @Override
+         public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(runnable, "rs-job-" + _count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+
+      return;
+   }
+
+   /**
+    * Queue the job for a worker thread. Ignored if the job is already queued
+    * or running in this server.
+    *
+    * @param jobUid String job identifier
+    */
+   public void submit(final String jobUid) {
+      if (!STR.isEmpty(jobUid) && _active.add(jobUid)) {
+         _workers.submit(new JobRunner(this, jobUid));
+      }
+
+      return;
+   }
+
+   /**
+    * Request cancellation, the job stops at the next checkpoint
+    *
+    * @param jobUid String job identifier
+    * @return boolean True if the job is queued or running in this server
+    */
+   public boolean cancel(final String jobUid) {
+      boolean active = false;
+
+      if (!STR.isEmpty(jobUid) && _active.contains(jobUid)) {
+         _cancelled.add(jobUid);
+         active = true;
+      }
+
+      return active;
+   }
+
+   /**
+    * Resume jobs that were "queued" or "running" when the server stopped,
+    * now and then once per lease, to find the jobs of servers that stopped
+    */
+   public void resume() {
+      _scanner.scheduleWithFixedDelay(() -> {
+         try {
+            this.resumeImpl();
+         } catch (RuntimeException ex) { // keep the next searches scheduled
+            _logger.log(Level.WARNING, "resume(): {0}", ex.getMessage());
+         }
+      }, 0L, _leaseMillis, TimeUnit.MILLISECONDS);
+
+      return;
+   }
+
+   /**
+    * Stop the worker threads. Running jobs are interrupted, they are resumed
+    * from the last checkpoint when their lease expires.
+    */
+   public void shutdown() {
+      _scanner.shutdownNow();
+      _workers.shutdownNow();
+
+      return;
+   }
+
+   /**
+    * Get the number of jobs queued or running in this server
+    *
+    * @return int active jobs
+    */
+   public int getActive() {
+      return _active.size();
+   }
+
+   /*
+    * ================= PACKAGE METHODS =================
+    */
+   JaxrsHandlerIF getHandler(final String handlerId) throws Exception {
+      JaxrsHandlerIF handler = null;
+      HandlerManagerIF handlerMgr = null;
+
+      handlerMgr = _handlerMgr.get(); // current handlers, replaced by a reload
+
+      if (handlerMgr == null || !handlerMgr.contains(handlerId)) {
+         throw new Exception("Handler does not exist, handlerId='" + handlerId + "'");
+      }
+
+      handler = (JaxrsHandlerIF) handlerMgr.getHandler(handlerId);
+
+      if (handler == null) {
+         throw new Exception("Handler is null, handlerId='" + handlerId + "'");
+      }
+
+      return handler;
+   }
+
+   ExecutorService getItemExecutor() {
+      return _itemExecutor;
+   }
+
+   int getChunk() {
+      return _chunk;
+   }
+
+   boolean isCancelled(final String jobUid) {
+      return _cancelled.contains(jobUid);
+   }
+
+   void done(final String jobUid) {
+      _cancelled.remove(jobUid);
+      _active.remove(jobUid);
+
+      return;
+   }
+
+   /**
+    * Check if the job's lease is held by another JobManager instance
+    *
+    * @param jsonJob JSONObject job "data"
+    * @return boolean True if another instance holds a lease that has not
+    * expired
+    */
+   boolean isLeased(final JSONObject jsonJob) {
+      String instance = null;
+      Object expires = null;
+      JSONObject jsonLease = null;
+
+      jsonLease = JSON.getObject(jsonJob, LEASE);
+      instance = JSON.getString(jsonLease, INSTANCE);
+      expires = jsonLease != null ? jsonLease.get(EXPIRES) : null;
+
+      return !STR.isEmpty(instance) && !_instance.equals(instance)
+         && expires instanceof Number && ((Number) expires).longValue() > System.currentTimeMillis();
+   }
+
+   /**
+    * Get a new lease for this instance
+    *
+    * @return JSONObject lease
+    */
+   JSONObject getLease() {
+      JSONObject jsonLease = null;
+
+      jsonLease = new JSONObject();
+      jsonLease.put(INSTANCE, _instance);
+      jsonLease.put(EXPIRES, System.currentTimeMillis() + _leaseMillis);
+
+      return jsonLease;
+   }
+
+   String getInstance() {
+      return _instance;
+   }
+
+   long getLeaseMillis() {
+      return _leaseMillis;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Search the jobs that are "running" or "queued", submit those without a
+    * valid lease
+    */
+   private void resumeImpl() {
+      String METHOD = "resumeImpl()";
+      int count = 0;
+      JSONArray jsonResults = null;
+      JSONObject jsonQuery = null;
+      JSONObject jsonInput = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      for (String status : new String[]{STATUS_RUNNING, STATUS_QUEUED}) {
+         jsonQuery = new JSONObject();
+         jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
+         jsonQuery.put(ConstantsIF.ATTRIBUTE, ConstantsIF.DATA + "." + STATUS);
+         jsonQuery.put(ConstantsIF.VALUE, status);
+
+         jsonInput = new JSONObject();
+         jsonInput.put(ConstantsIF.QUERY, jsonQuery);
+
+         operInput = new Operation(OperationIF.TYPE.SEARCH);
+         operInput.setJSON(jsonInput);
+
+         try {
+            operOutput = this.getHandler(JaxrsHandlerIF.HANDLER_JOBS).process(operInput);
+         } catch (Exception ex) {
+            _logger.log(Level.WARNING, "{0}: {1}", new Object[]{METHOD, ex.getMessage()});
+            break;
+         }
+
+         if (operOutput.isError()) {
+            _logger.log(Level.WARNING, "{0}: Could not search jobs: {1}",
+               new Object[]{METHOD, operOutput.getStatus()});
+            break;
+         }
+
+         jsonResults = JSON.getArray(operOutput.getJSON(), ConstantsIF.DATA + "." + ConstantsIF.RESULTS);
+
+         if (jsonResults != null) {
+            for (Object obj : jsonResults) {
+               if (obj instanceof JSONObject
+                  && !this.isLeased(JSON.getObject((JSONObject) obj, ConstantsIF.DATA))
+                  && !_active.contains(JSON.getString((JSONObject) obj, ConstantsIF.UID))) {
+                  this.submit(JSON.getString((JSONObject) obj, ConstantsIF.UID));
+                  count++;
+               }
+            }
+         }
+      }
+
+      if (count > 0) {
+         _logger.log(Level.INFO, "{0}: resumed ''{1}'' jobs", new Object[]{METHOD, count});
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+}
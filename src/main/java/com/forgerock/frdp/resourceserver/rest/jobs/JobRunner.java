@@ -0,0 +1,826 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.rest.jobs;
+
+import com.forgerock.frdp.common.ConstantsIF;
+import com.forgerock.frdp.common.CoreIF.STATE;
+import com.forgerock.frdp.dao.Operation;
+import com.forgerock.frdp.dao.OperationIF;
+import com.forgerock.frdp.resourceserver.handler.JaxrsHandlerIF;
+import com.forgerock.frdp.resourceserver.rest.manage.BulkCreateTask;
+import com.forgerock.frdp.resourceserver.rest.manage.BulkDeleteTask;
+import com.forgerock.frdp.utils.JSON;
+import com.forgerock.frdp.utils.STR;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Run one job on a JobManager worker thread. Items are processed in chunks,
+ * the items of a chunk in parallel on the bulk executor. After each chunk the
+ * progress and checkpoint are saved. A resumed "import" job starts at the
+ * checkpoint. Each resource it creates records the job and the item index
+ * ("data.job"), items at or after the checkpoint that were already created
+ * are found with them, before the first chunk, and not created again. An
+ * "offboard" job searches the owner's resources once and deletes them a chunk
+ * at a time, then searches again for resources created meanwhile. The UMA
+ * PAT is read for the owner from the credential store for each chunk, there
+ * is no request (SSO session) for a job.
+ *
+ * The job is claimed with a lease before it runs, see JobManager. Every save
+ * renews the lease, and while the items of a chunk run the job is saved
+ * (unchanged progress) at least every third of the lease. If another
+ * instance took the lease, the runner stops without saving.
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class JobRunner implements Runnable {
+
+   private static final int MAX_ERRORS = 100;
+   private final String CLASS = this.getClass().getName();
+   private final Logger _logger = Logger.getLogger(this.getClass().getName());
+   private final JobManager _manager;
+   private final String _jobUid;
+   private JSONObject _jsonJob = null;
+   private long _started = 0L;
+   private long _startProcessed = 0L;
+
+   /**
+    * Constructor
+    *
+    * @param manager JobManager the job manager
+    * @param jobUid String job identifier
+    */
+   public JobRunner(final JobManager manager, final String jobUid) {
+      _manager = manager;
+      _jobUid = jobUid;
+
+      return;
+   }
+
+   /**
+    * Run the job, the final status is saved. Never throws.
+    */
+   @Override
+   public void run() {
+      String METHOD = "run()";
+      String type = null;
+      String status = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      try {
+         _jsonJob = this.readDocument(_jobUid);
+
+         if (_jsonJob != null) {
+            status = JSON.getString(_jsonJob, JobManager.STATUS);
+
+            if ((JobManager.STATUS_QUEUED.equals(status) || JobManager.STATUS_RUNNING.equals(status))
+               && this.claim()) {
+               type = JSON.getString(_jsonJob, ConstantsIF.TYPE);
+
+               _started = System.nanoTime();
+               _startProcessed = this.getLong(this.getProgress(), JobManager.PROCESSED);
+
+               _logger.log(Level.INFO, "{0}: job ''{1}'', type ''{2}'', started at ''{3}''",
+                  new Object[]{METHOD, _jobUid, type, _startProcessed});
+
+               if (JobManager.TYPE_IMPORT.equals(type)) {
+                  this.runImport();
+               } else if (JobManager.TYPE_OFFBOARD.equals(type)) {
+                  this.runOffboard();
+               } else {
+                  throw new Exception("Unsupported job type '" + type + "'");
+               }
+
+               _logger.log(Level.INFO, "{0}: job ''{1}'', status ''{2}''",
+                  new Object[]{METHOD, _jobUid, JSON.getString(_jsonJob, JobManager.STATUS)});
+            }
+         }
+      } catch (InterruptedException ex) {
+         /*
+          * Server is stopping, the status stays "running", resumed when the
+          * lease expires
+          */
+         _logger.log(Level.INFO, "{0}: job ''{1}'' interrupted", new Object[]{METHOD, _jobUid});
+         Thread.currentThread().interrupt();
+      } catch (LeaseException ex) {
+         /*
+          * Another instance runs the job, it owns the job document
+          */
+         _logger.log(Level.INFO, "{0}: job ''{1}'' stopped: {2}", new Object[]{METHOD, _jobUid, ex.getMessage()});
+      } catch (Exception ex) {
+         _logger.log(Level.WARNING, "{0}: job ''{1}'': {2}", new Object[]{METHOD, _jobUid, ex.getMessage()});
+
+         if (_jsonJob != null) {
+            _jsonJob.put(JobManager.STATUS, JobManager.STATUS_FAILED);
+            _jsonJob.put(ConstantsIF.ERROR, ex.getMessage());
+
+            try {
+               this.saveJob();
+            } catch (Exception e) {
+               _logger.log(Level.WARNING, "{0}: job ''{1}'': {2}", new Object[]{METHOD, _jobUid, e.getMessage()});
+            }
+         }
+      } finally {
+         _manager.done(_jobUid);
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Create the resources in the input document, starting at the checkpoint
+    *
+    * @throws Exception could not run the job
+    */
+   private void runImport() throws Exception {
+      int start = 0;
+      int end = 0;
+      String owner = null;
+      String inputUid = null;
+      String access_token = null;
+      JSONObject jsonInput = null;
+      JSONObject jsonItem = null;
+      JSONObject jsonResult = null;
+      JSONArray jsonItems = null;
+      List<Future<JSONObject>> futures = null;
+      List<JSONObject> results = null;
+      Map<Integer, String> created = null;
+      JaxrsHandlerIF resourcesHandler = null;
+      JaxrsHandlerIF contentHandler = null;
+      JaxrsHandlerIF registerHandler = null;
+      JaxrsHandlerIF policyHandler = null;
+
+      owner = JSON.getString(_jsonJob, ConstantsIF.OWNER);
+      inputUid = JSON.getString(_jsonJob, JobManager.INPUT);
+
+      jsonInput = this.readDocument(inputUid);
+
+      if (jsonInput == null) {
+         throw new Exception("Job input is missing");
+      }
+
+      jsonItems = JSON.getArray(jsonInput, JobManager.ITEMS);
+
+      if (jsonItems == null) {
+         jsonItems = new JSONArray();
+      }
+
+      this.getProgress().put(JobManager.TOTAL, jsonItems.size());
+
+      resourcesHandler = _manager.getHandler(JaxrsHandlerIF.HANDLER_RESOURCES);
+      contentHandler = _manager.getHandler(JaxrsHandlerIF.HANDLER_CONTENT);
+      registerHandler = _manager.getHandler(JaxrsHandlerIF.HANDLER_UMA_REGISTER);
+      policyHandler = _manager.getHandler(JaxrsHandlerIF.HANDLER_UMA_POLICY);
+
+      start = (int) this.getLong(_jsonJob, JobManager.CHECKPOINT);
+
+      created = this.getCreated(resourcesHandler, owner, start);
+
+      while (start < jsonItems.size()) {
+         if (this.isCancelled()) {
+            return;
+         }
+
+         end = Math.min(start + _manager.getChunk(), jsonItems.size());
+
+         access_token = null;
+
+         for (int i = start; i < end; i++) {
+            jsonItem = jsonItems.get(i) instanceof JSONObject ? (JSONObject) jsonItems.get(i) : null;
+
+            if (jsonItem != null && jsonItem.containsKey(ConstantsIF.REGISTER)) {
+               access_token = this.getAccessToken(owner);
+               break;
+            }
+         }
+
+         futures = new ArrayList<>(end - start);
+
+         for (int i = start; i < end; i++) {
+            jsonItem = jsonItems.get(i) instanceof JSONObject ? (JSONObject) jsonItems.get(i) : null;
+
+            if (created.containsKey(i)) { // created before the job was interrupted
+               futures.add(null);
+            } else {
+               futures.add(_manager.getItemExecutor().submit(new BulkCreateTask(i, owner, access_token, null,
+                  jsonItem, resourcesHandler, contentHandler, registerHandler, policyHandler,
+                  this.getJobReference(i))));
+            }
+         }
+
+         results = new ArrayList<>(futures.size());
+
+         for (int i = 0; i < futures.size(); i++) {
+            if (futures.get(i) != null) {
+               jsonResult = this.getResult(futures.get(i));
+            } else {
+               jsonResult = new JSONObject();
+               jsonResult.put(BulkCreateTask.STATUS, BulkCreateTask.STATUS_CREATED);
+               jsonResult.put(ConstantsIF.UID, created.get(start + i));
+            }
+
+            if (!jsonResult.containsKey(BulkCreateTask.INDEX)) {
+               jsonResult.put(BulkCreateTask.INDEX, start + i);
+            }
+
+            results.add(jsonResult);
+         }
+
+         for (JSONObject json : results) {
+            this.addResult(BulkCreateTask.STATUS_CREATED, json);
+         }
+
+         start = end;
+
+         _jsonJob.put(JobManager.CHECKPOINT, start);
+         this.saveJob();
+      }
+
+      this.deleteDocument(inputUid);
+
+      _jsonJob.remove(JobManager.INPUT);
+      _jsonJob.put(JobManager.STATUS, JobManager.STATUS_COMPLETED);
+      this.saveJob();
+
+      return;
+   }
+
+   /**
+    * Delete the owner's resources, a chunk at a time. The resources are
+    * searched once, then again after they are processed for resources created
+    * meanwhile, until none are left. Resources that fail are skipped for the
+    * rest of this run.
+    *
+    * @throws Exception could not run the job
+    */
+   private void runOffboard() throws Exception {
+      boolean register = false;
+      int end = 0;
+      String owner = null;
+      String access_token = null;
+      JSONObject jsonResource = null;
+      JSONObject jsonResult = null;
+      JSONObject jsonProgress = null;
+      List<JSONObject> resources = null;
+      List<JSONObject> chunk = null;
+      List<JSONObject> results = null;
+      List<Future<JSONObject>> futures = null;
+      Set<String> failed = null;
+      JaxrsHandlerIF resourcesHandler = null;
+      JaxrsHandlerIF contentHandler = null;
+      JaxrsHandlerIF registerHandler = null;
+
+      owner = JSON.getString(_jsonJob, ConstantsIF.OWNER);
+
+      if (STR.isEmpty(owner)) {
+         throw new Exception("Job owner is empty");
+      }
+
+      resourcesHandler = _manager.getHandler(JaxrsHandlerIF.HANDLER_RESOURCES);
+      contentHandler = _manager.getHandler(JaxrsHandlerIF.HANDLER_CONTENT);
+      registerHandler = _manager.getHandler(JaxrsHandlerIF.HANDLER_UMA_REGISTER);
+
+      failed = new HashSet<>();
+      jsonProgress = this.getProgress();
+
+      resources = this.getResources(resourcesHandler, owner, failed);
+
+      if (!jsonProgress.containsKey(JobManager.TOTAL)) {
+         jsonProgress.put(JobManager.TOTAL, resources.size());
+      }
+
+      while (!resources.isEmpty()) {
+         for (int start = 0; start < resources.size(); start = end) {
+            if (this.isCancelled()) {
+               return;
+            }
+
+            end = Math.min(start + _manager.getChunk(), resources.size());
+            chunk = resources.subList(start, end);
+
+            register = false;
+            access_token = null;
+
+            for (JSONObject json : chunk) {
+               if (!STR.isEmpty(JSON.getString(json, ConstantsIF.DATA + "." + ConstantsIF.REGISTER))) {
+                  register = true;
+                  break;
+               }
+            }
+
+            if (register) {
+               access_token = this.getAccessToken(owner);
+            }
+
+            futures = new ArrayList<>(chunk.size());
+
+            for (JSONObject json : chunk) {
+               futures.add(_manager.getItemExecutor().submit(new BulkDeleteTask(access_token, json,
+                  resourcesHandler, contentHandler, registerHandler)));
+            }
+
+            results = new ArrayList<>(futures.size());
+
+            for (int i = 0; i < futures.size(); i++) {
+               jsonResource = chunk.get(i);
+               jsonResult = this.getResult(futures.get(i));
+
+               if (!jsonResult.containsKey(ConstantsIF.UID)) {
+                  jsonResult.put(ConstantsIF.UID, JSON.getString(jsonResource, ConstantsIF.UID));
+               }
+
+               results.add(jsonResult);
+            }
+
+            for (JSONObject json : results) {
+               if (!this.addResult(BulkDeleteTask.STATUS_DELETED, json)) {
+                  failed.add(JSON.getString(json, ConstantsIF.UID));
+               }
+            }
+
+            _jsonJob.put(JobManager.CHECKPOINT, this.getLong(jsonProgress, JobManager.PROCESSED));
+            this.saveJob();
+         }
+
+         resources = this.getResources(resourcesHandler, owner, failed);
+      }
+
+      _jsonJob.put(JobManager.STATUS, JobManager.STATUS_COMPLETED);
+      this.saveJob();
+
+      return;
+   }
+
+   /**
+    * Get the owner's remaining resources, excluding failed resources
+    */
+   private List<JSONObject> getResources(final JaxrsHandlerIF resourcesHandler, final String owner,
+      final Set<String> failed) throws Exception {
+      List<JSONObject> resources = null;
+      JSONArray jsonResults = null;
+      JSONObject jsonQuery = null;
+      JSONObject jsonInput = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+
+      jsonQuery = new JSONObject();
+      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
+      jsonQuery.put(ConstantsIF.ATTRIBUTE, ConstantsIF.DATA + "." + ConstantsIF.OWNER);
+      jsonQuery.put(ConstantsIF.VALUE, owner);
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.QUERY, jsonQuery);
+
+      operInput = new Operation(OperationIF.TYPE.SEARCH);
+      operInput.setJSON(jsonInput);
+
+      operOutput = resourcesHandler.process(operInput);
+
+      if (operOutput.isError()) {
+         throw new Exception("Could not search resources: " + operOutput.getStatus());
+      }
+
+      jsonResults = JSON.getArray(operOutput.getJSON(), ConstantsIF.DATA + "." + ConstantsIF.RESULTS);
+
+      resources = new ArrayList<>();
+
+      if (jsonResults != null) {
+         for (Object obj : jsonResults) {
+            if (obj instanceof JSONObject
+               && !failed.contains(JSON.getString((JSONObject) obj, ConstantsIF.UID))) {
+               resources.add((JSONObject) obj);
+            }
+         }
+      }
+
+      return resources;
+   }
+
+   /**
+    * Update the progress with an item result
+    *
+    * @return boolean True if the item succeeded
+    */
+   private boolean addResult(final String success, final JSONObject jsonResult) {
+      boolean succeeded = false;
+      long processed = 0L;
+      double seconds = 0.0;
+      double rate = 0.0;
+      JSONObject jsonProgress = null;
+      JSONArray jsonErrors = null;
+
+      jsonProgress = this.getProgress();
+
+      succeeded = success.equals(JSON.getString(jsonResult, BulkCreateTask.STATUS));
+
+      processed = this.getLong(jsonProgress, JobManager.PROCESSED) + 1;
+      jsonProgress.put(JobManager.PROCESSED, processed);
+
+      if (succeeded) {
+         jsonProgress.put(JobManager.SUCCEEDED, this.getLong(jsonProgress, JobManager.SUCCEEDED) + 1);
+      } else {
+         jsonProgress.put(JobManager.FAILED, this.getLong(jsonProgress, JobManager.FAILED) + 1);
+
+         jsonErrors = JSON.getArray(_jsonJob, JobManager.ERRORS);
+
+         if (jsonErrors == null) {
+            jsonErrors = new JSONArray();
+            _jsonJob.put(JobManager.ERRORS, jsonErrors);
+         }
+
+         if (jsonErrors.size() < MAX_ERRORS) {
+            jsonErrors.add(jsonResult);
+         }
+      }
+
+      seconds = (System.nanoTime() - _started) / (double) TimeUnit.SECONDS.toNanos(1L);
+
+      if (seconds > 0.0) {
+         rate = (processed - _startProcessed) / seconds;
+         jsonProgress.put(JobManager.RATE, Math.round(rate * 100.0) / 100.0);
+
+         if (rate > 0.0 && jsonProgress.containsKey(JobManager.TOTAL)) {
+            jsonProgress.put(JobManager.ETA,
+               Math.max(0L, Math.round((this.getLong(jsonProgress, JobManager.TOTAL) - processed) / rate)));
+         }
+      }
+
+      return succeeded;
+   }
+
+   /**
+    * Wait for an item result. The job is saved, renewing the lease, every
+    * third of the lease while waiting. The progress is only changed after all
+    * the results of the chunk are in, the saved job is the last checkpoint.
+    */
+   private JSONObject getResult(final Future<JSONObject> future) throws Exception {
+      long heartbeat = 0L;
+      JSONObject jsonResult = null;
+
+      heartbeat = Math.max(1L, _manager.getLeaseMillis() / 3L);
+
+      while (jsonResult == null) {
+         try {
+            jsonResult = future.get(heartbeat, TimeUnit.MILLISECONDS);
+         } catch (TimeoutException ex) {
+            this.saveJob(); // heartbeat
+         } catch (ExecutionException ex) {
+            jsonResult = new JSONObject();
+            jsonResult.put(BulkCreateTask.STATUS, BulkCreateTask.STATUS_FAILED);
+            jsonResult.put(ConstantsIF.ERROR, ex.getMessage());
+         }
+      }
+
+      return jsonResult;
+   }
+
+   /**
+    * Get the reference saved with each resource that the import creates
+    *
+    * @param index int item index
+    * @return JSONObject {"uid": "job uid", "index": 7}
+    */
+   private JSONObject getJobReference(final int index) {
+      JSONObject jsonJob = null;
+
+      jsonJob = new JSONObject();
+      jsonJob.put(ConstantsIF.UID, _jobUid);
+      jsonJob.put(BulkCreateTask.INDEX, index);
+
+      return jsonJob;
+   }
+
+   /**
+    * Get the resources this job already created for items at or after the
+    * checkpoint: items of a chunk that was interrupted before it was saved.
+    *
+    * @return Map item index, resource uid
+    */
+   private Map<Integer, String> getCreated(final JaxrsHandlerIF resourcesHandler, final String owner,
+      final int checkpoint) throws Exception {
+      long index = 0L;
+      Map<Integer, String> created = null;
+      JSONArray jsonResults = null;
+      JSONObject jsonQuery = null;
+      JSONObject jsonInput = null;
+      JSONObject jsonData = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+
+      created = new HashMap<>();
+
+      jsonQuery = new JSONObject();
+      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
+      jsonQuery.put(ConstantsIF.ATTRIBUTE, ConstantsIF.DATA + "." + JobManager.JOB + "." + ConstantsIF.UID);
+      jsonQuery.put(ConstantsIF.VALUE, _jobUid);
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.QUERY, jsonQuery);
+
+      operInput = new Operation(OperationIF.TYPE.SEARCH);
+      operInput.setJSON(jsonInput);
+
+      operOutput = resourcesHandler.process(operInput);
+
+      if (operOutput.isError()) {
+         throw new Exception("Could not search created resources: " + operOutput.getStatus());
+      }
+
+      jsonResults = JSON.getArray(operOutput.getJSON(), ConstantsIF.DATA + "." + ConstantsIF.RESULTS);
+
+      if (jsonResults != null) {
+         for (Object obj : jsonResults) {
+            jsonData = obj instanceof JSONObject ? JSON.getObject((JSONObject) obj, ConstantsIF.DATA) : null;
+
+            if (jsonData != null && owner != null && owner.equals(JSON.getString(jsonData, ConstantsIF.OWNER))) {
+               index = this.getLong(JSON.getObject(jsonData, JobManager.JOB), BulkCreateTask.INDEX);
+
+               if (index >= checkpoint) {
+                  created.put((int) index, JSON.getString((JSONObject) obj, ConstantsIF.UID));
+               }
+            }
+         }
+      }
+
+      return created;
+   }
+
+   /**
+    * Claim the job: create the claim document for the lease that was read,
+    * then save the job "running" with a lease of this instance. Only one
+    * instance can create the claim document, see JobManager.
+    *
+    * @return boolean True if this instance runs the job
+    */
+   private boolean claim() throws Exception {
+      boolean claimed = false;
+      String claimUid = null;
+      JSONArray jsonClaims = null;
+
+      if (!_manager.isLeased(_jsonJob)) {
+         claimUid = this.createClaim();
+
+         if (!STR.isEmpty(claimUid)) {
+            jsonClaims = JSON.getArray(_jsonJob, JobManager.CLAIMS);
+
+            if (jsonClaims == null) {
+               jsonClaims = new JSONArray();
+               _jsonJob.put(JobManager.CLAIMS, jsonClaims);
+            }
+
+            jsonClaims.add(claimUid);
+
+            _jsonJob.put(JobManager.STATUS, JobManager.STATUS_RUNNING);
+            _jsonJob.put(JobManager.LEASE, _manager.getLease());
+            this.writeJob();
+
+            claimed = true;
+         }
+      }
+
+      if (!claimed) {
+         _logger.log(Level.INFO, "run(): job ''{0}'' is run by another instance", _jobUid);
+      }
+
+      return claimed;
+   }
+
+   /**
+    * Create the claim document of the job and the lease that was read. The
+    * create fails if another instance already claimed the same lease, the
+    * "data.claim" index is unique.
+    *
+    * @return String claim document uid, null if it was not created
+    */
+   private String createClaim() throws Exception {
+      String instance = null;
+      JSONObject jsonLease = null;
+      JSONObject jsonData = null;
+      JSONObject jsonInput = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+
+      jsonLease = JSON.getObject(_jsonJob, JobManager.LEASE);
+      instance = JSON.getString(jsonLease, JobManager.INSTANCE);
+
+      jsonData = new JSONObject();
+      jsonData.put(JobManager.CLAIM, _jobUid + "/" + (instance != null ? instance : "") + "/"
+         + this.getLong(jsonLease, JobManager.EXPIRES));
+      jsonData.put(JobManager.JOB, _jobUid);
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.DATA, jsonData);
+
+      operInput = new Operation(OperationIF.TYPE.CREATE);
+      operInput.setJSON(jsonInput);
+
+      operOutput = _manager.getHandler(JaxrsHandlerIF.HANDLER_JOBS).process(operInput);
+
+      if (operOutput.isError()) {
+         _logger.log(Level.FINE, "run(): job ''{0}'': claim not created: {1}",
+            new Object[]{_jobUid, operOutput.getStatus()});
+      }
+
+      return operOutput.isError() ? null : JSON.getString(operOutput.getJSON(), ConstantsIF.UID);
+   }
+
+   /**
+    * Check for cancellation, save the "cancelled" status and remove the input
+    */
+   private boolean isCancelled() throws Exception {
+      boolean cancelled = false;
+      String inputUid = null;
+
+      if (_manager.isCancelled(_jobUid)) {
+         cancelled = true;
+
+         inputUid = JSON.getString(_jsonJob, JobManager.INPUT);
+
+         if (!STR.isEmpty(inputUid)) {
+            this.deleteDocument(inputUid);
+            _jsonJob.remove(JobManager.INPUT);
+         }
+
+         _jsonJob.put(JobManager.STATUS, JobManager.STATUS_CANCELLED);
+         this.saveJob();
+      }
+
+      return cancelled;
+   }
+
+   private JSONObject getProgress() {
+      JSONObject jsonProgress = null;
+
+      jsonProgress = JSON.getObject(_jsonJob, JobManager.PROGRESS);
+
+      if (jsonProgress == null) {
+         jsonProgress = new JSONObject();
+         _jsonJob.put(JobManager.PROGRESS, jsonProgress);
+      }
+
+      return jsonProgress;
+   }
+
+   private long getLong(final JSONObject json, final String name) {
+      Object obj = null;
+
+      obj = json != null ? json.get(name) : null;
+
+      return obj instanceof Number ? ((Number) obj).longValue() : 0L;
+   }
+
+   /**
+    * Get the owner's UMA PAT from the credential store
+    */
+   private String getAccessToken(final String owner) throws Exception {
+      String access_token = null;
+      JSONObject jsonInput = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.OWNER, owner);
+
+      operInput = new Operation(OperationIF.TYPE.READ);
+      operInput.setJSON(jsonInput);
+
+      operOutput = _manager.getHandler(JaxrsHandlerIF.HANDLER_UMA_PAT).process(operInput);
+
+      access_token = JSON.getString(operOutput.getJSON(),
+         ConstantsIF.DATA + "." + ConstantsIF.CREDENTIAL + "." + ConstantsIF.ACCESS_TOKEN);
+
+      if (STR.isEmpty(access_token)) {
+         throw new Exception("access_token is empty for owner '" + owner + "'");
+      }
+
+      return access_token;
+   }
+
+   /**
+    * Read the "data" of a document in the "jobs" collection
+    *
+    * @return JSONObject "data", null if the document does not exist
+    */
+   private JSONObject readDocument(final String uid) throws Exception {
+      JSONObject jsonData = null;
+      JSONObject jsonInput = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+
+      if (STR.isEmpty(uid)) {
+         throw new Exception("Job document identifier is empty");
+      }
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.UID, uid);
+
+      operInput = new Operation(OperationIF.TYPE.READ);
+      operInput.setJSON(jsonInput);
+
+      operOutput = _manager.getHandler(JaxrsHandlerIF.HANDLER_JOBS).process(operInput);
+
+      if (operOutput.getState() == STATE.SUCCESS) {
+         jsonData = JSON.getObject(operOutput.getJSON(), ConstantsIF.DATA);
+      } else if (operOutput.getState() != STATE.NOTEXIST) {
+         throw new Exception("Could not read job document: " + operOutput.getStatus());
+      }
+
+      return jsonData;
+   }
+
+   private void deleteDocument(final String uid) throws Exception {
+      JSONObject jsonInput = null;
+      OperationIF operInput = null;
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.UID, uid);
+
+      operInput = new Operation(OperationIF.TYPE.DELETE);
+      operInput.setJSON(jsonInput);
+
+      _manager.getHandler(JaxrsHandlerIF.HANDLER_JOBS).process(operInput);
+
+      return;
+   }
+
+   /**
+    * Save the job state, progress and checkpoint, and renew the lease. The
+    * stored lease is checked first, the job is not saved if another instance
+    * holds it.
+    */
+   private void saveJob() throws Exception {
+      JSONObject jsonStored = null;
+
+      jsonStored = this.readDocument(_jobUid);
+
+      if (jsonStored == null) {
+         throw new LeaseException("job document was removed");
+      }
+
+      if (!_manager.getInstance().equals(JSON.getString(jsonStored, JobManager.LEASE + "." + JobManager.INSTANCE))) {
+         throw new LeaseException("lease is held by another instance");
+      }
+
+      _jsonJob.put(JobManager.LEASE, _manager.getLease());
+
+      this.writeJob();
+
+      return;
+   }
+
+   /**
+    * Write the job document
+    */
+   private void writeJob() throws Exception {
+      JSONObject jsonInput = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.UID, _jobUid);
+      jsonInput.put(ConstantsIF.DATA, _jsonJob);
+
+      operInput = new Operation(OperationIF.TYPE.REPLACE);
+      operInput.setJSON(jsonInput);
+
+      operOutput = _manager.getHandler(JaxrsHandlerIF.HANDLER_JOBS).process(operInput);
+
+      if (operOutput.isError()) {
+         throw new Exception("Could not save job: " + operOutput.getStatus());
+      }
+
+      return;
+   }
+
+   /**
+    * The lease of the job is held by another instance
+    */
+   private static class LeaseException extends Exception {
+
+      private static final long serialVersionUID = 1L;
+
+      LeaseException(final String message) {
+         super(message);
+      }
+   }
+}
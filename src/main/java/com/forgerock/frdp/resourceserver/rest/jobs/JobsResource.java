@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.rest.jobs;
+
+import com.forgerock.frdp.common.ConstantsIF;
+import com.forgerock.frdp.dao.Operation;
+import com.forgerock.frdp.dao.OperationIF;
+import com.forgerock.frdp.resourceserver.ConfigIF;
+import com.forgerock.frdp.resourceserver.handler.JaxrsHandlerIF;
+import com.forgerock.frdp.resourceserver.rest.RSResource;
+import com.forgerock.frdp.utils.JSON;
+import com.forgerock.frdp.utils.STR;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Long-running jobs for the authenticated user: submit, list, progress, and
+ * cancel. Jobs run in the background, see JobManager.
+ *
+ * <pre>
+ * paths:
+ * .../rest/jobs
+ * .../rest/jobs/{id}
+ * </pre>
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+@Path(JobsResource.JOBS)
+public class JobsResource extends RSResource {
+
+   public static final String JOBS = "jobs";
+
+   private final String CLASS = this.getClass().getName();
+
+   /**
+    * Constructor
+    */
+   public JobsResource() {
+      super();
+
+      String METHOD = "JobsResource()";
+
+      _logger.entering(CLASS, METHOD);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+
+   /**
+    * Submit a job, owned by the authenticated user. An "import" job creates
+    * the resources in "items", each in the ".../manage/resources" format. The
+    * "policy" of an item is not supported, there is no SSO session for a job.
+    * An "offboard" job deletes all of the user's resources. Returns "201
+    * Created" with the job location, the job runs in the background.
+    *
+    * <pre>
+    * JSON input:
+    * {
+    *   "type": "import",
+    *   "items": [ { "meta": { ... }, "content": { ... }, "register": { ... } }, ... ]
+    * }
+    * -or-
+    * { "type": "offboard" }
+    * </pre>
+    *
+    * @param data InputStream job payload
+    * @return Response HTTP response object
+    */
+   @POST
+   @Consumes(MediaType.APPLICATION_JSON)
+   @Produces(MediaType.APPLICATION_JSON)
+   public Response submit(InputStream data) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String userId = null;
+      String type = null;
+      String inputUid = null;
+      String jobUid = null;
+      Response response = null;
+      JSONObject jsonPayload = null;
+      JSONObject jsonItem = null;
+      JSONObject jsonJob = null;
+      JSONObject jsonProgress = null;
+      JSONObject jsonData = null;
+      JSONObject jsonInput = null;
+      JSONArray jsonItems = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+      JaxrsHandlerIF jobsHandler = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      if (data == null) {
+         this.abort(METHOD, "Payload stream is null", Status.BAD_REQUEST);
+      }
+
+      userId = this.getUserIdFromSSOSession();
+
+      jsonPayload = this.getJSONFromStream(data);
+
+      type = JSON.getString(jsonPayload, ConstantsIF.TYPE);
+
+      jobsHandler = this.getHandler(JaxrsHandlerIF.HANDLER_JOBS);
+
+      jsonProgress = new JSONObject();
+      jsonProgress.put(JobManager.PROCESSED, 0);
+      jsonProgress.put(JobManager.SUCCEEDED, 0);
+      jsonProgress.put(JobManager.FAILED, 0);
+
+      jsonJob = new JSONObject();
+      jsonJob.put(ConstantsIF.OWNER, userId);
+      jsonJob.put(ConstantsIF.TYPE, type);
+      jsonJob.put(JobManager.STATUS, JobManager.STATUS_QUEUED);
+      jsonJob.put(JobManager.CHECKPOINT, 0);
+      jsonJob.put(JobManager.PROGRESS, jsonProgress);
+      jsonJob.put(JobManager.LEASE, this.getJobManager().getLease()); // not resumed by other servers
+
+      if (JobManager.TYPE_IMPORT.equals(type)) {
+         jsonItems = JSON.getArray(jsonPayload, JobManager.ITEMS);
+
+         if (jsonItems == null || jsonItems.isEmpty()) {
+            this.abort(METHOD, "Attribute '" + JobManager.ITEMS + "' is empty", Status.BAD_REQUEST);
+         }
+
+         if (jsonItems.size() > this.getConfigValueAsLong(ConfigIF.RS_BULK_MAXITEMS, DEFAULT_BULK_MAXITEMS)) {
+            this.abort(METHOD, "Too many items, maximum is '"
+               + this.getConfigValueAsLong(ConfigIF.RS_BULK_MAXITEMS, DEFAULT_BULK_MAXITEMS) + "'",
+               Status.REQUEST_ENTITY_TOO_LARGE);
+         }
+
+         for (int i = 0; i < jsonItems.size(); i++) {
+            if (!(jsonItems.get(i) instanceof JSONObject)) {
+               this.abort(METHOD, "Item '" + i + "' is not a JSON object", Status.BAD_REQUEST);
+            }
+
+            jsonItem = JSON.getObject((JSONObject) jsonItems.get(i), ConstantsIF.REGISTER);
+
+            if (jsonItem != null && jsonItem.containsKey(ConstantsIF.POLICY)) {
+               this.abort(METHOD, "Item '" + i + "': '" + ConstantsIF.POLICY
+                  + "' is not supported by jobs", Status.BAD_REQUEST);
+            }
+         }
+
+         jsonProgress.put(JobManager.TOTAL, jsonItems.size());
+
+         /*
+          * The items are saved in their own document, the job document is
+          * re-written at each checkpoint and stays small
+          */
+         jsonData = new JSONObject();
+         jsonData.put(JobManager.ITEMS, jsonItems);
+
+         jsonInput = new JSONObject();
+         jsonInput.put(ConstantsIF.DATA, jsonData);
+
+         operInput = new Operation(OperationIF.TYPE.CREATE);
+         operInput.setJSON(jsonInput);
+
+         operOutput = jobsHandler.process(operInput);
+
+         if (operOutput.isError()) {
+            this.abort(METHOD, "Could not save job input: " + operOutput.getStatus(),
+               this.getStatusFromState(operOutput.getState()));
+         }
+
+         inputUid = this.getUidFromOperation(operOutput);
+
+         jsonJob.put(JobManager.INPUT, inputUid);
+      } else if (!JobManager.TYPE_OFFBOARD.equals(type)) {
+         this.abort(METHOD, "Attribute '" + ConstantsIF.TYPE + "' must be '"
+            + JobManager.TYPE_IMPORT + "' or '" + JobManager.TYPE_OFFBOARD + "'", Status.BAD_REQUEST);
+      }
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.DATA, jsonJob);
+
+      operInput = new Operation(OperationIF.TYPE.CREATE);
+      operInput.setJSON(jsonInput);
+
+      operOutput = jobsHandler.process(operInput);
+
+      if (operOutput.isError()) {
+         this.abort(METHOD, "Could not save job: " + operOutput.getStatus(),
+            this.getStatusFromState(operOutput.getState()));
+      }
+
+      jobUid = this.getUidFromOperation(operOutput);
+
+      this.getJobManager().submit(jobUid);
+
+      _logger.log(Level.INFO, "{0}: owner=''{1}'', job=''{2}'', type=''{3}''",
+         new Object[]{METHOD, userId, jobUid, type});
+
+      response = this.getResponseFromJSON(_uriInfo, operOutput);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return response;
+   }
+
+   /**
+    * Get the jobs of the authenticated user
+    *
+    * <pre>
+    * JSON output:
+    * {
+    *   "quantity": 1,
+    *   "results": [
+    *     { "uid": "...", "data": { "type": "...", "status": "...", "progress": { ... } } }
+    *   ]
+    * }
+    * </pre>
+    *
+    * @return Response HTTP response object
+    */
+   @GET
+   @Produces(MediaType.APPLICATION_JSON)
+   public Response search() {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String userId = null;
+      Response response = null;
+      JSONObject jsonQuery = null;
+      JSONObject jsonInput = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+      JaxrsHandlerIF jobsHandler = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      userId = this.getUserIdFromSSOSession();
+
+      jobsHandler = this.getHandler(JaxrsHandlerIF.HANDLER_JOBS);
+
+      jsonQuery = new JSONObject();
+      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
+      jsonQuery.put(ConstantsIF.ATTRIBUTE, ConstantsIF.DATA + "." + ConstantsIF.OWNER);
+      jsonQuery.put(ConstantsIF.VALUE, userId);
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.QUERY, jsonQuery);
+
+      operInput = new Operation(OperationIF.TYPE.SEARCH);
+      operInput.setJSON(jsonInput);
+
+      operOutput = jobsHandler.process(operInput);
+
+      /*
+       * READ: return the job documents, not only the uids
+       */
+      operOutput.setType(OperationIF.TYPE.READ);
+
+      response = this.getResponseFromJSON(_uriInfo, operOutput);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return response;
+   }
+
+   /**
+    * Get a job: status, progress (processed, rate, eta), checkpoint, errors
+    *
+    * @param jobUid String job identifier from the URI path
+    * @return Response HTTP response object
+    */
+   @GET
+   @Path("{" + ConstantsIF.ID + "}")
+   @Produces(MediaType.APPLICATION_JSON)
+   public Response read(@PathParam(ConstantsIF.ID) String jobUid) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      Response response = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      operOutput = this.getJob(jobUid);
+
+      response = this.getResponseFromJSON(_uriInfo, operOutput);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return response;
+   }
+
+   /**
+    * Cancel a queued or running job, it stops at the next checkpoint and the
+    * job is returned. A finished job (completed, failed, cancelled) is
+    * deleted, with its input and claim documents.
+    *
+    * @param jobUid String job identifier from the URI path
+    * @return Response HTTP response object
+    */
+   @DELETE
+   @Path("{" + ConstantsIF.ID + "}")
+   @Produces(MediaType.APPLICATION_JSON)
+   public Response delete(@PathParam(ConstantsIF.ID) String jobUid) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String status = null;
+      String inputUid = null;
+      Response response = null;
+      List<String> uids = null;
+      JSONObject jsonJob = null;
+      JSONObject jsonInput = null;
+      JSONArray jsonClaims = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+      JaxrsHandlerIF jobsHandler = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      operOutput = this.getJob(jobUid);
+
+      jsonJob = JSON.getObject(operOutput.getJSON(), ConstantsIF.DATA);
+      status = JSON.getString(jsonJob, JobManager.STATUS);
+
+      if (JobManager.STATUS_QUEUED.equals(status) || JobManager.STATUS_RUNNING.equals(status)) {
+         if (!this.getJobManager().cancel(jobUid)) {
+            this.abort(METHOD, "Job is not running in this server", Status.CONFLICT);
+         }
+
+         jsonJob.put(JobManager.STATUS, JobManager.STATUS_CANCELLED);
+      } else {
+         jobsHandler = this.getHandler(JaxrsHandlerIF.HANDLER_JOBS);
+
+         inputUid = JSON.getString(jsonJob, JobManager.INPUT);
+         jsonClaims = JSON.getArray(jsonJob, JobManager.CLAIMS);
+
+         uids = new ArrayList<>();
+         uids.add(inputUid);
+
+         if (jsonClaims != null) {
+            for (Object obj : jsonClaims) {
+               uids.add(obj != null ? obj.toString() : null);
+            }
+         }
+
+         uids.add(jobUid); // last, the response is the job
+
+         for (String uid : uids) {
+            if (!STR.isEmpty(uid)) {
+               jsonInput = new JSONObject();
+               jsonInput.put(ConstantsIF.UID, uid);
+
+               operInput = new Operation(OperationIF.TYPE.DELETE);
+               operInput.setJSON(jsonInput);
+
+               operOutput = jobsHandler.process(operInput);
+            }
+         }
+      }
+
+      response = this.getResponseFromJSON(_uriInfo, operOutput);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return response;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Read the job, abort if it does not exist or is not owned by the
+    * authenticated user
+    *
+    * @param jobUid String job identifier
+    * @return OperationIF READ output, "data" is the job
+    */
+   private OperationIF getJob(final String jobUid) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String userId = null;
+      JSONObject jsonInput = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+      JaxrsHandlerIF jobsHandler = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      if (STR.isEmpty(jobUid)) {
+         this.abort(METHOD, "Job identifier is empty", Status.BAD_REQUEST);
+      }
+
+      userId = this.getUserIdFromSSOSession();
+
+      jobsHandler = this.getHandler(JaxrsHandlerIF.HANDLER_JOBS);
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.UID, jobUid);
+
+      operInput = new Operation(OperationIF.TYPE.READ);
+      operInput.setJSON(jsonInput);
+
+      operOutput = jobsHandler.process(operInput);
+
+      if (operOutput.isError()) {
+         this.abort(METHOD, "Could not read job: " + operOutput.getStatus(),
+            this.getStatusFromState(operOutput.getState()));
+      }
+
+      if (!userId.equals(JSON.getString(operOutput.getJSON(), ConstantsIF.DATA + "." + ConstantsIF.OWNER))) {
+         this.abort(METHOD, "Job not found", Status.NOT_FOUND);
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return operOutput;
+   }
+}
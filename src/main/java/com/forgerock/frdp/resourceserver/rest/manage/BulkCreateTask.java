@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.rest.manage;
+
+import com.forgerock.frdp.common.ConstantsIF;
+import com.forgerock.frdp.common.CoreIF.STATE;
+import com.forgerock.frdp.dao.Operation;
+import com.forgerock.frdp.dao.OperationIF;
+import com.forgerock.frdp.resourceserver.handler.JaxrsHandlerIF;
+import com.forgerock.frdp.utils.JSON;
+import com.forgerock.frdp.utils.STR;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Create one resource, from a bulk request. The complete resource (owner,
+ * meta, content reference, registration) is saved with a single write. The
+ * content is created and the resource is registered before the write, the
+ * policy is set after. Runs on a bulk executor thread: request scoped data
+ * (user, tokens) is resolved by the caller. Never throws, the result is
+ * returned as JSON.
+ *
+ * <pre>
+ * JSON item input:
+ * {
+ *   "meta": { "name": "...", "type": "...", ... },
+ *   "content": { "id": "default", "data": { ... } },  // optional
+ *   "register": {                                     // optional
+ *     "resource_scopes": [ "...", ... ],
+ *     "policy": { "permissions": [ ... ] }            // optional
+ *   }
+ * }
+ * JSON job reference, saved as "data.job" when an import job creates the
+ * resource:
+ * { "uid": "...", "index": 7 }
+ * JSON output:
+ * { "index": 0, "status": "created", "uid": "..." }
+ * { "index": 1, "status": "failed", "error": "..." }
+ * </pre>
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class BulkCreateTask implements Callable<JSONObject> {
+
+   public static final String INDEX = "index";
+   public static final String STATUS = "status";
+   public static final String STATUS_CREATED = "created";
+   public static final String STATUS_FAILED = "failed";
+   public static final String JOB = "job";
+
+   private static final String[] META_REQUIRED = {ConstantsIF.NAME, ConstantsIF.TYPE};
+   private final String CLASS = this.getClass().getName();
+   private final Logger _logger = Logger.getLogger(this.getClass().getName());
+   private final int _index;
+   private final String _owner;
+   private final String _accessToken;
+   private final String _ssoToken;
+   private final JSONObject _jsonItem;
+   private final JaxrsHandlerIF _resourcesHandler;
+   private final JaxrsHandlerIF _contentHandler;
+   private final JaxrsHandlerIF _registerHandler;
+   private final JaxrsHandlerIF _policyHandler;
+   private final JSONObject _jsonJob;
+   private String _resourceUid = null;
+
+   /**
+    * Constructor
+    *
+    * @param index int position of the item in the request
+    * @param owner String authenticated user, owner of the resource
+    * @param accessToken String UMA PAT, required if the item has "register"
+    * @param ssoToken String owner SSO token, required for a "policy"
+    * @param jsonItem JSONObject resource definition
+    * @param resourcesHandler JaxrsHandlerIF "resources" handler
+    * @param contentHandler JaxrsHandlerIF "content" handler
+    * @param registerHandler JaxrsHandlerIF "register" handler
+    * @param policyHandler JaxrsHandlerIF "policy" handler
+    */
+   public BulkCreateTask(final int index, final String owner, final String accessToken,
+      final String ssoToken, final JSONObject jsonItem, final JaxrsHandlerIF resourcesHandler,
+      final JaxrsHandlerIF contentHandler, final JaxrsHandlerIF registerHandler,
+      final JaxrsHandlerIF policyHandler) {
+      this(index, owner, accessToken, ssoToken, jsonItem, resourcesHandler, contentHandler,
+         registerHandler, policyHandler, null);
+
+      return;
+   }
+
+   /**
+    * Constructor, for an import job
+    *
+    * @param index int position of the item in the request
+    * @param owner String authenticated user, owner of the resource
+    * @param accessToken String UMA PAT, required if the item has "register"
+    * @param ssoToken String owner SSO token, required for a "policy"
+    * @param jsonItem JSONObject resource definition
+    * @param resourcesHandler JaxrsHandlerIF "resources" handler
+    * @param contentHandler JaxrsHandlerIF "content" handler
+    * @param registerHandler JaxrsHandlerIF "register" handler
+    * @param policyHandler JaxrsHandlerIF "policy" handler
+    * @param jsonJob JSONObject job reference, saved with the resource, may be
+    * null
+    */
+   public BulkCreateTask(final int index, final String owner, final String accessToken,
+      final String ssoToken, final JSONObject jsonItem, final JaxrsHandlerIF resourcesHandler,
+      final JaxrsHandlerIF contentHandler, final JaxrsHandlerIF registerHandler,
+      final JaxrsHandlerIF policyHandler, final JSONObject jsonJob) {
+      _index = index;
+      _owner = owner;
+      _accessToken = accessToken;
+      _ssoToken = ssoToken;
+      _jsonItem = jsonItem;
+      _resourcesHandler = resourcesHandler;
+      _contentHandler = contentHandler;
+      _registerHandler = registerHandler;
+      _policyHandler = policyHandler;
+      _jsonJob = jsonJob;
+
+      return;
+   }
+
+   /**
+    * Create the resource
+    *
+    * @return JSONObject result for the item
+    */
+   @Override
+   public JSONObject call() {
+      String METHOD = "call()";
+      JSONObject jsonResult = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      jsonResult = new JSONObject();
+      jsonResult.put(INDEX, _index);
+
+      try {
+         this.createImpl();
+         jsonResult.put(STATUS, STATUS_CREATED);
+      } catch (Exception ex) {
+         jsonResult.put(STATUS, STATUS_FAILED);
+         jsonResult.put(ConstantsIF.ERROR, ex.getMessage());
+
+         _logger.log(Level.WARNING, "{0}: item {1}: {2}",
+            new Object[]{METHOD, _index, ex.getMessage()});
+      }
+
+      if (!STR.isEmpty(_resourceUid)) {
+         jsonResult.put(ConstantsIF.UID, _resourceUid);
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return jsonResult;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Validate the item, create content, register, save the resource, set the
+    * policy. If the resource can not be saved, the content and registration
+    * are removed.
+    *
+    * @throws Exception could not create the resource
+    */
+   private void createImpl() throws Exception {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String registerUid = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+      JSONObject jsonMeta = null;
+      JSONObject jsonContent = null;
+      JSONObject jsonContentInfo = null;
+      JSONObject jsonRegister = null;
+      JSONObject jsonPolicy = null;
+      JSONObject jsonData = null;
+      JSONObject jsonInput = null;
+      JSONArray arrayScopes = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      if (_jsonItem == null || _jsonItem.isEmpty()) {
+         throw new Exception("Item is empty");
+      }
+
+      jsonMeta = JSON.getObject(_jsonItem, ConstantsIF.META);
+      jsonContent = JSON.getObject(_jsonItem, ConstantsIF.CONTENT);
+      jsonRegister = JSON.getObject(_jsonItem, ConstantsIF.REGISTER);
+
+      /*
+       * Validate before anything is created
+       */
+      if (jsonMeta != null && !jsonMeta.isEmpty()) {
+         for (String name : META_REQUIRED) {
+            if (STR.isEmpty(JSON.getString(jsonMeta, name))) {
+               throw new Exception("Required attribute '" + ConstantsIF.META + "." + name
+                  + "' is missing or empty");
+            }
+         }
+
+         if (!jsonMeta.containsKey(ConstantsIF.DISCOVERABLE)) {
+            jsonMeta.put(ConstantsIF.DISCOVERABLE, false);
+         }
+      }
+
+      if (jsonRegister != null && !jsonRegister.isEmpty()) {
+         if (jsonMeta == null || jsonMeta.isEmpty()) {
+            throw new Exception("Object '" + ConstantsIF.META + "' is required to register");
+         }
+
+         arrayScopes = JSON.getArray(jsonRegister, ConstantsIF.RESOURCE_SCOPES);
+
+         if (arrayScopes == null || arrayScopes.isEmpty()) {
+            throw new Exception("JSON Array 'resource_scopes' is null or empty");
+         }
+
+         if (STR.isEmpty(_accessToken)) {
+            throw new Exception("access_token is empty");
+         }
+
+         jsonPolicy = JSON.getObject(jsonRegister, ConstantsIF.POLICY);
+
+         if (jsonPolicy != null) {
+            jsonRegister.remove(ConstantsIF.POLICY);
+         }
+      }
+
+      /*
+       * Create the content, JSON output: { "id": "...", "uri": "..." }
+       */
+      if (jsonContent != null && !jsonContent.isEmpty()) {
+         operInput = new Operation(OperationIF.TYPE.CREATE);
+         operInput.setJSON(jsonContent);
+
+         operOutput = _contentHandler.process(operInput);
+
+         if (operOutput.getState() != STATE.SUCCESS) {
+            throw new Exception("Could not create Content: "
+               + operOutput.getState().toString() + ", " + operOutput.getStatus());
+         }
+
+         jsonContentInfo = operOutput.getJSON();
+      }
+
+      /*
+       * Register the resource with the Authorization Server
+       */
+      if (jsonRegister != null && !jsonRegister.isEmpty()) {
+         jsonRegister.put(ConstantsIF.NAME, JSON.getString(jsonMeta, ConstantsIF.NAME));
+         jsonRegister.put(ConstantsIF.TYPE, JSON.getString(jsonMeta, ConstantsIF.TYPE));
+
+         jsonInput = new JSONObject();
+         jsonInput.put(ConstantsIF.DATA, jsonRegister);
+         jsonInput.put(ConstantsIF.ACCESS_TOKEN, _accessToken);
+
+         operInput = new Operation(OperationIF.TYPE.CREATE);
+         operInput.setJSON(jsonInput);
+
+         operOutput = _registerHandler.process(operInput);
+
+         registerUid = JSON.getString(operOutput.getJSON(), ConstantsIF.UID);
+
+         if (operOutput.getState() != STATE.SUCCESS || STR.isEmpty(registerUid)) {
+            this.rollback(jsonContentInfo, null);
+            throw new Exception("Could not register resource: "
+               + operOutput.getState().toString() + ", " + operOutput.getStatus());
+         }
+      }
+
+      /*
+       * Save the complete resource, single write
+       */
+      jsonData = new JSONObject();
+      jsonData.put(ConstantsIF.OWNER, _owner);
+
+      if (jsonMeta != null && !jsonMeta.isEmpty()) {
+         jsonData.put(ConstantsIF.META, jsonMeta);
+      }
+
+      if (jsonContentInfo != null && !jsonContentInfo.isEmpty()) {
+         jsonData.put(ConstantsIF.CONTENT, jsonContentInfo);
+      }
+
+      if (!STR.isEmpty(registerUid)) {
+         jsonData.put(ConstantsIF.REGISTER, registerUid);
+      }
+
+      if (_jsonJob != null) {
+         jsonData.put(JOB, _jsonJob);
+      }
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.DATA, jsonData);
+
+      operInput = new Operation(OperationIF.TYPE.CREATE);
+      operInput.setJSON(jsonInput);
+
+      operOutput = _resourcesHandler.process(operInput);
+
+      _resourceUid = JSON.getString(operOutput.getJSON(), ConstantsIF.UID);
+
+      if (operOutput.isError() || STR.isEmpty(_resourceUid)) {
+         this.rollback(jsonContentInfo, registerUid);
+         throw new Exception("Could not create resource: "
+            + operOutput.getState().toString() + ", " + operOutput.getStatus());
+      }
+
+      /*
+       * Set the policy, the resource exists, a failure is reported with the uid
+       */
+      if (jsonPolicy != null && !jsonPolicy.isEmpty()) {
+         if (STR.isEmpty(_ssoToken)) {
+            throw new Exception("Resource created, policy not set: SSO token is empty");
+         }
+
+         jsonInput = new JSONObject();
+         jsonInput.put(ConstantsIF.UID, registerUid);
+         jsonInput.put(ConstantsIF.SSO_TOKEN, _ssoToken);
+         jsonInput.put(ConstantsIF.OWNER, _owner);
+         jsonInput.put(ConstantsIF.DATA, jsonPolicy);
+
+         operInput = new Operation(OperationIF.TYPE.CREATE);
+         operInput.setJSON(jsonInput);
+
+         operOutput = _policyHandler.process(operInput);
+
+         if (operOutput.getState() != STATE.SUCCESS) {
+            throw new Exception("Resource created, could not set policy: "
+               + operOutput.getState().toString() + ", " + operOutput.getStatus());
+         }
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+
+   /**
+    * Remove the content and registration of a resource that was not saved.
+    * Failures are logged, the original error is reported.
+    *
+    * @param jsonContentInfo JSONObject content reference, may be null
+    * @param registerUid String registration identifier, may be null
+    */
+   private void rollback(final JSONObject jsonContentInfo, final String registerUid) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+      JSONObject jsonInput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      if (!STR.isEmpty(registerUid)) {
+         jsonInput = new JSONObject();
+         jsonInput.put(ConstantsIF.UID, registerUid);
+         jsonInput.put(ConstantsIF.ACCESS_TOKEN, _accessToken);
+
+         operInput = new Operation(OperationIF.TYPE.DELETE);
+         operInput.setJSON(jsonInput);
+
+         operOutput = _registerHandler.process(operInput);
+
+         if (operOutput.getState() != STATE.SUCCESS) {
+            _logger.log(Level.WARNING, "{0}: could not delete registration ''{1}'': {2}",
+               new Object[]{METHOD, registerUid, operOutput.getStatus()});
+         }
+      }
+
+      if (jsonContentInfo != null && !jsonContentInfo.isEmpty()) {
+         operInput = new Operation(OperationIF.TYPE.DELETE);
+         operInput.setJSON(jsonContentInfo);
+
+         operOutput = _contentHandler.process(operInput);
+
+         if (operOutput.getState() != STATE.SUCCESS) {
+            _logger.log(Level.WARNING, "{0}: could not delete content ''{1}'': {2}",
+               new Object[]{METHOD, JSON.getString(jsonContentInfo, ConstantsIF.URI),
+                  operOutput.getStatus()});
+         }
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+}
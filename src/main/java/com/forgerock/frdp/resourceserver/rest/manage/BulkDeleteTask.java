@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.rest.manage;
+
+import com.forgerock.frdp.common.ConstantsIF;
+import com.forgerock.frdp.common.CoreIF.STATE;
+import com.forgerock.frdp.dao.Operation;
+import com.forgerock.frdp.dao.OperationIF;
+import com.forgerock.frdp.resourceserver.handler.JaxrsHandlerIF;
+import com.forgerock.frdp.utils.JSON;
+import com.forgerock.frdp.utils.STR;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.simple.JSONObject;
+
+/**
+ * Delete one resource, from a bulk delete request. The registration (and
+ * policy) is removed from the Authorization Server, the content is removed
+ * from the Content Service, then the resource is deleted. If a step fails the
+ * resource is kept, a later bulk delete will retry it. Runs on a bulk
+ * executor thread, never throws, the result is returned as JSON.
+ *
+ * <pre>
+ * JSON resource input (from the "resources" search):
+ * {
+ *   "uid": "...",
+ *   "data": {
+ *     "owner": "...",
+ *     "content": { "id": "...", "uri": "..." },
+ *     "register": "..."
+ *   }
+ * }
+ * JSON output:
+ * { "uid": "...", "status": "deleted" }
+ * { "uid": "...", "status": "failed", "error": "..." }
+ * </pre>
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class BulkDeleteTask implements Callable<JSONObject> {
+
+   public static final String STATUS_DELETED = "deleted";
+
+   private final String CLASS = this.getClass().getName();
+   private final Logger _logger = Logger.getLogger(this.getClass().getName());
+   private final String _accessToken;
+   private final JSONObject _jsonResource;
+   private final JaxrsHandlerIF _resourcesHandler;
+   private final JaxrsHandlerIF _contentHandler;
+   private final JaxrsHandlerIF _registerHandler;
+
+   /**
+    * Constructor
+    *
+    * @param accessToken String UMA PAT, required if the resource is registered
+    * @param jsonResource JSONObject resource, "uid" and "data"
+    * @param resourcesHandler JaxrsHandlerIF "resources" handler
+    * @param contentHandler JaxrsHandlerIF "content" handler
+    * @param registerHandler JaxrsHandlerIF "register" handler
+    */
+   public BulkDeleteTask(final String accessToken, final JSONObject jsonResource,
+      final JaxrsHandlerIF resourcesHandler, final JaxrsHandlerIF contentHandler,
+      final JaxrsHandlerIF registerHandler) {
+      _accessToken = accessToken;
+      _jsonResource = jsonResource;
+      _resourcesHandler = resourcesHandler;
+      _contentHandler = contentHandler;
+      _registerHandler = registerHandler;
+
+      return;
+   }
+
+   /**
+    * Delete the resource
+    *
+    * @return JSONObject result for the resource
+    */
+   @Override
+   public JSONObject call() {
+      String METHOD = "call()";
+      String resourceUid = null;
+      JSONObject jsonResult = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      resourceUid = JSON.getString(_jsonResource, ConstantsIF.UID);
+
+      jsonResult = new JSONObject();
+      jsonResult.put(ConstantsIF.UID, resourceUid);
+
+      try {
+         this.deleteImpl(resourceUid);
+         jsonResult.put(BulkCreateTask.STATUS, STATUS_DELETED);
+      } catch (Exception ex) {
+         jsonResult.put(BulkCreateTask.STATUS, BulkCreateTask.STATUS_FAILED);
+         jsonResult.put(ConstantsIF.ERROR, ex.getMessage());
+
+         _logger.log(Level.WARNING, "{0}: resource {1}: {2}",
+            new Object[]{METHOD, resourceUid, ex.getMessage()});
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return jsonResult;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Delete the registration, content and resource
+    *
+    * @param resourceUid String resource identifier
+    * @throws Exception could not delete the resource
+    */
+   private void deleteImpl(final String resourceUid) throws Exception {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String registerUid = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+      JSONObject jsonData = null;
+      JSONObject jsonContentInfo = null;
+      JSONObject jsonInput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      if (STR.isEmpty(resourceUid)) {
+         throw new Exception("Resource identifier is empty");
+      }
+
+      jsonData = JSON.getObject(_jsonResource, ConstantsIF.DATA);
+
+      /*
+       * Delete the registration, the Authorization Server removes the policy
+       */
+      registerUid = JSON.getString(jsonData, ConstantsIF.REGISTER);
+
+      if (!STR.isEmpty(registerUid)) {
+         if (STR.isEmpty(_accessToken)) {
+            throw new Exception("access_token is empty");
+         }
+
+         jsonInput = new JSONObject();
+         jsonInput.put(ConstantsIF.UID, registerUid);
+         jsonInput.put(ConstantsIF.ACCESS_TOKEN, _accessToken);
+
+         operInput = new Operation(OperationIF.TYPE.DELETE);
+         operInput.setJSON(jsonInput);
+
+         operOutput = _registerHandler.process(operInput);
+
+         if (operOutput.getState() != STATE.SUCCESS && operOutput.getState() != STATE.NOTEXIST) {
+            throw new Exception("Could not delete registration: "
+               + operOutput.getState().toString() + ", " + operOutput.getStatus());
+         }
+      }
+
+      /*
+       * Delete the content
+       */
+      jsonContentInfo = JSON.getObject(jsonData, ConstantsIF.CONTENT);
+
+      if (jsonContentInfo != null && !jsonContentInfo.isEmpty()) {
+         jsonContentInfo.put(ConstantsIF.UID, resourceUid);
+
+         operInput = new Operation(OperationIF.TYPE.DELETE);
+         operInput.setJSON(jsonContentInfo);
+
+         operOutput = _contentHandler.process(operInput);
+
+         if (operOutput.getState() != STATE.SUCCESS && operOutput.getState() != STATE.NOTEXIST) {
+            throw new Exception("Could not delete content: "
+               + operOutput.getState().toString() + ", " + operOutput.getStatus());
+         }
+      }
+
+      /*
+       * Delete the resource
+       */
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.UID, resourceUid);
+
+      operInput = new Operation(OperationIF.TYPE.DELETE);
+      operInput.setJSON(jsonInput);
+
+      operOutput = _resourcesHandler.process(operInput);
+
+      if (operOutput.getState() != STATE.SUCCESS) {
+         throw new Exception("Could not delete resource: "
+            + operOutput.getState().toString() + ", " + operOutput.getStatus());
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return;
+   }
+}
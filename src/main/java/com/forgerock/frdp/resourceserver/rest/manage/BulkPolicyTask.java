@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.rest.manage;
+
+import com.forgerock.frdp.common.ConstantsIF;
+import com.forgerock.frdp.common.CoreIF.STATE;
+import com.forgerock.frdp.dao.Operation;
+import com.forgerock.frdp.dao.OperationIF;
+import com.forgerock.frdp.resourceserver.handler.JaxrsHandlerIF;
+import com.forgerock.frdp.utils.JSON;
+import com.forgerock.frdp.utils.STR;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Grant or revoke scopes for one subject, on one resource, from a bulk policy
+ * request. The current policy is read, the new permissions are computed in
+ * memory, and the policy is written only if it changed: replaced if it
+ * exists, created if it does not, deleted if no permissions remain. Requests
+ * to the Authorization Server are spaced by a shared BulkRateLimiter. Runs on
+ * a bulk executor thread, never throws, the result is returned as JSON.
+ *
+ * <pre>
+ * JSON resource input (from the "resources" search):
+ * {
+ *   "uid": "...",
+ *   "data": {
+ *     "owner": "...",
+ *     "register": "..."
+ *   }
+ * }
+ * JSON output:
+ * { "uid": "...", "status": "updated" }
+ * { "uid": "...", "status": "unchanged" }
+ * { "uid": "...", "status": "failed", "error": "..." }
+ * </pre>
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class BulkPolicyTask implements Callable<JSONObject> {
+
+   public static final String ACTION_GRANT = "grant";
+   public static final String ACTION_REVOKE = "revoke";
+   public static final String STATUS_UPDATED = "updated";
+   public static final String STATUS_UNCHANGED = "unchanged";
+
+   private final String CLASS = this.getClass().getName();
+   private final Logger _logger = Logger.getLogger(this.getClass().getName());
+   private final String _owner;
+   private final String _ssoToken;
+   private final String _subject;
+   private final List<String> _scopes;
+   private final boolean _grant;
+   private final JSONObject _jsonResource;
+   private final JaxrsHandlerIF _policyHandler;
+   private final BulkRateLimiter _limiter;
+
+   /**
+    * Constructor
+    *
+    * @param owner String resource owner, the authenticated user
+    * @param ssoToken String owner's SSO token, for the policy API
+    * @param subject String subject getting / losing the scopes
+    * @param scopes List of scope names
+    * @param grant boolean True to grant the scopes, False to revoke
+    * @param jsonResource JSONObject resource, "uid" and "data"
+    * @param policyHandler JaxrsHandlerIF "policy" handler
+    * @param limiter BulkRateLimiter shared by the bulk request
+    */
+   public BulkPolicyTask(final String owner, final String ssoToken, final String subject,
+      final List<String> scopes, final boolean grant, final JSONObject jsonResource,
+      final JaxrsHandlerIF policyHandler, final BulkRateLimiter limiter) {
+      _owner = owner;
+      _ssoToken = ssoToken;
+      _subject = subject;
+      _scopes = scopes;
+      _grant = grant;
+      _jsonResource = jsonResource;
+      _policyHandler = policyHandler;
+      _limiter = limiter;
+
+      return;
+   }
+
+   /**
+    * Update the policy
+    *
+    * @return JSONObject result for the resource
+    */
+   @Override
+   public JSONObject call() {
+      String METHOD = "call()";
+      String resourceUid = null;
+      JSONObject jsonResult = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      resourceUid = JSON.getString(_jsonResource, ConstantsIF.UID);
+
+      jsonResult = new JSONObject();
+      jsonResult.put(ConstantsIF.UID, resourceUid);
+
+      try {
+         jsonResult.put(BulkCreateTask.STATUS, this.updateImpl() ? STATUS_UPDATED : STATUS_UNCHANGED);
+      } catch (Exception ex) {
+         jsonResult.put(BulkCreateTask.STATUS, BulkCreateTask.STATUS_FAILED);
+         jsonResult.put(ConstantsIF.ERROR, ex.getMessage());
+
+         if (ex instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+         }
+
+         _logger.log(Level.WARNING, "{0}: resource {1}: {2}",
+            new Object[]{METHOD, resourceUid, ex.getMessage()});
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return jsonResult;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Read the policy, compute the new permissions, write the policy if changed
+    *
+    * @return boolean True if the policy was written
+    * @throws Exception could not update the policy
+    */
+   private boolean updateImpl() throws Exception {
+      boolean exists = false;
+      boolean changed = false;
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String registerUid = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+      JSONObject jsonInput = null;
+      JSONObject jsonData = null;
+      JSONArray jsonPermissions = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      registerUid = JSON.getString(_jsonResource, ConstantsIF.DATA + "." + ConstantsIF.REGISTER);
+
+      if (STR.isEmpty(registerUid)) {
+         throw new Exception("Resource is not registered");
+      }
+
+      /*
+       * Read the current policy
+       */
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.UID, registerUid);
+      jsonInput.put(ConstantsIF.SSO_TOKEN, _ssoToken);
+      jsonInput.put(ConstantsIF.OWNER, _owner);
+
+      operInput = new Operation(OperationIF.TYPE.READ);
+      operInput.setJSON(jsonInput);
+
+      _limiter.acquire();
+
+      operOutput = _policyHandler.process(operInput);
+
+      if (operOutput.getState() == STATE.SUCCESS) {
+         exists = true;
+         jsonPermissions = JSON.getArray(operOutput.getJSON(),
+            ConstantsIF.DATA + "." + ConstantsIF.PERMISSIONS);
+      } else if (operOutput.getState() != STATE.NOTEXIST) {
+         throw new Exception("Could not read policy: "
+            + operOutput.getState().toString() + ", " + operOutput.getStatus());
+      }
+
+      if (jsonPermissions == null) {
+         jsonPermissions = new JSONArray();
+      }
+
+      changed = _grant ? this.grant(jsonPermissions) : this.revoke(jsonPermissions);
+
+      if (changed) {
+         if (jsonPermissions.isEmpty()) {
+            operInput = new Operation(OperationIF.TYPE.DELETE);
+         } else {
+            jsonData = new JSONObject();
+            jsonData.put(ConstantsIF.PERMISSIONS, jsonPermissions);
+
+            jsonInput.put(ConstantsIF.DATA, jsonData);
+
+            operInput = new Operation(exists ? OperationIF.TYPE.REPLACE : OperationIF.TYPE.CREATE);
+         }
+
+         operInput.setJSON(jsonInput);
+
+         _limiter.acquire();
+
+         operOutput = _policyHandler.process(operInput);
+
+         if (operOutput.isError()) {
+            throw new Exception("Could not save policy: "
+               + operOutput.getState().toString() + ", " + operOutput.getStatus());
+         }
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return changed;
+   }
+
+   /**
+    * Add the scopes to the subject's permission, add the permission if the
+    * subject does not have one
+    *
+    * @param jsonPermissions JSONArray permissions, updated
+    * @return boolean True if a scope was added
+    */
+   private boolean grant(final JSONArray jsonPermissions) {
+      boolean changed = false;
+      JSONObject jsonPermission = null;
+      JSONArray jsonScopes = null;
+
+      jsonPermission = this.getPermission(jsonPermissions);
+
+      if (jsonPermission == null) {
+         jsonPermission = new JSONObject();
+         jsonPermission.put(ConstantsIF.SUBJECT, _subject);
+         jsonPermission.put(ConstantsIF.SCOPES, new JSONArray());
+         jsonPermissions.add(jsonPermission);
+      }
+
+      jsonScopes = JSON.getArray(jsonPermission, ConstantsIF.SCOPES);
+
+      if (jsonScopes == null) {
+         jsonScopes = new JSONArray();
+         jsonPermission.put(ConstantsIF.SCOPES, jsonScopes);
+      }
+
+      for (String scope : _scopes) {
+         if (!jsonScopes.contains(scope)) {
+            jsonScopes.add(scope);
+            changed = true;
+         }
+      }
+
+      return changed;
+   }
+
+   /**
+    * Remove the scopes from the subject's permission, remove the permission
+    * if it has no scopes
+    *
+    * @param jsonPermissions JSONArray permissions, updated
+    * @return boolean True if a scope was removed
+    */
+   private boolean revoke(final JSONArray jsonPermissions) {
+      boolean changed = false;
+      JSONObject jsonPermission = null;
+      JSONArray jsonScopes = null;
+
+      jsonPermission = this.getPermission(jsonPermissions);
+
+      if (jsonPermission != null) {
+         jsonScopes = JSON.getArray(jsonPermission, ConstantsIF.SCOPES);
+
+         if (jsonScopes != null) {
+            changed = jsonScopes.removeAll(_scopes);
+         }
+
+         if (jsonScopes == null || jsonScopes.isEmpty()) {
+            jsonPermissions.remove(jsonPermission);
+            changed = true;
+         }
+      }
+
+      return changed;
+   }
+
+   /**
+    * Get the subject's permission
+    *
+    * @param jsonPermissions JSONArray permissions
+    * @return JSONObject permission, null if the subject does not have one
+    */
+   private JSONObject getPermission(final JSONArray jsonPermissions) {
+      JSONObject jsonPermission = null;
+
+      for (Object obj : jsonPermissions) {
+         if (obj instanceof JSONObject
+            && _subject.equals(JSON.getString((JSONObject) obj, ConstantsIF.SUBJECT))) {
+            jsonPermission = (JSONObject) obj;
+            break;
+         }
+      }
+
+      return jsonPermission;
+   }
+}
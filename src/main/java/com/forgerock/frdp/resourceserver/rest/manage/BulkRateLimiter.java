@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.rest.manage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces requests to the Authorization Server, for one bulk request. Each
+ * call to acquire() is given the next time slot, callers sleep until their
+ * slot. A rate less than 1 is unlimited.
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class BulkRateLimiter {
+
+   private final long _interval;
+   private long _next = 0L;
+
+   /**
+    * Constructor
+    *
+    * @param perSecond long maximum requests per second, less than 1 is
+    * unlimited
+    */
+   public BulkRateLimiter(final long perSecond) {
+      _interval = perSecond > 0 ? TimeUnit.SECONDS.toNanos(1L) / perSecond : 0L;
+
+      return;
+   }
+
+   /**
+    * Wait for the next time slot
+    *
+    * @throws InterruptedException interrupted while waiting
+    */
+   public void acquire() throws InterruptedException {
+      long now = 0L;
+      long slot = 0L;
+
+      if (_interval > 0L) {
+         synchronized (this) {
+            now = System.nanoTime();
+            slot = _next > now ? _next : now;
+            _next = slot + _interval;
+         }
+
+         if (slot > now) {
+            TimeUnit.NANOSECONDS.sleep(slot - now);
+         }
+      }
+
+      return;
+   }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.rest.manage;
+
+import com.forgerock.frdp.common.ConstantsIF;
+import com.forgerock.frdp.common.CoreIF.STATE;
+import com.forgerock.frdp.dao.Operation;
+import com.forgerock.frdp.dao.OperationIF;
+import com.forgerock.frdp.resourceserver.handler.JaxrsHandlerIF;
+import com.forgerock.frdp.utils.JSON;
+import com.forgerock.frdp.utils.STR;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Approve or deny one pending access request, from a batch request. The
+ * "replace" operation of the "requests" handler is used, the same as a single
+ * request. Requests to the Authorization Server are spaced by a shared
+ * BulkRateLimiter. Runs on a bulk executor thread, never throws, the result is
+ * returned as JSON.
+ *
+ * <pre>
+ * JSON item input:
+ * {
+ *   "id": "...", // Request GUID (was generated by AM)
+ *   "action": "approve", // "approve" | "deny"
+ *   "scopes": [ "view" ] // optional, "approve" only, default is all requested
+ * }
+ * JSON output:
+ * { "index": 0, "id": "...", "status": "approved" }
+ * { "index": 1, "id": "...", "status": "denied" }
+ * { "index": 2, "id": "...", "status": "failed", "error": "..." }
+ * </pre>
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class BulkRequestTask implements Callable<JSONObject> {
+
+   public static final String STATUS_APPROVED = "approved";
+   public static final String STATUS_DENIED = "denied";
+
+   private final String CLASS = this.getClass().getName();
+   private final Logger _logger = Logger.getLogger(this.getClass().getName());
+   private final int _index;
+   private final String _owner;
+   private final String _ssoToken;
+   private final JSONObject _jsonItem;
+   private final JaxrsHandlerIF _requestsHandler;
+   private final BulkRateLimiter _limiter;
+
+   /**
+    * Constructor
+    *
+    * @param index int position of the item in the batch
+    * @param owner String resource owner, the authenticated user
+    * @param ssoToken String owner's SSO token, shared by the batch
+    * @param jsonItem JSONObject item, "id", "action", "scopes"
+    * @param requestsHandler JaxrsHandlerIF "requests" handler
+    * @param limiter BulkRateLimiter shared by the batch request
+    */
+   public BulkRequestTask(final int index, final String owner, final String ssoToken,
+      final JSONObject jsonItem, final JaxrsHandlerIF requestsHandler, final BulkRateLimiter limiter) {
+      _index = index;
+      _owner = owner;
+      _ssoToken = ssoToken;
+      _jsonItem = jsonItem;
+      _requestsHandler = requestsHandler;
+      _limiter = limiter;
+
+      return;
+   }
+
+   /**
+    * Approve or deny the request
+    *
+    * @return JSONObject result for the item
+    */
+   @Override
+   public JSONObject call() {
+      String METHOD = "call()";
+      String requestId = null;
+      JSONObject jsonResult = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      requestId = JSON.getString(_jsonItem, ConstantsIF.ID);
+
+      jsonResult = new JSONObject();
+      jsonResult.put(BulkCreateTask.INDEX, _index);
+      jsonResult.put(ConstantsIF.ID, requestId);
+
+      try {
+         jsonResult.put(BulkCreateTask.STATUS, this.replaceImpl(requestId));
+      } catch (Exception ex) {
+         jsonResult.put(BulkCreateTask.STATUS, BulkCreateTask.STATUS_FAILED);
+         jsonResult.put(ConstantsIF.ERROR, ex.getMessage());
+
+         if (ex instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+         }
+
+         _logger.log(Level.WARNING, "{0}: request {1}: {2}",
+            new Object[]{METHOD, requestId, ex.getMessage()});
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return jsonResult;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Check the item, run the "replace" operation
+    *
+    * @param requestId String request identifier
+    * @return String status, "approved" or "denied"
+    * @throws Exception could not approve or deny the request
+    */
+   private String replaceImpl(final String requestId) throws Exception {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String action = null;
+      JSONArray jsonScopes = null;
+      JSONObject jsonInput = null;
+      JSONObject jsonData = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      if (STR.isEmpty(requestId)) {
+         throw new Exception("Attribute '" + ConstantsIF.ID + "' is empty");
+      }
+
+      action = JSON.getString(_jsonItem, ConstantsIF.ACTION);
+
+      if (!ConstantsIF.APPROVE.equalsIgnoreCase(action) && !ConstantsIF.DENY.equalsIgnoreCase(action)) {
+         throw new Exception("Attribute '" + ConstantsIF.ACTION + "' must be '"
+            + ConstantsIF.APPROVE + "' or '" + ConstantsIF.DENY + "'");
+      }
+
+      jsonData = new JSONObject();
+      jsonData.put(ConstantsIF.ACTION, action.toLowerCase());
+
+      jsonScopes = JSON.getArray(_jsonItem, ConstantsIF.SCOPES);
+
+      if (jsonScopes != null && !jsonScopes.isEmpty()) {
+         jsonData.put(ConstantsIF.PERMISSIONS, jsonScopes);
+      }
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.DATA, jsonData);
+      jsonInput.put(ConstantsIF.UID, requestId);
+      jsonInput.put(ConstantsIF.SSO_TOKEN, _ssoToken);
+      jsonInput.put(ConstantsIF.OWNER, _owner);
+
+      operInput = new Operation(OperationIF.TYPE.REPLACE);
+      operInput.setJSON(jsonInput);
+
+      _limiter.acquire();
+
+      operOutput = _requestsHandler.process(operInput);
+
+      if (operOutput.getState() != STATE.SUCCESS) {
+         throw new Exception("Could not " + action.toLowerCase() + " request: "
+            + operOutput.getState().toString() + ", " + operOutput.getStatus());
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return ConstantsIF.APPROVE.equalsIgnoreCase(action) ? STATUS_APPROVED : STATUS_DENIED;
+   }
+}
@@ -6,8 +6,13 @@ package com.forgerock.frdp.resourceserver.rest.manage;
 
 import com.forgerock.frdp.common.ConstantsIF;
 import com.forgerock.frdp.dao.OperationIF;
+import com.forgerock.frdp.resourceserver.dao.StreamRestDataAccess;
 import com.forgerock.frdp.resourceserver.rest.RSResource;
+import com.forgerock.frdp.utils.JSON;
 import com.forgerock.frdp.utils.STR;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import javax.servlet.ServletContext;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -19,9 +24,10 @@ import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 
 /**
  * Content endpoint, PATH: .../rest/manage/resources/{id}/content
@@ -30,6 +36,14 @@ import org.json.simple.parser.JSONParser;
  */
 public class ContentResource extends RSResource {
 
+   private static final int HTTP_PARTIAL_CONTENT = 206;
+   private static final int HTTP_NOT_MODIFIED = 304;
+   private static final String[] PASS_THROUGH_HEADERS = {
+      StreamRestDataAccess.HDR_ETAG,
+      StreamRestDataAccess.HDR_LAST_MODIFIED,
+      StreamRestDataAccess.HDR_ACCEPT_RANGES,
+      StreamRestDataAccess.HDR_CONTENT_RANGE
+   };
    private String _resourceUid = null;
    private final String CLASS = this.getClass().getName();
 
@@ -69,17 +83,16 @@ public class ContentResource extends RSResource {
     *    "data": { ... }         |    "uri": "http://..."
     * }                          | }
     * </pre>
-    * @param data String JSON data
+    * @param data InputStream JSON payload
     * @return Response HTTP response object
     */
    @POST
    @Consumes(MediaType.APPLICATION_JSON)
-   public Response create(String data) {
+   public Response create(InputStream data) {
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
       Response response = null;
       JSONObject jsonContent = null;
       JSONObject jsonOptions = null;
-      JSONParser parser = null;
       OperationIF operContent = null;
 
       _logger.entering(CLASS, METHOD);
@@ -89,18 +102,20 @@ public class ContentResource extends RSResource {
             (_resourceUid == null ? NULL : _resourceUid));
       }
 
-      if (STR.isEmpty(data)) {
-         this.abort(CLASS + ": " + METHOD, "Payload string is empty",
+      if (data == null) {
+         this.abort(CLASS + ": " + METHOD, "Payload stream is null",
             Response.Status.BAD_REQUEST);
       }
 
-      this.load();
-
       this.checkAuthenUserIsOwner(_resourceUid);
 
       /*
-       * Check to see if content already exists
+       * Check to see if content already exists, "reference" mode does not
+       * access the Content Service
        */
+      jsonOptions = new JSONObject();
+      jsonOptions.put(ConstantsIF.CONTENT, ConstantsIF.REFERENCE);
+
       operContent = this.contentRead(_resourceUid, jsonOptions);
 
       if (operContent.getState() != STATE.NOTEXIST) {
@@ -108,15 +123,7 @@ public class ContentResource extends RSResource {
             Response.Status.BAD_REQUEST);
       }
 
-      parser = this.getParserFromCtx(_servletCtx);
-
-      try {
-         jsonContent = (JSONObject) parser.parse(data);
-      } catch (Exception ex) {
-         this.abort(CLASS + ": " + METHOD, "Could not parser String to JSON: '"
-            + data + "', " + ex.getMessage(),
-            Response.Status.BAD_REQUEST);
-      }
+      jsonContent = this.getJSONFromStream(data);
 
       this.contentCreate(_resourceUid, jsonContent);
 
@@ -142,6 +149,7 @@ public class ContentResource extends RSResource {
    @Produces(MediaType.APPLICATION_JSON)
    public Response read(@QueryParam(ConstantsIF.CONTENT) String content) {
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String etag = null;
       JSONObject jsonOutput = null;
       JSONObject jsonData = null;
       JSONObject jsonOptions = null;
@@ -156,18 +164,15 @@ public class ContentResource extends RSResource {
                content == null ? NULL : content});
       }
 
-      this.load();
-
       this.checkAuthenUserIsOwner(_resourceUid);
 
-      if (!STR.isEmpty(content)) {
-         jsonOptions = new JSONObject();
-         
-         if (content.equalsIgnoreCase(ConstantsIF.REFERENCE)) {
-            jsonOptions.put(ConstantsIF.CONTENT, ConstantsIF.REFERENCE);
-         } else { // default: "data"
-            jsonOptions.put(ConstantsIF.CONTENT, ConstantsIF.DATA);
-         }
+      jsonOptions = new JSONObject();
+
+      if (!STR.isEmpty(content) && content.equalsIgnoreCase(ConstantsIF.REFERENCE)) {
+         jsonOptions.put(ConstantsIF.CONTENT, ConstantsIF.REFERENCE);
+      } else { // default: "data"
+         jsonOptions.put(ConstantsIF.CONTENT, ConstantsIF.DATA);
+         jsonOptions.put(ConstantsIF.HEADERS, this.getConditionalHeaders());
       }
 
       operOutput = this.contentRead(_resourceUid, jsonOptions);
@@ -179,6 +184,16 @@ public class ContentResource extends RSResource {
             Response.Status.BAD_REQUEST);
       }
 
+      etag = operOutput.getParam(StreamRestDataAccess.HDR_ETAG);
+
+      if (String.valueOf(HTTP_NOT_MODIFIED).equals(operOutput.getParam(ConstantsIF.CODE))) {
+         response = Response.notModified().header(StreamRestDataAccess.HDR_ETAG, etag).build();
+
+         _logger.exiting(CLASS, METHOD);
+
+         return response;
+      }
+
       /*
        * Wrap JSON output in a "data" object, expected by getResponseFromJSON
        * {                          |   {
@@ -192,7 +207,101 @@ public class ContentResource extends RSResource {
 
       operOutput.setJSON(jsonData);
 
-      response = this.getResponseFromJSON(_uriInfo, operOutput);
+      response = this.getConditionalResponse(this.getResponseFromJSON(_uriInfo, operOutput), etag);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return response;
+   }
+
+   /**
+    * Read binary content.
+    *
+    * The content, from a Content Service with "mode": "binary", is streamed
+    * to the client. It is not wrapped as JSON. The Content-Type,
+    * Content-Length and ETag headers from the Content Service are returned.
+    * Selected when the "Accept" header is not JSON, example:
+    * <pre>
+    * Accept: application/octet-stream
+    * </pre>
+    * The conditional and partial request headers (If-None-Match,
+    * If-Modified-Since, If-Range, Range) are forwarded to the Content
+    * Service. A "304 Not Modified" or "206 Partial Content" response is
+    * passed through to the client.
+    *
+    * @return Response HTTP response object
+    */
+   @GET
+   @Produces(MediaType.WILDCARD)
+   public Response readBinary() {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String code = null;
+      String value = null;
+      Object obj = null;
+      JSONObject jsonHeaders = null;
+      Response response = null;
+      ResponseBuilder builder = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      if (_logger.isLoggable(DEBUG_LEVEL)) {
+         _logger.log(DEBUG_LEVEL, "Get binary content for resource: ''{0}''",
+            (_resourceUid == null ? NULL : _resourceUid));
+      }
+
+      this.checkAuthenUserIsOwner(_resourceUid);
+
+      operOutput = this.contentReadBinary(_resourceUid, this.getConditionalHeaders());
+
+      if (operOutput.isError() || operOutput.getState() != STATE.SUCCESS) {
+         this.abort(CLASS + ": " + METHOD, operOutput.getStatus(),
+            this.getStatusFromState(operOutput.getState()));
+      }
+
+      jsonHeaders = JSON.getObject(operOutput.getJSON(), ConstantsIF.HEADERS);
+
+      if (operOutput.getJSON() != null && operOutput.getJSON().get(ConstantsIF.CODE) != null) {
+         code = operOutput.getJSON().get(ConstantsIF.CODE).toString();
+      }
+
+      if (String.valueOf(HTTP_NOT_MODIFIED).equals(code)) {
+         builder = Response.notModified();
+         this.setPassThroughHeaders(builder, jsonHeaders);
+         response = builder.build();
+
+         _logger.exiting(CLASS, METHOD);
+
+         return response;
+      }
+
+      obj = operOutput.getObject();
+
+      if (obj == null || !(obj instanceof InputStream)) {
+         this.abort(CLASS + ": " + METHOD, "Content stream is null",
+            Response.Status.INTERNAL_SERVER_ERROR);
+      }
+
+      value = JSON.getString(jsonHeaders, StreamRestDataAccess.HDR_CONTENT_TYPE);
+
+      builder = Response.ok(this.getStreamingOutput((InputStream) obj),
+         STR.isEmpty(value) ? MediaType.APPLICATION_OCTET_STREAM : value);
+
+      if (String.valueOf(HTTP_PARTIAL_CONTENT).equals(code)) {
+         builder.status(HTTP_PARTIAL_CONTENT);
+      }
+
+      /*
+       * Pass through the Content-Length (no chunked transfer)
+       */
+      value = JSON.getString(jsonHeaders, StreamRestDataAccess.HDR_CONTENT_LENGTH);
+      if (!STR.isEmpty(value)) {
+         builder.header(StreamRestDataAccess.HDR_CONTENT_LENGTH, value);
+      }
+
+      this.setPassThroughHeaders(builder, jsonHeaders);
+
+      response = builder.build();
 
       _logger.exiting(CLASS, METHOD);
 
@@ -208,17 +317,16 @@ public class ContentResource extends RSResource {
     *    ...                     |    "uri": "http://..."
     * }                          | }
     * </pre>
-    * @param data String JSON payload
+    * @param data InputStream JSON payload
     * @return Response HTTP response object
     */
    @PUT
    @Consumes(MediaType.APPLICATION_JSON)
-   public Response replace(String data) {
+   public Response replace(InputStream data) {
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
       Response response = null;
       JSONObject jsonContent = null;
       OperationIF operOutput = null;
-      JSONParser parser = null;
 
       _logger.entering(CLASS, METHOD);
 
@@ -227,8 +335,8 @@ public class ContentResource extends RSResource {
             (_resourceUid == null ? NULL : _resourceUid));
       }
 
-      if (STR.isEmpty(data)) {
-         this.abort(CLASS + ": " + METHOD, "Payload string is empty",
+      if (data == null) {
+         this.abort(CLASS + ": " + METHOD, "Payload stream is null",
             Response.Status.BAD_REQUEST);
       }
 
@@ -237,21 +345,114 @@ public class ContentResource extends RSResource {
             Response.Status.BAD_REQUEST);
       }
 
-      this.load();
+      this.checkAuthenUserIsOwner(_resourceUid);
+
+      jsonContent = this.getJSONFromStream(data);
+
+      operOutput = this.contentReplace(_resourceUid, jsonContent);
+
+      response = this.getResponseFromJSON(_uriInfo, operOutput);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return response;
+   }
+
+   /**
+    * Create binary content.
+    *
+    * The payload is streamed to the Content Service, it must be configured
+    * with "mode": "binary". The Content Service identifier is a query
+    * parameter:
+    * <pre>
+    * POST .../content?id=medical
+    * Content-Type: application/pdf
+    * </pre>
+    *
+    * @param serviceId String Content Service identifier
+    * @param data InputStream binary payload
+    * @return Response HTTP response object
+    */
+   @POST
+   @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+   public Response createBinary(@QueryParam(ConstantsIF.ID) String serviceId, InputStream data) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      Response response = null;
+      JSONObject jsonOptions = null;
+      OperationIF operContent = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      if (_logger.isLoggable(DEBUG_LEVEL)) {
+         _logger.log(DEBUG_LEVEL, "Post binary content for resource: ''{0}'', service: ''{1}''",
+            new Object[]{_resourceUid == null ? NULL : _resourceUid,
+               serviceId == null ? NULL : serviceId});
+      }
+
+      if (STR.isEmpty(serviceId)) {
+         this.abort(CLASS + ": " + METHOD, "Query parameter '" + ConstantsIF.ID + "' is empty",
+            Response.Status.BAD_REQUEST);
+      }
+
+      if (data == null) {
+         this.abort(CLASS + ": " + METHOD, "Payload stream is null",
+            Response.Status.BAD_REQUEST);
+      }
 
       this.checkAuthenUserIsOwner(_resourceUid);
 
-      parser = this.getParserFromCtx(_servletCtx);
+      jsonOptions = new JSONObject();
+      jsonOptions.put(ConstantsIF.CONTENT, ConstantsIF.REFERENCE);
+
+      operContent = this.contentRead(_resourceUid, jsonOptions);
 
-      try {
-         jsonContent = (JSONObject) parser.parse(data);
-      } catch (Exception ex) {
-         this.abort(CLASS + ": " + METHOD, "Could not parser String to JSON: '"
-            + data + "', " + ex.getMessage(),
+      if (operContent.getState() != STATE.NOTEXIST) {
+         this.abort(CLASS + ": " + METHOD, "Content already exists",
             Response.Status.BAD_REQUEST);
       }
 
-      operOutput = this.contentReplace(_resourceUid, jsonContent);
+      this.contentCreateBinary(_resourceUid, serviceId, this.getBinaryHeaders(), data);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return response;
+   }
+
+   /**
+    * Replace binary content.
+    *
+    * The payload is streamed to the Content Service.
+    *
+    * @param data InputStream binary payload
+    * @return Response HTTP response object
+    */
+   @PUT
+   @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+   public Response replaceBinary(InputStream data) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      Response response = null;
+      OperationIF operOutput = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      if (_logger.isLoggable(DEBUG_LEVEL)) {
+         _logger.log(DEBUG_LEVEL, "Put binary content for resource: ''{0}''",
+            (_resourceUid == null ? NULL : _resourceUid));
+      }
+
+      if (data == null) {
+         this.abort(CLASS + ": " + METHOD, "Payload stream is null",
+            Response.Status.BAD_REQUEST);
+      }
+
+      if (STR.isEmpty(_resourceUid)) {
+         this.abort(CLASS + ": " + METHOD, "Path resource is empty",
+            Response.Status.BAD_REQUEST);
+      }
+
+      this.checkAuthenUserIsOwner(_resourceUid);
+
+      operOutput = this.contentReplaceBinary(_resourceUid, this.getBinaryHeaders(), data);
 
       response = this.getResponseFromJSON(_uriInfo, operOutput);
 
@@ -283,8 +484,6 @@ public class ContentResource extends RSResource {
          this.abort(CLASS + ": " + METHOD, "Path resource is empty", Response.Status.BAD_REQUEST);
       }
 
-      this.load();
-
       this.checkAuthenUserIsOwner(_resourceUid);
 
       operOutput = this.contentDelete(_resourceUid);
@@ -295,4 +494,79 @@ public class ContentResource extends RSResource {
 
       return response;
    }
+
+   /*
+    * ===============
+    * PRIVATE METHODS
+    * ===============
+    */
+   /**
+    * Get the request headers that are passed to a binary Content Service.
+    *
+    * @return JSONObject headers: Content-Type, Content-Length
+    */
+   private JSONObject getBinaryHeaders() {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String value = null;
+      JSONObject jsonHeaders = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      jsonHeaders = new JSONObject();
+
+      if (_httpHdrs != null) {
+         if (_httpHdrs.getMediaType() != null) {
+            jsonHeaders.put(StreamRestDataAccess.HDR_CONTENT_TYPE, _httpHdrs.getMediaType().toString());
+         }
+
+         value = _httpHdrs.getHeaderString(HttpHeaders.CONTENT_LENGTH);
+         if (!STR.isEmpty(value)) {
+            jsonHeaders.put(StreamRestDataAccess.HDR_CONTENT_LENGTH, value);
+         }
+      }
+
+      _logger.exiting(CLASS, METHOD);
+
+      return jsonHeaders;
+   }
+
+   /**
+    * Pass through the validator and range response headers (ETag,
+    * Last-Modified, Accept-Ranges, Content-Range) from the Content Service.
+    *
+    * @param builder ResponseBuilder the response
+    * @param jsonHeaders JSONObject headers from the Content Service
+    */
+   private void setPassThroughHeaders(final ResponseBuilder builder, final JSONObject jsonHeaders) {
+      String value = null;
+
+      for (String name : PASS_THROUGH_HEADERS) {
+         value = JSON.getString(jsonHeaders, name);
+         if (!STR.isEmpty(value)) {
+            builder.header(name, value);
+         }
+      }
+
+      return;
+   }
+
+   /**
+    * Get a streaming entity that copies the content, using a fixed size
+    * buffer, then closes the content stream.
+    *
+    * @param input InputStream content
+    * @return StreamingOutput response entity
+    */
+   private StreamingOutput getStreamingOutput(final InputStream input) {
+      return new StreamingOutput() {
+         @Override
+         public void write(final OutputStream output) throws IOException {
+            try {
+               StreamRestDataAccess.copy(input, output);
+            } finally {
+               input.close();
+            }
+         }
+      };
+   }
 }
@@ -80,8 +80,6 @@ public class MetaResource extends RSResource {
          _logger.log(DEBUG_LEVEL, "Get meta for resource: ''{0}''", (_resourceUid == null ? NULL : _resourceUid));
       }
 
-      this.load();
-
       this.checkAuthenUserIsOwner(_resourceUid);
 
       operOutput = this.getMeta(_resourceUid);
@@ -125,11 +123,9 @@ public class MetaResource extends RSResource {
          this.abort(METHOD, "Path resource is empty", Status.BAD_REQUEST);
       }
 
-      this.load();
-
       this.checkAuthenUserIsOwner(_resourceUid);
 
-      parser = this.getParserFromCtx(_servletCtx);
+      parser = new JSONParser();
 
       try {
          jsonData = (JSONObject) parser.parse(data);
@@ -189,8 +185,6 @@ public class MetaResource extends RSResource {
          this.abort(METHOD, "Path resource is empty", Status.BAD_REQUEST);
       }
 
-      this.load();
-
       this.checkAuthenUserIsOwner(_resourceUid);
 
       metaHandler = this.getHandler(JaxrsHandlerIF.HANDLER_META);
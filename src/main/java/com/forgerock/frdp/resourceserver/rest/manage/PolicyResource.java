@@ -96,8 +96,6 @@ public class PolicyResource extends RSResource {
          this.abort(METHOD, "Path resource is empty", Response.Status.BAD_REQUEST);
       }
 
-      this.load();
-
       this.checkAuthenUserIsOwner(_resourceUid);
 
       operOutput = this.getPolicy(_resourceUid);
@@ -155,11 +153,9 @@ public class PolicyResource extends RSResource {
          this.abort(METHOD, "Path resource is empty", Response.Status.BAD_REQUEST);
       }
 
-      this.load();
-
       this.checkAuthenUserIsOwner(_resourceUid);
 
-      parser = this.getParserFromCtx(_servletCtx);
+      parser = new JSONParser();
 
       try {
          jsonData = (JSONObject) parser.parse(data);
@@ -198,8 +194,6 @@ public class PolicyResource extends RSResource {
          this.abort(METHOD, "Path resource is empty", Response.Status.BAD_REQUEST);
       }
 
-      this.load();
-
       this.checkAuthenUserIsOwner(_resourceUid);
 
       operOutput = this.deletePermissions(_resourceUid);
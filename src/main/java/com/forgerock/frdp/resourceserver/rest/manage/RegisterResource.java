@@ -9,6 +9,7 @@ import com.forgerock.frdp.common.ConstantsIF;
 import com.forgerock.frdp.dao.Operation;
 import com.forgerock.frdp.dao.OperationIF;
 import com.forgerock.frdp.resourceserver.handler.JaxrsHandlerIF;
+import com.forgerock.frdp.resourceserver.handler.ResourcesHandler;
 import com.forgerock.frdp.resourceserver.rest.RSResource;
 import com.forgerock.frdp.utils.JSON;
 import com.forgerock.frdp.utils.STR;
@@ -96,8 +97,6 @@ public class RegisterResource extends RSResource {
          this.abort(METHOD, "Path resource is empty", Response.Status.BAD_REQUEST);
       }
 
-      this.load();
-
       this.checkAuthenUserIsOwner(_resourceUid);
 
       operRegisterOutput = this.getRegistration(_resourceUid, null);
@@ -157,11 +156,9 @@ public class RegisterResource extends RSResource {
          this.abort(METHOD, "Path resource is empty", Response.Status.BAD_REQUEST);
       }
 
-      this.load();
-
       this.checkAuthenUserIsOwner(_resourceUid);
 
-      parser = this.getParserFromCtx(_servletCtx);
+      parser = new JSONParser();
 
       try {
          jsonData = (JSONObject) parser.parse(data);
@@ -203,8 +200,6 @@ public class RegisterResource extends RSResource {
          this.abort(METHOD, "Path resource is empty", Response.Status.BAD_REQUEST);
       }
 
-      this.load();
-
       this.checkAuthenUserIsOwner(_resourceUid);
 
       jsonInput = new JSONObject();
@@ -324,13 +319,13 @@ public class RegisterResource extends RSResource {
             this.abort(METHOD, "Failed to register resource, Id is empty", Response.Status.INTERNAL_SERVER_ERROR);
          }
 
-         // update the resource, set the register id
+         // update the resource, set only the register id
          // JSON input:
          // {
-         // "uid": "...", "data": { }
+         // "uid": "...", "data": { "register": "..." }
          // }
 
-         jsonResourceData = jsonResourceOutput;
+         jsonResourceData = new JSONObject();
          jsonResourceData.put(ConstantsIF.REGISTER, registerId);
 
          jsonResourceInput = new JSONObject();
@@ -339,6 +334,7 @@ public class RegisterResource extends RSResource {
 
          operResourceInput = new Operation(OperationIF.TYPE.REPLACE);
          operResourceInput.setJSON(jsonResourceInput);
+         operResourceInput.setParam(ResourcesHandler.PARAM_SET, ConstantsIF.REGISTER);
 
          operResourceOutput = resourcesHandler.process(operResourceInput);
 
@@ -477,10 +473,9 @@ public class RegisterResource extends RSResource {
          }
 
          /*
-          * Update the resource record, remove the "register" attribute
+          * Update the resource record, remove only the "register" attribute
           */
-         jsonData = jsonResourcesOutput;
-         jsonData.remove(ConstantsIF.REGISTER);
+         jsonData = new JSONObject();
 
          jsonResourcesInput = new JSONObject();
          jsonResourcesInput.put(ConstantsIF.UID, _resourceUid);
@@ -488,6 +483,7 @@ public class RegisterResource extends RSResource {
 
          operResourcesInput = new Operation(OperationIF.TYPE.REPLACE);
          operResourcesInput.setJSON(jsonResourcesInput);
+         operResourcesInput.setParam(ResourcesHandler.PARAM_SET, ConstantsIF.REGISTER);
 
          operResourcesOutput = resourcesHandler.process(operResourcesInput);
 
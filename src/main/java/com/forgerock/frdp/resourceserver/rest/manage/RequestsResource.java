@@ -8,31 +8,46 @@ package com.forgerock.frdp.resourceserver.rest.manage;
 import com.forgerock.frdp.common.ConstantsIF;
 import com.forgerock.frdp.dao.Operation;
 import com.forgerock.frdp.dao.OperationIF;
+import com.forgerock.frdp.resourceserver.ConfigIF;
 import com.forgerock.frdp.resourceserver.handler.JaxrsHandlerIF;
+import com.forgerock.frdp.resourceserver.handler.uma.RequestsHandler;
 import com.forgerock.frdp.resourceserver.rest.RSResource;
+import com.forgerock.frdp.utils.JSON;
 import com.forgerock.frdp.utils.STR;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import javax.servlet.ServletContext;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriInfo;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 
 /**
  * Requests for access, PATH: .../rest/manage/requests PATH:
- * .../rest/manage/requests/{id}
+ * .../rest/manage/requests/_batch PATH: .../rest/manage/requests/{id}
  *
  * @author Scott Fehrman, ForgeRock, Inc.
  */
 public class RequestsResource extends RSResource {
+
+   private static final String BATCH = "_batch";
    private final String CLASS = this.getClass().getName();
 
    /**
@@ -59,7 +74,12 @@ public class RequestsResource extends RSResource {
    }
 
    /**
-    * Get a list of requests for access.
+    * Get a list of requests for access. The optional query parameters "user",
+    * "resource" and "scope" return the requests that match. The optional
+    * "minage" and "maxage" (seconds) return the requests made at least / at
+    * most that long ago. The optional "sort" parameter ("when", "user",
+    * "resource", with a "-" prefix for descending) sorts the requests. The
+    * optional "offset" and "limit" query parameters return a page of them.
     * 
     * @return Response HTTP response object
     */
@@ -79,8 +99,6 @@ public class RequestsResource extends RSResource {
 
       operOutput = new Operation(OperationIF.TYPE.SEARCH);
 
-      this.load();
-
       requestsHandler = this.getHandler(JaxrsHandlerIF.HANDLER_UMA_REQUESTS);
 
       userId = this.getUserIdFromSSOSession(); // make sure authenticated user
@@ -95,6 +113,9 @@ public class RequestsResource extends RSResource {
       jsonData.put(ConstantsIF.SSO_TOKEN, sso_token);
       jsonData.put(ConstantsIF.OWNER, userId);
 
+      this.setPageParams(jsonData);
+      this.setFilterParams(jsonData);
+
       operInput = new Operation(OperationIF.TYPE.SEARCH);
       operInput.setJSON(jsonData);
 
@@ -135,8 +156,6 @@ public class RequestsResource extends RSResource {
 
       operOutput = new Operation(OperationIF.TYPE.SEARCH);
 
-      this.load();
-
       requestsHandler = this.getHandler(JaxrsHandlerIF.HANDLER_UMA_REQUESTS);
 
       userId = this.getUserIdFromSSOSession(); // make sure authenticated user
@@ -211,9 +230,7 @@ public class RequestsResource extends RSResource {
          this.abort(METHOD, "Payload string is empty", Status.BAD_REQUEST);
       }
 
-      this.load();
-
-      parser = this.getParserFromCtx(_servletCtx);
+      parser = new JSONParser();
 
       try {
          jsonData = (JSONObject) parser.parse(data);
@@ -253,4 +270,207 @@ public class RequestsResource extends RSResource {
       return response;
    }
 
+
+   /**
+    * Approve or deny many requests for access. The payload is a JSON array,
+    * each item has the request "id", the "action" and optional "scopes" (see
+    * replace). Items are processed in parallel, bounded by "rs.bulk.threads"
+    * and spaced by "rs.bulk.rate" (requests per second). The owner's SSO
+    * token is resolved once for the batch. The output has a result for each
+    * item, in request order, a failed item does not stop the others.
+    *
+    * <pre>
+    * JSON input:
+    * [
+    *   { "id": "...", "action": "approve", "scopes": [ "meta" ] },
+    *   { "id": "...", "action": "deny" }
+    * ]
+    * JSON output:
+    * {
+    *   "quantity": 2,
+    *   "approved": 1,
+    *   "denied": 0,
+    *   "failed": 1,
+    *   "results": [
+    *     { "index": 0, "id": "...", "status": "approved" },
+    *     { "index": 1, "id": "...", "status": "failed", "error": "..." }
+    *   ]
+    * }
+    * </pre>
+    *
+    * @param data InputStream batch payload
+    * @return Response HTTP response object
+    */
+   @POST
+   @Path(BATCH)
+   @Consumes(MediaType.APPLICATION_JSON)
+   @Produces(MediaType.APPLICATION_JSON)
+   public Response batch(InputStream data) {
+      int approved = 0;
+      int denied = 0;
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String userId = null;
+      String sso_token = null;
+      String status = null;
+      Response response = null;
+      JSONArray jsonItems = null;
+      JSONArray jsonResults = null;
+      JSONObject jsonResult = null;
+      JSONObject jsonOutput = null;
+      JSONObject jsonData = null;
+      OperationIF operOutput = null;
+      JaxrsHandlerIF requestsHandler = null;
+      BulkRateLimiter limiter = null;
+      ExecutorService executor = null;
+      List<Future<JSONObject>> futures = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      if (data == null) {
+         this.abort(METHOD, "Payload stream is null", Status.BAD_REQUEST);
+      }
+
+      userId = this.getUserIdFromSSOSession(); // make sure authenticated user
+      sso_token = this.getSSOTokenFromSSOSession();
+
+      jsonItems = this.getJSONArrayFromStream(data, false);
+
+      requestsHandler = this.getHandler(JaxrsHandlerIF.HANDLER_UMA_REQUESTS);
+
+      limiter = new BulkRateLimiter(this.getConfigValueAsLong(ConfigIF.RS_BULK_RATE, DEFAULT_BULK_RATE));
+
+      executor = this.getBulkExecutor();
+      futures = new ArrayList<>(jsonItems.size());
+      jsonResults = new JSONArray();
+
+      for (int i = 0; i < jsonItems.size(); i++) {
+         if (jsonItems.get(i) instanceof JSONObject) {
+            futures.add(executor.submit(new BulkRequestTask(i, userId, sso_token,
+               (JSONObject) jsonItems.get(i), requestsHandler, limiter)));
+         } else {
+            futures.add(null);
+         }
+      }
+
+      for (int i = 0; i < futures.size(); i++) {
+         if (futures.get(i) == null) {
+            jsonResult = new JSONObject();
+            jsonResult.put(BulkCreateTask.INDEX, i);
+            jsonResult.put(BulkCreateTask.STATUS, BulkCreateTask.STATUS_FAILED);
+            jsonResult.put(ConstantsIF.ERROR, "Item is not a JSON object");
+         } else {
+            try {
+               jsonResult = futures.get(i).get();
+            } catch (InterruptedException | ExecutionException ex) {
+               jsonResult = new JSONObject();
+               jsonResult.put(BulkCreateTask.INDEX, i);
+               jsonResult.put(BulkCreateTask.STATUS, BulkCreateTask.STATUS_FAILED);
+               jsonResult.put(ConstantsIF.ERROR, ex.getMessage());
+
+               if (ex instanceof InterruptedException) {
+                  Thread.currentThread().interrupt();
+               }
+            }
+         }
+
+         status = JSON.getString(jsonResult, BulkCreateTask.STATUS);
+
+         if (BulkRequestTask.STATUS_APPROVED.equals(status)) {
+            approved++;
+         } else if (BulkRequestTask.STATUS_DENIED.equals(status)) {
+            denied++;
+         }
+
+         jsonResults.add(jsonResult);
+      }
+
+      jsonOutput = new JSONObject();
+      jsonOutput.put(ConstantsIF.QUANTITY, jsonResults.size());
+      jsonOutput.put(BulkRequestTask.STATUS_APPROVED, approved);
+      jsonOutput.put(BulkRequestTask.STATUS_DENIED, denied);
+      jsonOutput.put(BulkCreateTask.STATUS_FAILED, jsonResults.size() - approved - denied);
+      jsonOutput.put(ConstantsIF.RESULTS, jsonResults);
+
+      jsonData = new JSONObject();
+      jsonData.put(ConstantsIF.DATA, jsonOutput);
+
+      operOutput = new Operation(OperationIF.TYPE.READ);
+      operOutput.setState(STATE.SUCCESS);
+      operOutput.setJSON(jsonData);
+
+      _logger.log(Level.INFO, "{0}: owner=''{1}'', processed=''{2}'', approved=''{3}'', denied=''{4}''",
+         new Object[]{METHOD, userId, jsonResults.size(), approved, denied});
+
+      response = this.getResponseFromJSON(_uriInfo, operOutput);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return response;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   /**
+    * Copy the optional filter and sort query parameters to the handler JSON
+    * input. Abort with BAD_REQUEST if an age is not a number, 0 or more, or
+    * the sort attribute is not supported.
+    *
+    * @param jsonInput JSONObject handler input, updated
+    */
+   private void setFilterParams(final JSONObject jsonInput) {
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String value = null;
+      long number = 0L;
+      MultivaluedMap<String, String> mmapQueryParams = null;
+
+      mmapQueryParams = _uriInfo.getQueryParameters();
+
+      for (String name : new String[]{RequestsHandler.FILTER_USER, RequestsHandler.FILTER_RESOURCE,
+         RequestsHandler.FILTER_SCOPE}) {
+         value = mmapQueryParams.getFirst(name);
+
+         if (!STR.isEmpty(value)) {
+            jsonInput.put(name, value);
+         }
+      }
+
+      for (String name : new String[]{RequestsHandler.FILTER_MINAGE, RequestsHandler.FILTER_MAXAGE}) {
+         value = mmapQueryParams.getFirst(name);
+
+         if (!STR.isEmpty(value)) {
+            try {
+               number = Long.parseLong(value);
+            } catch (NumberFormatException ex) {
+               number = -1L;
+            }
+
+            if (number < 0L) {
+               this.abort(METHOD, "Query parameter '" + name + "' must be a number, 0 or more",
+                  Status.BAD_REQUEST);
+            }
+
+            jsonInput.put(name, number);
+         }
+      }
+
+      value = mmapQueryParams.getFirst(RequestsHandler.SORT);
+
+      if (!STR.isEmpty(value)) {
+         switch (value.startsWith(RequestsHandler.SORT_DESCENDING) ? value.substring(1) : value) {
+            case RequestsHandler.ATTR_WHEN:
+            case ConstantsIF.USER:
+            case ConstantsIF.RESOURCE: {
+               jsonInput.put(RequestsHandler.SORT, value);
+               break;
+            }
+            default: {
+               this.abort(METHOD, "Query parameter '" + RequestsHandler.SORT
+                  + "' must be 'when', 'user' or 'resource', optional '-' prefix", Status.BAD_REQUEST);
+            }
+         }
+      }
+
+      return;
+   }
 }
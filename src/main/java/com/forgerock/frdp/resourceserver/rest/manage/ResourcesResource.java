@@ -7,10 +7,21 @@ package com.forgerock.frdp.resourceserver.rest.manage;
 import com.forgerock.frdp.common.ConstantsIF;
 import com.forgerock.frdp.dao.Operation;
 import com.forgerock.frdp.dao.OperationIF;
+import com.forgerock.frdp.resourceserver.ConfigIF;
 import com.forgerock.frdp.resourceserver.handler.JaxrsHandlerIF;
+import com.forgerock.frdp.resourceserver.handler.ResourcesHandler;
 import com.forgerock.frdp.resourceserver.rest.RSResource;
 import com.forgerock.frdp.utils.JSON;
 import com.forgerock.frdp.utils.STR;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import javax.servlet.ServletContext;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -27,7 +38,6 @@ import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriInfo;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 
 /**
  * Resource management: create, search, read, delete ... Routing for meta data,
@@ -36,6 +46,9 @@ import org.json.simple.parser.JSONParser;
  * <pre>
  * paths:
  * .../
+ * .../?owner={owner}
+ * .../_bulk
+ * .../_bulk/policy
  * .../{id}
  * .../{id}/meta
  * .../{id}/content
@@ -47,6 +60,13 @@ import org.json.simple.parser.JSONParser;
  */
 public class ResourcesResource extends RSResource {
 
+   public static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+
+   private static final String BULK = "_bulk";
+   private static final String LIMIT = "limit";
+   private static final String REMAINING = "remaining";
+   private static final String STATUS_CREATED = BulkCreateTask.STATUS_CREATED;
+   private static final String STATUS_FAILED = BulkCreateTask.STATUS_FAILED;
    private final String CLASS = this.getClass().getName();
 
    /**
@@ -85,17 +105,16 @@ public class ResourcesResource extends RSResource {
     * }
     * </pre>
     *
-    * @param data String resource payload as JSON
+    * @param data InputStream resource payload as JSON
     * @return Response HTTP response object
     */
    @POST
    @Consumes(MediaType.APPLICATION_JSON)
-   public Response create(String data) {
+   public Response create(InputStream data) {
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
       String userId = null;
       String resourceUid = null;
       Response response = null;
-      JSONParser parser = null;
       JSONObject jsonNew = null;
       JSONObject jsonInput = null;
       JSONObject jsonData = null;
@@ -108,19 +127,18 @@ public class ResourcesResource extends RSResource {
 
       _logger.entering(CLASS, METHOD);
 
-      if (_logger.isLoggable(DEBUG_LEVEL)) {
-         _logger.log(DEBUG_LEVEL, "json=''{0}''",
-            new Object[]{data != null ? data : NULL});
+      if (data == null) {
+         this.abort(METHOD, "Payload stream is null", Status.BAD_REQUEST);
       }
 
-      if (STR.isEmpty(data)) {
-         this.abort(METHOD, "Payload string is empty", Status.BAD_REQUEST);
-      }
-
-      this.load();
-
       userId = this.getUserIdFromSSOSession();
 
+      /*
+       * Parse the incoming data before creating the resource, an invalid
+       * or oversized payload must not leave an empty resource behind
+       */
+      jsonData = this.getJSONFromStream(data);
+
       resourcesHandler = this.getHandler(JaxrsHandlerIF.HANDLER_RESOURCES);
 
       /*
@@ -139,18 +157,6 @@ public class ResourcesResource extends RSResource {
 
       resourceUid = this.getUidFromOperation(operNewOutput);
 
-      /*
-       * Get the parser and parser the incoming data
-       */
-      parser = this.getParserFromCtx(_servletCtx);
-
-      try {
-         jsonData = (JSONObject) parser.parse(data);
-      } catch (Exception ex) {
-         this.abort(METHOD, "Could not parser String to JSON: '" + data + "', "
-            + ex.getMessage(), Status.BAD_REQUEST);
-      }
-
       /*
        * process the "meta" data
        */
@@ -189,6 +195,407 @@ public class ResourcesResource extends RSResource {
       return response;
    }
 
+   /**
+    * Create many resources, owned by the authenticated user. The payload is a
+    * JSON array, or NDJSON (Content-Type: application/x-ndjson) with one
+    * resource per line. Each resource has the same format as create(). Items
+    * are processed in parallel, bounded by "rs.bulk.threads". Each resource is
+    * saved with a single write. The output has a result for each item, in
+    * request order, a failed item does not stop the others.
+    *
+    * <pre>
+    * JSON output:
+    * {
+    *   "quantity": 3,
+    *   "created": 2,
+    *   "failed": 1,
+    *   "results": [
+    *     { "index": 0, "status": "created", "uid": "..." },
+    *     { "index": 1, "status": "failed", "error": "..." },
+    *     { "index": 2, "status": "created", "uid": "..." }
+    *   ]
+    * }
+    * </pre>
+    *
+    * @param data InputStream resources payload
+    * @return Response HTTP response object
+    */
+   @POST
+   @Path(BULK)
+   @Consumes({MediaType.APPLICATION_JSON, MEDIA_TYPE_NDJSON})
+   @Produces(MediaType.APPLICATION_JSON)
+   public Response bulkCreate(InputStream data) {
+      boolean ndjson = false;
+      boolean register = false;
+      boolean policy = false;
+      int created = 0;
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String userId = null;
+      String access_token = null;
+      String sso_token = null;
+      Response response = null;
+      JSONArray jsonItems = null;
+      JSONArray jsonResults = null;
+      JSONObject jsonItem = null;
+      JSONObject jsonResult = null;
+      JSONObject jsonOutput = null;
+      JSONObject jsonData = null;
+      OperationIF operOutput = null;
+      JaxrsHandlerIF resourcesHandler = null;
+      JaxrsHandlerIF contentHandler = null;
+      JaxrsHandlerIF registerHandler = null;
+      JaxrsHandlerIF policyHandler = null;
+      ExecutorService executor = null;
+      List<Future<JSONObject>> futures = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      if (data == null) {
+         this.abort(METHOD, "Payload stream is null", Status.BAD_REQUEST);
+      }
+
+      userId = this.getUserIdFromSSOSession();
+
+      ndjson = _httpHdrs != null && _httpHdrs.getMediaType() != null
+         && _httpHdrs.getMediaType().isCompatible(MediaType.valueOf(MEDIA_TYPE_NDJSON));
+
+      jsonItems = this.getJSONArrayFromStream(data, ndjson);
+
+      /*
+       * Request scoped values are resolved once, on the request thread
+       */
+      for (Object obj : jsonItems) {
+         if (obj instanceof JSONObject) {
+            jsonItem = JSON.getObject((JSONObject) obj, ConstantsIF.REGISTER);
+            if (jsonItem != null && !jsonItem.isEmpty()) {
+               register = true;
+               if (jsonItem.containsKey(ConstantsIF.POLICY)) {
+                  policy = true;
+               }
+            }
+         }
+      }
+
+      if (register) {
+         access_token = this.getAccessToken();
+
+         if (STR.isEmpty(access_token)) {
+            this.abort(CLASS + ": " + METHOD, "access_token is empty", Status.BAD_REQUEST);
+         }
+      }
+
+      if (policy) {
+         sso_token = this.getSSOTokenFromSSOSession();
+      }
+
+      resourcesHandler = this.getHandler(JaxrsHandlerIF.HANDLER_RESOURCES);
+      contentHandler = this.getHandler(JaxrsHandlerIF.HANDLER_CONTENT);
+      registerHandler = this.getHandler(JaxrsHandlerIF.HANDLER_UMA_REGISTER);
+      policyHandler = this.getHandler(JaxrsHandlerIF.HANDLER_UMA_POLICY);
+
+      executor = this.getBulkExecutor();
+      futures = new ArrayList<>(jsonItems.size());
+
+      for (int i = 0; i < jsonItems.size(); i++) {
+         jsonItem = jsonItems.get(i) instanceof JSONObject ? (JSONObject) jsonItems.get(i) : null;
+
+         futures.add(executor.submit(new BulkCreateTask(i, userId, access_token, sso_token, jsonItem,
+            resourcesHandler, contentHandler, registerHandler, policyHandler)));
+      }
+
+      jsonResults = new JSONArray();
+
+      for (int i = 0; i < futures.size(); i++) {
+         try {
+            jsonResult = futures.get(i).get();
+         } catch (InterruptedException | ExecutionException ex) {
+            jsonResult = new JSONObject();
+            jsonResult.put(BulkCreateTask.INDEX, i);
+            jsonResult.put(BulkCreateTask.STATUS, BulkCreateTask.STATUS_FAILED);
+            jsonResult.put(ConstantsIF.ERROR, ex.getMessage());
+
+            if (ex instanceof InterruptedException) {
+               Thread.currentThread().interrupt();
+            }
+         }
+
+         if (BulkCreateTask.STATUS_CREATED.equals(JSON.getString(jsonResult, BulkCreateTask.STATUS))) {
+            created++;
+         }
+
+         jsonResults.add(jsonResult);
+      }
+
+      jsonOutput = new JSONObject();
+      jsonOutput.put(ConstantsIF.QUANTITY, jsonResults.size());
+      jsonOutput.put(STATUS_CREATED, created);
+      jsonOutput.put(STATUS_FAILED, jsonResults.size() - created);
+      jsonOutput.put(ConstantsIF.RESULTS, jsonResults);
+
+      jsonData = new JSONObject();
+      jsonData.put(ConstantsIF.DATA, jsonOutput);
+
+      operOutput = new Operation(OperationIF.TYPE.READ);
+      operOutput.setState(STATE.SUCCESS);
+      operOutput.setJSON(jsonData);
+
+      if (_logger.isLoggable(DEBUG_LEVEL)) {
+         _logger.log(DEBUG_LEVEL, "userId=''{0}'', items=''{1}'', created=''{2}''",
+            new Object[]{userId, jsonResults.size(), created});
+      }
+
+      response = this.getResponseFromJSON(_uriInfo, operOutput);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return response;
+   }
+
+   /**
+    * Grant or revoke scopes for one subject, across many resources owned by
+    * the authenticated user. The "resources" attribute lists resource uids,
+    * if it is missing all of the owner's registered resources are used. The
+    * new permissions are computed in memory for each resource and written to
+    * the Authorization Server in parallel, bounded by "rs.bulk.threads" and
+    * spaced by "rs.bulk.rate" (requests per second). The owner's SSO token is
+    * resolved once for the request.
+    *
+    * <pre>
+    * JSON input:
+    * {
+    *   "action": "grant", // "grant" | "revoke"
+    *   "subject": "bob",
+    *   "scopes": ["view", "comment"],
+    *   "resources": ["...", "..."] // optional
+    * }
+    * JSON output:
+    * {
+    *   "quantity": 3,
+    *   "updated": 1,
+    *   "unchanged": 1,
+    *   "failed": 1,
+    *   "results": [
+    *     { "uid": "...", "status": "updated" },
+    *     { "uid": "...", "status": "unchanged" },
+    *     { "uid": "...", "status": "failed", "error": "..." }
+    *   ]
+    * }
+    * </pre>
+    *
+    * @param data InputStream bulk policy payload
+    * @return Response HTTP response object
+    */
+   @POST
+   @Path(BULK + "/" + ConstantsIF.POLICY)
+   @Consumes(MediaType.APPLICATION_JSON)
+   @Produces(MediaType.APPLICATION_JSON)
+   public Response bulkPolicy(InputStream data) {
+      boolean grant = false;
+      int updated = 0;
+      int unchanged = 0;
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String userId = null;
+      String sso_token = null;
+      String action = null;
+      String subject = null;
+      String resourceUid = null;
+      Response response = null;
+      List<String> scopes = null;
+      Map<String, JSONObject> resources = null;
+      JSONArray jsonScopes = null;
+      JSONArray jsonUids = null;
+      JSONArray jsonResources = null;
+      JSONArray jsonResults = null;
+      JSONObject jsonPayload = null;
+      JSONObject jsonResource = null;
+      JSONObject jsonResult = null;
+      JSONObject jsonQuery = null;
+      JSONObject jsonInput = null;
+      JSONObject jsonOutput = null;
+      JSONObject jsonData = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+      JaxrsHandlerIF resourcesHandler = null;
+      JaxrsHandlerIF policyHandler = null;
+      BulkRateLimiter limiter = null;
+      ExecutorService executor = null;
+      List<Future<JSONObject>> futures = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      if (data == null) {
+         this.abort(METHOD, "Payload stream is null", Status.BAD_REQUEST);
+      }
+
+      jsonPayload = this.getJSONFromStream(data);
+
+      action = JSON.getString(jsonPayload, ConstantsIF.ACTION);
+
+      if (BulkPolicyTask.ACTION_GRANT.equalsIgnoreCase(action)) {
+         grant = true;
+      } else if (!BulkPolicyTask.ACTION_REVOKE.equalsIgnoreCase(action)) {
+         this.abort(METHOD, "Attribute '" + ConstantsIF.ACTION + "' must be '"
+            + BulkPolicyTask.ACTION_GRANT + "' or '" + BulkPolicyTask.ACTION_REVOKE + "'",
+            Status.BAD_REQUEST);
+      }
+
+      subject = JSON.getString(jsonPayload, ConstantsIF.SUBJECT);
+
+      if (STR.isEmpty(subject)) {
+         this.abort(METHOD, "Attribute '" + ConstantsIF.SUBJECT + "' is empty", Status.BAD_REQUEST);
+      }
+
+      jsonScopes = JSON.getArray(jsonPayload, ConstantsIF.SCOPES);
+      scopes = new ArrayList<>();
+
+      if (jsonScopes != null) {
+         for (Object obj : jsonScopes) {
+            if (obj instanceof String && !STR.isEmpty((String) obj) && !scopes.contains(obj)) {
+               scopes.add((String) obj);
+            }
+         }
+      }
+
+      if (scopes.isEmpty()) {
+         this.abort(METHOD, "Attribute '" + ConstantsIF.SCOPES + "' is empty", Status.BAD_REQUEST);
+      }
+
+      userId = this.getUserIdFromSSOSession();
+      sso_token = this.getSSOTokenFromSSOSession();
+
+      resourcesHandler = this.getHandler(JaxrsHandlerIF.HANDLER_RESOURCES);
+      policyHandler = this.getHandler(JaxrsHandlerIF.HANDLER_UMA_POLICY);
+
+      /*
+       * Get the owner's resources with one search, the listed resources are
+       * matched against it, a resource that is not found is not owned
+       */
+      jsonQuery = new JSONObject();
+      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
+      jsonQuery.put(ConstantsIF.ATTRIBUTE, ConstantsIF.DATA + "." + ConstantsIF.OWNER);
+      jsonQuery.put(ConstantsIF.VALUE, userId);
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.QUERY, jsonQuery);
+
+      operInput = new Operation(OperationIF.TYPE.SEARCH);
+      operInput.setJSON(jsonInput);
+
+      operOutput = resourcesHandler.process(operInput);
+
+      if (operOutput.isError()) {
+         this.abort(METHOD, "Could not search resources: " + operOutput.getStatus(),
+            this.getStatusFromState(operOutput.getState()));
+      }
+
+      jsonResources = JSON.getArray(operOutput.getJSON(),
+         ConstantsIF.DATA + "." + ConstantsIF.RESULTS);
+
+      resources = new LinkedHashMap<>();
+
+      if (jsonResources != null) {
+         for (Object obj : jsonResources) {
+            if (obj instanceof JSONObject) {
+               jsonResource = (JSONObject) obj;
+               resourceUid = JSON.getString(jsonResource, ConstantsIF.UID);
+               if (!STR.isEmpty(resourceUid)) {
+                  resources.put(resourceUid, jsonResource);
+               }
+            }
+         }
+      }
+
+      jsonUids = JSON.getArray(jsonPayload, ConstantsIF.RESOURCES);
+
+      if (jsonUids == null) {
+         jsonUids = new JSONArray();
+
+         for (Map.Entry<String, JSONObject> entry : resources.entrySet()) {
+            if (!STR.isEmpty(JSON.getString(entry.getValue(),
+               ConstantsIF.DATA + "." + ConstantsIF.REGISTER))) {
+               jsonUids.add(entry.getKey());
+            }
+         }
+      }
+
+      if (jsonUids.size() > this.getConfigValueAsLong(ConfigIF.RS_BULK_MAXITEMS, DEFAULT_BULK_MAXITEMS)) {
+         this.abort(METHOD, "Too many resources, maximum is '"
+            + this.getConfigValueAsLong(ConfigIF.RS_BULK_MAXITEMS, DEFAULT_BULK_MAXITEMS) + "'",
+            Status.REQUEST_ENTITY_TOO_LARGE);
+      }
+
+      limiter = new BulkRateLimiter(this.getConfigValueAsLong(ConfigIF.RS_BULK_RATE, DEFAULT_BULK_RATE));
+
+      executor = this.getBulkExecutor();
+      futures = new ArrayList<>(jsonUids.size());
+      jsonResults = new JSONArray();
+
+      for (Object obj : jsonUids) {
+         resourceUid = obj != null ? obj.toString() : null;
+         jsonResource = resourceUid != null ? resources.get(resourceUid) : null;
+
+         if (jsonResource != null) {
+            futures.add(executor.submit(new BulkPolicyTask(userId, sso_token, subject, scopes, grant,
+               jsonResource, policyHandler, limiter)));
+         } else {
+            futures.add(null);
+         }
+      }
+
+      for (int i = 0; i < futures.size(); i++) {
+         if (futures.get(i) == null) {
+            jsonResult = new JSONObject();
+            jsonResult.put(ConstantsIF.UID, jsonUids.get(i));
+            jsonResult.put(BulkCreateTask.STATUS, STATUS_FAILED);
+            jsonResult.put(ConstantsIF.ERROR, "Resource not found");
+         } else {
+            try {
+               jsonResult = futures.get(i).get();
+            } catch (InterruptedException | ExecutionException ex) {
+               jsonResult = new JSONObject();
+               jsonResult.put(ConstantsIF.UID, jsonUids.get(i));
+               jsonResult.put(BulkCreateTask.STATUS, STATUS_FAILED);
+               jsonResult.put(ConstantsIF.ERROR, ex.getMessage());
+
+               if (ex instanceof InterruptedException) {
+                  Thread.currentThread().interrupt();
+               }
+            }
+         }
+
+         if (BulkPolicyTask.STATUS_UPDATED.equals(JSON.getString(jsonResult, BulkCreateTask.STATUS))) {
+            updated++;
+         } else if (BulkPolicyTask.STATUS_UNCHANGED.equals(JSON.getString(jsonResult, BulkCreateTask.STATUS))) {
+            unchanged++;
+         }
+
+         jsonResults.add(jsonResult);
+      }
+
+      jsonOutput = new JSONObject();
+      jsonOutput.put(ConstantsIF.QUANTITY, jsonResults.size());
+      jsonOutput.put(BulkPolicyTask.STATUS_UPDATED, updated);
+      jsonOutput.put(BulkPolicyTask.STATUS_UNCHANGED, unchanged);
+      jsonOutput.put(STATUS_FAILED, jsonResults.size() - updated - unchanged);
+      jsonOutput.put(ConstantsIF.RESULTS, jsonResults);
+
+      jsonData = new JSONObject();
+      jsonData.put(ConstantsIF.DATA, jsonOutput);
+
+      operOutput = new Operation(OperationIF.TYPE.READ);
+      operOutput.setState(STATE.SUCCESS);
+      operOutput.setJSON(jsonData);
+
+      _logger.log(Level.INFO, "{0}: owner=''{1}'', action=''{2}'', subject=''{3}'', processed=''{4}'', updated=''{5}''",
+         new Object[]{METHOD, userId, action, subject, jsonResults.size(), updated});
+
+      response = this.getResponseFromJSON(_uriInfo, operOutput);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return response;
+   }
+
    /**
     * Get all resources that are owned by the authenticated user
     *
@@ -208,8 +615,6 @@ public class ResourcesResource extends RSResource {
 
       _logger.entering(CLASS, METHOD);
 
-      this.load();
-
       userId = this.getUserIdFromSSOSession(); // make sure authenticated user
 
       resourcesHandler = this.getHandler(JaxrsHandlerIF.HANDLER_RESOURCES);
@@ -234,6 +639,206 @@ public class ResourcesResource extends RSResource {
       return response;
    }
 
+   /**
+    * Delete all resources owned by the authenticated user, for off-boarding.
+    * The "owner" query parameter is required and must be the authenticated
+    * user. Resources are deleted in parallel, bounded by "rs.bulk.threads":
+    * registration, content, then the resource. A resource that fails is kept
+    * and reported. The optional "limit" query parameter sets the number of
+    * resources processed per request; repeat the request until "remaining"
+    * is 0 to resume after a failure or limit.
+    *
+    * <pre>
+    * DELETE .../manage/resources?owner=bjensen&amp;limit=1000
+    *
+    * JSON output:
+    * {
+    *   "quantity": 1000,
+    *   "deleted": 998,
+    *   "failed": 2,
+    *   "remaining": 4002,
+    *   "results": [
+    *     { "uid": "...", "status": "deleted" },
+    *     { "uid": "...", "status": "failed", "error": "..." },
+    *     ...
+    *   ]
+    * }
+    * </pre>
+    *
+    * @param owner String owner, must be the authenticated user
+    * @param limit String maximum number of resources to process
+    * @return Response HTTP response object
+    */
+   @DELETE
+   @Produces(MediaType.APPLICATION_JSON)
+   public Response bulkDelete(@QueryParam(ConstantsIF.OWNER) String owner,
+      @QueryParam(LIMIT) String limit) {
+      boolean register = false;
+      int max = 0;
+      int total = 0;
+      int deleted = 0;
+      String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String userId = null;
+      String access_token = null;
+      Response response = null;
+      JSONArray jsonResources = null;
+      JSONArray jsonResults = null;
+      JSONObject jsonResource = null;
+      JSONObject jsonResult = null;
+      JSONObject jsonQuery = null;
+      JSONObject jsonInput = null;
+      JSONObject jsonOutput = null;
+      JSONObject jsonData = null;
+      OperationIF operInput = null;
+      OperationIF operOutput = null;
+      JaxrsHandlerIF resourcesHandler = null;
+      JaxrsHandlerIF contentHandler = null;
+      JaxrsHandlerIF registerHandler = null;
+      ExecutorService executor = null;
+      List<Future<JSONObject>> futures = null;
+
+      _logger.entering(CLASS, METHOD);
+
+      userId = this.getUserIdFromSSOSession();
+
+      if (STR.isEmpty(owner)) {
+         this.abort(METHOD, "Query parameter '" + ConstantsIF.OWNER + "' is required",
+            Status.BAD_REQUEST);
+      }
+
+      if (!owner.equals(userId)) {
+         this.abort(METHOD, "Query parameter '" + ConstantsIF.OWNER
+            + "' must be the authenticated user", Status.FORBIDDEN);
+      }
+
+      if (!STR.isEmpty(limit)) {
+         try {
+            max = Integer.parseInt(limit);
+         } catch (NumberFormatException ex) {
+            max = 0;
+         }
+
+         if (max < 1) {
+            this.abort(METHOD, "Query parameter '" + LIMIT + "' must be a positive number",
+               Status.BAD_REQUEST);
+         }
+      }
+
+      resourcesHandler = this.getHandler(JaxrsHandlerIF.HANDLER_RESOURCES);
+      contentHandler = this.getHandler(JaxrsHandlerIF.HANDLER_CONTENT);
+      registerHandler = this.getHandler(JaxrsHandlerIF.HANDLER_UMA_REGISTER);
+
+      /*
+       * Get the owner's resources
+       */
+      jsonQuery = new JSONObject();
+      jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
+      jsonQuery.put(ConstantsIF.ATTRIBUTE, ConstantsIF.DATA + "." + ConstantsIF.OWNER);
+      jsonQuery.put(ConstantsIF.VALUE, userId);
+
+      jsonInput = new JSONObject();
+      jsonInput.put(ConstantsIF.QUERY, jsonQuery);
+
+      operInput = new Operation(OperationIF.TYPE.SEARCH);
+      operInput.setJSON(jsonInput);
+
+      operOutput = resourcesHandler.process(operInput);
+
+      if (operOutput.isError()) {
+         this.abort(METHOD, "Could not search resources: " + operOutput.getStatus(),
+            this.getStatusFromState(operOutput.getState()));
+      }
+
+      jsonResources = JSON.getArray(operOutput.getJSON(),
+         ConstantsIF.DATA + "." + ConstantsIF.RESULTS);
+
+      if (jsonResources == null) {
+         jsonResources = new JSONArray();
+      }
+
+      total = jsonResources.size();
+
+      if (max > 0 && max < total) {
+         jsonResults = new JSONArray();
+         jsonResults.addAll(jsonResources.subList(0, max));
+         jsonResources = jsonResults;
+      }
+
+      /*
+       * The access token is resolved once, on the request thread
+       */
+      for (Object obj : jsonResources) {
+         if (obj instanceof JSONObject && !STR.isEmpty(JSON.getString((JSONObject) obj,
+            ConstantsIF.DATA + "." + ConstantsIF.REGISTER))) {
+            register = true;
+            break;
+         }
+      }
+
+      if (register) {
+         access_token = this.getAccessToken();
+
+         if (STR.isEmpty(access_token)) {
+            this.abort(CLASS + ": " + METHOD, "access_token is empty", Status.BAD_REQUEST);
+         }
+      }
+
+      executor = this.getBulkExecutor();
+      futures = new ArrayList<>(jsonResources.size());
+
+      for (Object obj : jsonResources) {
+         jsonResource = obj instanceof JSONObject ? (JSONObject) obj : null;
+
+         futures.add(executor.submit(new BulkDeleteTask(access_token, jsonResource,
+            resourcesHandler, contentHandler, registerHandler)));
+      }
+
+      jsonResults = new JSONArray();
+
+      for (Future<JSONObject> future : futures) {
+         try {
+            jsonResult = future.get();
+         } catch (InterruptedException | ExecutionException ex) {
+            jsonResult = new JSONObject();
+            jsonResult.put(BulkCreateTask.STATUS, STATUS_FAILED);
+            jsonResult.put(ConstantsIF.ERROR, ex.getMessage());
+
+            if (ex instanceof InterruptedException) {
+               Thread.currentThread().interrupt();
+            }
+         }
+
+         if (BulkDeleteTask.STATUS_DELETED.equals(JSON.getString(jsonResult, BulkCreateTask.STATUS))) {
+            deleted++;
+         }
+
+         jsonResults.add(jsonResult);
+      }
+
+      jsonOutput = new JSONObject();
+      jsonOutput.put(ConstantsIF.QUANTITY, jsonResults.size());
+      jsonOutput.put(BulkDeleteTask.STATUS_DELETED, deleted);
+      jsonOutput.put(STATUS_FAILED, jsonResults.size() - deleted);
+      jsonOutput.put(REMAINING, total - deleted);
+      jsonOutput.put(ConstantsIF.RESULTS, jsonResults);
+
+      jsonData = new JSONObject();
+      jsonData.put(ConstantsIF.DATA, jsonOutput);
+
+      operOutput = new Operation(OperationIF.TYPE.READ);
+      operOutput.setState(STATE.SUCCESS);
+      operOutput.setJSON(jsonData);
+
+      _logger.log(Level.INFO, "{0}: owner=''{1}'', processed=''{2}'', deleted=''{3}'', remaining=''{4}''",
+         new Object[]{METHOD, userId, jsonResults.size(), deleted, total - deleted});
+
+      response = this.getResponseFromJSON(_uriInfo, operOutput);
+
+      _logger.exiting(CLASS, METHOD);
+
+      return response;
+   }
+
    /**
     * Read a specific resource, include meta data, content, registration and
     * policy
@@ -287,8 +892,6 @@ public class ResourcesResource extends RSResource {
             Status.BAD_REQUEST);
       }
 
-      this.load();
-
       userId = this.getUserIdFromSSOSession();
 
       if (_logger.isLoggable(DEBUG_LEVEL)) {
@@ -441,8 +1044,6 @@ public class ResourcesResource extends RSResource {
          this.abort(METHOD, "Path resource is empty", Status.BAD_REQUEST);
       }
 
-      this.load();
-
       userId = this.getUserIdFromSSOSession();
 
       if (_logger.isLoggable(DEBUG_LEVEL)) {
@@ -839,8 +1440,10 @@ public class ResourcesResource extends RSResource {
       }
 
       /*
-       * Update the resource with the registration uid
+       * Update the resource with the registration uid, only "register" is
+       * written, a concurrent meta data or content change is kept
        */
+      jsonResourceData = new JSONObject();
       jsonResourceData.put(ConstantsIF.REGISTER, registerUid);
 
       jsonResourceInput = new JSONObject();
@@ -849,13 +1452,12 @@ public class ResourcesResource extends RSResource {
 
       operResourceInput = new Operation(OperationIF.TYPE.REPLACE);
       operResourceInput.setJSON(jsonResourceInput);
+      operResourceInput.setParam(ResourcesHandler.PARAM_SET, ConstantsIF.REGISTER);
 
       // JSON input ...
       // {
       //     "uid": "...",
       //     "data": { 
-      //         "owner": "...", 
-      //         "meta": { ... }, 
       //         "register": "..." 
       //     }
       // }
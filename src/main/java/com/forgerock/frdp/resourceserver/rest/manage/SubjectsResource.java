@@ -59,7 +59,8 @@ public class SubjectsResource extends RSResource {
     * Get all the subjects, Requesting Parties (RqP), that have access to any
     * resource that is owned by the authenticated user. This service IS NOT part of
     * the UMA 2.0 specification, it is provided as a "value add" service using
-    * Access Manager APIs
+    * Access Manager APIs. The subjects are sorted, the "offset" and "limit"
+    * query parameters return a page of them.
     * 
     * @return Response HTTP response object
     */
@@ -79,8 +80,6 @@ public class SubjectsResource extends RSResource {
 
       operOutput = new Operation(OperationIF.TYPE.SEARCH);
 
-      this.load();
-
       subjectsHandler = this.getHandler(JaxrsHandlerIF.HANDLER_UMA_SUBJECTS);
 
       userId = this.getUserIdFromSSOSession(); // make sure authenticated user
@@ -95,6 +94,8 @@ public class SubjectsResource extends RSResource {
       jsonData.put(ConstantsIF.SSO_TOKEN, sso_token);
       jsonData.put(ConstantsIF.OWNER, userId);
 
+      this.setPageParams(jsonData);
+
       operInput = new Operation(OperationIF.TYPE.SEARCH);
       operInput.setJSON(jsonData);
 
@@ -57,7 +57,9 @@ public class DiscoverResource extends RSResource {
    }
 
    /**
-    * Search for "discoverable" resources associated a specific owner
+    * Search for "discoverable" resources associated a specific owner. The
+    * optional "offset" and "limit" query parameters return a page of the
+    * results.
     * 
     * @return Response HTTP response object
     */
@@ -86,8 +88,6 @@ public class DiscoverResource extends RSResource {
 
       operOutput = new Operation(OperationIF.TYPE.SEARCH);
 
-      this.load();
-
       subject = this.getUserIdFromSSOSession(); // require a SSO session
 
       discoverHandler = this.getHandler(JaxrsHandlerIF.HANDLER_UMA_DISCOVER);
@@ -119,6 +119,8 @@ public class DiscoverResource extends RSResource {
       jsonData.put(ConstantsIF.OWNER, _owner);
       jsonData.put(ConstantsIF.ACCESS_TOKEN, this.getAccessToken(_owner));
 
+      this.setPageParams(jsonData);
+
       if (!STR.isEmpty(attribute) && !STR.isEmpty(value)) {
          jsonQuery = new JSONObject();
          jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
@@ -77,8 +77,6 @@ public class PolicyResource extends RSResource {
          this.abort(METHOD, "Path resource is empty", Status.BAD_REQUEST);
       }
 
-      this.load();
-
       subject = this.getUserIdFromSSOSession(); // require a SSO session
 
       operOutput = this.updatePolicy(subject, null); // no scopes, remove permission
@@ -11,6 +11,7 @@ import com.forgerock.frdp.common.DataIF;
 import com.forgerock.frdp.dao.Operation;
 import com.forgerock.frdp.dao.OperationIF;
 import com.forgerock.frdp.resourceserver.ConfigIF;
+import com.forgerock.frdp.resourceserver.content.ETagCache;
 import com.forgerock.frdp.resourceserver.handler.JaxrsHandlerIF;
 import com.forgerock.frdp.resourceserver.rest.RSResource;
 import com.forgerock.frdp.utils.JSON;
@@ -79,6 +80,8 @@ public class ResourcesResource extends RSResource {
     *   }
     * }
     * </pre>
+    * The response includes an "ETag" header, a request with a matching
+    * "If-None-Match" header returns "304 Not Modified".
     * 
     * @param resourceUid String resource identifier
     * @param scopes      String space separated list of scopes
@@ -90,13 +93,12 @@ public class ResourcesResource extends RSResource {
    public Response getResources(@PathParam(ConstantsIF.ID) String resourceUid,
          @QueryParam(ConstantsIF.SCOPES) String scopes) {
       String METHOD = Thread.currentThread().getStackTrace()[1].getMethodName();
+      String etag = null;
       Response response = null;
       OperationIF operOutput = null;
 
       _logger.entering(CLASS, METHOD);
 
-      this.load();
-
       if (_logger.isLoggable(DEBUG_LEVEL)) {
          _logger.log(DEBUG_LEVEL, "resourceUid=''{0}'', scopes=''{1}''",
                new Object[] { resourceUid == null ? NULL : resourceUid, scopes == null ? NULL : scopes });
@@ -104,7 +106,15 @@ public class ResourcesResource extends RSResource {
 
       operOutput = this.readImpl(resourceUid, scopes);
 
-      response = this.getResponseFromJSON(_uriInfo, operOutput);
+      /*
+       * Strong ETag over the composite output (meta, content, scopes),
+       * return "304 Not Modified" if the client has the current version
+       */
+      if (!operOutput.isError() && operOutput.getState() == STATE.SUCCESS && operOutput.getJSON() != null) {
+         etag = ETagCache.getStrongETag(operOutput.getJSON().toJSONString());
+      }
+
+      response = this.getConditionalResponse(this.getResponseFromJSON(_uriInfo, operOutput), etag);
 
       _logger.exiting(CLASS, METHOD);
 
@@ -58,7 +58,9 @@ public class WithMeResource extends RSResource {
    /**
     * Get the resources that are currently "Shared With Me" (to the RqP) If query
     * parameter is "name", search for resources that have matching "name"
-    * (priority) If "type", search for resources that have matching "type"
+    * (priority) If "type", search for resources that have matching "type".
+    * The optional "offset" and "limit" query parameters return a page of the
+    * results.
     * 
     * @return Response HTTP response object
     */
@@ -81,8 +83,6 @@ public class WithMeResource extends RSResource {
 
       _logger.entering(CLASS, METHOD);
 
-      this.load();
-
       operOutput = new Operation(OperationIF.TYPE.SEARCH);
 
       sharedHandler = this.getHandler(JaxrsHandlerIF.HANDLER_UMA_SHAREDWITHME);
@@ -117,6 +117,8 @@ public class WithMeResource extends RSResource {
       jsonData.put(ConstantsIF.SUBJECT, subject); // Requesting Party
       jsonData.put(ConstantsIF.SSO_TOKEN, sso_token);
 
+      this.setPageParams(jsonData);
+
       if (!STR.isEmpty(attribute) && !STR.isEmpty(value)) {
          jsonQuery = new JSONObject();
          jsonQuery.put(ConstantsIF.OPERATOR, ConstantsIF.EQUAL);
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.utils;
+
+import java.util.List;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * JSON helpers shared by the caches
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public final class JSONUtil {
+
+   private JSONUtil() {
+   }
+
+   /**
+    * Get a deep copy of a JSON value: objects and arrays are copied, other
+    * values are immutable.
+    *
+    * @param obj Object JSON value
+    * @return Object copy
+    */
+   public static Object copy(final Object obj) {
+      Object value = null;
+      JSONObject jsonCopy = null;
+      JSONArray arrayCopy = null;
+
+      if (obj instanceof JSONObject) {
+         jsonCopy = new JSONObject();
+
+         for (Object key : ((JSONObject) obj).keySet()) {
+            jsonCopy.put(key, copy(((JSONObject) obj).get(key)));
+         }
+
+         value = jsonCopy;
+      } else if (obj instanceof List) {
+         arrayCopy = new JSONArray();
+
+         for (Object item : (List<?>) obj) {
+            arrayCopy.add(copy(item));
+         }
+
+         value = arrayCopy;
+      } else {
+         value = obj;
+      }
+
+      return value;
+   }
+}
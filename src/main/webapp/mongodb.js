@@ -11,15 +11,24 @@ db.createUser({user: "resourceadmin", pwd: "password", roles: ["readWrite", "dbA
 
 db.createCollection("credentials");
 db.credentials.createIndex({"uid": 1});
-db.credentials.createIndex({"data.owner": 1}, {unique: true});
+db.credentials.createIndex({"data.owner": 1, "data.category": 1}, {unique: true});
+db.credentials.createIndex({"data.category": 1, "data.refresh": 1});
 db.credentials.insert({"comment": "This is a test document"});
 
 db.createCollection("resources");
 db.resources.createIndex({"uid": 1});
-db.resources.createIndex({"data.owner": 1});
+db.resources.createIndex({"data.owner": 1, "data.meta.discoverable": 1});
 db.resources.createIndex({"data.register": 1});
+db.resources.createIndex({"data.job.uid": 1}, {sparse: true});
 db.resources.insert({"comment": "This is a test document"});
 
+db.createCollection("jobs");
+db.jobs.createIndex({"uid": 1});
+db.jobs.createIndex({"data.owner": 1});
+db.jobs.createIndex({"data.status": 1});
+db.jobs.createIndex({"data.claim": 1}, {unique: true, sparse: true});
+db.jobs.insert({"comment": "This is a test document"});
+
 //
 // Login as the administrator for the application database
 // mongo --username "resourceadmin" --password "password" --authenticationDatabase "resource-server" resource-server
@@ -31,3 +40,5 @@ db.credentials.find();
 db.credentials.find().pretty();
 db.resources.find();
 db.resources.find().pretty();
+db.jobs.find();
+db.jobs.find().pretty();
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.content;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.json.simple.JSONObject;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the content cache: size limit, eviction order and generations.
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class ContentCacheTest {
+
+   private ContentCache _cache = null;
+
+   @Before
+   public void setUp() {
+      _cache = new ContentCache();
+      _cache.configure(60L, 100L, 50L);
+
+      return;
+   }
+
+   @Test
+   public void testDisabled() throws IOException {
+      _cache.configure(60L, 0L, 50L);
+
+      assertFalse(_cache.isEnabled());
+      assertNull(this.load("a", body(10, 'a'), "\"a\""));
+      assertNull(_cache.get("a"));
+
+      return;
+   }
+
+   @Test
+   public void testEntryTooLarge() throws IOException {
+      assertFalse(_cache.isCacheable(51L));
+      assertNull(this.load("a", body(51, 'a'), "\"a\""));
+      assertNull(_cache.get("a"));
+
+      return;
+   }
+
+   @Test
+   public void testLoad() throws IOException {
+      byte[] bytes = body(40, 'a');
+      ContentCache.Entry entry = null;
+
+      entry = this.load("a", bytes, "\"a\"");
+
+      assertNotNull(entry);
+      assertSame(entry, _cache.get("a"));
+      assertEquals("\"a\"", entry.getETag());
+      assertEquals(40, entry.getSize());
+      assertArrayEquals(bytes, entry.getBytes());
+
+      return;
+   }
+
+   @Test
+   public void testEvictLeastRecentlyUsed() throws IOException {
+      JSONObject jsonMetrics = null;
+
+      this.load("a", body(40, 'a'), "\"a\"");
+      this.load("b", body(40, 'b'), "\"b\"");
+
+      assertNotNull(_cache.get("a")); // "b" is now the least recently used
+
+      this.load("c", body(40, 'c'), "\"c\"");
+
+      assertNotNull(_cache.get("a"));
+      assertNull(_cache.get("b"));
+      assertNotNull(_cache.get("c"));
+
+      jsonMetrics = _cache.getMetrics();
+
+      assertEquals(2, ((Number) jsonMetrics.get("entries")).intValue());
+      assertEquals(80L, ((Number) jsonMetrics.get("bytes")).longValue());
+      assertEquals(1L, ((Number) jsonMetrics.get("evictions")).longValue());
+
+      return;
+   }
+
+   @Test
+   public void testReplaceKeepsSize() throws IOException {
+      this.load("a", body(40, 'a'), "\"a1\"");
+      this.load("a", body(30, 'a'), "\"a2\"");
+
+      assertEquals("\"a2\"", _cache.get("a").getETag());
+      assertEquals(30L, ((Number) _cache.getMetrics().get("bytes")).longValue());
+
+      return;
+   }
+
+   @Test
+   public void testRemoveRejectsStaleLoad() throws IOException {
+      long generation = 0L;
+      ContentCache.Entry entry = null;
+
+      generation = _cache.getGeneration("a");
+
+      _cache.remove("a"); // replaced while it was read
+
+      entry = _cache.load("a", generation, new ByteArrayInputStream(body(10, 'a')), 10L, null, "\"a\"");
+
+      assertNotNull(entry); // returned to the reader
+      assertNull(_cache.get("a")); // but not saved
+
+      assertNotNull(this.load("a", body(10, 'a'), "\"a\""));
+      assertNotNull(_cache.get("a"));
+
+      return;
+   }
+
+   @Test
+   public void testEvictKeepsGeneration() throws IOException {
+      long generation = 0L;
+      ContentCache.Entry entry = null;
+
+      entry = this.load("a", body(10, 'a'), "\"a1\"");
+      generation = _cache.getGeneration("a");
+
+      _cache.evict("a", entry);
+
+      assertNull(_cache.get("a"));
+      assertEquals(generation, _cache.getGeneration("a"));
+
+      return;
+   }
+
+   @Test
+   public void testLoadComputesETag() throws IOException {
+      ContentCache.Entry entry = null;
+      ContentCache.Entry other = null;
+
+      entry = this.load("a", body(10, 'a'), null);
+      other = this.load("b", body(10, 'a'), null);
+
+      assertNotNull(entry.getETag());
+      assertFalse(entry.getETag().startsWith("W/"));
+      assertEquals(entry.getETag(), entry.getHeaders().get("ETag"));
+      assertEquals(entry.getETag(), other.getETag());
+
+      return;
+   }
+
+   @Test(expected = IOException.class)
+   public void testLoadShortStream() throws IOException {
+      _cache.load("a", _cache.getGeneration("a"), new ByteArrayInputStream(body(10, 'a')), 20L, null, null);
+
+      return;
+   }
+
+   @Test
+   public void testPutCopiesJSON() {
+      JSONObject jsonData = null;
+      JSONObject jsonNested = null;
+      ContentCache.Entry entry = null;
+
+      jsonNested = new JSONObject();
+      jsonNested.put("value", "one");
+      jsonData = new JSONObject();
+      jsonData.put("nested", jsonNested);
+
+      entry = _cache.put("a", _cache.getGeneration("a"), jsonData, "\"a\"");
+
+      jsonNested.put("value", "changed"); // after it was saved
+
+      ((JSONObject) entry.getJSON().get("nested")).put("value", "reader");
+
+      assertEquals("one", ((JSONObject) entry.getJSON().get("nested")).get("value"));
+      assertArrayEquals("{\"nested\":{\"value\":\"one\"}}".getBytes(StandardCharsets.UTF_8), entry.getBytes());
+
+      return;
+   }
+
+   @Test
+   public void testRevalidated() throws IOException {
+      ContentCache.Entry entry = null;
+
+      _cache.configure(0L, 100L, 50L); // every entry is expired
+
+      entry = this.load("a", body(10, 'a'), "\"a\"");
+
+      assertTrue(entry.isExpired());
+
+      _cache.configure(60L, 100L, 50L);
+      _cache.revalidated(entry);
+
+      assertFalse(entry.isExpired());
+
+      return;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   private ContentCache.Entry load(final String key, final byte[] bytes, final String etag) throws IOException {
+      return _cache.load(key, _cache.getGeneration(key), new ByteArrayInputStream(bytes), bytes.length, null, etag);
+   }
+
+   private static byte[] body(final int size, final char value) {
+      byte[] bytes = new byte[size];
+
+      Arrays.fill(bytes, (byte) value);
+
+      return bytes;
+   }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.handler;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for single flight: shared results, exceptions and independent keys.
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class SingleFlightTest {
+
+   private ExecutorService _executor = null;
+
+   @Before
+   public void setUp() {
+      _executor = Executors.newFixedThreadPool(2);
+
+      return;
+   }
+
+   @After
+   public void tearDown() {
+      _executor.shutdownNow();
+
+      return;
+   }
+
+   @Test
+   public void testSharedResult() throws Exception {
+      SingleFlight<String> flight = new SingleFlight<>();
+      AtomicInteger calls = new AtomicInteger(0);
+      CountDownLatch started = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      Future<String> first = null;
+      Future<String> second = null;
+
+      first = _executor.submit(() -> flight.execute("owner", () -> {
+         started.countDown();
+         release.await(10L, TimeUnit.SECONDS);
+         return "result-" + calls.incrementAndGet();
+      }));
+
+      assertTrue(started.await(10L, TimeUnit.SECONDS));
+      assertEquals(1, flight.getInFlight());
+
+      second = _executor.submit(() -> flight.execute("owner", () -> "result-" + calls.incrementAndGet()));
+
+      this.waitForShared(flight, 1L);
+
+      release.countDown();
+
+      assertEquals("result-1", first.get(10L, TimeUnit.SECONDS));
+      assertEquals("result-1", second.get(10L, TimeUnit.SECONDS));
+      assertEquals(1, calls.get());
+      assertEquals(0, flight.getInFlight());
+
+      return;
+   }
+
+   @Test
+   public void testNotCached() throws Exception {
+      SingleFlight<Integer> flight = new SingleFlight<>();
+      AtomicInteger calls = new AtomicInteger(0);
+
+      assertEquals(Integer.valueOf(1), flight.execute("owner", calls::incrementAndGet));
+      assertEquals(Integer.valueOf(2), flight.execute("owner", calls::incrementAndGet));
+      assertEquals(0L, flight.getShared());
+
+      return;
+   }
+
+   @Test
+   public void testException() throws Exception {
+      SingleFlight<String> flight = new SingleFlight<>();
+
+      try {
+         flight.execute("owner", () -> {
+            throw new IOException("failed");
+         });
+         fail("Expected an IOException");
+      } catch (IOException ex) {
+         assertEquals("failed", ex.getMessage());
+      }
+
+      assertEquals(0, flight.getInFlight());
+      assertEquals("ok", flight.execute("owner", () -> "ok"));
+
+      return;
+   }
+
+   @Test
+   public void testDifferentKeys() throws Exception {
+      SingleFlight<String> flight = new SingleFlight<>();
+      CountDownLatch started = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      Future<String> first = null;
+
+      first = _executor.submit(() -> flight.execute("one", () -> {
+         started.countDown();
+         release.await(10L, TimeUnit.SECONDS);
+         return "one";
+      }));
+
+      assertTrue(started.await(10L, TimeUnit.SECONDS));
+
+      assertEquals("two", flight.execute("two", () -> "two")); // not blocked by "one"
+
+      release.countDown();
+
+      assertEquals("one", first.get(10L, TimeUnit.SECONDS));
+      assertEquals(0L, flight.getShared());
+
+      return;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   private void waitForShared(final SingleFlight<?> flight, final long shared) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + 10000L;
+
+      while (flight.getShared() < shared && System.currentTimeMillis() < deadline) {
+         Thread.sleep(10L);
+      }
+
+      assertEquals(shared, flight.getShared());
+
+      return;
+   }
+}
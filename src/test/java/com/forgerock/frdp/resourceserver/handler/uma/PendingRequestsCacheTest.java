@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.handler.uma;
+
+import com.forgerock.frdp.common.ConstantsIF;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests for the pending requests cache: remove, invalidate and generations.
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class PendingRequestsCacheTest {
+
+   @Test
+   public void testPut() {
+      PendingRequestsCache cache = new PendingRequestsCache(60L, 10);
+
+      cache.put("alice", cache.getGeneration("alice"), requests("1", "2"));
+
+      assertEquals(2, cache.get("alice").size());
+      assertNull(cache.get("bob"));
+
+      return;
+   }
+
+   @Test
+   public void testDisabled() {
+      PendingRequestsCache cache = new PendingRequestsCache(0L, 10);
+
+      cache.put("alice", cache.getGeneration("alice"), requests("1"));
+
+      assertNull(cache.get("alice"));
+
+      return;
+   }
+
+   @Test
+   public void testRemove() {
+      PendingRequestsCache cache = new PendingRequestsCache(60L, 10);
+      JSONArray requests = requests("1", "2", "3");
+      JSONArray cached = null;
+
+      cache.put("alice", cache.getGeneration("alice"), requests);
+      cache.remove("alice", "2");
+
+      cached = cache.get("alice");
+
+      assertEquals(2, cached.size());
+      assertEquals("1", ((JSONObject) cached.get(0)).get(ConstantsIF._ID));
+      assertEquals("3", ((JSONObject) cached.get(1)).get(ConstantsIF._ID));
+      assertEquals(3, requests.size()); // saved list is not changed
+
+      cache.remove("alice", "4");
+
+      assertEquals(2, cache.get("alice").size());
+
+      return;
+   }
+
+   @Test
+   public void testRemoveNotCached() {
+      PendingRequestsCache cache = new PendingRequestsCache(60L, 10);
+
+      cache.remove("alice", "1");
+
+      assertNull(cache.get("alice"));
+
+      return;
+   }
+
+   @Test
+   public void testRemoveRejectsStalePut() {
+      PendingRequestsCache cache = new PendingRequestsCache(60L, 10);
+      long generation = 0L;
+
+      generation = cache.getGeneration("alice"); // read started
+
+      cache.remove("alice", "1"); // approved while it was read
+      cache.put("alice", generation, requests("1", "2"));
+
+      assertNull(cache.get("alice"));
+
+      cache.put("alice", cache.getGeneration("alice"), requests("2"));
+
+      assertNotNull(cache.get("alice"));
+
+      return;
+   }
+
+   @Test
+   public void testInvalidate() {
+      PendingRequestsCache cache = new PendingRequestsCache(60L, 10);
+      long generation = 0L;
+
+      cache.put("alice", cache.getGeneration("alice"), requests("1"));
+
+      generation = cache.getGeneration("alice");
+
+      cache.invalidate("alice");
+
+      assertNull(cache.get("alice"));
+
+      cache.put("alice", generation, requests("1", "2"));
+
+      assertNull(cache.get("alice"));
+
+      return;
+   }
+
+   @Test
+   public void testMaxOwners() {
+      PendingRequestsCache cache = new PendingRequestsCache(60L, 10);
+      int count = 0;
+
+      for (int i = 0; i < 20; i++) {
+         cache.put("owner" + i, cache.getGeneration("owner" + i), requests("1"));
+      }
+
+      for (int i = 0; i < 20; i++) {
+         if (cache.get("owner" + i) != null) {
+            count++;
+         }
+      }
+
+      assertTrue(count <= 10);
+      assertNotNull(cache.get("owner19"));
+
+      return;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   private static JSONArray requests(final String... ids) {
+      JSONObject jsonRequest = null;
+      JSONArray jsonRequests = new JSONArray();
+
+      for (String id : ids) {
+         jsonRequest = new JSONObject();
+         jsonRequest.put(ConstantsIF._ID, id);
+         jsonRequests.add(jsonRequest);
+      }
+
+      return jsonRequests;
+   }
+}
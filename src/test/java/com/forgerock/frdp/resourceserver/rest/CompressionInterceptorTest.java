@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.rest;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests for the "Accept-Encoding" parsing: codings and quality values.
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class CompressionInterceptorTest {
+
+   @Test
+   public void testAccepted() {
+      assertTrue(CompressionInterceptor.isGZipAccepted("gzip"));
+      assertTrue(CompressionInterceptor.isGZipAccepted("GZIP"));
+      assertTrue(CompressionInterceptor.isGZipAccepted("x-gzip"));
+      assertTrue(CompressionInterceptor.isGZipAccepted("*"));
+      assertTrue(CompressionInterceptor.isGZipAccepted("deflate, gzip, br"));
+      assertTrue(CompressionInterceptor.isGZipAccepted("gzip;q=0.5"));
+      assertTrue(CompressionInterceptor.isGZipAccepted("gzip; q=1.0"));
+      assertTrue(CompressionInterceptor.isGZipAccepted("gzip;q=0.001"));
+
+      return;
+   }
+
+   @Test
+   public void testNotAccepted() {
+      assertFalse(CompressionInterceptor.isGZipAccepted(null));
+      assertFalse(CompressionInterceptor.isGZipAccepted(""));
+      assertFalse(CompressionInterceptor.isGZipAccepted("identity"));
+      assertFalse(CompressionInterceptor.isGZipAccepted("deflate, br"));
+      assertFalse(CompressionInterceptor.isGZipAccepted("gzip;q=0"));
+      assertFalse(CompressionInterceptor.isGZipAccepted("gzip; q=0.0"));
+      assertFalse(CompressionInterceptor.isGZipAccepted("gzip;q=0.000"));
+      assertFalse(CompressionInterceptor.isGZipAccepted("*;q=0"));
+
+      return;
+   }
+
+   @Test
+   public void testExplicitOverridesAny() {
+      assertFalse(CompressionInterceptor.isGZipAccepted("*, gzip;q=0"));
+      assertFalse(CompressionInterceptor.isGZipAccepted("gzip;q=0, *"));
+      assertTrue(CompressionInterceptor.isGZipAccepted("*;q=0, gzip"));
+
+      return;
+   }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.rest;
+
+import java.util.zip.Deflater;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ * Tests for the Deflater pool: re-use, size limit and close.
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class DeflaterPoolTest {
+
+   @Test
+   public void testReuse() {
+      DeflaterPool pool = new DeflaterPool(6, 2);
+      Deflater deflater = null;
+
+      deflater = pool.borrow();
+      pool.release(deflater);
+
+      assertEquals(1, pool.getIdle());
+      assertSame(deflater, pool.borrow());
+      assertEquals(0, pool.getIdle());
+      assertEquals(1L, pool.getCreated());
+
+      return;
+   }
+
+   @Test
+   public void testMaxSize() {
+      DeflaterPool pool = new DeflaterPool(6, 1);
+      Deflater first = null;
+      Deflater second = null;
+
+      first = pool.borrow();
+      second = pool.borrow();
+
+      assertNotSame(first, second);
+      assertEquals(2L, pool.getCreated());
+
+      pool.release(first);
+      pool.release(second); // pool is full, released with end()
+
+      assertEquals(1, pool.getIdle());
+      assertSame(first, pool.borrow());
+
+      return;
+   }
+
+   @Test
+   public void testInvalidLevel() {
+      assertEquals(Deflater.DEFAULT_COMPRESSION, new DeflaterPool(0, 1).getLevel());
+      assertEquals(Deflater.DEFAULT_COMPRESSION, new DeflaterPool(10, 1).getLevel());
+      assertEquals(Deflater.BEST_SPEED, new DeflaterPool(1, 1).getLevel());
+
+      return;
+   }
+
+   @Test
+   public void testClose() {
+      DeflaterPool pool = new DeflaterPool(6, 2);
+      Deflater idle = null;
+      Deflater borrowed = null;
+
+      idle = pool.borrow();
+      borrowed = pool.borrow();
+      pool.release(idle);
+
+      pool.close();
+
+      assertEquals(0, pool.getIdle());
+
+      pool.release(borrowed); // returned after the close
+
+      assertEquals(0, pool.getIdle());
+      assertNotSame(borrowed, pool.borrow());
+
+      return;
+   }
+}
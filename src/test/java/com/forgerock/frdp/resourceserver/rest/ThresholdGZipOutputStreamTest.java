@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2020, ForgeRock, Inc., All rights reserved
+ * Use subject to license terms.
+ */
+package com.forgerock.frdp.resourceserver.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the threshold GZIP stream: framing, headers and the Deflater
+ * pool.
+ *
+ * @author Scott Fehrman, ForgeRock, Inc.
+ */
+public class ThresholdGZipOutputStreamTest {
+
+   private static final int THRESHOLD = 1024;
+
+   private DeflaterPool _pool = null;
+   private MultivaluedMap<String, Object> _headers = null;
+   private ByteArrayOutputStream _out = null;
+
+   @Before
+   public void setUp() {
+      _pool = new DeflaterPool(6, 2);
+      _headers = new MultivaluedHashMap<>();
+      _headers.putSingle(HttpHeaders.CONTENT_LENGTH, "123");
+      _out = new ByteArrayOutputStream();
+
+      return;
+   }
+
+   @Test
+   public void testBelowThreshold() throws IOException {
+      byte[] bytes = body(THRESHOLD);
+      ThresholdGZipOutputStream gzipOutput = null;
+
+      gzipOutput = new ThresholdGZipOutputStream(_out, _headers, _pool, THRESHOLD);
+      gzipOutput.write(bytes);
+      gzipOutput.close();
+
+      assertFalse(gzipOutput.isCompressed());
+      assertArrayEquals(bytes, _out.toByteArray());
+      assertNull(_headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+      assertEquals("123", _headers.getFirst(HttpHeaders.CONTENT_LENGTH));
+      assertEquals(0L, _pool.getCreated());
+
+      return;
+   }
+
+   @Test
+   public void testAboveThreshold() throws IOException {
+      byte[] bytes = body(10 * THRESHOLD);
+      ThresholdGZipOutputStream gzipOutput = null;
+
+      gzipOutput = new ThresholdGZipOutputStream(_out, _headers, _pool, THRESHOLD);
+      gzipOutput.write(bytes, 0, 100);
+      gzipOutput.write(bytes[100]);
+      gzipOutput.write(bytes, 101, bytes.length - 101);
+      gzipOutput.close();
+
+      assertTrue(gzipOutput.isCompressed());
+      assertEquals(ThresholdGZipOutputStream.ENCODING_GZIP, _headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+      assertNull(_headers.getFirst(HttpHeaders.CONTENT_LENGTH));
+      assertEquals(bytes.length, gzipOutput.getBytesIn());
+      assertEquals(_out.size(), gzipOutput.getBytesOut());
+      assertArrayEquals(bytes, gunzip(_out.toByteArray()));
+      assertEquals(1, _pool.getIdle()); // returned by finish()
+
+      return;
+   }
+
+   @Test
+   public void testFlush() throws IOException {
+      byte[] bytes = body(4 * THRESHOLD);
+      ThresholdGZipOutputStream gzipOutput = null;
+
+      gzipOutput = new ThresholdGZipOutputStream(_out, _headers, _pool, THRESHOLD);
+      gzipOutput.write(bytes, 0, 2 * THRESHOLD);
+      gzipOutput.flush();
+      gzipOutput.write(bytes, 2 * THRESHOLD, 2 * THRESHOLD);
+      gzipOutput.close();
+
+      assertArrayEquals(bytes, gunzip(_out.toByteArray()));
+
+      return;
+   }
+
+   @Test
+   public void testWeakETag() throws IOException {
+      ThresholdGZipOutputStream gzipOutput = null;
+
+      _headers.putSingle(HttpHeaders.ETAG, new EntityTag("abc"));
+
+      gzipOutput = new ThresholdGZipOutputStream(_out, _headers, _pool, THRESHOLD);
+      gzipOutput.write(body(2 * THRESHOLD));
+      gzipOutput.close();
+
+      assertEquals(new EntityTag("abc", true), _headers.getFirst(HttpHeaders.ETAG));
+
+      _headers.putSingle(HttpHeaders.ETAG, "\"abc\"");
+      _out.reset();
+
+      gzipOutput = new ThresholdGZipOutputStream(_out, _headers, _pool, THRESHOLD);
+      gzipOutput.write(body(2 * THRESHOLD));
+      gzipOutput.close();
+
+      assertEquals("W/\"abc\"", _headers.getFirst(HttpHeaders.ETAG));
+
+      return;
+   }
+
+   @Test
+   public void testRelease() throws IOException {
+      ThresholdGZipOutputStream gzipOutput = null;
+
+      gzipOutput = new ThresholdGZipOutputStream(_out, _headers, _pool, THRESHOLD);
+      gzipOutput.write(body(2 * THRESHOLD));
+      gzipOutput.release(); // the response failed
+      gzipOutput.release();
+
+      assertEquals(1, _pool.getIdle());
+      assertEquals(1L, _pool.getCreated());
+
+      return;
+   }
+
+   @Test(expected = IOException.class)
+   public void testWriteAfterFinish() throws IOException {
+      ThresholdGZipOutputStream gzipOutput = null;
+
+      gzipOutput = new ThresholdGZipOutputStream(_out, _headers, _pool, THRESHOLD);
+      gzipOutput.finish();
+      gzipOutput.write(1);
+
+      return;
+   }
+
+   /*
+    * =============== PRIVATE METHODS ===============
+    */
+   private static byte[] body(final int size) {
+      byte[] bytes = new byte[size];
+      Random random = new Random(size);
+
+      for (int i = 0; i < size; i++) {
+         bytes[i] = (byte) ('a' + random.nextInt(8)); // compressible, not uniform
+      }
+
+      return bytes;
+   }
+
+   private static byte[] gunzip(final byte[] bytes) throws IOException {
+      int num = 0;
+      byte[] buffer = new byte[4096];
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+      try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+         while ((num = input.read(buffer)) > 0) {
+            output.write(buffer, 0, num);
+         }
+      }
+
+      return output.toByteArray();
+   }
+}